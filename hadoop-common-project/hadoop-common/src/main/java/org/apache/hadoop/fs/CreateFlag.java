@@ -47,6 +47,9 @@
  * <li> SYNC_BLOCK - to force closed blocks to the disk device.
  * In addition {@link Syncable#hsync()} should be called after each write,
  * if true synchronous behavior is required.</li>
+ * <li> LAZY_PERSIST - to write the file to memory first and persist it to
+ * the disk device lazily. Data not persisted yet may be lost if the node
+ * holding it fails.</li>
  * </ol>
  * 
  * Following combination is not valid and will result in 
@@ -79,7 +82,15 @@ public enum CreateFlag {
   /**
    * Force closed blocks to disk. Similar to POSIX O_SYNC. See javadoc for description.
    */
-  SYNC_BLOCK((short) 0x08);
+  SYNC_BLOCK((short) 0x08),
+
+  /**
+   * Write the file to memory first and persist it to disk lazily, trading
+   * durability for write latency. Meant for short-lived data which can be
+   * recomputed. The file system may ignore this flag if it cannot honor it.
+   * See javadoc for description.
+   */
+  LAZY_PERSIST((short) 0x10);
 
   private final short mode;
 
@@ -21,6 +21,7 @@
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.EnumSet;
+import java.util.List;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -35,7 +36,7 @@
 public class FSDataInputStream extends DataInputStream
     implements Seekable, PositionedReadable, Closeable, 
       ByteBufferReadable, HasFileDescriptor, CanSetDropBehind, CanSetReadahead,
-      HasEnhancedByteBufferAccess {
+      HasEnhancedByteBufferAccess, VectoredReadable {
   /**
    * Map ByteBuffers that we have handed out to readers to ByteBufferPool 
    * objects
@@ -117,6 +118,21 @@ public void readFully(long position, byte[] buffer)
     ((PositionedReadable)in).readFully(position, buffer, 0, buffer.length);
   }
   
+  /**
+   * Read several ranges of the stream at once, see
+   * {@link VectoredReadable#readVectored(List)}. The streams which do not
+   * implement it read the ranges one after the other.
+   */
+  @Override
+  public void readVectored(List<? extends FileRange> ranges)
+      throws IOException {
+    if (in instanceof VectoredReadable) {
+      ((VectoredReadable)in).readVectored(ranges);
+    } else {
+      VectoredReadUtils.readVectored(this, ranges);
+    }
+  }
+
   /**
    * Seek to the given position on an alternate copy of the data.
    *
@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Utilities to implement {@link VectoredReadable}: the ranges are sorted,
+ * the nearby ranges are merged into larger reads, and the data read for a
+ * merged range is sliced into the data of the ranges it covers.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS"})
+@InterfaceStability.Unstable
+public class VectoredReadUtils {
+  /** The largest gap between two ranges merged by the default reads. */
+  public static final int DEFAULT_MAX_MERGE_GAP = 4 * 1024;
+  /** The largest merged range of the default reads. */
+  public static final int DEFAULT_MAX_MERGE_SIZE = 1024 * 1024;
+
+  private static final Comparator<FileRange> OFFSET_COMPARATOR =
+      new Comparator<FileRange>() {
+        @Override
+        public int compare(FileRange a, FileRange b) {
+          return a.getOffset() < b.getOffset() ? -1 :
+              a.getOffset() == b.getOffset() ? 0 : 1;
+        }
+      };
+
+  /** Ranges merged into a single read. */
+  public static class CombinedFileRange extends FileRange {
+    private final List<FileRange> underlying;
+
+    private CombinedFileRange(long offset, int length,
+        List<FileRange> underlying) {
+      super(offset, length);
+      this.underlying = underlying;
+    }
+
+    /** @return the ranges covered, in order. */
+    public List<FileRange> getUnderlying() {
+      return underlying;
+    }
+  }
+
+  private VectoredReadUtils() {
+  }
+
+  /**
+   * Check the ranges and sort them by offset.
+   *
+   * @return the ranges sorted by offset.
+   * @throws IllegalArgumentException if a range has a negative offset or
+   *         length, or if two ranges overlap.
+   */
+  public static List<FileRange> sortRanges(List<? extends FileRange> ranges) {
+    final List<FileRange> sorted = new ArrayList<FileRange>(ranges);
+    Collections.sort(sorted, OFFSET_COMPARATOR);
+    FileRange previous = null;
+    for (FileRange range : sorted) {
+      if (range.getOffset() < 0 || range.getLength() < 0) {
+        throw new IllegalArgumentException("Invalid " + range);
+      }
+      if (previous != null && previous.getEnd() > range.getOffset()) {
+        throw new IllegalArgumentException("Overlapping ranges " + previous
+            + " and " + range);
+      }
+      previous = range;
+    }
+    return sorted;
+  }
+
+  /**
+   * Merge the sorted ranges which are at most maxMergeGap bytes apart, into
+   * ranges of at most maxMergeSize bytes unless a single range is larger.
+   */
+  public static List<CombinedFileRange> mergeSortedRanges(
+      List<? extends FileRange> sorted, int maxMergeGap, int maxMergeSize) {
+    final List<CombinedFileRange> merged = new ArrayList<CombinedFileRange>();
+    int i = 0;
+    while (i < sorted.size()) {
+      final long start = sorted.get(i).getOffset();
+      long end = sorted.get(i).getEnd();
+      final List<FileRange> underlying = new ArrayList<FileRange>();
+      underlying.add(sorted.get(i++));
+      while (i < sorted.size()) {
+        final FileRange next = sorted.get(i);
+        if (next.getOffset() - end > maxMergeGap
+            || next.getEnd() - start > maxMergeSize) {
+          break;
+        }
+        underlying.add(next);
+        end = next.getEnd();
+        i++;
+      }
+      merged.add(new CombinedFileRange(start, (int)(end - start), underlying));
+    }
+    return merged;
+  }
+
+  /**
+   * Set the data of the ranges covered by a merged range, as slices of the
+   * data read for the merged range.
+   */
+  public static void sliceCombinedRange(CombinedFileRange combined) {
+    final ByteBuffer data = combined.getData();
+    for (FileRange range : combined.getUnderlying()) {
+      final ByteBuffer slice = data.duplicate();
+      final int position =
+          data.position() + (int)(range.getOffset() - combined.getOffset());
+      slice.position(position);
+      slice.limit(position + range.getLength());
+      range.setData(slice.slice());
+    }
+  }
+
+  /**
+   * Read the ranges one merged range after the other with
+   * {@link PositionedReadable#readFully(long, byte[], int, int)}, for the
+   * streams which do not implement {@link VectoredReadable}.
+   */
+  public static void readVectored(PositionedReadable stream,
+      List<? extends FileRange> ranges) throws IOException {
+    for (CombinedFileRange combined : mergeSortedRanges(sortRanges(ranges),
+        DEFAULT_MAX_MERGE_GAP, DEFAULT_MAX_MERGE_SIZE)) {
+      final byte[] buf = new byte[combined.getLength()];
+      stream.readFully(combined.getOffset(), buf, 0, buf.length);
+      combined.setData(ByteBuffer.wrap(buf));
+      sliceCombinedRange(combined);
+    }
+  }
+}
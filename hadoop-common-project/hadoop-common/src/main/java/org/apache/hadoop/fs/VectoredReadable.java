@@ -0,0 +1,46 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Implementers of this interface read several ranges of a file at once.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface VectoredReadable {
+  /**
+   * Read the given ranges of the file, without changing the position of the
+   * stream. The implementation may merge nearby ranges into larger reads
+   * and read the ranges in parallel. Once the method returns, the data of
+   * each range, of the length of the range, is set.
+   *
+   * @param ranges        The ranges to read, which must not overlap.
+   * @throws java.io.EOFException If a range ends after the end of the file.
+   * @throws IOException  If there was an error reading a range.
+   *                      The data of an undetermined number of ranges may
+   *                      have been set.
+   */
+  public void readVectored(List<? extends FileRange> ranges)
+      throws IOException;
+}
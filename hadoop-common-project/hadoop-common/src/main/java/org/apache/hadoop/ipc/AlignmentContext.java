@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
+
+/**
+ * Carries a monotonically increasing server state id in the RPC headers,
+ * so that a client which has seen a given state of one server can ask
+ * another server to answer only once it has reached that state.
+ * <p>
+ * The client side sets its last seen state id in every request and updates
+ * it from every response. The server side sets its current state id in
+ * every response and makes the state id of the client available to the
+ * handler through {@link Server#getClientStateId()}.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS"})
+@InterfaceStability.Evolving
+public interface AlignmentContext {
+
+  /**
+   * Server side: set the current state of the server in a response header.
+   */
+  void updateResponseState(RpcResponseHeaderProto.Builder header);
+
+  /**
+   * Client side: record the state of the server from a response header.
+   */
+  void receiveResponseState(RpcResponseHeaderProto header);
+
+  /**
+   * Client side: set the last state seen by the client in a request header.
+   */
+  void updateRequestState(RpcRequestHeaderProto.Builder header);
+
+  /**
+   * Server side: read the state the client has last seen from a request
+   * header.
+   * @return the state id, or {@link RpcConstants#INVALID_STATE_ID} if the
+   *         request does not carry one.
+   */
+  long receiveRequestState(RpcRequestHeaderProto header);
+
+  /**
+   * @return the last state id seen on the client side, or the current state
+   *         id on the server side.
+   */
+  long getLastSeenStateId();
+}
@@ -308,6 +308,7 @@ static class Call {
     IOException error;          // exception, null if success
     final RPC.RpcKind rpcKind;      // Rpc EngineKind
     boolean done;               // true when call is done
+    AlignmentContext alignmentContext; // carries the server state, or null
 
     private Call(RPC.RpcKind rpcKind, Writable param) {
       this.rpcKind = rpcKind;
@@ -988,7 +989,7 @@ public void sendRpcRequest(final Call call)
       final DataOutputBuffer d = new DataOutputBuffer();
       RpcRequestHeaderProto header = ProtoUtil.makeRpcRequestHeader(
           call.rpcKind, OperationProto.RPC_FINAL_PACKET, call.id, call.retry,
-          clientId);
+          clientId, call.alignmentContext);
       header.writeDelimitedTo(d);
       call.rpcRequest.write(d);
 
@@ -1063,6 +1064,9 @@ private void receiveRpcResponse() {
           LOG.debug(getName() + " got value #" + callId);
 
         Call call = calls.get(callId);
+        if (call != null && call.alignmentContext != null) {
+          call.alignmentContext.receiveResponseState(header);
+        }
         RpcStatusProto status = header.getStatus();
         if (status == RpcStatusProto.SUCCESS) {
           Writable value = ReflectionUtils.newInstance(valueClass, conf);
@@ -1376,7 +1380,28 @@ public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
    */
   public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
       ConnectionId remoteId, int serviceClass) throws IOException {
+    return call(rpcKind, rpcRequest, remoteId, serviceClass, null);
+  }
+
+  /**
+   * Make a call, passing <code>rpcRequest</code>, to the IPC server defined by
+   * <code>remoteId</code>, returning the rpc respond.
+   *
+   * @param rpcKind
+   * @param rpcRequest -  contains serialized method and method parameters
+   * @param remoteId - the target rpc server
+   * @param serviceClass - service class for RPC
+   * @param alignmentContext - carries the server state between the client
+   *        and the servers, may be null
+   * @returns the rpc response
+   * Throws exceptions if there are network problems or if the remote code
+   * threw an exception.
+   */
+  public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
+      ConnectionId remoteId, int serviceClass,
+      AlignmentContext alignmentContext) throws IOException {
     final Call call = createCall(rpcKind, rpcRequest);
+    call.alignmentContext = alignmentContext;
     Connection connection = getConnection(remoteId, call, serviceClass);
     try {
       connection.sendRpcRequest(call);                 // send the rpc request
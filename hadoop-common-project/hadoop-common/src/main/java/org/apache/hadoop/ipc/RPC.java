@@ -535,11 +535,51 @@ public static <T> ProtocolProxy<T> getProtocolProxy(Class<T> protocol,
                                 SocketFactory factory,
                                 int rpcTimeout,
                                 RetryPolicy connectionRetryPolicy) throws IOException {    
+    return getProtocolProxy(protocol, clientVersion, addr, ticket, conf,
+        factory, rpcTimeout, connectionRetryPolicy, null);
+  }
+
+  /**
+   * Get a protocol proxy that contains a proxy connection to a remote server
+   * and a set of methods that are supported by the server
+   *
+   * @param protocol protocol
+   * @param clientVersion client's version
+   * @param addr server address
+   * @param ticket security ticket
+   * @param conf configuration
+   * @param factory socket factory
+   * @param rpcTimeout max time for each rpc; 0 means no timeout
+   * @param connectionRetryPolicy retry policy
+   * @param alignmentContext carries the server state in the calls, may be null
+   * @return the proxy
+   * @throws IOException if any error occurs
+   */
+   public static <T> ProtocolProxy<T> getProtocolProxy(Class<T> protocol,
+                                long clientVersion,
+                                InetSocketAddress addr,
+                                UserGroupInformation ticket,
+                                Configuration conf,
+                                SocketFactory factory,
+                                int rpcTimeout,
+                                RetryPolicy connectionRetryPolicy,
+                                AlignmentContext alignmentContext)
+       throws IOException {
     if (UserGroupInformation.isSecurityEnabled()) {
       SaslRpcServer.init(conf);
     }
-    return getProtocolEngine(protocol,conf).getProxy(protocol, clientVersion,
-        addr, ticket, conf, factory, rpcTimeout, connectionRetryPolicy);
+    final RpcEngine engine = getProtocolEngine(protocol, conf);
+    if (alignmentContext == null) {
+      return engine.getProxy(protocol, clientVersion, addr, ticket, conf,
+          factory, rpcTimeout, connectionRetryPolicy);
+    }
+    if (!(engine instanceof AlignedRpcEngine)) {
+      throw new IOException("The RPC engine " + engine.getClass().getName()
+          + " of " + protocol.getName() + " cannot carry the server state");
+    }
+    return ((AlignedRpcEngine)engine).getProxy(protocol, clientVersion,
+        addr, ticket, conf, factory, rpcTimeout, connectionRetryPolicy,
+        alignmentContext);
   }
 
    /**
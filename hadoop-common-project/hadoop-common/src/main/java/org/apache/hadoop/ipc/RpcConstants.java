@@ -36,6 +36,8 @@ private RpcConstants() {
   
   
   public static final int INVALID_RETRY_COUNT = -1;
+
+  public static final long INVALID_STATE_ID = -1;
   
  /**
   * The Rpc-connection header is as follows 
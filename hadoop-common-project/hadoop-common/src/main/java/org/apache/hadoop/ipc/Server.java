@@ -319,6 +319,17 @@ public static byte[] getClientId() {
     Call call = CurCall.get();
     return call != null ? call.clientId : RpcConstants.DUMMY_CLIENT_ID;
   }
+
+  /**
+   * @return the server state id the client of the current RPC call has last
+   *         seen, or {@link RpcConstants#INVALID_STATE_ID} if there is no
+   *         current call or it does not carry a state id.
+   * @see AlignmentContext
+   */
+  public static long getClientStateId() {
+    Call call = CurCall.get();
+    return call != null ? call.clientStateId : RpcConstants.INVALID_STATE_ID;
+  }
   
   /** Returns remote address as a string when invoked inside an RPC.
    *  Returns null in case of an error.
@@ -354,6 +365,7 @@ public static boolean isRpcInvocation() {
   protected RpcDetailedMetrics rpcDetailedMetrics;
   
   private Configuration conf;
+  private volatile AlignmentContext alignmentContext;
   private String portRangeConfig = null;
   private SecretManager<TokenIdentifier> secretManager;
   private ServiceAuthorizationManager serviceAuthorizationManager = new ServiceAuthorizationManager();
@@ -493,6 +505,7 @@ public static class Call {
     private ByteBuffer rpcResponse;       // the response for this call
     private final RPC.RpcKind rpcKind;
     private final byte[] clientId;
+    private long clientStateId = RpcConstants.INVALID_STATE_ID;
 
     public Call(int id, int retryCount, Writable param, 
         Connection connection) {
@@ -1896,6 +1909,9 @@ private void processRpcRequest(RpcRequestHeaderProto header,
       Call call = new Call(header.getCallId(), header.getRetryCount(),
           rpcRequest, this, ProtoUtil.convert(header.getRpcKind()), header
               .getClientId().toByteArray());
+      if (alignmentContext != null) {
+        call.clientStateId = alignmentContext.receiveRequestState(header);
+      }
       callQueue.put(call);              // queue the call; maybe blocked here
       incRpcCount();  // Increment the rpc count
     }
@@ -2321,6 +2337,9 @@ private void setupResponse(ByteArrayOutputStream responseBuf,
     headerBuilder.setRetryCount(call.retryCount);
     headerBuilder.setStatus(status);
     headerBuilder.setServerIpcVersionNum(CURRENT_VERSION);
+    if (alignmentContext != null) {
+      alignmentContext.updateResponseState(headerBuilder);
+    }
 
     if (status == RpcStatusProto.SUCCESS) {
       RpcResponseHeaderProto header = headerBuilder.build();
@@ -2439,6 +2458,14 @@ Configuration getConf() {
     return conf;
   }
   
+  /**
+   * Set the context carrying the server state in the RPC headers.
+   * Must be called before the server is started.
+   */
+  public void setAlignmentContext(AlignmentContext alignmentContext) {
+    this.alignmentContext = alignmentContext;
+  }
+
   /** Sets the socket buffer size used for responding to RPCs */
   public void setSocketSendBufSize(int size) { this.socketSendBufferSize = size; }
 
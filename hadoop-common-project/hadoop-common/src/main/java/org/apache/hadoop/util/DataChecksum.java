@@ -210,10 +210,16 @@ public boolean compare( byte buf[], int offset ) {
      return type.size == 0;
    }
    
+  /** The bytes of direct buffers copied at once to verify their checksums. */
+  private static final int BULK_VERIFY_BYTES = 64 * 1024;
+
   private final Type type;
   private final Checksum summer;
   private final int bytesPerChecksum;
   private int inSum = 0;
+  // the scratch arrays verifying the checksums of direct buffers
+  private byte[] verifyBuf;
+  private byte[] verifySums;
   
   private DataChecksum( Type type, Checksum checksum, int chunkSize ) {
     this.type = type;
@@ -293,29 +299,27 @@ public void verifyChunkedSums(ByteBuffer data, ByteBuffer checksums,
       return;
     }
     
+    // Copy the chunks to verify in bulk, rather than one at a time, to
+    // the arrays verified without copy when the buffers have arrays.
     int startDataPos = data.position();
     data.mark();
     checksums.mark();
     try {
-      byte[] buf = new byte[bytesPerChecksum];
-      byte[] sum = new byte[type.size];
+      final int chunksPerCopy = Math.max(1, Math.min(
+          BULK_VERIFY_BYTES / bytesPerChecksum,
+          (data.remaining() - 1) / bytesPerChecksum + 1));
+      if (verifyBuf == null
+          || verifyBuf.length < chunksPerCopy * bytesPerChecksum) {
+        verifyBuf = new byte[chunksPerCopy * bytesPerChecksum];
+        verifySums = new byte[chunksPerCopy * type.size];
+      }
       while (data.remaining() > 0) {
-        int n = Math.min(data.remaining(), bytesPerChecksum);
-        checksums.get(sum);
-        data.get(buf, 0, n);
-        summer.reset();
-        summer.update(buf, 0, n);
-        int calculated = (int)summer.getValue();
-        int stored = (sum[0] << 24 & 0xff000000) |
-          (sum[1] << 16 & 0xff0000) |
-          (sum[2] << 8 & 0xff00) |
-          sum[3] & 0xff;
-        if (calculated != stored) {
-          long errPos = basePos + data.position() - startDataPos - n;
-          throw new ChecksumException(
-              "Checksum error: "+ fileName + " at "+ errPos +
-              " exp: " + stored + " got: " + calculated, errPos);
-        }
+        int n = Math.min(data.remaining(), chunksPerCopy * bytesPerChecksum);
+        int chunks = (n - 1) / bytesPerChecksum + 1;
+        long chunksPos = basePos + data.position() - startDataPos;
+        data.get(verifyBuf, 0, n);
+        checksums.get(verifySums, 0, chunks * type.size);
+        verifyChunkedSums(verifyBuf, 0, n, verifySums, 0, fileName, chunksPos);
       }
     } finally {
       data.reset();
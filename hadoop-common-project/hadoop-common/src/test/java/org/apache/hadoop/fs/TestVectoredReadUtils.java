@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.VectoredReadUtils.CombinedFileRange;
+import org.junit.Test;
+
+/**
+ * Test reading several ranges of a file at once, see
+ * {@link VectoredReadable}.
+ */
+public class TestVectoredReadUtils {
+  private static final Path TEST_ROOT_DIR = new Path(
+      System.getProperty("test.build.data", "/tmp"), "TestVectoredReadUtils");
+
+  @Test
+  public void testMergeSortedRanges() {
+    List<FileRange> sorted = VectoredReadUtils.sortRanges(Arrays.asList(
+        new FileRange(1000, 100), new FileRange(0, 10), new FileRange(20, 10),
+        new FileRange(1100, 5000)));
+    assertEquals(0, sorted.get(0).getOffset());
+    assertEquals(1100, sorted.get(3).getOffset());
+
+    List<CombinedFileRange> merged =
+        VectoredReadUtils.mergeSortedRanges(sorted, 10, 1000);
+    assertEquals(3, merged.size());
+    assertEquals(0, merged.get(0).getOffset());
+    assertEquals(30, merged.get(0).getLength());
+    assertEquals(2, merged.get(0).getUnderlying().size());
+    assertEquals(1000, merged.get(1).getOffset());
+    assertEquals(100, merged.get(1).getLength());
+    // A range larger than the maximum size is not split.
+    assertEquals(1100, merged.get(2).getOffset());
+    assertEquals(5000, merged.get(2).getLength());
+  }
+
+  @Test
+  public void testInvalidRanges() {
+    try {
+      VectoredReadUtils.sortRanges(Arrays.asList(new FileRange(0, 10),
+          new FileRange(5, 10)));
+      fail("overlapping ranges were accepted");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      VectoredReadUtils.sortRanges(Arrays.asList(new FileRange(-1, 10)));
+      fail("a negative offset was accepted");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSliceCombinedRange() {
+    List<CombinedFileRange> merged = VectoredReadUtils.mergeSortedRanges(
+        Arrays.asList(new FileRange(10, 2), new FileRange(14, 3)), 10, 100);
+    CombinedFileRange combined = merged.get(0);
+    byte[] data = new byte[combined.getLength()];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte)(10 + i);
+    }
+    combined.setData(ByteBuffer.wrap(data));
+    VectoredReadUtils.sliceCombinedRange(combined);
+    ByteBuffer second = combined.getUnderlying().get(1).getData();
+    assertEquals(3, second.remaining());
+    assertEquals(14, second.get());
+    assertEquals(15, second.get());
+    assertEquals(16, second.get());
+  }
+
+  /** The default implementation reads the ranges of a local file. */
+  @Test
+  public void testReadLocalFile() throws IOException {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Path path = new Path(TEST_ROOT_DIR, "file");
+    byte[] contents = new byte[100000];
+    new Random(0).nextBytes(contents);
+    FSDataOutputStream out = fs.create(path, true);
+    try {
+      out.write(contents);
+    } finally {
+      out.close();
+    }
+
+    List<FileRange> ranges = Arrays.asList(new FileRange(50000, 1000),
+        new FileRange(0, 10), new FileRange(100, 20000),
+        new FileRange(99990, 10));
+    FSDataInputStream in = fs.open(path);
+    try {
+      in.readVectored(ranges);
+      for (FileRange range : ranges) {
+        ByteBuffer data = range.getData();
+        assertEquals(range.getLength(), data.remaining());
+        for (int i = 0; i < range.getLength(); i++) {
+          assertEquals(contents[(int)range.getOffset() + i], data.get());
+        }
+      }
+      try {
+        in.readVectored(Arrays.asList(new FileRange(99990, 20)));
+        fail("a range past the end of the file was read");
+      } catch (EOFException e) {
+        // expected
+      }
+    } finally {
+      in.close();
+      fs.delete(TEST_ROOT_DIR, true);
+    }
+  }
+}
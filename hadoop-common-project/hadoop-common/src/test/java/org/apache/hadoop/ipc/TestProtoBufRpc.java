@@ -27,6 +27,8 @@
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto.RpcErrorCodeProto;
 import org.apache.hadoop.ipc.protobuf.TestProtos.EchoRequestProto;
 import org.apache.hadoop.ipc.protobuf.TestProtos.EchoResponseProto;
@@ -36,6 +38,7 @@
 import org.apache.hadoop.ipc.protobuf.TestRpcServiceProtos.TestProtobufRpc2Proto;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.security.UserGroupInformation;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.Before;
@@ -68,6 +71,7 @@ public interface TestRpcService2 extends
   }
 
   public static class PBServerImpl implements TestRpcService {
+    private static volatile long lastClientStateId;
 
     @Override
     public EmptyResponseProto ping(RpcController unused,
@@ -76,6 +80,7 @@ public EmptyResponseProto ping(RpcController unused,
       byte[] clientId = Server.getClientId();
       Assert.assertNotNull(Server.getClientId());
       Assert.assertEquals(16, clientId.length);
+      lastClientStateId = Server.getClientStateId();
       return EmptyResponseProto.newBuilder().build();
     }
 
@@ -257,4 +262,74 @@ public void testExtraLongRpc() throws Exception {
       // expected
     }
   }
+
+  /** An alignment context which keeps the largest state id it has seen. */
+  private static class MaxStateIdContext implements AlignmentContext {
+    private volatile long stateId;
+
+    MaxStateIdContext(long stateId) {
+      this.stateId = stateId;
+    }
+
+    @Override
+    public void updateResponseState(RpcResponseHeaderProto.Builder header) {
+      header.setStateId(stateId);
+    }
+
+    @Override
+    public void receiveResponseState(RpcResponseHeaderProto header) {
+      stateId = Math.max(stateId, header.getStateId());
+    }
+
+    @Override
+    public void updateRequestState(RpcRequestHeaderProto.Builder header) {
+      header.setStateId(stateId);
+    }
+
+    @Override
+    public long receiveRequestState(RpcRequestHeaderProto header) {
+      return header.hasStateId() ?
+          header.getStateId() : RpcConstants.INVALID_STATE_ID;
+    }
+
+    @Override
+    public long getLastSeenStateId() {
+      return stateId;
+    }
+  }
+
+  @Test (timeout=5000)
+  public void testAlignmentContext() throws Exception {
+    EmptyRequestProto emptyRequest = EmptyRequestProto.newBuilder().build();
+
+    // without a context on either side no state id is exchanged
+    getClient().ping(null, emptyRequest);
+    Assert.assertEquals(RpcConstants.INVALID_STATE_ID,
+        PBServerImpl.lastClientStateId);
+
+    MaxStateIdContext serverContext = new MaxStateIdContext(42);
+    server.setAlignmentContext(serverContext);
+    MaxStateIdContext clientContext = new MaxStateIdContext(7);
+    TestRpcService client = RPC.getProtocolProxy(TestRpcService.class, 0,
+        addr, UserGroupInformation.getCurrentUser(), conf,
+        NetUtils.getDefaultSocketFactory(conf), 0, null, clientContext)
+        .getProxy();
+
+    // the client sends its state and learns the server state from the reply
+    client.ping(null, emptyRequest);
+    Assert.assertEquals(7, PBServerImpl.lastClientStateId);
+    Assert.assertEquals(42, clientContext.getLastSeenStateId());
+    client.ping(null, emptyRequest);
+    Assert.assertEquals(42, PBServerImpl.lastClientStateId);
+
+    // the state is also carried by error responses
+    serverContext.stateId = 50;
+    try {
+      client.error(null, emptyRequest);
+      Assert.fail("expected the call to fail");
+    } catch (ServiceException se) {
+      // expected
+    }
+    Assert.assertEquals(50, clientContext.getLastSeenStateId());
+  }
 }
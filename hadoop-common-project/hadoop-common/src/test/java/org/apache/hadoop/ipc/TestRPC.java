@@ -68,10 +68,12 @@
 import org.apache.hadoop.security.authorize.Service;
 import org.apache.hadoop.security.token.SecretManager;
 import org.apache.hadoop.security.token.TokenIdentifier;
+import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.test.MetricsAsserts;
 import org.apache.hadoop.test.MockitoUtil;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
 
 import com.google.protobuf.DescriptorProtos;
 import com.google.protobuf.DescriptorProtos.EnumDescriptorProto;
@@ -688,6 +690,20 @@ public void testWrappedStopProxy() throws IOException {
     assertEquals(invocationHandler.getCloseCalled(), 1);
   }
   
+  /** An engine which is not an AlignedRpcEngine cannot carry state ids. */
+  @Test
+  public void testAlignmentContextNotSupported() throws IOException {
+    final AlignmentContext context = Mockito.mock(AlignmentContext.class);
+    try {
+      RPC.getProtocolProxy(StoppedProtocol.class, StoppedProtocol.versionID,
+          null, UserGroupInformation.getCurrentUser(), conf,
+          NetUtils.getDefaultSocketFactory(conf), 0, null, context);
+      fail("An engine without alignment support accepted a context");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("cannot carry", e);
+    }
+  }
+
   @Test
   public void testErrorMsgForInsecureClient() throws IOException {
     Configuration serverConf = new Configuration(conf);
@@ -50,6 +50,8 @@ public void testBulkOps() throws Exception {
         doBulkTest(checksum, 1023, useDirect);
         doBulkTest(checksum, 1024, useDirect);
         doBulkTest(checksum, 1025, useDirect);
+        // more than the bytes of direct buffers verified at once
+        doBulkTest(checksum, 200 * 1024 + 1, useDirect);
       }
     }
   }
@@ -757,7 +757,9 @@ private BlockReader getRemoteBlockReader(Peer peer) throws IOException {
       return RemoteBlockReader2.newBlockReader(
           fileName, block, token, startOffset, length,
           verifyChecksum, clientName, peer, datanode,
-          clientContext.getPeerCache(), cachingStrategy);
+          clientContext.getPeerCache(), cachingStrategy,
+          DFSClient.getChecksumPipelineThreadPool(
+              conf.checksumPipelineThreads));
     }
   }
 
@@ -373,6 +373,7 @@ private synchronized int fillBuffer(ByteBuffer buf, boolean canSkipChecksum)
         checksumBuf.flip();
   
         checksum.verifyChunkedSums(buf, checksumBuf, filename, startDataPos);
+        replica.addVerifiedRange(startDataPos, dataPos);
       } finally {
         buf.position(buf.limit());
       }
@@ -651,11 +652,12 @@ public boolean isShortCircuit() {
   @Override
   public ClientMmap getClientMmap(EnumSet<ReadOption> opts) {
     if ((!opts.contains(ReadOption.SKIP_CHECKSUMS)) &&
-          verifyChecksum && (!mlocked.get())) {
+          verifyChecksum && (!mlocked.get()) && (!replica.isVerified())) {
       if (LOG.isTraceEnabled()) {
         LOG.trace("can't get an mmap for " + block + " of " + filename + 
             " since SKIP_CHECKSUMS was not given, " +
-            "we aren't skipping checksums, and the block is not mlocked.");
+            "we aren't skipping checksums, and the block is neither " +
+            "mlocked nor verified.");
       }
       return null;
     }
@@ -65,6 +65,11 @@ public class ClientContext {
    */
   private final PeerCache peerCache;
 
+  /**
+   * Caches the block locations of closed files.
+   */
+  private final LocatedBlocksCache locatedBlocksCache;
+
   /**
    * Stores information about socket paths.
    */
@@ -99,9 +104,13 @@ private ClientContext(String name, Conf conf) {
         conf.shortCircuitMmapCacheSize,
         conf.shortCircuitMmapCacheExpiryMs,
         conf.shortCircuitMmapCacheRetryTimeout,
-        conf.shortCircuitCacheStaleThresholdMs);
+        conf.shortCircuitCacheStaleThresholdMs,
+        conf.shortCircuitMmapMaxBytes);
     this.peerCache =
-          new PeerCache(conf.socketCacheCapacity, conf.socketCacheExpiry);
+          new PeerCache(conf.socketCacheCapacity, conf.socketCacheExpiry,
+              conf.socketCacheCapacityPerDatanode);
+    this.locatedBlocksCache = new LocatedBlocksCache(
+        conf.locatedBlocksCacheSize, conf.locatedBlocksCacheExpiry);
     this.useLegacyBlockReaderLocal = conf.useLegacyBlockReaderLocal;
     this.domainSocketFactory = new DomainSocketFactory(conf);
   }
@@ -118,12 +127,20 @@ public static String confAsString(Conf conf) {
       append(conf.shortCircuitMmapCacheExpiryMs).
       append(", shortCircuitMmapCacheRetryTimeout = ").
       append(conf.shortCircuitMmapCacheRetryTimeout).
+      append(", shortCircuitMmapMaxBytes = ").
+      append(conf.shortCircuitMmapMaxBytes).
       append(", shortCircuitCacheStaleThresholdMs = ").
       append(conf.shortCircuitCacheStaleThresholdMs).
       append(", socketCacheCapacity = ").
       append(conf.socketCacheCapacity).
       append(", socketCacheExpiry = ").
       append(conf.socketCacheExpiry).
+      append(", socketCacheCapacityPerDatanode = ").
+      append(conf.socketCacheCapacityPerDatanode).
+      append(", locatedBlocksCacheSize = ").
+      append(conf.locatedBlocksCacheSize).
+      append(", locatedBlocksCacheExpiry = ").
+      append(conf.locatedBlocksCacheExpiry).
       append(", shortCircuitLocalReads = ").
       append(conf.shortCircuitLocalReads).
       append(", useLegacyBlockReaderLocal = ").
@@ -186,6 +203,10 @@ public PeerCache getPeerCache() {
     return peerCache;
   }
 
+  public LocatedBlocksCache getLocatedBlocksCache() {
+    return locatedBlocksCache;
+  }
+
   public boolean getUseLegacyBlockReaderLocal() {
     return useLegacyBlockReaderLocal;
   }
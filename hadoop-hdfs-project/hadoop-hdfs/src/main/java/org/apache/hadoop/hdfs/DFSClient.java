@@ -80,6 +80,7 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -212,6 +213,11 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory {
   private Text dtService;
 
   final UserGroupInformation ugi;
+  /**
+   * The namespace of the block locations cached by the client, or null if
+   * they are not cached, see {@link LocatedBlocksCache}.
+   */
+  private final String locatedBlocksNamespace;
   volatile boolean clientRunning = true;
   volatile long lastLeaseRenewal;
   private volatile FsServerDefaults serverDefaults;
@@ -231,6 +237,11 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory {
   private static DFSHedgedReadMetrics HEDGED_READ_METRIC =
       new DFSHedgedReadMetrics();
   private static ThreadPoolExecutor HEDGED_READ_THREAD_POOL;
+  private final HedgedReadPolicy hedgedReadPolicy;
+  private static ThreadPoolExecutor READAHEAD_THREAD_POOL;
+  private static ThreadPoolExecutor VECTORED_READ_THREAD_POOL;
+  private static ThreadPoolExecutor CHECKSUM_PIPELINE_THREAD_POOL;
+  private final PacketBufferPool packetBufferPool;
   
   /**
    * DFSClient configuration 
@@ -247,9 +258,19 @@ public static class Conf {
     final int ioBufferSize;
     final ChecksumOpt defaultChecksumOpt;
     final int writePacketSize;
+    final int writePacketPoolSize;
+    final int readaheadRanges;
+    final int readaheadRangeSize;
+    final int vectoredReadMaxMergeGap;
+    final int vectoredReadMaxMergeSize;
+    final int vectoredReadThreads;
+    final int checksumPipelineThreads;
     final int socketTimeout;
     final int socketCacheCapacity;
     final long socketCacheExpiry;
+    final int socketCacheCapacityPerDatanode;
+    final int locatedBlocksCacheSize;
+    final long locatedBlocksCacheExpiry;
     final long excludedNodesCacheExpiry;
     /** Wait time window (in msec) if BlockMissingException is caught */
     final int timeWindow;
@@ -281,6 +302,7 @@ public static class Conf {
     final int shortCircuitMmapCacheSize;
     final long shortCircuitMmapCacheExpiryMs;
     final long shortCircuitMmapCacheRetryTimeout;
+    final long shortCircuitMmapMaxBytes;
     final long shortCircuitCacheStaleThresholdMs;
 
     public Conf(Configuration conf) {
@@ -313,6 +335,27 @@ public Conf(Configuration conf) {
       /** dfs.write.packet.size is an internal config variable */
       writePacketSize = conf.getInt(DFS_CLIENT_WRITE_PACKET_SIZE_KEY,
           DFS_CLIENT_WRITE_PACKET_SIZE_DEFAULT);
+      writePacketPoolSize = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_POOL_SIZE_KEY,
+          DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_POOL_SIZE_DEFAULT);
+      readaheadRanges = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_READ_SEQUENTIAL_READAHEAD_RANGES_KEY,
+          DFSConfigKeys.DFS_CLIENT_READ_SEQUENTIAL_READAHEAD_RANGES_DEFAULT);
+      readaheadRangeSize = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_READ_SEQUENTIAL_READAHEAD_RANGE_SIZE_KEY,
+          DFSConfigKeys.DFS_CLIENT_READ_SEQUENTIAL_READAHEAD_RANGE_SIZE_DEFAULT);
+      vectoredReadMaxMergeGap = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_READ_VECTORED_MAX_MERGE_GAP_KEY,
+          DFSConfigKeys.DFS_CLIENT_READ_VECTORED_MAX_MERGE_GAP_DEFAULT);
+      vectoredReadMaxMergeSize = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_READ_VECTORED_MAX_MERGE_SIZE_KEY,
+          DFSConfigKeys.DFS_CLIENT_READ_VECTORED_MAX_MERGE_SIZE_DEFAULT);
+      vectoredReadThreads = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_READ_VECTORED_THREADPOOL_SIZE_KEY,
+          DFSConfigKeys.DFS_CLIENT_READ_VECTORED_THREADPOOL_SIZE_DEFAULT);
+      checksumPipelineThreads = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_READ_CHECKSUM_PIPELINE_THREADPOOL_SIZE_KEY,
+          DFSConfigKeys.DFS_CLIENT_READ_CHECKSUM_PIPELINE_THREADPOOL_SIZE_DEFAULT);
       defaultBlockSize = conf.getLongBytes(DFS_BLOCK_SIZE_KEY,
           DFS_BLOCK_SIZE_DEFAULT);
       defaultReplication = (short) conf.getInt(
@@ -322,6 +365,15 @@ public Conf(Configuration conf) {
           DFS_CLIENT_SOCKET_CACHE_CAPACITY_DEFAULT);
       socketCacheExpiry = conf.getLong(DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_KEY,
           DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_DEFAULT);
+      socketCacheCapacityPerDatanode = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_SOCKET_CACHE_CAPACITY_PER_DATANODE_KEY,
+          DFSConfigKeys.DFS_CLIENT_SOCKET_CACHE_CAPACITY_PER_DATANODE_DEFAULT);
+      locatedBlocksCacheSize = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_SIZE_KEY,
+          DFSConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_SIZE_DEFAULT);
+      locatedBlocksCacheExpiry = conf.getLong(
+          DFSConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_EXPIRY_MSEC_KEY,
+          DFSConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_EXPIRY_MSEC_DEFAULT);
       excludedNodesCacheExpiry = conf.getLong(
           DFS_CLIENT_WRITE_EXCLUDE_NODES_CACHE_EXPIRY_INTERVAL,
           DFS_CLIENT_WRITE_EXCLUDE_NODES_CACHE_EXPIRY_INTERVAL_DEFAULT);
@@ -406,6 +458,9 @@ public Conf(Configuration conf) {
       shortCircuitMmapCacheRetryTimeout = conf.getLong(
           DFSConfigKeys.DFS_CLIENT_MMAP_RETRY_TIMEOUT_MS,
           DFSConfigKeys.DFS_CLIENT_MMAP_RETRY_TIMEOUT_MS_DEFAULT);
+      shortCircuitMmapMaxBytes = conf.getLongBytes(
+          DFSConfigKeys.DFS_CLIENT_MMAP_MAX_BYTES,
+          DFSConfigKeys.DFS_CLIENT_MMAP_MAX_BYTES_DEFAULT);
       shortCircuitCacheStaleThresholdMs = conf.getLong(
           DFSConfigKeys.DFS_CLIENT_SHORT_CIRCUIT_REPLICA_STALE_THRESHOLD_MS,
           DFSConfigKeys.DFS_CLIENT_SHORT_CIRCUIT_REPLICA_STALE_THRESHOLD_MS_DEFAULT);
@@ -517,6 +572,8 @@ public DFSClient(URI nameNodeUri, ClientProtocol rpcNamenode,
     throws IOException {
     // Copy only the required DFSClient configuration
     this.dfsClientConf = new Conf(conf);
+    this.packetBufferPool =
+        new PacketBufferPool(dfsClientConf.writePacketPoolSize);
     if (this.dfsClientConf.useLegacyBlockReaderLocal) {
       LOG.debug("Using legacy short-circuit local reads.");
     }
@@ -526,6 +583,8 @@ public DFSClient(URI nameNodeUri, ClientProtocol rpcNamenode,
     this.dtpReplaceDatanodeOnFailure = ReplaceDatanodeOnFailure.get(conf);
 
     this.ugi = UserGroupInformation.getCurrentUser();
+    this.locatedBlocksNamespace =
+        nameNodeUri == null ? null : nameNodeUri.toString();
     
     this.authority = nameNodeUri == null? "null": nameNodeUri.getAuthority();
     this.clientName = "DFSClient_" + dfsClientConf.taskId + "_" + 
@@ -586,12 +645,18 @@ public DFSClient(URI nameNodeUri, ClientProtocol rpcNamenode,
     this.hedgedReadThresholdMillis = conf.getLong(
         DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_THRESHOLD_MILLIS,
         DFSConfigKeys.DEFAULT_DFSCLIENT_HEDGED_READ_THRESHOLD_MILLIS);
+    this.hedgedReadPolicy = new HedgedReadPolicy(conf);
     int numThreads = conf.getInt(
         DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_THREADPOOL_SIZE,
         DFSConfigKeys.DEFAULT_DFSCLIENT_HEDGED_READ_THREADPOOL_SIZE);
     if (numThreads > 0) {
       this.initThreadsNumForHedgedReads(numThreads);
     }
+    if (dfsClientConf.readaheadRanges > 0) {
+      initThreadsNumForReadahead(conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_READ_SEQUENTIAL_READAHEAD_THREADPOOL_SIZE_KEY,
+          DFSConfigKeys.DFS_CLIENT_READ_SEQUENTIAL_READAHEAD_THREADPOOL_SIZE_DEFAULT));
+    }
   }
   
   /**
@@ -1360,7 +1425,8 @@ public DFSOutputStream create(String src,
    * @param permission The permission of the directory being created.
    *          If null, use default permission {@link FsPermission#getFileDefault()}
    * @param flag indicates create a new file or create/overwrite an
-   *          existing file or append to an existing file
+   *          existing file or append to an existing file. A file created
+   *          with {@link CreateFlag#LAZY_PERSIST} must have a single replica.
    * @param createParent create missing parent directory if true
    * @param replication block replication
    * @param blockSize maximum block size
@@ -1406,6 +1472,15 @@ public DFSOutputStream create(String src,
                              ChecksumOpt checksumOpt,
                              InetSocketAddress[] favoredNodes) throws IOException {
     checkOpen();
+    invalidateLocatedBlocks(src);
+    if (flag.contains(CreateFlag.LAZY_PERSIST) && replication != 1) {
+      // Lazy persistence is meant for short-lived data written to the
+      // memory of a single datanode; a pipeline would add back the latency
+      // it saves.
+      throw new IllegalArgumentException("Invalid replication for " + src
+          + ": a file created with " + CreateFlag.LAZY_PERSIST
+          + " must have a single replica, replication = " + replication);
+    }
     if (permission == null) {
       permission = FsPermission.getFileDefault();
     }
@@ -1465,6 +1540,7 @@ public DFSOutputStream primitiveCreate(String src,
                              ChecksumOpt checksumOpt)
       throws IOException, UnresolvedLinkException {
     checkOpen();
+    invalidateLocatedBlocks(src);
     CreateFlag.validate(flag);
     DFSOutputStream result = primitiveAppend(src, flag, buffersize, progress);
     if (result == null) {
@@ -1519,6 +1595,7 @@ public String getLinkTarget(String path) throws IOException {
   private DFSOutputStream callAppend(HdfsFileStatus stat, String src,
       int buffersize, Progressable progress) throws IOException {
     LocatedBlock lastBlock = null;
+    invalidateLocatedBlocks(src);
     try {
       lastBlock = namenode.append(src, clientName);
     } catch(RemoteException re) {
@@ -1594,6 +1671,7 @@ public boolean setReplication(String src, short replication)
   @Deprecated
   public boolean rename(String src, String dst) throws IOException {
     checkOpen();
+    invalidateLocatedBlocks(src, dst);
     try {
       return namenode.rename(src, dst);
     } catch(RemoteException re) {
@@ -1611,6 +1689,8 @@ public boolean rename(String src, String dst) throws IOException {
    */
   public void concat(String trg, String [] srcs) throws IOException {
     checkOpen();
+    invalidateLocatedBlocks(trg);
+    invalidateLocatedBlocks(srcs);
     try {
       namenode.concat(trg, srcs);
     } catch(RemoteException re) {
@@ -1626,6 +1706,7 @@ public void concat(String trg, String [] srcs) throws IOException {
   public void rename(String src, String dst, Options.Rename... options)
       throws IOException {
     checkOpen();
+    invalidateLocatedBlocks(src, dst);
     try {
       namenode.rename2(src, dst, options);
     } catch(RemoteException re) {
@@ -1640,6 +1721,40 @@ public void rename(String src, String dst, Options.Rename... options)
                                      SnapshotAccessControlException.class);
     }
   }
+  /**
+   * @return the block locations of the file cached for the namespace and the
+   *         user of the client, or null, see {@link LocatedBlocksCache}.
+   */
+  LocatedBlocks getCachedLocatedBlocks(String src) {
+    if (locatedBlocksNamespace == null) {
+      return null;
+    }
+    return clientContext.getLocatedBlocksCache().get(locatedBlocksNamespace,
+        ugi.getUserName(), src);
+  }
+
+  /** Cache the block locations of the file fetched by the client. */
+  void cacheLocatedBlocks(String src, LocatedBlocks blocks) {
+    if (locatedBlocksNamespace != null) {
+      clientContext.getLocatedBlocksCache().put(locatedBlocksNamespace,
+          ugi.getUserName(), src, blocks);
+    }
+  }
+
+  /**
+   * Invalidate the cached block locations of the paths modified by the
+   * client, or whose cached locations failed.
+   */
+  void invalidateLocatedBlocks(String... paths) {
+    if (locatedBlocksNamespace == null) {
+      return;
+    }
+    final LocatedBlocksCache cache = clientContext.getLocatedBlocksCache();
+    for (String path : paths) {
+      cache.invalidate(locatedBlocksNamespace, path);
+    }
+  }
+
   /**
    * Delete file or directory.
    * See {@link ClientProtocol#delete(String, boolean)}. 
@@ -1647,6 +1762,7 @@ public void rename(String src, String dst, Options.Rename... options)
   @Deprecated
   public boolean delete(String src) throws IOException {
     checkOpen();
+    invalidateLocatedBlocks(src);
     return namenode.delete(src, true);
   }
 
@@ -1659,6 +1775,7 @@ public boolean delete(String src) throws IOException {
    */
   public boolean delete(String src, boolean recursive) throws IOException {
     checkOpen();
+    invalidateLocatedBlocks(src);
     try {
       return namenode.delete(src, recursive);
     } catch(RemoteException re) {
@@ -1819,7 +1936,7 @@ public DataEncryptionKey getDataEncryptionKey()
    * @param connectToDnViaHostname whether the client should use hostnames instead of IPs
    * @return The checksum 
    */
-  private static MD5MD5CRC32FileChecksum getFileChecksum(String src,
+  private MD5MD5CRC32FileChecksum getFileChecksum(String src,
       String clientName,
       ClientProtocol namenode, SocketFactory socketFactory, int socketTimeout,
       DataEncryptionKey encryptionKey, boolean connectToDnViaHostname)
@@ -1855,26 +1972,10 @@ private static MD5MD5CRC32FileChecksum getFileChecksum(String src,
       final int timeout = 3000 * datanodes.length + socketTimeout;
       boolean done = false;
       for(int j = 0; !done && j < datanodes.length; j++) {
-        DataOutputStream out = null;
-        DataInputStream in = null;
-        
         try {
-          //connect to a datanode
-          IOStreamPair pair = connectToDN(socketFactory, connectToDnViaHostname,
-              encryptionKey, datanodes[j], timeout);
-          out = new DataOutputStream(new BufferedOutputStream(pair.out,
-              HdfsConstants.SMALL_BUFFER_SIZE));
-          in = new DataInputStream(pair.in);
-
-          if (LOG.isDebugEnabled()) {
-            LOG.debug("write to " + datanodes[j] + ": "
-                + Op.BLOCK_CHECKSUM + ", block=" + block);
-          }
           // get block MD5
-          new Sender(out).blockChecksum(block, lb.getBlockToken());
-
           final BlockOpResponseProto reply =
-            BlockOpResponseProto.parseFrom(PBHelper.vintPrefixed(in));
+            blockChecksum(lb, datanodes[j], timeout);
 
           if (reply.getStatus() != Status.SUCCESS) {
             if (reply.getStatus() == Status.ERROR_ACCESS_TOKEN) {
@@ -1955,9 +2056,6 @@ else if (bpc != bytesPerCRC) {
           }
         } catch (IOException ie) {
           LOG.warn("src=" + src + ", datanodes["+j+"]=" + datanodes[j], ie);
-        } finally {
-          IOUtils.closeStream(in);
-          IOUtils.closeStream(out);
         }
       }
 
@@ -1989,6 +2087,59 @@ else if (bpc != bytesPerCRC) {
     }
   }
 
+  /**
+   * Send an OP_BLOCK_CHECKSUM for the block to the given datanode, over a
+   * connection of the peer cache if any. The connection is cached again once
+   * the datanode replied successfully, for the next operations sent to the
+   * datanode.
+   *
+   * @return the reply of the datanode.
+   */
+  private BlockOpResponseProto blockChecksum(LocatedBlock lb,
+      DatanodeInfo dn, int timeout) throws IOException {
+    final PeerCache peerCache = clientContext.getPeerCache();
+    while (true) {
+      Peer peer = peerCache.get(dn, false);
+      final boolean fromCache = (peer != null);
+      if (!fromCache) {
+        peer = newConnectedPeer(NetUtils.createSocketAddr(
+            dn.getXferAddr(dfsClientConf.connectToDnViaHostname)));
+      }
+      boolean success = false;
+      try {
+        peer.setReadTimeout(timeout);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("write to " + dn + ": " + Op.BLOCK_CHECKSUM + ", block="
+              + lb.getBlock() + (fromCache ? " over a cached connection" : ""));
+        }
+        final DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(peer.getOutputStream(),
+                HdfsConstants.SMALL_BUFFER_SIZE));
+        new Sender(out).blockChecksum(lb.getBlock(), lb.getBlockToken());
+        final BlockOpResponseProto reply = BlockOpResponseProto.parseFrom(
+            PBHelper.vintPrefixed(peer.getInputStream()));
+        if (reply.getStatus() == Status.SUCCESS) {
+          peerCache.put(dn, peer);
+          success = true;
+        }
+        return reply;
+      } catch (IOException e) {
+        if (!fromCache) {
+          throw e;
+        }
+        // The datanode may have closed the cached connection in the meantime.
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Failed to send " + Op.BLOCK_CHECKSUM + " to " + dn
+              + " over a cached connection, retrying", e);
+        }
+      } finally {
+        if (!success) {
+          IOUtils.cleanup(LOG, peer);
+        }
+      }
+    }
+  }
+
   /**
    * Connect to the given datanode's datantrasfer port, and return
    * the resulting IOStreamPair. This includes encryption wrapping, etc.
@@ -2775,6 +2926,90 @@ public void rejectedExecution(Runnable runnable,
     }
   }
 
+  /**
+   * Create the thread pool reading ahead for the sequential readers,
+   * READAHEAD_THREAD_POOL, if it does not already exist.
+   * @param num Number of threads for the read-ahead thread pool.
+   */
+  private static synchronized void initThreadsNumForReadahead(int num) {
+    if (num <= 0 || READAHEAD_THREAD_POOL != null) return;
+    READAHEAD_THREAD_POOL = new ThreadPoolExecutor(num, num, 60,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new Daemon.DaemonFactory() {
+          private final AtomicInteger threadIndex =
+            new AtomicInteger(0);
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = super.newThread(r);
+            t.setName("readahead-" + threadIndex.getAndIncrement());
+            return t;
+          }
+        });
+    READAHEAD_THREAD_POOL.allowCoreThreadTimeOut(true);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Using sequential read-ahead; pool threads=" + num);
+    }
+  }
+
+  /** @return the thread pool reading ahead, null if read-ahead is disabled. */
+  static synchronized ThreadPoolExecutor getReadaheadThreadPool() {
+    return READAHEAD_THREAD_POOL;
+  }
+
+  /**
+   * @return the thread pool reading the ranges of the vectored reads,
+   *         created on first use, null if the ranges are read in the calling
+   *         thread.
+   */
+  ThreadPoolExecutor getVectoredReadThreadPool() {
+    final int num = dfsClientConf.vectoredReadThreads;
+    synchronized (DFSClient.class) {
+      if (num > 0 && VECTORED_READ_THREAD_POOL == null) {
+        VECTORED_READ_THREAD_POOL = new ThreadPoolExecutor(num, num, 60,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new Daemon.DaemonFactory() {
+              private final AtomicInteger threadIndex =
+                new AtomicInteger(0);
+              @Override
+              public Thread newThread(Runnable r) {
+                Thread t = super.newThread(r);
+                t.setName("vectoredRead-" + threadIndex.getAndIncrement());
+                return t;
+              }
+            });
+        VECTORED_READ_THREAD_POOL.allowCoreThreadTimeOut(true);
+      }
+      return num > 0 ? VECTORED_READ_THREAD_POOL : null;
+    }
+  }
+
+  /**
+   * @param num Number of threads receiving and verifying the next packets
+   *            of the block readers.
+   * @return the thread pool receiving and verifying the next packets of the
+   *         block readers, created on first use, null if the packets are
+   *         verified in the reading thread.
+   */
+  static synchronized ThreadPoolExecutor getChecksumPipelineThreadPool(
+      int num) {
+    if (num > 0 && CHECKSUM_PIPELINE_THREAD_POOL == null) {
+      CHECKSUM_PIPELINE_THREAD_POOL = new ThreadPoolExecutor(num, num, 60,
+          TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+          new Daemon.DaemonFactory() {
+            private final AtomicInteger threadIndex =
+              new AtomicInteger(0);
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread t = super.newThread(r);
+              t.setName("checksumPipeline-" + threadIndex.getAndIncrement());
+              return t;
+            }
+          });
+      CHECKSUM_PIPELINE_THREAD_POOL.allowCoreThreadTimeOut(true);
+    }
+    return num > 0 ? CHECKSUM_PIPELINE_THREAD_POOL : null;
+  }
+
   long getHedgedReadTimeout() {
     return this.hedgedReadThresholdMillis;
   }
@@ -2796,4 +3031,13 @@ boolean isHedgedReadsEnabled() {
   DFSHedgedReadMetrics getHedgedReadMetrics() {
     return HEDGED_READ_METRIC;
   }
+
+  HedgedReadPolicy getHedgedReadPolicy() {
+    return hedgedReadPolicy;
+  }
+
+  /** @return the pool of the buffers of the packets written. */
+  public PacketBufferPool getPacketBufferPool() {
+    return packetBufferPool;
+  }
 }
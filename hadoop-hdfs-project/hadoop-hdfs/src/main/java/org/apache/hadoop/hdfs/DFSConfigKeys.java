@@ -49,6 +49,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_CHECKSUM_TYPE_DEFAULT = "CRC32C";
   public static final String  DFS_CLIENT_WRITE_PACKET_SIZE_KEY = "dfs.client-write-packet-size";
   public static final int     DFS_CLIENT_WRITE_PACKET_SIZE_DEFAULT = 64*1024;
+  public static final String  DFS_CLIENT_WRITE_PACKET_POOL_SIZE_KEY = "dfs.client.write.packet.pool.size";
+  public static final int     DFS_CLIENT_WRITE_PACKET_POOL_SIZE_DEFAULT = 16;
   public static final String  DFS_CLIENT_WRITE_REPLACE_DATANODE_ON_FAILURE_ENABLE_KEY = "dfs.client.block.write.replace-datanode-on-failure.enable";
   public static final boolean DFS_CLIENT_WRITE_REPLACE_DATANODE_ON_FAILURE_ENABLE_DEFAULT = true;
   public static final String  DFS_CLIENT_WRITE_REPLACE_DATANODE_ON_FAILURE_POLICY_KEY = "dfs.client.block.write.replace-datanode-on-failure.policy";
@@ -87,11 +89,19 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_CLIENT_FAILOVER_CONNECTION_RETRIES_DEFAULT = 0;
   public static final String  DFS_CLIENT_FAILOVER_CONNECTION_RETRIES_ON_SOCKET_TIMEOUTS_KEY = "dfs.client.failover.connection.retries.on.timeouts";
   public static final int     DFS_CLIENT_FAILOVER_CONNECTION_RETRIES_ON_SOCKET_TIMEOUTS_DEFAULT = 0;
+  public static final String  DFS_CLIENT_FAILOVER_OBSERVER_BACKOFF_KEY = "dfs.client.failover.observer.backoff.millis";
+  public static final long    DFS_CLIENT_FAILOVER_OBSERVER_BACKOFF_DEFAULT = 10000;
   public static final String  DFS_CLIENT_RETRY_MAX_ATTEMPTS_KEY = "dfs.client.retry.max.attempts";
   public static final int     DFS_CLIENT_RETRY_MAX_ATTEMPTS_DEFAULT = 10;
   
   public static final String  DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_KEY = "dfs.client.socketcache.expiryMsec";
   public static final long    DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_DEFAULT = 3000;
+  public static final String  DFS_CLIENT_SOCKET_CACHE_CAPACITY_PER_DATANODE_KEY = "dfs.client.socketcache.capacity.per.datanode";
+  public static final int     DFS_CLIENT_SOCKET_CACHE_CAPACITY_PER_DATANODE_DEFAULT = 0;
+  public static final String  DFS_CLIENT_LOCATED_BLOCKS_CACHE_SIZE_KEY = "dfs.client.locatedblocks.cache.size";
+  public static final int     DFS_CLIENT_LOCATED_BLOCKS_CACHE_SIZE_DEFAULT = 0;
+  public static final String  DFS_CLIENT_LOCATED_BLOCKS_CACHE_EXPIRY_MSEC_KEY = "dfs.client.locatedblocks.cache.expiryMsec";
+  public static final long    DFS_CLIENT_LOCATED_BLOCKS_CACHE_EXPIRY_MSEC_DEFAULT = 10000;
   public static final String  DFS_CLIENT_WRITE_EXCLUDE_NODES_CACHE_EXPIRY_INTERVAL = "dfs.client.write.exclude.nodes.cache.expiry.interval.millis";
   public static final long    DFS_CLIENT_WRITE_EXCLUDE_NODES_CACHE_EXPIRY_INTERVAL_DEFAULT = 10 * 60 * 1000; // 10 minutes, in ms
   public static final String  DFS_NAMENODE_BACKUP_ADDRESS_KEY = "dfs.namenode.backup.address";
@@ -113,8 +123,20 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final boolean DFS_DATANODE_USE_DN_HOSTNAME_DEFAULT = false;
   public static final String  DFS_DATANODE_MAX_LOCKED_MEMORY_KEY = "dfs.datanode.max.locked.memory";
   public static final long    DFS_DATANODE_MAX_LOCKED_MEMORY_DEFAULT = 0;
+  public static final String  DFS_DATANODE_AUTO_CACHE_MAX_BYTES_KEY = "dfs.datanode.auto.cache.max.bytes";
+  public static final long    DFS_DATANODE_AUTO_CACHE_MAX_BYTES_DEFAULT = 0;
+  public static final String  DFS_DATANODE_AUTO_CACHE_MIN_READS_KEY = "dfs.datanode.auto.cache.min.reads";
+  public static final int     DFS_DATANODE_AUTO_CACHE_MIN_READS_DEFAULT = 3;
+  public static final String  DFS_DATANODE_AUTO_CACHE_DECAY_INTERVAL_MS_KEY = "dfs.datanode.auto.cache.decay.interval.ms";
+  public static final long    DFS_DATANODE_AUTO_CACHE_DECAY_INTERVAL_MS_DEFAULT = 10 * 60 * 1000;
+  public static final String  DFS_DATANODE_AUTO_CACHE_MAX_TRACKED_BLOCKS_KEY = "dfs.datanode.auto.cache.max.tracked.blocks";
+  public static final int     DFS_DATANODE_AUTO_CACHE_MAX_TRACKED_BLOCKS_DEFAULT = 100000;
   public static final String  DFS_DATANODE_FSDATASETCACHE_MAX_THREADS_PER_VOLUME_KEY = "dfs.datanode.fsdatasetcache.max.threads.per.volume";
   public static final int     DFS_DATANODE_FSDATASETCACHE_MAX_THREADS_PER_VOLUME_DEFAULT = 4;
+  public static final String  DFS_DATANODE_REPLICA_LOCK_STRIPES_KEY = "dfs.datanode.replica.lock.stripes";
+  public static final int     DFS_DATANODE_REPLICA_LOCK_STRIPES_DEFAULT = 1024;
+  public static final String  DFS_DATANODE_REPLICA_CACHE_ENABLED_KEY = "dfs.datanode.replica.cache.enabled";
+  public static final boolean DFS_DATANODE_REPLICA_CACHE_ENABLED_DEFAULT = false;
   public static final String  DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT =
     "dfs.namenode.path.based.cache.block.map.allocation.percent";
   public static final float    DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT_DEFAULT = 0.25f;
@@ -172,6 +194,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_REPLICATION_MIN_DEFAULT = 1;
   public static final String  DFS_NAMENODE_REPLICATION_PENDING_TIMEOUT_SEC_KEY = "dfs.namenode.replication.pending.timeout-sec";
   public static final int     DFS_NAMENODE_REPLICATION_PENDING_TIMEOUT_SEC_DEFAULT = -1;
+  public static final String  DFS_NAMENODE_BLOCKSMAP_OFF_HEAP_KEY = "dfs.namenode.blocksmap.off-heap";
+  public static final boolean DFS_NAMENODE_BLOCKSMAP_OFF_HEAP_DEFAULT = false;
   public static final String  DFS_NAMENODE_REPLICATION_MAX_STREAMS_KEY = "dfs.namenode.replication.max-streams";
   public static final int     DFS_NAMENODE_REPLICATION_MAX_STREAMS_DEFAULT = 2;
   public static final String  DFS_NAMENODE_REPLICATION_STREAMS_HARD_LIMIT_KEY = "dfs.namenode.replication.max-streams-hard-limit";
@@ -182,6 +206,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final boolean DFS_WEBHDFS_ENABLED_DEFAULT = true;
   public static final String  DFS_WEBHDFS_USER_PATTERN_KEY = "dfs.webhdfs.user.provider.user.pattern";
   public static final String  DFS_WEBHDFS_USER_PATTERN_DEFAULT = "^[A-Za-z_][A-Za-z0-9._-]*[$]?$";
+  public static final String  DFS_WEBHDFS_CLIENT_READ_PARALLEL_THREADS_KEY = "dfs.webhdfs.client.read.parallel.threads";
+  public static final int     DFS_WEBHDFS_CLIENT_READ_PARALLEL_THREADS_DEFAULT = 0;
+  public static final String  DFS_WEBHDFS_CLIENT_READ_PARALLEL_RANGE_SIZE_KEY = "dfs.webhdfs.client.read.parallel.range.size";
+  public static final long    DFS_WEBHDFS_CLIENT_READ_PARALLEL_RANGE_SIZE_DEFAULT = 8 * 1024 * 1024;
+  public static final String  DFS_WEBHDFS_CLIENT_WRITE_CHUNK_SIZE_KEY = "dfs.webhdfs.client.write.chunk.size";
+  public static final int     DFS_WEBHDFS_CLIENT_WRITE_CHUNK_SIZE_DEFAULT = 32 * 1024;
   public static final String  DFS_PERMISSIONS_ENABLED_KEY = "dfs.permissions.enabled";
   public static final boolean DFS_PERMISSIONS_ENABLED_DEFAULT = true;
   public static final String  DFS_PERMISSIONS_SUPERUSERGROUP_KEY = "dfs.permissions.superusergroup";
@@ -223,6 +253,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_DATANODE_FAILED_VOLUMES_TOLERATED_DEFAULT = 0;
   public static final String  DFS_DATANODE_SYNCONCLOSE_KEY = "dfs.datanode.synconclose";
   public static final boolean DFS_DATANODE_SYNCONCLOSE_DEFAULT = false;
+  public static final String  DFS_DATANODE_SYNC_GROUP_COMMIT_ENABLED_KEY = "dfs.datanode.sync.group.commit.enabled";
+  public static final boolean DFS_DATANODE_SYNC_GROUP_COMMIT_ENABLED_DEFAULT = false;
+  public static final String  DFS_DATANODE_SYNC_THREADS_PER_VOLUME_KEY = "dfs.datanode.sync.threads.per.volume";
+  public static final int     DFS_DATANODE_SYNC_THREADS_PER_VOLUME_DEFAULT = 4;
   public static final String  DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY = "dfs.datanode.socket.reuse.keepalive";
   public static final int     DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_DEFAULT = 4000;
 
@@ -344,6 +378,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_DATANODE_DIRECTORYSCAN_INTERVAL_DEFAULT = 21600;
   public static final String  DFS_DATANODE_DIRECTORYSCAN_THREADS_KEY = "dfs.datanode.directoryscan.threads";
   public static final int     DFS_DATANODE_DIRECTORYSCAN_THREADS_DEFAULT = 1;
+  public static final String  DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY = "dfs.datanode.directoryscan.throttle.limit.ms.per.sec";
+  public static final int     DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_DEFAULT = 1000;
   public static final String  DFS_DATANODE_DNS_INTERFACE_KEY = "dfs.datanode.dns.interface";
   public static final String  DFS_DATANODE_DNS_INTERFACE_DEFAULT = "default";
   public static final String  DFS_DATANODE_DNS_NAMESERVER_KEY = "dfs.datanode.dns.nameserver";
@@ -357,10 +393,18 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_DATANODE_HTTP_ADDRESS_DEFAULT = "0.0.0.0:" + DFS_DATANODE_HTTP_DEFAULT_PORT;
   public static final String  DFS_DATANODE_MAX_RECEIVER_THREADS_KEY = "dfs.datanode.max.transfer.threads";
   public static final int     DFS_DATANODE_MAX_RECEIVER_THREADS_DEFAULT = 4096;
+  public static final String  DFS_DATANODE_TRANSFER_SERVER_NIO_KEY = "dfs.datanode.transfer.server.nio.enabled";
+  public static final boolean DFS_DATANODE_TRANSFER_SERVER_NIO_DEFAULT = false;
+  public static final String  DFS_DATANODE_TRANSFER_SERVER_NIO_SELECTORS_KEY = "dfs.datanode.transfer.server.nio.selectors";
+  public static final int     DFS_DATANODE_TRANSFER_SERVER_NIO_SELECTORS_DEFAULT = 2;
+  public static final String  DFS_DATANODE_TRANSFER_SERVER_NIO_HANDLERS_KEY = "dfs.datanode.transfer.server.nio.handlers";
+  public static final int     DFS_DATANODE_TRANSFER_SERVER_NIO_HANDLERS_DEFAULT = 32;
   public static final String  DFS_DATANODE_NUMBLOCKS_KEY = "dfs.datanode.numblocks";
   public static final int     DFS_DATANODE_NUMBLOCKS_DEFAULT = 64;
   public static final String  DFS_DATANODE_SCAN_PERIOD_HOURS_KEY = "dfs.datanode.scan.period.hours";
   public static final int     DFS_DATANODE_SCAN_PERIOD_HOURS_DEFAULT = 0;
+  public static final String  DFS_DATANODE_SCAN_BUSY_XCEIVERS_KEY = "dfs.datanode.scan.busy.xceivers";
+  public static final int     DFS_DATANODE_SCAN_BUSY_XCEIVERS_DEFAULT = 32;
   public static final String  DFS_DATANODE_TRANSFERTO_ALLOWED_KEY = "dfs.datanode.transferTo.allowed";
   public static final boolean DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT = true;
   public static final String  DFS_HEARTBEAT_INTERVAL_KEY = "dfs.heartbeat.interval";
@@ -410,6 +454,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_BLOCKREPORT_INITIAL_DELAY_DEFAULT = 0;
   public static final String  DFS_BLOCKREPORT_SPLIT_THRESHOLD_KEY = "dfs.blockreport.split.threshold";
   public static final long    DFS_BLOCKREPORT_SPLIT_THRESHOLD_DEFAULT = 1000 * 1000;
+  public static final String  DFS_BLOCKREPORT_SPREAD_STORAGES_KEY = "dfs.blockreport.spread.storages";
+  public static final boolean DFS_BLOCKREPORT_SPREAD_STORAGES_DEFAULT = false;
+  public static final String  DFS_BLOCKREPORT_COMPACT_ENCODING_KEY = "dfs.blockreport.compact.encoding";
+  public static final boolean DFS_BLOCKREPORT_COMPACT_ENCODING_DEFAULT = false;
+  public static final String  DFS_BLOCKREPORT_COMPRESS_KEY = "dfs.blockreport.compress";
+  public static final boolean DFS_BLOCKREPORT_COMPRESS_DEFAULT = false;
   public static final String  DFS_CACHEREPORT_INTERVAL_MSEC_KEY = "dfs.cachereport.intervalMsec";
   public static final long    DFS_CACHEREPORT_INTERVAL_MSEC_DEFAULT = 10 * 1000;
   public static final String  DFS_BLOCK_INVALIDATE_LIMIT_KEY = "dfs.block.invalidate.limit";
@@ -435,6 +485,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final long DFS_CLIENT_MMAP_CACHE_TIMEOUT_MS_DEFAULT  = 60 * 60 * 1000;
   public static final String DFS_CLIENT_MMAP_RETRY_TIMEOUT_MS = "dfs.client.mmap.retry.timeout.ms";
   public static final long DFS_CLIENT_MMAP_RETRY_TIMEOUT_MS_DEFAULT = 5 * 60 * 1000;
+  public static final String DFS_CLIENT_MMAP_MAX_BYTES = "dfs.client.mmap.max.bytes";
+  public static final long DFS_CLIENT_MMAP_MAX_BYTES_DEFAULT = 0;
   public static final String DFS_CLIENT_SHORT_CIRCUIT_REPLICA_STALE_THRESHOLD_MS = "dfs.client.short.circuit.replica.stale.threshold.ms";
   public static final long DFS_CLIENT_SHORT_CIRCUIT_REPLICA_STALE_THRESHOLD_MS_DEFAULT = 30 * 60 * 1000;
 
@@ -462,6 +514,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final long    DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_THRESHOLD_DEFAULT = 1024L * 1024L * 1024L * 10L; // 10 GB
   public static final String  DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_KEY = "dfs.datanode.available-space-volume-choosing-policy.balanced-space-preference-fraction";
   public static final float   DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_DEFAULT = 0.75f;
+  public static final String  DFS_DATANODE_SLOW_VOLUME_THRESHOLD_MS_KEY = "dfs.datanode.slow-volume.threshold.ms";
+  public static final long    DFS_DATANODE_SLOW_VOLUME_THRESHOLD_MS_DEFAULT = 300;
+  public static final String  DFS_DATANODE_LAZY_WRITER_INTERVAL_SEC_KEY = "dfs.datanode.lazywriter.interval.sec";
+  public static final int     DFS_DATANODE_LAZY_WRITER_INTERVAL_SEC_DEFAULT = 60;
+  public static final String  DFS_DATANODE_RAM_DISK_LOW_WATERMARK_PERCENT_KEY = "dfs.datanode.ram.disk.low.watermark.percent";
+  public static final int     DFS_DATANODE_RAM_DISK_LOW_WATERMARK_PERCENT_DEFAULT = 10;
   public static final String  DFS_DATANODE_SOCKET_WRITE_TIMEOUT_KEY = "dfs.datanode.socket.write.timeout";
   public static final String  DFS_DATANODE_STARTUP_KEY = "dfs.datanode.startup";
   public static final String  DFS_NAMENODE_PLUGINS_KEY = "dfs.namenode.plugins";
@@ -477,6 +535,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_SECONDARY_NAMENODE_INTERNAL_SPNEGO_USER_NAME_KEY = "dfs.secondary.namenode.kerberos.internal.spnego.principal";
   public static final String  DFS_NAMENODE_NAME_CACHE_THRESHOLD_KEY = "dfs.namenode.name.cache.threshold";
   public static final int     DFS_NAMENODE_NAME_CACHE_THRESHOLD_DEFAULT = 10;
+  public static final String  DFS_NAMENODE_NAME_CACHE_RUNTIME_TRACKING_SIZE_KEY = "dfs.namenode.name.cache.runtime.tracking.size";
+  public static final int     DFS_NAMENODE_NAME_CACHE_RUNTIME_TRACKING_SIZE_DEFAULT = 16384;
   
   public static final String  DFS_NAMESERVICES = "dfs.nameservices";
   public static final String  DFS_NAMESERVICE_ID = "dfs.nameservice.id";
@@ -505,6 +565,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int DFS_HA_LOGROLL_PERIOD_DEFAULT = 2 * 60; // 2m
   public static final String DFS_HA_TAILEDITS_PERIOD_KEY = "dfs.ha.tail-edits.period";
   public static final int DFS_HA_TAILEDITS_PERIOD_DEFAULT = 60; // 1m
+  public static final String  DFS_HA_TAILEDITS_INPROGRESS_KEY = "dfs.ha.tail-edits.in-progress";
+  public static final boolean DFS_HA_TAILEDITS_INPROGRESS_DEFAULT = false;
+  public static final String  DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY = "dfs.ha.tail-edits.qjm.rpc.max-txns";
+  public static final int     DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_DEFAULT = 5000;
+  public static final String  DFS_HA_STANDBY_READS_ENABLED_KEY = "dfs.ha.standby.reads.enabled";
+  public static final boolean DFS_HA_STANDBY_READS_ENABLED_DEFAULT = false;
   public static final String DFS_HA_FENCE_METHODS_KEY = "dfs.ha.fencing.methods";
   public static final String DFS_HA_AUTO_FAILOVER_ENABLED_KEY = "dfs.ha.automatic-failover.enabled";
   public static final boolean DFS_HA_AUTO_FAILOVER_ENABLED_DEFAULT = false;
@@ -533,6 +599,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_JOURNALNODE_KEYTAB_FILE_KEY = "dfs.journalnode.keytab.file";
   public static final String  DFS_JOURNALNODE_USER_NAME_KEY = "dfs.journalnode.kerberos.principal";
   public static final String  DFS_JOURNALNODE_INTERNAL_SPNEGO_USER_NAME_KEY = "dfs.journalnode.kerberos.internal.spnego.principal";
+  public static final String  DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY = "dfs.journalnode.edit-cache-size.bytes";
+  public static final long    DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT = 1024 * 1024;
 
   // Journal-node related configs for the client side.
   public static final String  DFS_QJOURNAL_QUEUE_SIZE_LIMIT_KEY = "dfs.qjournal.queued-edits.limit.mb";
@@ -559,6 +627,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   
   public static final String DFS_MAX_NUM_BLOCKS_TO_LOG_KEY = "dfs.namenode.max-num-blocks-to-log";
   public static final long   DFS_MAX_NUM_BLOCKS_TO_LOG_DEFAULT = 1000l;
+  public static final String DFS_NAMENODE_BLOCKREPORT_BATCH_SIZE_KEY = "dfs.namenode.blockreport.batch-size";
+  public static final int    DFS_NAMENODE_BLOCKREPORT_BATCH_SIZE_DEFAULT = 50000;
   
   public static final String DFS_NAMENODE_ENABLE_RETRY_CACHE_KEY = "dfs.namenode.enable.retrycache";
   public static final boolean DFS_NAMENODE_ENABLE_RETRY_CACHE_DEFAULT = true;
@@ -601,4 +671,52 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_DFSCLIENT_HEDGED_READ_THREADPOOL_SIZE =
       "dfs.client.hedged.read.threadpool.size";
   public static final int DEFAULT_DFSCLIENT_HEDGED_READ_THREADPOOL_SIZE = 0;
+
+  public static final String DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_ENABLED_KEY =
+      "dfs.client.hedged.read.adaptive.enabled";
+  public static final boolean DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_ENABLED_DEFAULT =
+      false;
+  public static final String DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_PERCENTILE_KEY =
+      "dfs.client.hedged.read.adaptive.percentile";
+  public static final float DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_PERCENTILE_DEFAULT =
+      95;
+  public static final String DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_PER_DATANODE_KEY =
+      "dfs.client.hedged.read.adaptive.per.datanode";
+  public static final boolean DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_PER_DATANODE_DEFAULT =
+      false;
+  public static final String DFS_DFSCLIENT_HEDGED_READ_MAX_FRACTION_KEY =
+      "dfs.client.hedged.read.max.fraction";
+  public static final float DFS_DFSCLIENT_HEDGED_READ_MAX_FRACTION_DEFAULT =
+      1.0f;
+
+  // sequential read-ahead properties
+  public static final String DFS_CLIENT_READ_SEQUENTIAL_READAHEAD_RANGES_KEY =
+      "dfs.client.read.sequential.readahead.ranges";
+  public static final int DFS_CLIENT_READ_SEQUENTIAL_READAHEAD_RANGES_DEFAULT = 0;
+  public static final String DFS_CLIENT_READ_SEQUENTIAL_READAHEAD_RANGE_SIZE_KEY =
+      "dfs.client.read.sequential.readahead.range.size";
+  public static final int DFS_CLIENT_READ_SEQUENTIAL_READAHEAD_RANGE_SIZE_DEFAULT =
+      4 * 1024 * 1024;
+  public static final String DFS_CLIENT_READ_SEQUENTIAL_READAHEAD_THREADPOOL_SIZE_KEY =
+      "dfs.client.read.sequential.readahead.threadpool.size";
+  public static final int DFS_CLIENT_READ_SEQUENTIAL_READAHEAD_THREADPOOL_SIZE_DEFAULT =
+      16;
+
+  // vectored read properties
+  public static final String DFS_CLIENT_READ_VECTORED_MAX_MERGE_GAP_KEY =
+      "dfs.client.read.vectored.max.merge.gap";
+  public static final int DFS_CLIENT_READ_VECTORED_MAX_MERGE_GAP_DEFAULT =
+      64 * 1024;
+  public static final String DFS_CLIENT_READ_VECTORED_MAX_MERGE_SIZE_KEY =
+      "dfs.client.read.vectored.max.merge.size";
+  public static final int DFS_CLIENT_READ_VECTORED_MAX_MERGE_SIZE_DEFAULT =
+      4 * 1024 * 1024;
+  public static final String DFS_CLIENT_READ_VECTORED_THREADPOOL_SIZE_KEY =
+      "dfs.client.read.vectored.threadpool.size";
+  public static final int DFS_CLIENT_READ_VECTORED_THREADPOOL_SIZE_DEFAULT = 8;
+
+  // pipelined checksum verification properties
+  public static final String DFS_CLIENT_READ_CHECKSUM_PIPELINE_THREADPOOL_SIZE_KEY =
+      "dfs.client.read.checksum.pipeline.threadpool.size";
+  public static final int DFS_CLIENT_READ_CHECKSUM_PIPELINE_THREADPOOL_SIZE_DEFAULT = 0;
 }
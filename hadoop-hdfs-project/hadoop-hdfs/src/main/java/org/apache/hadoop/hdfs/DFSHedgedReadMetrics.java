@@ -28,6 +28,9 @@ public class DFSHedgedReadMetrics {
   public AtomicLong hedgedReadOps = new AtomicLong();
   public AtomicLong hedgedReadOpsWin = new AtomicLong();
   public AtomicLong hedgedReadOpsInCurThread = new AtomicLong();
+  public AtomicLong hedgedReadOpsLoss = new AtomicLong();
+  public AtomicLong hedgedReadOpsSkipped = new AtomicLong();
+  public AtomicLong hedgedReadWastedBytes = new AtomicLong();
 
   public void incHedgedReadOps() {
     hedgedReadOps.incrementAndGet();
@@ -41,6 +44,21 @@ public void incHedgedReadWins() {
     hedgedReadOpsWin.incrementAndGet();
   }
 
+  /** A hedged read was started but the original read completed first. */
+  public void incHedgedReadLosses() {
+    hedgedReadOpsLoss.incrementAndGet();
+  }
+
+  /** A read exceeded its threshold but the hedged reads budget was spent. */
+  public void incHedgedReadOpsSkipped() {
+    hedgedReadOpsSkipped.incrementAndGet();
+  }
+
+  /** The bytes read by the reads which did not complete first. */
+  public void addHedgedReadWastedBytes(long bytes) {
+    hedgedReadWastedBytes.addAndGet(bytes);
+  }
+
   public long getHedgedReadOps() {
     return hedgedReadOps.longValue();
   }
@@ -52,4 +70,16 @@ public long getHedgedReadOpsInCurThread() {
   public long getHedgedReadWins() {
     return hedgedReadOpsWin.longValue();
   }
+
+  public long getHedgedReadLosses() {
+    return hedgedReadOpsLoss.longValue();
+  }
+
+  public long getHedgedReadOpsSkipped() {
+    return hedgedReadOpsSkipped.longValue();
+  }
+
+  public long getHedgedReadWastedBytes() {
+    return hedgedReadWastedBytes.longValue();
+  }
 }
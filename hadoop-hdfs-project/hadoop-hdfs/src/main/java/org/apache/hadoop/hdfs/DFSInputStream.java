@@ -17,7 +17,9 @@
  */
 package org.apache.hadoop.hdfs;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.AbstractMap;
@@ -27,17 +29,21 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.fs.ByteBufferReadable;
@@ -46,9 +52,13 @@
 import org.apache.hadoop.fs.CanSetReadahead;
 import org.apache.hadoop.fs.ChecksumException;
 import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.fs.HasEnhancedByteBufferAccess;
 import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.fs.UnresolvedLinkException;
+import org.apache.hadoop.fs.VectoredReadUtils;
+import org.apache.hadoop.fs.VectoredReadUtils.CombinedFileRange;
+import org.apache.hadoop.fs.VectoredReadable;
 import org.apache.hadoop.hdfs.client.ClientMmap;
 import org.apache.hadoop.hdfs.protocol.ClientDatanodeProtocol;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
@@ -67,6 +77,7 @@
 import org.apache.hadoop.security.token.SecretManager.InvalidToken;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.util.IdentityHashStore;
+import org.apache.hadoop.util.Time;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -77,7 +88,7 @@
 @InterfaceAudience.Private
 public class DFSInputStream extends FSInputStream
 implements ByteBufferReadable, CanSetDropBehind, CanSetReadahead,
-    HasEnhancedByteBufferAccess {
+    HasEnhancedByteBufferAccess, VectoredReadable {
   @VisibleForTesting
   static boolean tcpReadsDisabledForTesting = false;
   private final DFSClient dfsClient;
@@ -208,6 +219,19 @@ void addZeroCopyBytes(long amt) {
   
   private final byte[] oneByteBuf = new byte[1]; // used for 'int read()'
 
+  /** The number of sequential reads after which the stream reads ahead. */
+  private static final int SEQUENTIAL_READS_THRESHOLD = 4;
+  /** The ranges read ahead of the position, in order. */
+  private final LinkedList<ReadaheadRange> readaheadRanges =
+      new LinkedList<ReadaheadRange>();
+  /** The end of the last read, to detect sequential reads. */
+  private long lastReadEnd = -1;
+  private int sequentialReads = 0;
+  /** The start of the next range to read ahead. */
+  private long readaheadPos = -1;
+  /** The number of ranges read ahead, to spread them over the replicas. */
+  private int numRangesReadAhead = 0;
+
   void addToDeadNodes(DatanodeInfo dnInfo) {
     deadNodes.put(dnInfo, dnInfo);
   }
@@ -260,7 +284,16 @@ private void waitFor(int waitTime) throws IOException {
   }
 
   private long fetchLocatedBlocksAndGetLastBlockLength() throws IOException {
-    final LocatedBlocks newInfo = dfsClient.getLocatedBlocks(src, 0);
+    // The cached locations are only used when the file is opened; they are
+    // refreshed when the locations known by the stream failed.
+    LocatedBlocks newInfo = locatedBlocks == null ?
+        dfsClient.getCachedLocatedBlocks(src) : null;
+    if (newInfo == null) {
+      newInfo = dfsClient.getLocatedBlocks(src, 0);
+      if (newInfo != null) {
+        dfsClient.cacheLocatedBlocks(src, newInfo);
+      }
+    }
     if (DFSClient.LOG.isDebugEnabled()) {
       DFSClient.LOG.debug("newInfo = " + newInfo);
     }
@@ -440,6 +473,8 @@ private synchronized void fetchBlockAt(long offset) throws IOException {
     if (targetBlockIdx < 0) { // block is not cached
       targetBlockIdx = LocatedBlocks.getInsertIndex(targetBlockIdx);
     }
+    // the cached locations of the file are stale
+    dfsClient.invalidateLocatedBlocks(src);
     // fetch blocks
     final LocatedBlocks newBlocks = dfsClient.getLocatedBlocks(src, offset);
     if (newBlocks == null) {
@@ -635,6 +670,7 @@ public void accept(ByteBuffer k, Object v) {
       blockReader.close();
       blockReader = null;
     }
+    cancelReadahead();
     super.close();
     closed = true;
   }
@@ -652,6 +688,9 @@ public synchronized int read() throws IOException {
   private interface ReaderStrategy {
     public int doRead(BlockReader blockReader, int off, int len,
         ReadStatistics readStatistics) throws ChecksumException, IOException;
+
+    /** Copy the bytes read ahead. */
+    public void copyFrom(byte[] src, int srcOff, int off, int len);
   }
 
   private static void updateReadStatistics(ReadStatistics readStatistics, 
@@ -686,6 +725,11 @@ public int doRead(BlockReader blockReader, int off, int len,
         updateReadStatistics(readStatistics, nRead, blockReader);
         return nRead;
     }
+
+    @Override
+    public void copyFrom(byte[] src, int srcOff, int off, int len) {
+      System.arraycopy(src, srcOff, buf, off, len);
+    }
   }
 
   /**
@@ -716,6 +760,11 @@ public int doRead(BlockReader blockReader, int off, int len,
         }
       } 
     }
+
+    @Override
+    public void copyFrom(byte[] src, int srcOff, int off, int len) {
+      buf.put(src, srcOff, len);
+    }
   }
 
   /* This is a used by regular read() and handles ChecksumExceptions.
@@ -783,6 +832,15 @@ private int readWithStrategy(ReaderStrategy strategy, int off, int len) throws I
       = new HashMap<ExtendedBlock, Set<DatanodeInfo>>();
     failures = 0;
     if (pos < getFileLength()) {
+      if (dfsClient.getConf().readaheadRanges > 0) {
+        int result = readFromReadahead(strategy, off, len);
+        if (result > 0) {
+          if (dfsClient.stats != null) {
+            dfsClient.stats.incrementBytesRead(result);
+          }
+          return result;
+        }
+      }
       int retries = 2;
       while (retries > 0) {
         try {
@@ -799,6 +857,7 @@ private int readWithStrategy(ReaderStrategy strategy, int off, int len) throws I
           
           if (result >= 0) {
             pos += result;
+            lastReadEnd = pos;
           } else {
             // got a EOS from reader though we expect more data on it.
             throw new IOException("Unexpected EOS from the reader");
@@ -829,6 +888,208 @@ private int readWithStrategy(ReaderStrategy strategy, int off, int len) throws I
     return -1;
   }
 
+  /**
+   * Read from the ranges read ahead once the stream is read sequentially, so
+   * that the reader does not wait for a new block reader to be set up at
+   * every block boundary, and the next ranges are read concurrently from the
+   * replicas of the blocks. The ranges following the block being read by the
+   * block reader are read ahead, at most
+   * dfs.client.read.sequential.readahead.ranges of them.
+   *
+   * @return the number of bytes read, or 0 if the position was not read
+   *         ahead and is to be read from a block reader.
+   */
+  private synchronized int readFromReadahead(ReaderStrategy strategy, int off,
+      int len) throws IOException {
+    if (pos != lastReadEnd) {
+      sequentialReads = 0;
+      cancelReadahead();
+    }
+    if (sequentialReads < SEQUENTIAL_READS_THRESHOLD) {
+      sequentialReads++;
+      return 0;
+    }
+    // discard the ranges already read
+    while (!readaheadRanges.isEmpty() &&
+        readaheadRanges.getFirst().getEnd() <= pos) {
+      readaheadRanges.removeFirst().future.cancel(false);
+    }
+    scheduleReadahead();
+
+    final ReadaheadRange range = readaheadRanges.peekFirst();
+    if (range == null || range.start > pos) {
+      return 0;
+    }
+    final byte[] data;
+    try {
+      data = range.future.get();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while reading ahead "
+          + range);
+    } catch (ExecutionException e) {
+      // The block reader retries the other replicas and reports the corrupt
+      // ones.
+      DFSClient.LOG.info("Failed to read ahead " + range
+          + ", reading it with a block reader: " + e.getCause());
+      readaheadRanges.removeFirst();
+      return 0;
+    }
+    final int n = (int)Math.min(len, range.getEnd() - pos);
+    strategy.copyFrom(data, (int)(pos - range.start), off, n);
+    readStatistics.totalBytesRead += n;
+    if (range.isLocal) {
+      readStatistics.totalLocalBytesRead += n;
+    }
+    if (range.isShortCircuit) {
+      readStatistics.totalShortCircuitBytesRead += n;
+    }
+    // The block reader, if any, is not at the position any more.
+    closeCurrentBlockReader();
+    blockEnd = -1;
+    pos += n;
+    lastReadEnd = pos;
+    return n;
+  }
+
+  /** Read ahead the next ranges, up to the maximum number of ranges. */
+  private synchronized void scheduleReadahead() throws IOException {
+    if (readaheadPos < pos) {
+      // start after the block being read by the block reader
+      readaheadPos = (blockReader != null && pos <= blockEnd) ?
+          blockEnd + 1 : pos;
+    }
+    final DFSClient.Conf conf = dfsClient.getConf();
+    final long fileLength = getFileLength();
+    while (readaheadRanges.size() < conf.readaheadRanges &&
+        readaheadPos < fileLength) {
+      final LocatedBlock blk = getBlockAt(readaheadPos, false);
+      final long blockRemaining =
+          blk.getStartOffset() + blk.getBlockSize() - readaheadPos;
+      final int length = (int)Math.min(conf.readaheadRangeSize,
+          Math.min(blockRemaining, fileLength - readaheadPos));
+      if (length <= 0) {
+        break;
+      }
+      final ReadaheadRange range = new ReadaheadRange(blk, readaheadPos,
+          length, numRangesReadAhead++);
+      range.future = DFSClient.getReadaheadThreadPool().submit(range);
+      readaheadRanges.addLast(range);
+      readaheadPos += length;
+    }
+  }
+
+  /** Discard the ranges read ahead, when the stream is not read sequentially. */
+  private synchronized void cancelReadahead() {
+    for (ReadaheadRange range : readaheadRanges) {
+      range.future.cancel(false);
+    }
+    readaheadRanges.clear();
+    readaheadPos = -1;
+  }
+
+  /** A range of the file read ahead in the background. */
+  private class ReadaheadRange implements Callable<byte[]> {
+    private final LocatedBlock block;
+    final long start;
+    final int length;
+    /** The replica to read first, to spread the ranges over the replicas. */
+    private final int nodeIndex;
+    private final CachingStrategy curCachingStrategy;
+    private final boolean allowShortCircuitLocalReads;
+    Future<byte[]> future;
+    // set by call() once the range is read
+    boolean isLocal = false;
+    boolean isShortCircuit = false;
+
+    ReadaheadRange(LocatedBlock block, long start, int length, int nodeIndex) {
+      this.block = block;
+      this.start = start;
+      this.length = length;
+      this.nodeIndex = nodeIndex;
+      this.curCachingStrategy = cachingStrategy;
+      this.allowShortCircuitLocalReads = !shortCircuitForbidden();
+    }
+
+    long getEnd() {
+      return start + length;
+    }
+
+    /**
+     * Read the range from a replica. Unlike the block reader, the replicas
+     * are not marked dead and the block locations are not refetched on
+     * failure: the range is then read with a block reader.
+     */
+    @Override
+    public byte[] call() throws IOException {
+      final DatanodeInfo[] nodes = block.getLocations();
+      final boolean connectToDnViaHostname =
+          dfsClient.getConf().connectToDnViaHostname;
+      int first = 0;
+      if (nodes.length > 0 && !DFSClient.isLocalAddress(
+          NetUtils.createSocketAddr(
+              nodes[0].getXferAddr(connectToDnViaHostname)))) {
+        // no local replica: read the ranges from different replicas
+        first = nodeIndex % nodes.length;
+      }
+      IOException lastException = null;
+      for (int i = 0; i < nodes.length; i++) {
+        final DatanodeInfo node = nodes[(first + i) % nodes.length];
+        if (deadNodes.containsKey(node)) {
+          continue;
+        }
+        final InetSocketAddress targetAddr = NetUtils.createSocketAddr(
+            node.getXferAddr(connectToDnViaHostname));
+        BlockReader reader = null;
+        try {
+          reader = new BlockReaderFactory(dfsClient.getConf()).
+              setInetSocketAddress(targetAddr).
+              setRemotePeerFactory(dfsClient).
+              setDatanodeInfo(node).
+              setFileName(src).
+              setBlock(block.getBlock()).
+              setBlockToken(block.getBlockToken()).
+              setStartOffset(start - block.getStartOffset()).
+              setVerifyChecksum(verifyChecksum).
+              setClientName(dfsClient.clientName).
+              setLength(length).
+              setCachingStrategy(curCachingStrategy).
+              setAllowShortCircuitLocalReads(allowShortCircuitLocalReads).
+              setClientCacheContext(dfsClient.getClientContext()).
+              setUserGroupInformation(dfsClient.ugi).
+              setConfiguration(dfsClient.getConfiguration()).
+              build();
+          final byte[] data = new byte[length];
+          int nread = reader.readAll(data, 0, length);
+          if (nread != length) {
+            throw new IOException("truncated return from reader.read(): " +
+                "excpected " + length + ", got " + nread);
+          }
+          isLocal = reader.isLocal();
+          isShortCircuit = reader.isShortCircuit();
+          return data;
+        } catch (IOException e) {
+          if (DFSClient.LOG.isDebugEnabled()) {
+            DFSClient.LOG.debug("Failed to read ahead " + this + " from "
+                + targetAddr, e);
+          }
+          lastException = e;
+        } finally {
+          if (reader != null) {
+            reader.close();
+          }
+        }
+      }
+      throw lastException != null ? lastException :
+          new IOException("No live node to read ahead " + this);
+    }
+
+    @Override
+    public String toString() {
+      return "range [" + start + ", " + getEnd() + ") of " + src + " in "
+          + block.getBlock();
+    }
+  }
+
   /**
    * Read the entire buffer.
    */
@@ -981,15 +1242,22 @@ private Callable<ByteBuffer> getFromOneDataNode(final DNAddrPair datanode,
       final LocatedBlock block, final long start, final long end,
       final ByteBuffer bb,
       final Map<ExtendedBlock, Set<DatanodeInfo>> corruptedBlockMap,
-      final CountDownLatch latch) {
+      final AtomicBoolean done) {
     return new Callable<ByteBuffer>() {
       @Override
       public ByteBuffer call() throws Exception {
         byte[] buf = bb.array();
         int offset = bb.position();
+        final long startTime = Time.monotonicNow();
         actualGetFromOneDataNode(datanode, block, start, end, buf, offset,
             corruptedBlockMap);
-        latch.countDown();
+        dfsClient.getHedgedReadPolicy().addLatency(datanode.info,
+            Time.monotonicNow() - startTime);
+        if (!done.compareAndSet(false, true)) {
+          // another read of the range completed first
+          dfsClient.getHedgedReadMetrics().addHedgedReadWastedBytes(
+              end - start + 1);
+        }
         return bb;
       }
     };
@@ -1088,8 +1356,9 @@ private void actualGetFromOneDataNode(final DNAddrPair datanode,
   /**
    * Like {@link #fetchBlockByteRange(LocatedBlock, long, long, byte[],
    * int, Map)} except we start up a second, parallel, 'hedged' read
-   * if the first read is taking longer than configured amount of
-   * time.  We then wait on which ever read returns first.
+   * if the first read is taking longer than the threshold given by the
+   * {@link HedgedReadPolicy} of the client, and its budget of hedged reads
+   * is not exhausted.  We then wait on which ever read returns first.
    * 
    * @param block
    * @param start
@@ -1103,115 +1372,132 @@ private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
       long end, byte[] buf, int offset,
       Map<ExtendedBlock, Set<DatanodeInfo>> corruptedBlockMap)
       throws IOException {
-    ArrayList<Future<ByteBuffer>> futures = null;
+    final HedgedReadPolicy policy = dfsClient.getHedgedReadPolicy();
+    final DFSHedgedReadMetrics metrics = dfsClient.getHedgedReadMetrics();
+    ArrayList<Future<ByteBuffer>> futures = new ArrayList<Future<ByteBuffer>>();
+    CompletionService<ByteBuffer> hedgedService =
+        new ExecutorCompletionService<ByteBuffer>(
+            dfsClient.getHedgedReadsThreadPool());
     ArrayList<DatanodeInfo> ignored = new ArrayList<DatanodeInfo>();
     ByteBuffer bb = null;
     int len = (int) (end - start + 1);
+    // Set by the first read to complete.  The later ones are wasted.
+    final AtomicBoolean done = new AtomicBoolean(false);
+    boolean hedgeAllowed = true;
+    int numHedgedReads = 0;
     block = getBlockAt(block.getStartOffset(), false);
-    // Latch shared by all outstanding reads.  First to finish closes
-    CountDownLatch hasReceivedResult = new CountDownLatch(1);
+    policy.addRead();
     while (true) {
       DNAddrPair chosenNode = null;
-      Future<ByteBuffer> future = null;
-      // futures is null if there is no request already executing.
-      if (futures == null) {
+      // futures is empty if there is no request already executing.
+      if (futures.isEmpty()) {
         // chooseDataNode is a commitment.  If no node, we go to
         // the NN to reget block locations.  Only go here on first read.
         chosenNode = chooseDataNode(block, ignored);
         bb = ByteBuffer.wrap(buf, offset, len);
-        future = getHedgedReadFuture(chosenNode, block, start, end, bb,
-          corruptedBlockMap, hasReceivedResult);
+        Future<ByteBuffer> firstRequest = hedgedService.submit(
+            getFromOneDataNode(chosenNode, block, start, end, bb,
+                corruptedBlockMap, done));
+        futures.add(firstRequest);
+        final long threshold = policy.getThresholdMillis(chosenNode.info,
+            dfsClient.getHedgedReadTimeout());
         try {
-          future.get(dfsClient.getHedgedReadTimeout(), TimeUnit.MILLISECONDS);
-          return;
-        } catch (TimeoutException e) {
-          if (DFSClient.LOG.isDebugEnabled()) {
-            DFSClient.LOG.debug("Waited " + dfsClient.getHedgedReadTimeout() +
-              "ms to read from " + chosenNode.info + "; spawning hedged read");
+          Future<ByteBuffer> future =
+              hedgedService.poll(threshold, TimeUnit.MILLISECONDS);
+          if (future != null) {
+            future.get();
+            return;
+          }
+          hedgeAllowed = policy.tryHedge();
+          if (hedgeAllowed) {
+            if (DFSClient.LOG.isDebugEnabled()) {
+              DFSClient.LOG.debug("Waited " + threshold + "ms to read from "
+                  + chosenNode.info + "; spawning hedged read");
+            }
+            metrics.incHedgedReadOps();
+          } else {
+            metrics.incHedgedReadOpsSkipped();
           }
           // Ignore this node on next go around.
           ignored.add(chosenNode.info);
-          dfsClient.getHedgedReadMetrics().incHedgedReadOps();
-          futures = new ArrayList<Future<ByteBuffer>>();
-          futures.add(future);
           continue; // no need to refresh block locations
-        } catch (InterruptedException e) {
-          // Ignore
         } catch (ExecutionException e) {
           // Ignore already logged in the call.
+          futures.remove(firstRequest);
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException("Interrupted while reading "
+              + block.getBlock() + " of " + src);
         }
       } else {
         // We are starting up a 'hedged' read.  We have a read already
         // ongoing. Call getBestNodeDNAddrPair instead of chooseDataNode.
         // If no nodes to do hedged reads against, pass.
-        try {
-          chosenNode = getBestNodeDNAddrPair(block.getLocations(), ignored);
-          bb = ByteBuffer.allocate(len);
-          future = getHedgedReadFuture(chosenNode, block, start, end, bb,
-            corruptedBlockMap, hasReceivedResult);
-          futures.add(future);
-        } catch (IOException ioe) {
-          if (DFSClient.LOG.isDebugEnabled()) {
-            DFSClient.LOG.debug("Failed getting node for hedged read: " +
-              ioe.getMessage());
+        if (hedgeAllowed) {
+          try {
+            chosenNode = getBestNodeDNAddrPair(block.getLocations(), ignored);
+            bb = ByteBuffer.allocate(len);
+            futures.add(hedgedService.submit(getFromOneDataNode(chosenNode,
+                block, start, end, bb, corruptedBlockMap, done)));
+            numHedgedReads++;
+          } catch (IOException ioe) {
+            if (DFSClient.LOG.isDebugEnabled()) {
+              DFSClient.LOG.debug("Failed getting node for hedged read: " +
+                ioe.getMessage());
+            }
           }
         }
-        // if not succeeded. Submit callables for each datanode in a loop, wait
-        // for a fixed interval and get the result from the fastest one.
+        // Wait for the result of the fastest read.
+        ByteBuffer result;
         try {
-          ByteBuffer result = getFirstToComplete(futures, hasReceivedResult);
+          result = getFirstToComplete(hedgedService, futures);
+        } catch (InterruptedException e) {
+          cancelAll(futures);
+          throw new InterruptedIOException("Interrupted while reading "
+              + block.getBlock() + " of " + src);
+        }
+        if (result != null) {
           // cancel the rest.
           cancelAll(futures);
           if (result.array() != buf) { // compare the array pointers
-            dfsClient.getHedgedReadMetrics().incHedgedReadWins();
+            metrics.incHedgedReadWins();
             System.arraycopy(result.array(), result.position(), buf, offset,
                 len);
-          } else {
-            dfsClient.getHedgedReadMetrics().incHedgedReadOps();
+          } else if (numHedgedReads > 0) {
+            metrics.incHedgedReadLosses();
           }
           return;
-        } catch (InterruptedException ie) {
-          // Ignore
-        } catch (ExecutionException e) {
-          // exception already handled in the call method. getFirstToComplete
-          // will remove the failing future from the list. nothing more to do.
         }
-        // We got here if exception.  Ignore this node on next go around.
-        ignored.add(chosenNode.info);
+        // We got here if a read failed.  Ignore this node on next go around.
+        if (chosenNode != null) {
+          ignored.add(chosenNode.info);
+        }
       }
       // executed if we get an error from a data node
       block = getBlockAt(block.getStartOffset(), false);
     }
   }
 
-  private Future<ByteBuffer> getHedgedReadFuture(final DNAddrPair chosenNode,
-      final LocatedBlock block, long start,
-      final long end, final ByteBuffer bb,
-      final Map<ExtendedBlock, Set<DatanodeInfo>> corruptedBlockMap,
-      final CountDownLatch hasReceivedResult) {
-    Callable<ByteBuffer> getFromDataNodeCallable =
-        getFromOneDataNode(chosenNode, block, start, end, bb,
-          corruptedBlockMap, hasReceivedResult);
-    return dfsClient.getHedgedReadsThreadPool().submit(getFromDataNodeCallable);
-  }
-
-  private ByteBuffer getFirstToComplete(ArrayList<Future<ByteBuffer>> futures,
-      CountDownLatch latch) throws ExecutionException, InterruptedException {
-    latch.await();
-    for (Future<ByteBuffer> future : futures) {
-      if (future.isDone()) {
-        try {
-          return future.get();
-        } catch (ExecutionException e) {
-          // already logged in the Callable
-          futures.remove(future);
-          throw e;
-        }
-      }
+  /**
+   * Wait for the first of the reads to complete.
+   * @return the result of the read, or null if it failed or there is no
+   *         read to wait for.
+   */
+  private ByteBuffer getFirstToComplete(
+      CompletionService<ByteBuffer> hedgedService,
+      ArrayList<Future<ByteBuffer>> futures) throws InterruptedException {
+    if (futures.isEmpty()) {
+      return null;
+    }
+    Future<ByteBuffer> future = hedgedService.take();
+    futures.remove(future);
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      // already logged in the Callable
+    } catch (CancellationException e) {
+      // cancelled reads are not waited for
     }
-    throw new InterruptedException("latch has counted down to zero but no"
-        + "result available yet, for safety try to request another one from"
-        + "outside loop, this should be rare");
+    return null;
   }
 
   private void cancelAll(List<Future<ByteBuffer>> futures) {
@@ -1316,6 +1602,86 @@ public int read(long position, byte[] buffer, int offset, int length)
     return realLen;
   }
   
+  /**
+   * Read several ranges of the file at once. The ranges less than
+   * dfs.client.read.vectored.max.merge.gap bytes apart are merged into reads
+   * of at most dfs.client.read.vectored.max.merge.size bytes, so that nearby
+   * small ranges do not each set up a block reader, and the merged ranges
+   * are read in parallel with positional reads.
+   */
+  @Override
+  public void readVectored(List<? extends FileRange> ranges)
+      throws IOException {
+    dfsClient.checkOpen();
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    final DFSClient.Conf conf = dfsClient.getConf();
+    final List<CombinedFileRange> merged = VectoredReadUtils.mergeSortedRanges(
+        VectoredReadUtils.sortRanges(ranges), conf.vectoredReadMaxMergeGap,
+        conf.vectoredReadMaxMergeSize);
+    if (merged.isEmpty()) {
+      return;
+    }
+    final long fileLength = getFileLength();
+    final CombinedFileRange last = merged.get(merged.size() - 1);
+    if (last.getEnd() > fileLength) {
+      throw new EOFException("Cannot read " + last + " of " + src
+          + " of length " + fileLength);
+    }
+
+    // read the first range in the calling thread
+    final ThreadPoolExecutor pool = dfsClient.getVectoredReadThreadPool();
+    final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    for (int i = 1; i < merged.size(); i++) {
+      final CombinedFileRange combined = merged.get(i);
+      if (pool == null) {
+        readCombinedRange(combined);
+        continue;
+      }
+      futures.add(pool.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          readCombinedRange(combined);
+          return null;
+        }
+      }));
+    }
+    IOException ioe = null;
+    try {
+      readCombinedRange(merged.get(0));
+    } catch (IOException e) {
+      ioe = e;
+    }
+    for (Future<Void> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        if (ioe == null) {
+          ioe = e.getCause() instanceof IOException ?
+              (IOException)e.getCause() : new IOException(e.getCause());
+        }
+      } catch (InterruptedException e) {
+        for (Future<Void> f : futures) {
+          f.cancel(false);
+        }
+        throw new InterruptedIOException("Interrupted reading ranges of "
+            + src);
+      }
+    }
+    if (ioe != null) {
+      throw ioe;
+    }
+  }
+
+  private void readCombinedRange(CombinedFileRange combined)
+      throws IOException {
+    final byte[] buf = new byte[combined.getLength()];
+    readFully(combined.getOffset(), buf, 0, buf.length);
+    combined.setData(ByteBuffer.wrap(buf));
+    VectoredReadUtils.sliceCombinedRange(combined);
+  }
+
   /**
    * DFSInputStream reports checksum failure.
    * Case I : client has tried multiple data nodes and at least one of the
@@ -92,6 +92,8 @@
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 
 
 /****************************************************************
@@ -132,6 +134,10 @@ public class DFSOutputStream extends FSOutputSummer
   // both dataQueue and ackQueue are protected by dataQueue lock
   private final LinkedList<Packet> dataQueue = new LinkedList<Packet>();
   private final LinkedList<Packet> ackQueue = new LinkedList<Packet>();
+  // the asynchronous flushes waiting for their packet to be acknowledged,
+  // in the order of their seqnos, also protected by dataQueue lock
+  private final LinkedList<PendingFlush> pendingFlushes =
+      new LinkedList<PendingFlush>();
   private Packet currentPacket = null;
   private DataStreamer streamer;
   private long currentSeqno = 0;
@@ -150,6 +156,8 @@ public class DFSOutputStream extends FSOutputSummer
   private Progressable progress;
   private final short blockReplication; // replication factor of file
   private boolean shouldSyncBlock = false; // force blocks to disk upon close
+  // write the blocks to memory and persist them lazily
+  private boolean allowLazyPersist = false;
   private AtomicReference<CachingStrategy> cachingStrategy;
   private boolean failPacket = false;
   
@@ -186,25 +194,26 @@ private static class Packet {
      * Create a heartbeat packet.
      */
     Packet(int checksumSize) {
-      this(0, 0, 0, HEART_BEAT_SEQNO, checksumSize);
+      this(new byte[PacketHeader.PKT_MAX_HEADER_LEN], 0, 0, HEART_BEAT_SEQNO,
+          checksumSize);
     }
     
     /**
      * Create a new packet.
      * 
-     * @param pktSize maximum size of the packet, 
-     *                including checksum data and actual data.
+     * @param buf the buffer of the packet, of the maximum size of the
+     *            header, checksum data and actual data.
      * @param chunksPerPkt maximum number of chunks per packet.
      * @param offsetInBlock offset in bytes into the HDFS block.
      */
-    Packet(int pktSize, int chunksPerPkt, long offsetInBlock, 
+    Packet(byte[] buf, int chunksPerPkt, long offsetInBlock,
                               long seqno, int checksumSize) {
       this.lastPacketInBlock = false;
       this.numChunks = 0;
       this.offsetInBlock = offsetInBlock;
       this.seqno = seqno;
       
-      buf = new byte[PacketHeader.PKT_MAX_HEADER_LEN + pktSize];
+      this.buf = buf;
       
       checksumStart = PacketHeader.PKT_MAX_HEADER_LEN;
       checksumPos = checksumStart;
@@ -274,6 +283,15 @@ void writeTo(DataOutputStream stm) throws IOException {
       }
     }
     
+    /** Return the buffer of the acknowledged packet to the pool. */
+    void releaseBuffer(PacketBufferPool pool) {
+      // empty packets do not use pooled buffers
+      if (buf.length > PacketHeader.PKT_MAX_HEADER_LEN) {
+        pool.returnBuffer(buf);
+      }
+      buf = null;
+    }
+
     // get the packet's last byte's offset in the block
     long getLastByteOffsetBlock() {
       return offsetInBlock + dataPos - dataStart;
@@ -630,6 +648,7 @@ private void closeInternal() {
       synchronized (dataQueue) {
         dataQueue.notifyAll();
       }
+      failPendingFlushes();
     }
 
     /*
@@ -766,11 +785,15 @@ public void run() {
             // update bytesAcked
             block.setNumBytes(one.getLastByteOffsetBlock());
 
+            final List<PendingFlush> acked;
             synchronized (dataQueue) {
               lastAckedSeqno = seqno;
               ackQueue.removeFirst();
+              acked = removeAckedFlushes();
               dataQueue.notifyAll();
             }
+            completeFlushes(acked);
+            one.releaseBuffer(dfsClient.getPacketBufferPool());
           } catch (Exception e) {
             if (!responderClosed) {
               if (e instanceof IOException) {
@@ -843,13 +866,16 @@ private boolean processDatanodeError() throws IOException {
           //
           // We also need to set lastAckedSeqno to the end-of-block Packet's seqno, so that
           // a client waiting on close() will be aware that the flush finished.
+          final List<PendingFlush> acked;
           synchronized (dataQueue) {
             Packet endOfBlockPacket = dataQueue.remove();  // remove the end of block packet
             assert endOfBlockPacket.lastPacketInBlock;
             assert lastAckedSeqno == endOfBlockPacket.seqno - 1;
             lastAckedSeqno = endOfBlockPacket.seqno;
+            acked = removeAckedFlushes();
             dataQueue.notifyAll();
           }
+          completeFlushes(acked);
           endBlock();
         } else {
           initDataStreaming();
@@ -1184,7 +1210,7 @@ private boolean createBlockOutputStream(DatanodeInfo[] nodes, long newGS,
           new Sender(out).writeBlock(block, accessToken, dfsClient.clientName,
               nodes, null, recoveryFlag? stage.getRecoveryStage() : stage, 
               nodes.length, block.getNumBytes(), bytesSent, newGS, checksum,
-              cachingStrategy.get());
+              cachingStrategy.get(), allowLazyPersist);
   
           // receive ack for connect
           BlockOpResponseProto resp = BlockOpResponseProto.parseFrom(
@@ -1403,6 +1429,7 @@ private DFSOutputStream(DFSClient dfsClient, String src, HdfsFileStatus stat,
       DataChecksum checksum, String[] favoredNodes) throws IOException {
     this(dfsClient, src, progress, stat, checksum);
     this.shouldSyncBlock = flag.contains(CreateFlag.SYNC_BLOCK);
+    this.allowLazyPersist = flag.contains(CreateFlag.LAZY_PERSIST);
 
     computePacketChunkSize(dfsClient.getConf().writePacketSize,
         checksum.getBytesPerChecksum());
@@ -1487,6 +1514,24 @@ private void computePacketChunkSize(int psize, int csize) {
     }
   }
 
+  /**
+   * Create a new packet, with a buffer from the pool of the client unless
+   * the packet carries no data.
+   *
+   * @param pktSize maximum size of the packet,
+   *                including checksum data and actual data.
+   * @param chunksPerPkt maximum number of chunks per packet.
+   * @param offsetInBlock offset in bytes into the HDFS block.
+   */
+  private Packet createPacket(int pktSize, int chunksPerPkt,
+      long offsetInBlock, long seqno) {
+    final int bufSize = PacketHeader.PKT_MAX_HEADER_LEN + pktSize;
+    final byte[] buf = pktSize > 0 ?
+        dfsClient.getPacketBufferPool().getBuffer(bufSize) : new byte[bufSize];
+    return new Packet(buf, chunksPerPkt, offsetInBlock, seqno,
+        checksum.getChecksumSize());
+  }
+
   private void queueCurrentPacket() {
     synchronized (dataQueue) {
       if (currentPacket == null) return;
@@ -1547,8 +1592,8 @@ protected synchronized void writeChunk(byte[] b, int offset, int len, byte[] che
     }
 
     if (currentPacket == null) {
-      currentPacket = new Packet(packetSize, chunksPerPacket, 
-          bytesCurBlock, currentSeqno++, this.checksum.getChecksumSize());
+      currentPacket = createPacket(packetSize, chunksPerPacket, 
+          bytesCurBlock, currentSeqno++);
       if (DFSClient.LOG.isDebugEnabled()) {
         DFSClient.LOG.debug("DFSClient writeChunk allocating new packet seqno=" + 
             currentPacket.seqno +
@@ -1595,8 +1640,8 @@ protected synchronized void writeChunk(byte[] b, int offset, int len, byte[] che
       // indicate the end of block and reset bytesCurBlock.
       //
       if (bytesCurBlock == blockSize) {
-        currentPacket = new Packet(0, 0, bytesCurBlock, 
-            currentSeqno++, this.checksum.getChecksumSize());
+        currentPacket = createPacket(0, 0, bytesCurBlock, 
+            currentSeqno++);
         currentPacket.lastPacketInBlock = true;
         currentPacket.syncBlock = shouldSyncBlock;
         waitAndQueueCurrentPacket();
@@ -1643,6 +1688,33 @@ public void hsync(EnumSet<SyncFlag> syncFlags) throws IOException {
     flushOrSync(true, syncFlags);
   }
 
+  /**
+   * Like {@link #hflush()}, except that it does not wait for the data to be
+   * acknowledged by the replicas: the returned future is completed by the
+   * ResponseProcessor once it is, or failed if the stream fails before.
+   * The writer can go on writing meanwhile, so that the flushes of
+   * successive batches of writes overlap with their production.
+   * <p>
+   * Unlike {@link #hflush()}, it does not persist the blocks allocated since
+   * the last flush on the NameNode; the next synchronous flush or the close
+   * of the stream does.
+   *
+   * @return the future completed when the flushed data is acknowledged.
+   */
+  public ListenableFuture<Void> hflushAsync() throws IOException {
+    return flushOrSyncAsync(false);
+  }
+
+  /**
+   * Like {@link #hflushAsync()}, except that the future is completed once
+   * the replicas have done the equivalent of {@link #hsync()}.
+   *
+   * @return the future completed when the synced data is acknowledged.
+   */
+  public ListenableFuture<Void> hsyncAsync() throws IOException {
+    return flushOrSyncAsync(true);
+  }
+
   /**
    * Flush/Sync buffered data to DataNodes.
    * 
@@ -1655,75 +1727,51 @@ public void hsync(EnumSet<SyncFlag> syncFlags) throws IOException {
    *          the NameNode
    * @throws IOException
    */
+  private ListenableFuture<Void> flushOrSyncAsync(boolean isSync)
+      throws IOException {
+    dfsClient.checkOpen();
+    checkClosed();
+    final long toWaitFor;
+    try {
+      toWaitFor = queueFlushPacket(isSync);
+    } catch (InterruptedIOException interrupt) {
+      throw interrupt;
+    } catch (IOException e) {
+      DFSClient.LOG.warn("Error while syncing", e);
+      synchronized (this) {
+        if (!closed) {
+          lastException.set(new IOException("IOException flush:" + e));
+          closeThreads(true);
+        }
+      }
+      throw e;
+    }
+
+    final PendingFlush flush = new PendingFlush(toWaitFor);
+    final boolean acked;
+    synchronized (dataQueue) {
+      acked = lastAckedSeqno >= toWaitFor;
+      if (!acked && !closed) {
+        pendingFlushes.add(flush);
+        return flush.future;
+      }
+    }
+    if (acked) {
+      flush.future.set(null);
+    } else {
+      flush.future.setException(getClosedException());
+    }
+    return flush.future;
+  }
+
   private void flushOrSync(boolean isSync, EnumSet<SyncFlag> syncFlags)
       throws IOException {
     dfsClient.checkOpen();
     checkClosed();
     try {
-      long toWaitFor;
       long lastBlockLength = -1L;
       boolean updateLength = syncFlags.contains(SyncFlag.UPDATE_LENGTH);
-      synchronized (this) {
-        /* Record current blockOffset. This might be changed inside
-         * flushBuffer() where a partial checksum chunk might be flushed.
-         * After the flush, reset the bytesCurBlock back to its previous value,
-         * any partial checksum chunk will be sent now and in next packet.
-         */
-        long saveOffset = bytesCurBlock;
-        Packet oldCurrentPacket = currentPacket;
-        // flush checksum buffer, but keep checksum buffer intact
-        flushBuffer(true);
-        // bytesCurBlock potentially incremented if there was buffered data
-
-        if (DFSClient.LOG.isDebugEnabled()) {
-          DFSClient.LOG.debug(
-            "DFSClient flush() : saveOffset " + saveOffset +  
-            " bytesCurBlock " + bytesCurBlock +
-            " lastFlushOffset " + lastFlushOffset);
-        }
-        // Flush only if we haven't already flushed till this offset.
-        if (lastFlushOffset != bytesCurBlock) {
-          assert bytesCurBlock > lastFlushOffset;
-          // record the valid offset of this flush
-          lastFlushOffset = bytesCurBlock;
-          if (isSync && currentPacket == null) {
-            // Nothing to send right now,
-            // but sync was requested.
-            // Send an empty packet
-            currentPacket = new Packet(packetSize, chunksPerPacket,
-                bytesCurBlock, currentSeqno++, this.checksum.getChecksumSize());
-          }
-        } else {
-          // We already flushed up to this offset.
-          // This means that we haven't written anything since the last flush
-          // (or the beginning of the file). Hence, we should not have any
-          // packet queued prior to this call, since the last flush set
-          // currentPacket = null.
-          assert oldCurrentPacket == null :
-            "Empty flush should not occur with a currentPacket";
-
-          if (isSync && bytesCurBlock > 0) {
-            // Nothing to send right now,
-            // and the block was partially written,
-            // and sync was requested.
-            // So send an empty sync packet.
-            currentPacket = new Packet(packetSize, chunksPerPacket,
-                bytesCurBlock, currentSeqno++, this.checksum.getChecksumSize());
-          } else {
-            // just discard the current packet since it is already been sent.
-            currentPacket = null;
-          }
-        }
-        if (currentPacket != null) {
-          currentPacket.syncBlock = isSync;
-          waitAndQueueCurrentPacket();          
-        }
-        // Restore state of stream. Record the last flush offset 
-        // of the last full chunk that was flushed.
-        //
-        bytesCurBlock = saveOffset;
-        toWaitFor = lastQueuedSeqno;
-      } // end synchronized
+      long toWaitFor = queueFlushPacket(isSync);
 
       waitForAckedSeqno(toWaitFor);
 
@@ -1775,6 +1823,75 @@ private void flushOrSync(boolean isSync, EnumSet<SyncFlag> syncFlags)
     }
   }
 
+  /**
+   * Queue the buffered data, and an empty packet if it is needed to sync
+   * the replicas, for a flush or a sync.
+   *
+   * @return the seqno of the packet to be acknowledged for the flush.
+   */
+  private synchronized long queueFlushPacket(boolean isSync)
+      throws IOException {
+    /* Record current blockOffset. This might be changed inside
+     * flushBuffer() where a partial checksum chunk might be flushed.
+     * After the flush, reset the bytesCurBlock back to its previous value,
+     * any partial checksum chunk will be sent now and in next packet.
+     */
+    long saveOffset = bytesCurBlock;
+    Packet oldCurrentPacket = currentPacket;
+    // flush checksum buffer, but keep checksum buffer intact
+    flushBuffer(true);
+    // bytesCurBlock potentially incremented if there was buffered data
+
+    if (DFSClient.LOG.isDebugEnabled()) {
+      DFSClient.LOG.debug(
+        "DFSClient flush() : saveOffset " + saveOffset +  
+        " bytesCurBlock " + bytesCurBlock +
+        " lastFlushOffset " + lastFlushOffset);
+    }
+    // Flush only if we haven't already flushed till this offset.
+    if (lastFlushOffset != bytesCurBlock) {
+      assert bytesCurBlock > lastFlushOffset;
+      // record the valid offset of this flush
+      lastFlushOffset = bytesCurBlock;
+      if (isSync && currentPacket == null) {
+        // Nothing to send right now,
+        // but sync was requested.
+        // Send an empty packet
+        currentPacket = createPacket(packetSize, chunksPerPacket,
+            bytesCurBlock, currentSeqno++);
+      }
+    } else {
+      // We already flushed up to this offset.
+      // This means that we haven't written anything since the last flush
+      // (or the beginning of the file). Hence, we should not have any
+      // packet queued prior to this call, since the last flush set
+      // currentPacket = null.
+      assert oldCurrentPacket == null :
+        "Empty flush should not occur with a currentPacket";
+
+      if (isSync && bytesCurBlock > 0) {
+        // Nothing to send right now,
+        // and the block was partially written,
+        // and sync was requested.
+        // So send an empty sync packet.
+        currentPacket = createPacket(packetSize, chunksPerPacket,
+            bytesCurBlock, currentSeqno++);
+      } else {
+        // just discard the current packet since it is already been sent.
+        currentPacket = null;
+      }
+    }
+    if (currentPacket != null) {
+      currentPacket.syncBlock = isSync;
+      waitAndQueueCurrentPacket();          
+    }
+    // Restore state of stream. Record the last flush offset 
+    // of the last full chunk that was flushed.
+    //
+    bytesCurBlock = saveOffset;
+    return lastQueuedSeqno;
+  }
+
   /**
    * @deprecated use {@link HdfsDataOutputStream#getCurrentBlockReplication()}.
    */
@@ -1821,6 +1938,62 @@ private void flushInternal() throws IOException {
     waitForAckedSeqno(toWaitFor);
   }
 
+  /** An asynchronous flush, see {@link #hflushAsync()}. */
+  private static class PendingFlush {
+    private final long seqno;
+    private final SettableFuture<Void> future = SettableFuture.create();
+
+    PendingFlush(long seqno) {
+      this.seqno = seqno;
+    }
+  }
+
+  /**
+   * Remove the asynchronous flushes whose packet is acknowledged; the caller
+   * must hold dataQueue lock, and complete them once it released it.
+   */
+  private List<PendingFlush> removeAckedFlushes() {
+    if (pendingFlushes.isEmpty()
+        || pendingFlushes.getFirst().seqno > lastAckedSeqno) {
+      return null;
+    }
+    final List<PendingFlush> acked = new ArrayList<PendingFlush>();
+    while (!pendingFlushes.isEmpty()
+        && pendingFlushes.getFirst().seqno <= lastAckedSeqno) {
+      acked.add(pendingFlushes.removeFirst());
+    }
+    return acked;
+  }
+
+  private static void completeFlushes(List<PendingFlush> acked) {
+    if (acked != null) {
+      for (PendingFlush flush : acked) {
+        flush.future.set(null);
+      }
+    }
+  }
+
+  /** Fail the asynchronous flushes once the stream is closed. */
+  private void failPendingFlushes() {
+    final List<PendingFlush> failed;
+    synchronized (dataQueue) {
+      if (pendingFlushes.isEmpty()) {
+        return;
+      }
+      failed = new ArrayList<PendingFlush>(pendingFlushes);
+      pendingFlushes.clear();
+    }
+    final IOException e = getClosedException();
+    for (PendingFlush flush : failed) {
+      flush.future.setException(e);
+    }
+  }
+
+  private IOException getClosedException() {
+    final IOException e = lastException.get();
+    return e != null ? e : new ClosedChannelException();
+  }
+
   private void waitForAckedSeqno(long seqno) throws IOException {
     if (DFSClient.LOG.isDebugEnabled()) {
       DFSClient.LOG.debug("Waiting for ack for: " + seqno);
@@ -1879,6 +2052,7 @@ private void closeThreads(boolean force) throws IOException {
       streamer = null;
       s = null;
       closed = true;
+      failPendingFlushes();
     }
   }
   
@@ -1905,8 +2079,8 @@ public synchronized void close() throws IOException {
 
       if (bytesCurBlock != 0) {
         // send an empty packet to mark the end of the block
-        currentPacket = new Packet(0, 0, bytesCurBlock, 
-            currentSeqno++, this.checksum.getChecksumSize());
+        currentPacket = createPacket(0, 0, bytesCurBlock, 
+            currentSeqno++);
         currentPacket.lastPacketInBlock = true;
         currentPacket.syncBlock = shouldSyncBlock;
       }
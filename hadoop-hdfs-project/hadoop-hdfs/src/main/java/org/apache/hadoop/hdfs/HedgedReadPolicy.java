@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Decides when a client starts a hedged read, see
+ * {@link DFSInputStream#hedgedFetchBlockByteRange}.
+ * <p>
+ * With dfs.client.hedged.read.adaptive.enabled, a read is hedged once it
+ * has taken longer than the given percentile of the latencies of the recent
+ * reads of the client, or of the DataNode being read with
+ * dfs.client.hedged.read.adaptive.per.datanode, instead of the fixed
+ * dfs.client.hedged.read.threshold.millis. The fixed threshold is used until
+ * enough reads are observed. In either case, at most
+ * dfs.client.hedged.read.max.fraction of the recent reads are hedged.
+ */
+@InterfaceAudience.Private
+class HedgedReadPolicy {
+  /** The number of reads observed before the threshold adapts. */
+  @VisibleForTesting
+  static final int MIN_SAMPLES = 50;
+  /** The statistics are halved after that many reads to follow the load. */
+  private static final int DECAY_SAMPLES = 2048;
+
+  private final boolean adaptive;
+  private final double percentile;
+  private final boolean perDatanode;
+  private final double maxHedgedFraction;
+
+  private final LatencyHistogram clientLatencies = new LatencyHistogram();
+  private final ConcurrentMap<String, LatencyHistogram> datanodeLatencies =
+      new ConcurrentHashMap<String, LatencyHistogram>();
+  // the recent reads and hedged reads, for the budget
+  private long reads = 0;
+  private long hedgedReads = 0;
+
+  HedgedReadPolicy(Configuration conf) {
+    adaptive = conf.getBoolean(
+        DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_ENABLED_KEY,
+        DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_ENABLED_DEFAULT);
+    percentile = conf.getFloat(
+        DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_PERCENTILE_KEY,
+        DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_PERCENTILE_DEFAULT)
+        / 100;
+    perDatanode = conf.getBoolean(
+        DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_PER_DATANODE_KEY,
+        DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_PER_DATANODE_DEFAULT);
+    maxHedgedFraction = conf.getFloat(
+        DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_MAX_FRACTION_KEY,
+        DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_MAX_FRACTION_DEFAULT);
+  }
+
+  /**
+   * @return the time in milliseconds after which a read from the DataNode
+   *         is hedged.
+   */
+  long getThresholdMillis(DatanodeInfo datanode, long fixedThresholdMillis) {
+    if (!adaptive) {
+      return fixedThresholdMillis;
+    }
+    if (perDatanode) {
+      final LatencyHistogram h = datanodeLatencies.get(
+          datanode.getDatanodeUuid());
+      if (h != null && h.getCount() >= MIN_SAMPLES) {
+        return h.getPercentile(percentile);
+      }
+    }
+    if (clientLatencies.getCount() >= MIN_SAMPLES) {
+      return clientLatencies.getPercentile(percentile);
+    }
+    return fixedThresholdMillis;
+  }
+
+  /** Record the latency of a read from a DataNode. */
+  void addLatency(DatanodeInfo datanode, long millis) {
+    if (!adaptive) {
+      return;
+    }
+    clientLatencies.add(millis);
+    if (perDatanode) {
+      LatencyHistogram h = datanodeLatencies.get(datanode.getDatanodeUuid());
+      if (h == null) {
+        final LatencyHistogram newHistogram = new LatencyHistogram();
+        h = datanodeLatencies.putIfAbsent(datanode.getDatanodeUuid(),
+            newHistogram);
+        if (h == null) {
+          h = newHistogram;
+        }
+      }
+      h.add(millis);
+    }
+  }
+
+  /** Record a read which may be hedged. */
+  synchronized void addRead() {
+    if (++reads >= DECAY_SAMPLES) {
+      reads /= 2;
+      hedgedReads /= 2;
+    }
+  }
+
+  /**
+   * Reserve a hedged read in the budget.
+   * @return false if too many of the recent reads were hedged.
+   */
+  synchronized boolean tryHedge() {
+    if (hedgedReads + 1 > maxHedgedFraction * Math.max(reads, 1)) {
+      return false;
+    }
+    hedgedReads++;
+    return true;
+  }
+
+  /**
+   * A histogram of latencies with logarithmic buckets, four per power of
+   * two milliseconds, whose counts are halved regularly so that it reflects
+   * the recent latencies.
+   */
+  @VisibleForTesting
+  static class LatencyHistogram {
+    private static final int BUCKETS_PER_DOUBLING = 4;
+    private static final int NUM_BUCKETS = 18 * BUCKETS_PER_DOUBLING;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private long count = 0;
+
+    private static int getBucket(long millis) {
+      if (millis < 1) {
+        return 0;
+      }
+      final int bucket = 1 + (int)(BUCKETS_PER_DOUBLING
+          * Math.log(millis) / Math.log(2));
+      return Math.min(bucket, NUM_BUCKETS - 1);
+    }
+
+    /** @return the largest latency of the bucket, rounded up. */
+    private static long getUpperBound(int bucket) {
+      return (long)Math.ceil(Math.pow(2, (double)bucket / BUCKETS_PER_DOUBLING));
+    }
+
+    void add(long millis) {
+      buckets.incrementAndGet(getBucket(millis));
+      synchronized (this) {
+        if (++count >= DECAY_SAMPLES) {
+          count = 0;
+          for (int i = 0; i < NUM_BUCKETS; i++) {
+            long c;
+            do {
+              c = buckets.get(i);
+            } while (!buckets.compareAndSet(i, c, c / 2));
+            count += c / 2;
+          }
+        }
+      }
+    }
+
+    synchronized long getCount() {
+      return count;
+    }
+
+    /** @return the given percentile, in [0, 1], of the latencies. */
+    long getPercentile(double p) {
+      long total = 0;
+      final long[] counts = new long[NUM_BUCKETS];
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        counts[i] = buckets.get(i);
+        total += counts[i];
+      }
+      final double target = p * total;
+      long cumulative = 0;
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        cumulative += counts[i];
+        if (cumulative >= target && cumulative > 0) {
+          return getUpperBound(i);
+        }
+      }
+      return getUpperBound(NUM_BUCKETS - 1);
+    }
+  }
+}
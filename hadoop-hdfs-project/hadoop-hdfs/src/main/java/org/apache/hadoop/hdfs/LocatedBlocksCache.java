@@ -0,0 +1,232 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A cache of the block locations of the closed files, shared by the clients
+ * of a {@link ClientContext}, so that a file opened again shortly after does
+ * not ask the NameNode for its block locations again.
+ * <p>
+ * The entries expire after a given time, and the least recently used entries
+ * are evicted once the cache is full. Since the block locations returned by
+ * the NameNode do not carry the id of the file, the entries are keyed by the
+ * path of the file, with the namespace and the user which fetched them: a
+ * context is shared by the clients of all the namespaces and users of the
+ * JVM, and the locations carry the block tokens granted to the user after
+ * checking its permissions. An entry is invalidated when a client of the
+ * context deletes, renames or overwrites the file, or fails to read a block
+ * from the cached locations. The hits and misses of the cache are publicly
+ * accessible, like {@link DFSHedgedReadMetrics}.
+ */
+@InterfaceAudience.Private
+public class LocatedBlocksCache {
+  private static class Key {
+    private final String namespace;
+    private final String user;
+    private final String src;
+
+    Key(String namespace, String user, String src) {
+      this.namespace = namespace;
+      this.user = user;
+      this.src = src;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key that = (Key)o;
+      return namespace.equals(that.namespace) && user.equals(that.user)
+          && src.equals(that.src);
+    }
+
+    @Override
+    public int hashCode() {
+      return (namespace.hashCode() * 31 + user.hashCode()) * 31
+          + src.hashCode();
+    }
+  }
+
+  private static class Value {
+    private final LocatedBlocks blocks;
+    private final long time;
+
+    Value(LocatedBlocks blocks, long time) {
+      this.blocks = blocks;
+      this.time = time;
+    }
+  }
+
+  private final int capacity;
+  private final long expiryPeriod;
+  private final LinkedHashMap<Key, Value> map;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  /**
+   * @param capacity the maximum number of files cached; nothing is cached
+   *                 if it is not positive.
+   * @param expiryPeriod the time in milliseconds the entries are kept.
+   */
+  LocatedBlocksCache(int capacity, long expiryPeriod) {
+    this.capacity = capacity;
+    this.expiryPeriod = expiryPeriod;
+    this.map = new LinkedHashMap<Key, Value>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Value> eldest) {
+        return size() > LocatedBlocksCache.this.capacity;
+      }
+    };
+  }
+
+  boolean isEnabled() {
+    return capacity > 0 && expiryPeriod > 0;
+  }
+
+  /**
+   * @param namespace the URI of the NameNode of the file.
+   * @param user the user opening the file.
+   * @return a copy of the block locations of the file cached for the user,
+   *         or null if they are not cached or expired.
+   */
+  LocatedBlocks get(String namespace, String user, String src) {
+    if (!isEnabled()) {
+      return null;
+    }
+    final Key key = new Key(namespace, user, src);
+    final Value value;
+    synchronized (this) {
+      value = map.get(key);
+      if (value != null && Time.monotonicNow() - value.time >= expiryPeriod) {
+        map.remove(key);
+        misses.incrementAndGet();
+        return null;
+      }
+    }
+    if (value == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return copy(value.blocks);
+  }
+
+  /**
+   * Cache the block locations of a file fetched by a user, if it is closed
+   * and the locations cover the whole file.
+   */
+  void put(String namespace, String user, String src, LocatedBlocks blocks) {
+    if (!isEnabled() || blocks.isUnderConstruction()
+        || !blocks.isLastBlockComplete() || !coversWholeFile(blocks)) {
+      return;
+    }
+    final Value value = new Value(copy(blocks), Time.monotonicNow());
+    synchronized (this) {
+      map.put(new Key(namespace, user, src), value);
+    }
+  }
+
+  /**
+   * Invalidate the entries of all the users for the path and the paths under
+   * it in the namespace.
+   */
+  void invalidate(String namespace, String src) {
+    if (!isEnabled()) {
+      return;
+    }
+    final String prefix = src.endsWith(Path.SEPARATOR) ? src
+        : src + Path.SEPARATOR;
+    synchronized (this) {
+      for (Iterator<Key> it = map.keySet().iterator(); it.hasNext();) {
+        final Key key = it.next();
+        if (key.namespace.equals(namespace)
+            && (key.src.equals(src) || key.src.startsWith(prefix))) {
+          it.remove();
+          invalidations.incrementAndGet();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return whether the locations start at the first block of the file and
+   *         end at its last block, rather than being a prefetched range.
+   */
+  private static boolean coversWholeFile(LocatedBlocks blocks) {
+    final List<LocatedBlock> list = blocks.getLocatedBlocks();
+    final LocatedBlock last = blocks.getLastLocatedBlock();
+    if (list.isEmpty()) {
+      return last == null && blocks.getFileLength() == 0;
+    }
+    return list.get(0).getStartOffset() == 0 && last != null
+        && list.get(list.size() - 1).getBlock().equals(last.getBlock());
+  }
+
+  /**
+   * The streams modify the list of the blocks they fetch, so the cache and
+   * each stream have their own list.
+   */
+  private static LocatedBlocks copy(LocatedBlocks blocks) {
+    return new LocatedBlocks(blocks.getFileLength(),
+        blocks.isUnderConstruction(),
+        new ArrayList<LocatedBlock>(blocks.getLocatedBlocks()),
+        blocks.getLastLocatedBlock(), blocks.isLastBlockComplete());
+  }
+
+  /** @return the number of files cached. */
+  @VisibleForTesting
+  public synchronized int size() {
+    return map.size();
+  }
+
+  /** @return the number of opens served by the cache. */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /** @return the number of opens which were not served by the cache. */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /** @return the number of entries invalidated. */
+  public long getInvalidations() {
+    return invalidations.get();
+  }
+}
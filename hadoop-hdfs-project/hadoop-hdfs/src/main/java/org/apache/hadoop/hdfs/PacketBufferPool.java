@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * A pool of the buffers of the packets written by the output streams of a
+ * client, see {@link DFSOutputStream}. The buffer of a packet is returned to
+ * the pool once the packet is acknowledged by the pipeline, so that a client
+ * writing at a high rate does not allocate a new buffer for every packet.
+ * <p>
+ * The buffers are pooled by length, since the streams of a client may use
+ * different packet sizes, and at most a given number of buffers are kept in
+ * the pool. The hits and misses of the pool are publicly accessible, like
+ * {@link DFSHedgedReadMetrics}.
+ */
+@InterfaceAudience.Private
+public class PacketBufferPool {
+  private final int maxBuffers;
+  private final Map<Integer, ArrayDeque<byte[]>> buffers =
+      new HashMap<Integer, ArrayDeque<byte[]>>();
+  private int numBuffers = 0;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * @param maxBuffers the maximum number of buffers kept in the pool;
+   *                   nothing is pooled if it is not positive.
+   */
+  PacketBufferPool(int maxBuffers) {
+    this.maxBuffers = maxBuffers;
+  }
+
+  /** @return a buffer of the given length, pooled or newly allocated. */
+  byte[] getBuffer(int length) {
+    if (maxBuffers > 0) {
+      synchronized (this) {
+        final ArrayDeque<byte[]> queue = buffers.get(length);
+        if (queue != null && !queue.isEmpty()) {
+          numBuffers--;
+          hits.incrementAndGet();
+          return queue.pollFirst();
+        }
+      }
+    }
+    misses.incrementAndGet();
+    return new byte[length];
+  }
+
+  /**
+   * Return a buffer to the pool. The caller must not use the buffer any
+   * more.
+   */
+  void returnBuffer(byte[] buf) {
+    if (maxBuffers <= 0) {
+      return;
+    }
+    synchronized (this) {
+      if (numBuffers >= maxBuffers) {
+        return;
+      }
+      ArrayDeque<byte[]> queue = buffers.get(buf.length);
+      if (queue == null) {
+        queue = new ArrayDeque<byte[]>();
+        buffers.put(buf.length, queue);
+      }
+      queue.addFirst(buf);
+      numBuffers++;
+    }
+  }
+
+  /** @return the number of buffers in the pool. */
+  public synchronized int getNumBuffers() {
+    return numBuffers;
+  }
+
+  /** @return the number of buffers taken from the pool. */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /** @return the number of buffers allocated since the pool was empty. */
+  public long getMisses() {
+    return misses.get();
+  }
+}
@@ -21,7 +21,9 @@
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
@@ -29,6 +31,7 @@
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.hdfs.net.Peer;
@@ -37,8 +40,18 @@
 
 /**
  * A cache of input stream sockets to Data Node.
+ * <p>
+ * The idle connections are kept for the given expiry period, at most the
+ * given capacity in total, and at most the given number per DataNode, so that
+ * a few busy DataNodes do not take the whole cache. A connection is reused by
+ * any operation sent to the same DataNode, reads and block checksums alike;
+ * the most recently cached connection is reused first, being the least
+ * likely to have been closed by the DataNode in the meantime. The hits and
+ * misses of the cache are publicly accessible, like
+ * {@link DFSHedgedReadMetrics}.
  */
-class PeerCache {
+@InterfaceAudience.Private
+public class PeerCache {
   private static final Log LOG = LogFactory.getLog(PeerCache.class);
   
   private static class Key {
@@ -89,10 +102,28 @@ long getTime() {
     LinkedListMultimap.create();
   private final int capacity;
   private final long expiryPeriod;
+  private final int maxPerDatanode;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong expired = new AtomicLong();
+  private final AtomicLong evicted = new AtomicLong();
   
   public PeerCache(int c, long e) {
+    this(c, e, 0);
+  }
+
+  /**
+   * @param c the maximum number of cached peers.
+   * @param e the period after which a cached peer is closed.
+   * @param maxPerDatanode the maximum number of cached peers of a kind
+   *                       connected to a DataNode; not limited if it is not
+   *                       positive.
+   */
+  public PeerCache(int c, long e, int maxPerDatanode) {
     this.capacity = c;
     this.expiryPeriod = e;
+    this.maxPerDatanode = maxPerDatanode;
 
     if (capacity == 0 ) {
       LOG.info("SocketCache disabled.");
@@ -148,16 +179,20 @@ public synchronized Peer get(DatanodeID dnId, boolean isDomain) {
 
     List<Value> sockStreamList = multimap.get(new Key(dnId, isDomain));
     if (sockStreamList == null) {
+      misses.incrementAndGet();
       return null;
     }
 
-    Iterator<Value> iter = sockStreamList.iterator();
-    while (iter.hasNext()) {
-      Value candidate = iter.next();
+    // Most recently cached first.
+    ListIterator<Value> iter =
+        sockStreamList.listIterator(sockStreamList.size());
+    while (iter.hasPrevious()) {
+      Value candidate = iter.previous();
       iter.remove();
       long ageMs = Time.monotonicNow() - candidate.getTime();
       Peer peer = candidate.getPeer();
       if (ageMs >= expiryPeriod) {
+        expired.incrementAndGet();
         try {
           peer.close();
         } catch (IOException e) {
@@ -165,9 +200,11 @@ public synchronized Peer get(DatanodeID dnId, boolean isDomain) {
                 ", which is " + ageMs + " ms old");
         }
       } else if (!peer.isClosed()) {
+        hits.incrementAndGet();
         return peer;
       }
     }
+    misses.incrementAndGet();
     return null;
   }
 
@@ -187,17 +224,44 @@ public synchronized void put(DatanodeID dnId, Peer peer) {
  
     startExpiryDaemon();
 
+    final Key key = new Key(dnId, peer.getDomainSocket() != null);
+    if (maxPerDatanode > 0) {
+      List<Value> sockStreamList = multimap.get(key);
+      if (sockStreamList.size() >= maxPerDatanode) {
+        IOUtils.cleanup(LOG, sockStreamList.remove(0).getPeer());
+        evicted.incrementAndGet();
+      }
+    }
     if (capacity == multimap.size()) {
       evictOldest();
     }
-    multimap.put(new Key(dnId, peer.getDomainSocket() != null),
-        new Value(peer, Time.monotonicNow()));
+    multimap.put(key, new Value(peer, Time.monotonicNow()));
   }
 
   public synchronized int size() {
     return multimap.size();
   }
 
+  /** @return the number of peers taken from the cache. */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /** @return the number of requests for which no peer was cached. */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /** @return the number of peers closed after the expiry period. */
+  public long getExpired() {
+    return expired.get();
+  }
+
+  /** @return the number of peers closed to make room for others. */
+  public long getEvicted() {
+    return evicted.get();
+  }
+
   /**
    * Evict and close sockets older than expiry period from the cache.
    */
@@ -214,6 +278,7 @@ private synchronized void evictExpired(long expiryPeriod) {
       }
       IOUtils.cleanup(LOG, entry.getValue().getPeer());
       iter.remove();
+      expired.incrementAndGet();
     }
   }
 
@@ -233,6 +298,7 @@ private synchronized void evictOldest() {
     Entry<Key, Value> entry = iter.next();
     IOUtils.cleanup(LOG, entry.getValue().getPeer());
     iter.remove();
+    evicted.incrementAndGet();
   }
 
   /**
@@ -21,11 +21,16 @@
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.util.EnumSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -53,6 +58,7 @@
 import org.apache.hadoop.util.DataChecksum;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
  * This is a wrapper around connection to datanode
@@ -94,6 +100,17 @@ public class RemoteBlockReader2  implements BlockReader {
   private PacketReceiver packetReceiver = new PacketReceiver(true);
   private ByteBuffer curDataSlice = null;
 
+  /**
+   * The pool receiving and verifying the next packet while the current one
+   * is consumed, or null if the packets are received and verified by the
+   * reading thread.
+   */
+  private final ExecutorService pipelineExecutor;
+  /** The receiver of the packet received by pipelineExecutor. */
+  private PacketReceiver nextPacketReceiver = null;
+  /** The task receiving the next packet, if any. */
+  private Future<Void> nextPacket = null;
+
   /** offset in block of the last chunk received */
   private long lastSeqNo = -1;
 
@@ -169,8 +186,14 @@ public int read(ByteBuffer buf) throws IOException {
   }
 
   private void readNextPacket() throws IOException {
-    //Read packet headers.
-    packetReceiver.receiveNextPacket(in);
+    // Is the packet already received and verified in the background?
+    final boolean verified = nextPacket != null;
+    if (verified) {
+      waitForNextPacket();
+    } else {
+      //Read packet headers.
+      packetReceiver.receiveNextPacket(in);
+    }
 
     PacketHeader curHeader = packetReceiver.getHeader();
     curDataSlice = packetReceiver.getDataSlice();
@@ -195,7 +218,7 @@ private void readNextPacket() throws IOException {
           " checksumsLen=" + checksumsLen;
       
       lastSeqNo = curHeader.getSeqno();
-      if (verifyChecksum && curDataSlice.remaining() > 0) {
+      if (verifyChecksum && curDataSlice.remaining() > 0 && !verified) {
         // N.B.: the checksum error offset reported here is actually
         // relative to the start of the block, not the start of the file.
         // This is slightly misleading, but preserves the behavior from
@@ -223,7 +246,63 @@ private void readNextPacket() throws IOException {
       } else {
         sendReadResult(Status.SUCCESS);
       }
+    } else if (pipelineExecutor != null) {
+      receiveNextPacketInBackground();
+    }
+  }
+
+  /**
+   * Receive and verify the next packet in pipelineExecutor, while the
+   * current packet is consumed. The packet is verified only if its header is
+   * sane; the reading thread checks the header again, and fails the read
+   * otherwise.
+   */
+  private void receiveNextPacketInBackground() {
+    if (nextPacketReceiver == null) {
+      nextPacketReceiver = new PacketReceiver(true);
+    }
+    final PacketReceiver receiver = nextPacketReceiver;
+    final DataChecksum checksum = this.checksum;
+    final long prevSeqNo = lastSeqNo;
+    nextPacket = pipelineExecutor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws IOException {
+        receiver.receiveNextPacket(in);
+        final PacketHeader header = receiver.getHeader();
+        if (verifyChecksum && header.getDataLen() > 0
+            && header.sanityCheck(prevSeqNo)) {
+          checksum.verifyChunkedSums(receiver.getDataSlice(),
+              receiver.getChecksumSlice(), filename,
+              header.getOffsetInBlock());
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Wait for the next packet received in the background, and make it the
+   * current packet.
+   */
+  private void waitForNextPacket() throws IOException {
+    try {
+      nextPacket.get();
+    } catch (InterruptedException e) {
+      // nextPacket is still being received; it is waited for again.
+      throw new InterruptedIOException("Interrupted while receiving a packet"
+          + " from " + peer.getRemoteAddressString());
+    } catch (ExecutionException e) {
+      nextPacket = null;
+      if (e.getCause() instanceof IOException) {
+        throw (IOException)e.getCause();
+      }
+      throw new IOException("Failed to receive a packet from "
+          + peer.getRemoteAddressString(), e.getCause());
     }
+    nextPacket = null;
+    final PacketReceiver received = nextPacketReceiver;
+    nextPacketReceiver = packetReceiver;
+    packetReceiver = received;
   }
   
   @Override
@@ -264,7 +343,8 @@ private void readTrailingEmptyPacket() throws IOException {
   protected RemoteBlockReader2(String file, String bpid, long blockId,
       DataChecksum checksum, boolean verifyChecksum,
       long startOffset, long firstChunkOffset, long bytesToRead, Peer peer,
-      DatanodeID datanodeID, PeerCache peerCache) {
+      DatanodeID datanodeID, PeerCache peerCache,
+      ExecutorService pipelineExecutor) {
     this.isLocal = DFSClient.isLocalAddress(NetUtils.
         createSocketAddr(datanodeID.getXferAddr()));
     // Path is used only for printing block and file information in debug
@@ -276,6 +356,7 @@ protected RemoteBlockReader2(String file, String bpid, long blockId,
     this.startOffset = Math.max( startOffset, 0 );
     this.filename = file;
     this.peerCache = peerCache;
+    this.pipelineExecutor = pipelineExecutor;
 
     // The total number of bytes that we need to transfer from the DN is
     // the amount that the user wants (bytesToRead), plus the padding at
@@ -289,12 +370,28 @@ protected RemoteBlockReader2(String file, String bpid, long blockId,
 
   @Override
   public synchronized void close() throws IOException {
+    boolean peerClosed = false;
+    if (nextPacket != null) {
+      // The read is not finished, so the peer is not reused.  Closing it
+      // fails the packet being received, if it is not received yet.
+      peer.close();
+      peerClosed = true;
+      try {
+        Uninterruptibles.getUninterruptibly(nextPacket);
+      } catch (ExecutionException e) {
+        // ignore, the read is abandoned
+      }
+      nextPacket = null;
+    }
     packetReceiver.close();
+    if (nextPacketReceiver != null) {
+      nextPacketReceiver.close();
+    }
     startOffset = -1;
     checksum = null;
     if (peerCache != null && sentStatusCode) {
       peerCache.put(datanodeID, peer);
-    } else {
+    } else if (!peerClosed) {
       peer.close();
     }
 
@@ -381,6 +478,28 @@ public static BlockReader newBlockReader(String file,
                                      Peer peer, DatanodeID datanodeID,
                                      PeerCache peerCache,
                                      CachingStrategy cachingStrategy) throws IOException {
+    return newBlockReader(file, block, blockToken, startOffset, len,
+        verifyChecksum, clientName, peer, datanodeID, peerCache,
+        cachingStrategy, null);
+  }
+
+  /**
+   * Like {@link #newBlockReader(String, ExtendedBlock, Token, long, long,
+   * boolean, String, Peer, DatanodeID, PeerCache, CachingStrategy)}, with the
+   * next packet received and verified by pipelineExecutor while the current
+   * one is consumed, if it is not null.
+   */
+  public static BlockReader newBlockReader(String file,
+                                     ExtendedBlock block,
+                                     Token<BlockTokenIdentifier> blockToken,
+                                     long startOffset, long len,
+                                     boolean verifyChecksum,
+                                     String clientName,
+                                     Peer peer, DatanodeID datanodeID,
+                                     PeerCache peerCache,
+                                     CachingStrategy cachingStrategy,
+                                     ExecutorService pipelineExecutor)
+                                     throws IOException {
     // in and out will be closed when sock is closed (by the caller)
     final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
           peer.getOutputStream()));
@@ -413,7 +532,7 @@ public static BlockReader newBlockReader(String file,
 
     return new RemoteBlockReader2(file, block.getBlockPoolId(), block.getBlockId(),
         checksum, verifyChecksum, startOffset, firstChunkOffset, len, peer,
-        datanodeID, peerCache);
+        datanodeID, peerCache, pipelineExecutor);
   }
 
   static void checkSuccess(
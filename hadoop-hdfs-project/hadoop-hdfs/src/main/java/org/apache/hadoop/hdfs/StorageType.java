@@ -24,12 +24,22 @@
 /**
  * Defines the types of supported storage media. The default storage
  * medium is assumed to be DISK.
+ * <p>
+ * RAM_DISK is a memory-backed file system, such as tmpfs. Its content does
+ * not survive a reboot of the node, so replicas are only written there when
+ * the writer asks for lazy persistence.
  */
 @InterfaceAudience.Public
 @InterfaceStability.Unstable
 public enum StorageType {
   DISK,
-  SSD;
+  SSD,
+  RAM_DISK;
 
   public static StorageType DEFAULT = DISK;
+
+  /** @return true if the content of the storage is lost on reboot. */
+  public boolean isTransient() {
+    return this == RAM_DISK;
+  }
 }
\ No newline at end of file
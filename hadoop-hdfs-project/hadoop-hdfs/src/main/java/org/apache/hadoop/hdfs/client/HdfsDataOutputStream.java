@@ -19,6 +19,7 @@
 
 import java.io.IOException;
 import java.util.EnumSet;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -70,6 +71,30 @@ public void hsync(EnumSet<SyncFlag> syncFlags) throws IOException {
     ((DFSOutputStream) getWrappedStream()).hsync(syncFlags);
   }
   
+  /**
+   * Flush buffered data to DataNodes without waiting for the
+   * acknowledgements of the replicas.
+   *
+   * @return a future completed once the data is flushed, see
+   *         {@link FSDataOutputStream#hflush()}.
+   * @throws IOException
+   */
+  public Future<Void> hflushAsync() throws IOException {
+    return ((DFSOutputStream) getWrappedStream()).hflushAsync();
+  }
+
+  /**
+   * Sync buffered data to DataNodes without waiting for the acknowledgements
+   * of the replicas.
+   *
+   * @return a future completed once the data is synced, see
+   *         {@link FSDataOutputStream#hsync()}.
+   * @throws IOException
+   */
+  public Future<Void> hsyncAsync() throws IOException {
+    return ((DFSOutputStream) getWrappedStream()).hsyncAsync();
+  }
+
   public static enum SyncFlag {
     /**
      * When doing sync to DataNodes, also update the metadata (block
@@ -247,11 +247,21 @@ public interface ShortCircuitReplicaCreator {
    */
   private boolean closed = false;
 
+  /**
+   * Maximum total length of the existing mmaps, or 0 if not limited.
+   */
+  private final long maxMmapBytes;
+
   /**
    * Number of existing mmaps associated with this cache.
    */
   private int outstandingMmapCount = 0;
 
+  /**
+   * Total length of the existing mmaps, including the mmaps being created.
+   */
+  private long outstandingMmapBytes = 0;
+
   /**
    * Create a {@link ShortCircuitCache} object from a {@link Configuration}
    */
@@ -268,12 +278,22 @@ public static ShortCircuitCache fromConf(Configuration conf) {
         conf.getLong(DFSConfigKeys.DFS_CLIENT_MMAP_RETRY_TIMEOUT_MS,
             DFSConfigKeys.DFS_CLIENT_MMAP_RETRY_TIMEOUT_MS_DEFAULT),
         conf.getLong(DFSConfigKeys.DFS_CLIENT_SHORT_CIRCUIT_REPLICA_STALE_THRESHOLD_MS,
-            DFSConfigKeys.DFS_CLIENT_SHORT_CIRCUIT_REPLICA_STALE_THRESHOLD_MS_DEFAULT));
+            DFSConfigKeys.DFS_CLIENT_SHORT_CIRCUIT_REPLICA_STALE_THRESHOLD_MS_DEFAULT),
+        conf.getLongBytes(DFSConfigKeys.DFS_CLIENT_MMAP_MAX_BYTES,
+            DFSConfigKeys.DFS_CLIENT_MMAP_MAX_BYTES_DEFAULT));
   }
 
   public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs,
       int maxEvictableMmapedSize, long maxEvictableMmapedLifespanMs,
       long mmapRetryTimeoutMs, long staleThresholdMs) {
+    this(maxTotalSize, maxNonMmappedEvictableLifespanMs,
+        maxEvictableMmapedSize, maxEvictableMmapedLifespanMs,
+        mmapRetryTimeoutMs, staleThresholdMs, 0);
+  }
+
+  public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs,
+      int maxEvictableMmapedSize, long maxEvictableMmapedLifespanMs,
+      long mmapRetryTimeoutMs, long staleThresholdMs, long maxMmapBytes) {
     Preconditions.checkArgument(maxTotalSize >= 0);
     this.maxTotalSize = maxTotalSize;
     Preconditions.checkArgument(maxNonMmappedEvictableLifespanMs >= 0);
@@ -284,6 +304,8 @@ public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs
     this.maxEvictableMmapedLifespanMs = maxEvictableMmapedLifespanMs;
     this.mmapRetryTimeoutMs = mmapRetryTimeoutMs;
     this.staleThresholdMs = staleThresholdMs;
+    Preconditions.checkArgument(maxMmapBytes >= 0);
+    this.maxMmapBytes = maxMmapBytes;
   }
 
   public long getMmapRetryTimeoutMs() {
@@ -346,6 +368,9 @@ void unref(ShortCircuitReplica replica) {
         Preconditions.checkArgument(replica.purged,
             "Replica " + replica + " reached a refCount of 0 without " +
             "being purged");
+        if (replica.hasMmap()) {
+          munmap(replica);
+        }
         replica.close();
       } else if (newRefCount == 1) {
         Preconditions.checkState(null == replica.getEvictableTimeNs(),
@@ -455,10 +480,42 @@ private void trimEvictionMaps() {
    * @param replica  The replica to munmap.
    */
   private void munmap(ShortCircuitReplica replica) {
+    outstandingMmapBytes -=
+        ((ClientMmap)replica.mmapData).getMappedByteBuffer().capacity();
     replica.munmap();
     outstandingMmapCount--;
   }
 
+  /**
+   * Demote the least recently used evictable mmaps into the regular eviction
+   * map until an mmap of the given length fits in the mmap budget.
+   *
+   * You must hold the cache lock while calling this function.
+   *
+   * @param length   The length of the new mmap.
+   * @return         true if the new mmap fits in the budget.
+   */
+  private boolean makeRoomForMmap(long length) {
+    if (length > maxMmapBytes) {
+      return false;
+    }
+    while (outstandingMmapBytes + length > maxMmapBytes) {
+      Entry<Long, ShortCircuitReplica> entry = evictableMmapped.firstEntry();
+      if (entry == null) {
+        return false;
+      }
+      ShortCircuitReplica replica = entry.getValue();
+      if (LOG.isTraceEnabled()) {
+        LOG.trace(this + ": makeRoomForMmap: demoting " + replica +
+            " to make room for an mmap of " + length + " bytes");
+      }
+      removeEvictable(replica, evictableMmapped);
+      munmap(replica);
+      insertEvictable(entry.getKey(), replica, evictable);
+    }
+    return true;
+  }
+
   /**
    * Remove a replica from an evictable map.
    *
@@ -718,6 +775,7 @@ private void startCacheCleanerThreadIfNeeded() {
 
   ClientMmap getOrCreateClientMmap(ShortCircuitReplica replica) {
     Condition newCond;
+    long reservedBytes = 0;
     lock.lock();
     try {
       while (replica.mmapData != null) {
@@ -749,6 +807,23 @@ ClientMmap getOrCreateClientMmap(ShortCircuitReplica replica) {
               replica.mmapData.getClass().getName());
         }
       }
+      if (maxMmapBytes > 0) {
+        try {
+          reservedBytes = replica.getDataStream().getChannel().size();
+        } catch (IOException e) {
+          LOG.warn(this + ": can't get the length of " + replica, e);
+          return null;
+        }
+        if (!makeRoomForMmap(reservedBytes)) {
+          if (LOG.isTraceEnabled()) {
+            LOG.trace(this + ": can't create client mmap for " + replica +
+                " since " + outstandingMmapBytes + " bytes out of " +
+                maxMmapBytes + " are mmapped by replicas in use.");
+          }
+          return null;
+        }
+        outstandingMmapBytes += reservedBytes;
+      }
       newCond = lock.newCondition();
       replica.mmapData = newCond;
     } finally {
@@ -757,6 +832,7 @@ ClientMmap getOrCreateClientMmap(ShortCircuitReplica replica) {
     MappedByteBuffer map = replica.loadMmapInternal();
     lock.lock();
     try {
+      outstandingMmapBytes -= reservedBytes;
       if (map == null) {
         replica.mmapData = Long.valueOf(Time.monotonicNow());
         newCond.signalAll();
@@ -764,6 +840,7 @@ ClientMmap getOrCreateClientMmap(ShortCircuitReplica replica) {
       } else {
         ClientMmap clientMmap = new ClientMmap(replica, map);
         outstandingMmapCount++;
+        outstandingMmapBytes += map.capacity();
         replica.mmapData = clientMmap;
         ref(replica);
         newCond.signalAll();
@@ -803,6 +880,16 @@ public void close() {
     }
   }
 
+  @VisibleForTesting
+  public long getOutstandingMmapBytes() {
+    lock.lock();
+    try {
+      return outstandingMmapBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
   @VisibleForTesting // ONLY for testing
   public interface CacheVisitor {
     void visit(int numOutstandingMmaps,
@@ -838,6 +925,7 @@ public void accept(CacheVisitor visitor) {
         StringBuilder builder = new StringBuilder();
         builder.append("visiting ").append(visitor.getClass().getName()).
             append("with outstandingMmapCount=").append(outstandingMmapCount).
+            append(", outstandingMmapBytes=").append(outstandingMmapBytes).
             append(", replicas=");
         String prefix = "";
         for (Entry<ExtendedBlockId, ShortCircuitReplica> entry : replicas.entrySet()) {
@@ -112,6 +112,19 @@ public class ShortCircuitReplica {
    */
   private Long evictableTimeNs = null;
 
+  /**
+   * The length of the prefix of the block file whose checksums have been
+   * verified by the readers of the replica.
+   *
+   * Protected by the replica lock.
+   */
+  private long verifiedLength = 0;
+
+  /**
+   * True once the checksums of the whole block file have been verified.
+   */
+  private volatile boolean verified = false;
+
   public ShortCircuitReplica(ExtendedBlockId key,
       FileInputStream dataStream, FileInputStream metaStream,
       ShortCircuitCache cache, long creationTimeMs) throws IOException {
@@ -210,6 +223,36 @@ public ExtendedBlockId getKey() {
     return key;
   }
 
+  /**
+   * Record that a reader verified the checksums of a range of the block file.
+   * Only the ranges extending the verified prefix of the block file are
+   * recorded, so that the replica is known to be verified once the block
+   * file has been read through from the beginning.
+   *
+   * @param start   The offset of the range in the block file.
+   * @param end     The end offset of the range in the block file.
+   */
+  public synchronized void addVerifiedRange(long start, long end) {
+    if (verified || start > verifiedLength || end <= verifiedLength) {
+      return;
+    }
+    verifiedLength = end;
+    try {
+      verified = (verifiedLength >= dataStream.getChannel().size());
+    } catch (IOException e) {
+      LOG.warn(this + ": can't get the length of the block file", e);
+    }
+  }
+
+  /**
+   * @return true if the checksums of the whole block file have been
+   *         verified, in which case the replica can be mmapped by the
+   *         readers which verify checksums.
+   */
+  public boolean isVerified() {
+    return verified;
+  }
+
   public ClientMmap getOrCreateClientMmap() {
     return cache.getOrCreateClientMmap(this);
   }
@@ -17,15 +17,26 @@
  */
 package org.apache.hadoop.hdfs.protocol;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.io.WritableUtils;
 
 /**
  * This class provides an interface for accessing list of blocks that
@@ -317,4 +328,141 @@ public long getMaxGsInBlockList() {
     }
     return maxGs;
   }
+
+  /**
+   * Encode a block list compactly: the finalized replicas are sorted by
+   * block id and written as variable-length deltas of their ids and
+   * generation stamps, with their lengths, which usually takes a few bytes
+   * per replica instead of 24. The under-construction replicas are written
+   * as variable-length longs.
+   *
+   * @param blockList - the block list, as returned by
+   *                    {@link #getBlockListAsLongs()}
+   * @param compress - whether to deflate the encoding
+   * @return the encoded block list, see {@link #decode(InputStream, boolean)}
+   */
+  public static byte[] encode(final long[] blockList, final boolean compress)
+      throws IOException {
+    final BlockListAsLongs blocks = new BlockListAsLongs(blockList);
+    final int finalizedSize = blocks.getNumberOfFinalizedReplicas();
+    final int ucSize = blocks.getNumberOfUCReplicas();
+
+    final ByteArrayOutputStream bytes =
+        new ByteArrayOutputStream(16 + 8 * finalizedSize + 16 * ucSize);
+    final DataOutputStream out = new DataOutputStream(compress ?
+        new BufferedOutputStream(new DeflaterOutputStream(bytes)) : bytes);
+    WritableUtils.writeVInt(out, finalizedSize);
+    WritableUtils.writeVInt(out, ucSize);
+
+    final long[] finalized = Arrays.copyOfRange(blockList, HEADER_SIZE,
+        HEADER_SIZE + finalizedSize * LONGS_PER_FINALIZED_BLOCK);
+    sortByBlockId(finalized);
+    long prevId = 0;
+    long prevGs = 0;
+    for (int i = 0; i < finalized.length; i += LONGS_PER_FINALIZED_BLOCK) {
+      WritableUtils.writeVLong(out, finalized[i] - prevId);
+      WritableUtils.writeVLong(out, finalized[i + 1]);
+      WritableUtils.writeVLong(out, finalized[i + 2] - prevGs);
+      prevId = finalized[i];
+      prevGs = finalized[i + 2];
+    }
+
+    final int ucStart = HEADER_SIZE
+        + (finalizedSize + 1) * LONGS_PER_FINALIZED_BLOCK;
+    for (int i = 0; i < ucSize * LONGS_PER_UC_BLOCK; i++) {
+      WritableUtils.writeVLong(out, blockList[ucStart + i]);
+    }
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decode a block list encoded by {@link #encode(long[], boolean)}.
+   * The finalized replicas are sorted by block id.
+   *
+   * @param encoded - the encoded block list
+   * @param compressed - whether the encoding is deflated
+   * @return the block list, see {@link #getBlockListAsLongs()}
+   */
+  public static long[] decode(final InputStream encoded,
+      final boolean compressed) throws IOException {
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(
+        compressed ? new InflaterInputStream(encoded) : encoded));
+    try {
+      final int finalizedSize = WritableUtils.readVInt(in);
+      final int ucSize = WritableUtils.readVInt(in);
+      final long len = HEADER_SIZE
+          + (finalizedSize + 1L) * LONGS_PER_FINALIZED_BLOCK
+          + (long)ucSize * LONGS_PER_UC_BLOCK;
+      if (finalizedSize < 0 || ucSize < 0 || len > Integer.MAX_VALUE) {
+        throw new IOException("Invalid block list with " + finalizedSize
+            + " finalized and " + ucSize + " under-construction replicas");
+      }
+
+      final long[] blockList = new long[(int)len];
+      blockList[0] = finalizedSize;
+      blockList[1] = ucSize;
+      long id = 0;
+      long gs = 0;
+      int pos = HEADER_SIZE;
+      for (int i = 0; i < finalizedSize; i++) {
+        id += WritableUtils.readVLong(in);
+        blockList[pos++] = id;
+        blockList[pos++] = WritableUtils.readVLong(in);
+        gs += WritableUtils.readVLong(in);
+        blockList[pos++] = gs;
+      }
+      // the invalid delimiting block
+      for (int i = 0; i < LONGS_PER_FINALIZED_BLOCK; i++) {
+        blockList[pos++] = -1;
+      }
+      while (pos < blockList.length) {
+        blockList[pos++] = WritableUtils.readVLong(in);
+      }
+      return blockList;
+    } finally {
+      in.close();
+    }
+  }
+
+  /** Sort the finalized replicas of an array by block id, in place. */
+  private static void sortByBlockId(final long[] finalized) {
+    // heap sort, to move the replicas without allocating
+    final int n = finalized.length / LONGS_PER_FINALIZED_BLOCK;
+    for (int i = n / 2 - 1; i >= 0; i--) {
+      siftDown(finalized, i, n);
+    }
+    for (int end = n - 1; end > 0; end--) {
+      swap(finalized, 0, end);
+      siftDown(finalized, 0, end);
+    }
+  }
+
+  private static void siftDown(final long[] finalized, int i, final int n) {
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= n) {
+        return;
+      }
+      if (child + 1 < n && finalized[(child + 1) * LONGS_PER_FINALIZED_BLOCK]
+          > finalized[child * LONGS_PER_FINALIZED_BLOCK]) {
+        child++;
+      }
+      if (finalized[i * LONGS_PER_FINALIZED_BLOCK]
+          >= finalized[child * LONGS_PER_FINALIZED_BLOCK]) {
+        return;
+      }
+      swap(finalized, i, child);
+      i = child;
+    }
+  }
+
+  private static void swap(final long[] finalized, final int i, final int j) {
+    for (int k = 0; k < LONGS_PER_FINALIZED_BLOCK; k++) {
+      final long tmp = finalized[i * LONGS_PER_FINALIZED_BLOCK + k];
+      finalized[i * LONGS_PER_FINALIZED_BLOCK + k] =
+          finalized[j * LONGS_PER_FINALIZED_BLOCK + k];
+      finalized[j * LONGS_PER_FINALIZED_BLOCK + k] = tmp;
+    }
+  }
 }
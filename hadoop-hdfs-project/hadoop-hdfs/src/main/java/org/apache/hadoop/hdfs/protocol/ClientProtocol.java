@@ -1232,4 +1232,14 @@ public void removeAclEntries(String src, List<AclEntry> aclSpec)
    */
   @Idempotent
   public AclStatus getAclStatus(String src) throws IOException;
+
+  /**
+   * Synchronize the client with the active NameNode. The call does nothing
+   * but it carries the state of the active, the last transaction it has
+   * synced, back to the client. A standby serving reads to the client then
+   * waits until it has applied that transaction.
+   * @throws IOException, a StandbyException if the NameNode is not active.
+   */
+  @Idempotent
+  public void msync() throws IOException;
 }
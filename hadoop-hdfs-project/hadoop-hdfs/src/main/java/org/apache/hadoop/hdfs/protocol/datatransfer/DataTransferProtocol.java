@@ -81,6 +81,8 @@ public void readBlock(final ExtendedBlock blk,
    * @param minBytesRcvd minimum number of bytes received.
    * @param maxBytesRcvd maximum number of bytes received.
    * @param latestGenerationStamp the latest generation stamp of the block.
+   * @param allowLazyPersist whether the replica may be written to memory
+   *        and lazily persisted to disk.
    */
   public void writeBlock(final ExtendedBlock blk,
       final Token<BlockTokenIdentifier> blockToken,
@@ -93,7 +95,8 @@ public void writeBlock(final ExtendedBlock blk,
       final long maxBytesRcvd,
       final long latestGenerationStamp,
       final DataChecksum requestedChecksum,
-      final CachingStrategy cachingStrategy) throws IOException;
+      final CachingStrategy cachingStrategy,
+      final boolean allowLazyPersist) throws IOException;
 
   /**
    * Transfer a block to another datanode.
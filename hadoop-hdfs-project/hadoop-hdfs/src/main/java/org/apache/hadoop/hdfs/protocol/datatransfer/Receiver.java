@@ -124,7 +124,8 @@ private void opWriteBlock(DataInputStream in) throws IOException {
         fromProto(proto.getRequestedChecksum()),
         (proto.hasCachingStrategy() ?
             getCachingStrategy(proto.getCachingStrategy()) :
-          CachingStrategy.newDefaultStrategy()));
+          CachingStrategy.newDefaultStrategy()),
+        proto.getAllowLazyPersist());
   }
 
   /** Receive {@link Op#TRANSFER_BLOCK} */
@@ -26,10 +26,14 @@
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.AlreadyBeingCreatedException;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
@@ -72,6 +76,8 @@
 import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.security.UserGroupInformation;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.RpcController;
 import com.google.protobuf.ServiceException;
 
@@ -85,11 +91,27 @@
 public class DatanodeProtocolClientSideTranslatorPB implements
     ProtocolMetaInterface, DatanodeProtocol, Closeable {
   
+  private static final Log LOG =
+      LogFactory.getLog(DatanodeProtocolClientSideTranslatorPB.class);
+
   /** RpcController is not used and hence is set to null */
   private final DatanodeProtocolPB rpcProxy;
   private static final VersionRequestProto VOID_VERSION_REQUEST = 
       VersionRequestProto.newBuilder().build();
   private final static RpcController NULL_CONTROLLER = null;
+
+  /** Are the block reports sent with the compact encoding, if supported? */
+  private final boolean compactBlockReports;
+  /**
+   * Does the NameNode support the compact encoding? Set by the handshake in
+   * {@link #versionRequest()}, which comes before any block report. Until
+   * then, and with a NameNode which does not report the capability, the
+   * block reports are sent with the legacy encoding, which any NameNode
+   * reads.
+   */
+  private volatile boolean compactBlockReportsSupported = false;
+  /** Are the compact block reports deflated? */
+  private final boolean compressBlockReports;
   
   public DatanodeProtocolClientSideTranslatorPB(InetSocketAddress nameNodeAddr,
       Configuration conf) throws IOException {
@@ -97,6 +119,12 @@ public DatanodeProtocolClientSideTranslatorPB(InetSocketAddress nameNodeAddr,
         ProtobufRpcEngine.class);
     UserGroupInformation ugi = UserGroupInformation.getCurrentUser();
     rpcProxy = createNamenodeWithRetry(createNamenode(nameNodeAddr, conf, ugi));
+    compactBlockReports = conf.getBoolean(
+        DFSConfigKeys.DFS_BLOCKREPORT_COMPACT_ENCODING_KEY,
+        DFSConfigKeys.DFS_BLOCKREPORT_COMPACT_ENCODING_DEFAULT);
+    compressBlockReports = conf.getBoolean(
+        DFSConfigKeys.DFS_BLOCKREPORT_COMPRESS_KEY,
+        DFSConfigKeys.DFS_BLOCKREPORT_COMPRESS_DEFAULT);
   }
 
   private static DatanodeProtocolPB createNamenode(
@@ -198,8 +226,14 @@ public DatanodeCommand blockReport(DatanodeRegistration registration,
       StorageBlockReportProto.Builder reportBuilder = StorageBlockReportProto
           .newBuilder().setStorage(PBHelper.convert(r.getStorage()));
       long[] blocks = r.getBlocks();
-      for (int i = 0; i < blocks.length; i++) {
-        reportBuilder.addBlocks(blocks[i]);
+      if (useCompactBlockReports()) {
+        reportBuilder.setEncodedBlocks(ByteString.copyFrom(
+            BlockListAsLongs.encode(blocks, compressBlockReports)));
+        reportBuilder.setCompressed(compressBlockReports);
+      } else {
+        for (int i = 0; i < blocks.length; i++) {
+          reportBuilder.addBlocks(blocks[i]);
+        }
       }
       builder.addReports(reportBuilder.build());
     }
@@ -214,7 +248,8 @@ public DatanodeCommand blockReport(DatanodeRegistration registration,
 
   @Override
   public DatanodeCommand cacheReport(DatanodeRegistration registration,
-      String poolId, List<Long> blockIds) throws IOException {
+      String poolId, List<Long> blockIds, List<Long> autoCachedBlockIds)
+      throws IOException {
     CacheReportRequestProto.Builder builder =
         CacheReportRequestProto.newBuilder()
         .setRegistration(PBHelper.convert(registration))
@@ -222,6 +257,9 @@ public DatanodeCommand cacheReport(DatanodeRegistration registration,
     for (Long blockId : blockIds) {
       builder.addBlocks(blockId);
     }
+    for (Long blockId : autoCachedBlockIds) {
+      builder.addAutoCachedBlocks(blockId);
+    }
     
     CacheReportResponseProto resp;
     try {
@@ -274,12 +312,26 @@ public void errorReport(DatanodeRegistration registration, int errorCode,
 
   @Override
   public NamespaceInfo versionRequest() throws IOException {
+    final NamespaceInfo info;
     try {
-      return PBHelper.convert(rpcProxy.versionRequest(NULL_CONTROLLER,
+      info = PBHelper.convert(rpcProxy.versionRequest(NULL_CONTROLLER,
           VOID_VERSION_REQUEST).getInfo());
     } catch (ServiceException e) {
       throw ProtobufHelper.getRemoteException(e);
     }
+    compactBlockReportsSupported = info.isCapabilitySupported(
+        NamespaceInfo.Capability.COMPACT_BLOCK_REPORTS);
+    if (compactBlockReports && !compactBlockReportsSupported) {
+      LOG.warn("The NameNode does not support compact block reports, "
+          + "sending them with the legacy encoding");
+    }
+    return info;
+  }
+
+  /** @return true if the block reports are sent with the compact encoding. */
+  @VisibleForTesting
+  public boolean useCompactBlockReports() {
+    return compactBlockReports && compactBlockReportsSupported;
   }
 
   @Override
@@ -21,6 +21,7 @@
 import java.io.IOException;
 import java.util.List;
 
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReceivedAndDeletedRequestProto;
@@ -133,10 +134,20 @@ public BlockReportResponseProto blockReport(RpcController controller,
     
     int index = 0;
     for (StorageBlockReportProto s : request.getReportsList()) {
-      List<Long> blockIds = s.getBlocksList();
-      long[] blocks = new long[blockIds.size()];
-      for (int i = 0; i < blockIds.size(); i++) {
-        blocks[i] = blockIds.get(i);
+      long[] blocks;
+      if (s.hasEncodedBlocks()) {
+        try {
+          blocks = BlockListAsLongs.decode(s.getEncodedBlocks().newInput(),
+              s.getCompressed());
+        } catch (IOException e) {
+          throw new ServiceException(e);
+        }
+      } else {
+        List<Long> blockIds = s.getBlocksList();
+        blocks = new long[blockIds.size()];
+        for (int i = 0; i < blockIds.size(); i++) {
+          blocks[i] = blockIds.get(i);
+        }
       }
       report[index++] = new StorageBlockReport(PBHelper.convert(s.getStorage()),
           blocks);
@@ -163,7 +174,8 @@ public CacheReportResponseProto cacheReport(RpcController controller,
       cmd = impl.cacheReport(
           PBHelper.convert(request.getRegistration()),
           request.getBlockPoolId(),
-          request.getBlocksList());
+          request.getBlocksList(),
+          request.getAutoCachedBlocksList());
     } catch (IOException e) {
       throw new ServiceException(e);
     }
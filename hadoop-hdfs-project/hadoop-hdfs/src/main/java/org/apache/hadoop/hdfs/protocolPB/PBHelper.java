@@ -463,7 +463,7 @@ public static NamespaceInfo convert(NamespaceInfoProto info) {
     StorageInfoProto storage = info.getStorageInfo();
     return new NamespaceInfo(storage.getNamespceID(), storage.getClusterID(),
         info.getBlockPoolID(), storage.getCTime(), info.getBuildVersion(),
-        info.getSoftwareVersion());
+        info.getSoftwareVersion(), info.getCapabilities());
   }
 
   public static NamenodeCommand convert(NamenodeCommandProto cmd) {
@@ -1059,7 +1059,8 @@ public static NamespaceInfoProto convert(NamespaceInfo info) {
         .setBuildVersion(info.getBuildVersion())
         .setUnused(0)
         .setStorageInfo(PBHelper.convert((StorageInfo)info))
-        .setSoftwareVersion(info.getSoftwareVersion()).build();
+        .setSoftwareVersion(info.getSoftwareVersion())
+        .setCapabilities(info.getCapabilities()).build();
   }
   
   // Located Block Arrays and Lists
@@ -1535,6 +1536,8 @@ private static StorageTypeProto convertStorageType(
       return StorageTypeProto.DISK;
     case SSD:
       return StorageTypeProto.SSD;
+    case RAM_DISK:
+      return StorageTypeProto.RAM_DISK;
     default:
       throw new IllegalStateException(
           "BUG: StorageType not found, type=" + type);
@@ -1563,6 +1566,8 @@ private static StorageType convertType(StorageTypeProto type) {
         return StorageType.DISK;
       case SSD:
         return StorageType.SSD;
+      case RAM_DISK:
+        return StorageType.RAM_DISK;
       default:
         throw new IllegalStateException(
             "BUG: StorageTypeProto not found, type=" + type);
@@ -1583,7 +1588,7 @@ public static StorageReportProto convert(StorageReport r) {
         .setBlockPoolUsed(r.getBlockPoolUsed()).setCapacity(r.getCapacity())
         .setDfsUsed(r.getDfsUsed()).setRemaining(r.getRemaining())
         .setStorageUuid(r.getStorage().getStorageID())
-        .setStorage(convert(r.getStorage()));
+        .setStorage(convert(r.getStorage())).setSlow(r.isSlow());
     return builder.build();
   }
 
@@ -1593,7 +1598,7 @@ public static StorageReport convert(StorageReportProto p) {
             convert(p.getStorage()) :
             new DatanodeStorage(p.getStorageUuid()),
         p.getFailed(), p.getCapacity(), p.getDfsUsed(), p.getRemaining(),
-        p.getBlockPoolUsed());
+        p.getBlockPoolUsed(), p.getSlow());
   }
 
   public static StorageReport[] convertStorageReports(
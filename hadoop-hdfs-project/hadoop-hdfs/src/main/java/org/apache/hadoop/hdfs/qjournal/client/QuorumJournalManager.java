@@ -21,8 +21,10 @@
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -36,6 +38,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -77,6 +80,13 @@ public class QuorumJournalManager implements JournalManager {
   private final int newEpochTimeoutMs;
   private final int writeTxnsTimeoutMs;
 
+  /**
+   * Whether in-progress edits are read by RPC from the cache of recent
+   * edits on the JournalNodes, and how many transactions to fetch at once.
+   */
+  private final boolean inProgressTailingEnabled;
+  private final int maxTxnsPerRpc;
+
   // Since these don't occur during normal operation, we can
   // use rather lengthy timeouts, and don't need to make them
   // configurable.
@@ -141,6 +151,13 @@ public QuorumJournalManager(Configuration conf,
     this.writeTxnsTimeoutMs = conf.getInt(
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_KEY,
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_DEFAULT);
+
+    this.inProgressTailingEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
+    this.maxTxnsPerRpc = conf.getInt(
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_DEFAULT);
   }
   
   protected List<AsyncLogger> createLoggers(
@@ -462,6 +479,69 @@ public void close() throws IOException {
   @Override
   public void selectInputStreams(Collection<EditLogInputStream> streams,
       long fromTxnId, boolean inProgressOk) throws IOException {
+    if (inProgressOk && inProgressTailingEnabled) {
+      try {
+        selectRpcInputStreams(streams, fromTxnId);
+        return;
+      } catch (IOException ioe) {
+        // This is expected whenever the reader is further behind than the
+        // caches reach, e.g. right after a JournalNode restart.
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Unable to read edits from txid " + fromTxnId + " out " +
+              "of the JournalNode caches, falling back to the edit log " +
+              "segments", ioe);
+        }
+      }
+    }
+    selectStreamingInputStreams(streams, fromTxnId, inProgressOk);
+  }
+
+  /**
+   * Fetch the edits starting at fromTxnId from the caches of recent edits
+   * on the JournalNodes. Only the edits which a quorum of the JournalNodes
+   * have written are returned, so that edits which may still be discarded
+   * by recovery are never read.
+   */
+  private void selectRpcInputStreams(Collection<EditLogInputStream> streams,
+      long fromTxnId) throws IOException {
+    QuorumCall<AsyncLogger, GetJournaledEditsResponseProto> q =
+        loggers.getJournaledEdits(fromTxnId, maxTxnsPerRpc);
+    Map<AsyncLogger, GetJournaledEditsResponseProto> resps =
+        loggers.waitForWriteQuorum(q, selectInputStreamsTimeoutMs,
+            "selectRpcInputStreams");
+
+    // Every node caches the same batches, so a response with a given count
+    // holds the same transactions on every node. The majority-th highest
+    // count is the highest one which a quorum of the nodes has reached.
+    List<GetJournaledEditsResponseProto> sorted =
+        new ArrayList<GetJournaledEditsResponseProto>(resps.values());
+    Collections.sort(sorted, new Comparator<GetJournaledEditsResponseProto>() {
+      @Override
+      public int compare(GetJournaledEditsResponseProto a,
+          GetJournaledEditsResponseProto b) {
+        return b.getTxnCount() - a.getTxnCount();
+      }
+    });
+    GetJournaledEditsResponseProto resp =
+        sorted.get(loggers.getMajoritySize() - 1);
+    if (resp.getTxnCount() == 0) {
+      return;
+    }
+    long endTxnId = fromTxnId + resp.getTxnCount() - 1;
+    LOG.debug("Selected edits " + resp.getFirstTxId() + "-" + endTxnId +
+        " from the JournalNode caches");
+    PriorityQueue<EditLogInputStream> allStreams =
+        new PriorityQueue<EditLogInputStream>(1,
+            JournalSet.EDIT_LOG_INPUT_STREAM_COMPARATOR);
+    allStreams.add(EditLogFileInputStream.fromByteString(resp.getEditLog(),
+        "cached edits " + resp.getFirstTxId() + "-" + endTxnId + " from " +
+        loggers, resp.getFirstTxId(), endTxnId, true));
+    JournalSet.chainAndMakeRedundantStreams(streams, allStreams, fromTxnId);
+  }
+
+  private void selectStreamingInputStreams(
+      Collection<EditLogInputStream> streams, long fromTxnId,
+      boolean inProgressOk) throws IOException {
 
     QuorumCall<AsyncLogger, RemoteEditLogManifest> q =
         loggers.getEditLogManifest(fromTxnId, inProgressOk);
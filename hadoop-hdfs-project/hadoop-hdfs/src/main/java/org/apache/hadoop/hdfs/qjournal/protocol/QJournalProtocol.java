@@ -25,6 +25,7 @@
 import org.apache.hadoop.hdfs.qjournal.client.QuorumJournalManager;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetEditLogManifestResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -132,6 +133,24 @@ public GetEditLogManifestResponseProto getEditLogManifest(String jid,
       long sinceTxId, boolean inProgressOk)
       throws IOException;
   
+  /**
+   * Fetch recently written edits from the in-memory cache of the journal.
+   * The returned edits begin at the batch containing sinceTxId and stop at
+   * the end of a segment or once maxTxns transactions since sinceTxId have
+   * been returned.
+   *
+   * @param jid the journal from which to fetch edits
+   * @param sinceTxId the first transaction which the client cares about
+   * @param maxTxns the maximum number of transactions to return
+   * @return the edits, or no edits if none newer than sinceTxId have been
+   *         written.
+   * @throws IOException if the cache is disabled or no longer holds
+   *         sinceTxId, in which case the client should read the edits
+   *         through {@link #getEditLogManifest(String, long, boolean)}.
+   */
+  public GetJournaledEditsResponseProto getJournaledEdits(String jid,
+      long sinceTxId, int maxTxns) throws IOException;
+
   /**
    * Begin the recovery process for a given segment. See the HDFS-3077
    * design document for details.
@@ -33,11 +33,13 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalNotFormattedException;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalOutOfSyncException;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocol;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PersistedRecoveryPaxosData;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
@@ -132,6 +134,12 @@ public class Journal implements Closeable {
 
   private final JournalMetrics metrics;
 
+  /**
+   * Recently written edits, served to readers tailing the in-progress
+   * segment. Null if in-progress tailing is disabled.
+   */
+  private final JournaledEditsCache cache;
+
   /**
    * Time threshold for sync calls, beyond which a warning should be logged to the console.
    */
@@ -147,6 +155,15 @@ public class Journal implements Closeable {
     this.fjm = storage.getJournalManager();
     
     this.metrics = JournalMetrics.create(this);
+
+    if (conf.getBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT)) {
+      this.cache = new JournaledEditsCache(conf.getLong(
+          DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY,
+          DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT));
+    } else {
+      this.cache = null;
+    }
     
     EditLogFile latest = scanStorageForLatestEdits();
     if (latest != null) {
@@ -320,6 +337,11 @@ private void updateLastPromisedEpoch(long newEpoch) throws IOException {
   }
 
   private void abortCurSegment() throws IOException {
+    // Whatever was written to the aborted segment may be replaced by
+    // recovery, so it can no longer be served from the cache.
+    if (cache != null) {
+      cache.clear();
+    }
     if (curSegment == null) {
       return;
     }
@@ -392,6 +414,10 @@ synchronized void journal(RequestInfo reqInfo,
     metrics.batchesWritten.incr(1);
     metrics.bytesWritten.incr(records.length);
     metrics.txnsWritten.incr(numTxns);
+
+    if (cache != null) {
+      cache.storeEdits(segmentTxId, firstTxnId, lastTxnId, records);
+    }
     
     highestWrittenTxId = lastTxnId;
     nextTxId = lastTxnId + 1;
@@ -656,6 +682,22 @@ public RemoteEditLogManifest getEditLogManifest(long sinceTxId,
     return new RemoteEditLogManifest(logs);
   }
 
+  /**
+   * @see QJournalProtocol#getJournaledEdits(String, long, int)
+   */
+  public GetJournaledEditsResponseProto getJournaledEdits(long sinceTxId,
+      int maxTxns) throws IOException {
+    // Like getEditLogManifest(), anyone may read the edits. The cache has
+    // its own lock so that readers do not hold up the writer.
+    checkFormatted();
+    if (cache == null) {
+      throw new IOException("The edits cache of journal " + journalId +
+          " is disabled; set " + DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY +
+          " to enable it");
+    }
+    return cache.retrieveEdits(sinceTxId, maxTxns);
+  }
+
   /**
    * @return the current state of the given segment, or null if the
    * segment does not exist.
@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileOutputStream;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * An in-memory cache of the most recent batches of edits written to a
+ * {@link Journal}, so that a standby NameNode can fetch edits from the
+ * in-progress segment by RPC instead of waiting for the segment to be
+ * finalized and reading it over HTTP.
+ * <p>
+ * Batches are cached exactly as they were sent by the writer. Since every
+ * JournalNode receives the same batches, the edits returned for a given
+ * starting transaction begin and end at the same transaction IDs on every
+ * node which has them, which lets the reader compare the responses of a
+ * quorum.
+ * <p>
+ * The cache holds a contiguous range of transactions. The oldest batches
+ * are evicted once the configured capacity is exceeded.
+ */
+@InterfaceAudience.Private
+class JournaledEditsCache {
+
+  /**
+   * Thrown when the requested transaction is older than any transaction in
+   * the cache. The reader has to fall back to the edit log segments.
+   */
+  static class CacheMissException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    CacheMissException(String msg) {
+      super(msg);
+    }
+  }
+
+  private static class Batch {
+    final long segmentTxId;
+    final long firstTxId;
+    final long lastTxId;
+    final byte[] records;
+
+    Batch(long segmentTxId, long firstTxId, long lastTxId, byte[] records) {
+      this.segmentTxId = segmentTxId;
+      this.firstTxId = firstTxId;
+      this.lastTxId = lastTxId;
+      this.records = records;
+    }
+  }
+
+  private final long capacity;
+
+  /** Cached batches keyed by their first transaction ID. */
+  private final TreeMap<Long, Batch> batches = new TreeMap<Long, Batch>();
+  private long size = 0;
+
+  /** The edit log header prepended to every response. */
+  private final byte[] header;
+
+  JournaledEditsCache(long capacity) {
+    this.capacity = capacity;
+    DataOutputBuffer buf = new DataOutputBuffer();
+    try {
+      EditLogFileOutputStream.writeHeader(new DataOutputStream(buf));
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to write edit log header", e);
+    }
+    this.header = new byte[buf.getLength()];
+    System.arraycopy(buf.getData(), 0, header, 0, header.length);
+  }
+
+  /**
+   * Add a batch of edits which has just been written to the journal. Any
+   * cached transactions at or after firstTxId are replaced.
+   */
+  synchronized void storeEdits(long segmentTxId, long firstTxId,
+      long lastTxId, byte[] records) {
+    if (!batches.isEmpty() && batches.lastEntry().getValue().lastTxId + 1
+        != firstTxId) {
+      // The writer went back, e.g. after recovering a segment, or skipped
+      // ahead. Either way the cached range would no longer be contiguous.
+      Map<Long, Batch> stale = batches.tailMap(firstTxId, true);
+      for (Batch b : stale.values()) {
+        size -= b.records.length;
+      }
+      stale.clear();
+      if (!batches.isEmpty() &&
+          batches.lastEntry().getValue().lastTxId + 1 != firstTxId) {
+        clear();
+      }
+    }
+    if (records.length > capacity) {
+      clear();
+      return;
+    }
+    batches.put(firstTxId,
+        new Batch(segmentTxId, firstTxId, lastTxId, records));
+    size += records.length;
+    while (size > capacity) {
+      size -= batches.pollFirstEntry().getValue().records.length;
+    }
+  }
+
+  /** Drop all the cached edits. */
+  synchronized void clear() {
+    batches.clear();
+    size = 0;
+  }
+
+  /**
+   * Fetch the cached edits starting at the batch which contains sinceTxId.
+   * The returned edits stop at the end of a segment, or once at least
+   * maxTxns transactions since sinceTxId have been added.
+   *
+   * @throws CacheMissException if sinceTxId is no longer cached.
+   */
+  GetJournaledEditsResponseProto retrieveEdits(long sinceTxId, int maxTxns)
+      throws CacheMissException {
+    final List<Batch> selected = new ArrayList<Batch>();
+    synchronized (this) {
+      if (batches.isEmpty() || sinceTxId < batches.firstKey()) {
+        throw new CacheMissException("Transaction " + sinceTxId +
+            " is not in the cache, which holds " + (batches.isEmpty() ?
+                "no transactions" : "transactions from " + batches.firstKey()));
+      }
+      Map.Entry<Long, Batch> first = batches.floorEntry(sinceTxId);
+      if (first.getValue().lastTxId < sinceTxId) {
+        // sinceTxId has not been written yet.
+        return GetJournaledEditsResponseProto.newBuilder()
+            .setTxnCount(0).build();
+      }
+      final long segmentTxId = first.getValue().segmentTxId;
+      for (Batch b : batches.tailMap(first.getKey(), true).values()) {
+        if (b.segmentTxId != segmentTxId ||
+            b.firstTxId - sinceTxId >= maxTxns) {
+          break;
+        }
+        selected.add(b);
+      }
+    }
+
+    // Batches are immutable, so the response is built outside the lock.
+    final Batch last = selected.get(selected.size() - 1);
+    int length = header.length;
+    for (Batch b : selected) {
+      length += b.records.length;
+    }
+    final ByteString.Output data = ByteString.newOutput(length);
+    data.write(header, 0, header.length);
+    for (Batch b : selected) {
+      data.write(b.records, 0, b.records.length);
+    }
+    return GetJournaledEditsResponseProto.newBuilder()
+        .setTxnCount((int)(last.lastTxId - sinceTxId + 1))
+        .setFirstTxId(selected.get(0).firstTxId)
+        .setEditLog(data.toByteString())
+        .build();
+  }
+
+  /** @return the number of bytes of edits in the cache. */
+  synchronized long getSize() {
+    return size;
+  }
+}
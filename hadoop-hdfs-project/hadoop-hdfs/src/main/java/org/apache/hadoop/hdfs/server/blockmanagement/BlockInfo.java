@@ -25,6 +25,8 @@
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
 import org.apache.hadoop.util.LightWeightGSet;
 
+import com.google.common.base.Preconditions;
+
 /**
  * BlockInfo class maintains for a given block
  * the {@link BlockCollection} it is part of and datanodes where the replicas of 
@@ -50,21 +52,34 @@ public class BlockInfo extends Block implements LightWeightGSet.LinkedElement {
    * {@link LinkedList} list to efficiently use memory. With LinkedList the cost
    * per replica is 42 bytes (LinkedList#Entry object per replica) versus 16
    * bytes using the triplets.
+   *
+   * The array is allocated when the first storage is added. If the triplets
+   * are stored off-heap, the field holds the {@link BlockInfoSlab} instead,
+   * see {@link #moveTripletsToSlab}, so that the on-heap blocks do not pay
+   * for a separate slab reference.
+   */
+  private Object triplets;
+
+  /**
+   * Handle of the {@link BlockInfoSlab} record holding the triplets when they
+   * are stored off-heap. The record is allocated when the first storage is
+   * added and released when the last one is removed, so a block that is not
+   * on any storage list does not hold off-heap memory.
    */
-  private Object[] triplets;
+  private int tripletHandle = BlockInfoSlab.NULL_HANDLE;
 
   /**
    * Construct an entry for blocksmap
-   * @param replication the block's replication factor
+   * @param replication the block's replication factor. The triplets are
+   *        allocated for the replication of the block collection when the
+   *        first storage is added.
    */
   public BlockInfo(int replication) {
-    this.triplets = new Object[3*replication];
     this.bc = null;
   }
   
   public BlockInfo(Block blk, int replication) {
     super(blk);
-    this.triplets = new Object[3*replication];
     this.bc = null;
   }
 
@@ -91,14 +106,66 @@ public DatanodeDescriptor getDatanode(int index) {
     return storage == null ? null : storage.getDatanodeDescriptor();
   }
 
+  private boolean isOffHeap() {
+    return triplets instanceof BlockInfoSlab;
+  }
+
+  private BlockInfoSlab getSlab() {
+    return (BlockInfoSlab)triplets;
+  }
+
+  private Object[] getTriplets() {
+    return (Object[])triplets;
+  }
+
+  /**
+   * Store the triplets of this block in the given slab from now on.
+   * All the blocks linked into the same storage lists must use the same
+   * slab, so the block must not be on any storage list yet.
+   */
+  void moveTripletsToSlab(BlockInfoSlab slab) {
+    if (triplets == slab) {
+      return;
+    }
+    Preconditions.checkState(numNodes() == 0,
+        "Cannot move the triplets of a block on storage lists: %s", this);
+    this.triplets = slab;
+  }
+
+  private static int handleOf(BlockInfo info) {
+    if (info == null) {
+      return BlockInfoSlab.NULL_HANDLE;
+    }
+    assert info.isOffHeap() && info.tripletHandle != BlockInfoSlab.NULL_HANDLE
+        : "Off-heap block list contains a block without a slab record";
+    return info.tripletHandle;
+  }
+
   DatanodeStorageInfo getStorageInfo(int index) {
-    assert this.triplets != null : "BlockInfo is not initialized";
+    if (isOffHeap()) {
+      if (tripletHandle == BlockInfoSlab.NULL_HANDLE) {
+        // the record has been released with the last storage
+        return null;
+      }
+      assert index >= 0 && index < getCapacity() : "Index is out of bound";
+      return getSlab().getStorage(tripletHandle, index);
+    }
+    if (triplets == null) {
+      // the triplets are allocated when the first storage is added
+      return null;
+    }
+    final Object[] triplets = getTriplets();
     assert index >= 0 && index*3 < triplets.length : "Index is out of bound";
     return (DatanodeStorageInfo)triplets[index*3];
   }
 
   private BlockInfo getPrevious(int index) {
-    assert this.triplets != null : "BlockInfo is not initialized";
+    if (isOffHeap()) {
+      assert index >= 0 && index < getCapacity() : "Index is out of bound";
+      final BlockInfoSlab slab = getSlab();
+      return slab.getOwner(slab.getPrevious(tripletHandle, index));
+    }
+    final Object[] triplets = getTriplets();
     assert index >= 0 && index*3+1 < triplets.length : "Index is out of bound";
     BlockInfo info = (BlockInfo)triplets[index*3+1];
     assert info == null || 
@@ -108,7 +175,12 @@ private BlockInfo getPrevious(int index) {
   }
 
   BlockInfo getNext(int index) {
-    assert this.triplets != null : "BlockInfo is not initialized";
+    if (isOffHeap()) {
+      assert index >= 0 && index < getCapacity() : "Index is out of bound";
+      final BlockInfoSlab slab = getSlab();
+      return slab.getOwner(slab.getNext(tripletHandle, index));
+    }
+    final Object[] triplets = getTriplets();
     assert index >= 0 && index*3+2 < triplets.length : "Index is out of bound";
     BlockInfo info = (BlockInfo)triplets[index*3+2];
     assert info == null || 
@@ -118,7 +190,12 @@ BlockInfo getNext(int index) {
   }
 
   private void setStorageInfo(int index, DatanodeStorageInfo storage) {
-    assert this.triplets != null : "BlockInfo is not initialized";
+    if (isOffHeap()) {
+      assert index >= 0 && index < getCapacity() : "Index is out of bound";
+      getSlab().setStorage(tripletHandle, index, storage);
+      return;
+    }
+    final Object[] triplets = getTriplets();
     assert index >= 0 && index*3 < triplets.length : "Index is out of bound";
     triplets[index*3] = storage;
   }
@@ -132,8 +209,13 @@ private void setStorageInfo(int index, DatanodeStorageInfo storage) {
    * @return current previous block on the list of blocks
    */
   private BlockInfo setPrevious(int index, BlockInfo to) {
-	assert this.triplets != null : "BlockInfo is not initialized";
-	assert index >= 0 && index*3+1 < triplets.length : "Index is out of bound";
+    if (isOffHeap()) {
+      BlockInfo info = getPrevious(index);
+      getSlab().setPrevious(tripletHandle, index, handleOf(to));
+      return info;
+    }
+    final Object[] triplets = getTriplets();
+    assert index >= 0 && index*3+1 < triplets.length : "Index is out of bound";
     BlockInfo info = (BlockInfo)triplets[index*3+1];
     triplets[index*3+1] = to;
     return info;
@@ -148,15 +230,32 @@ private BlockInfo setPrevious(int index, BlockInfo to) {
    *    * @return current next block on the list of blocks
    */
   private BlockInfo setNext(int index, BlockInfo to) {
-	assert this.triplets != null : "BlockInfo is not initialized";
-	assert index >= 0 && index*3+2 < triplets.length : "Index is out of bound";
+    if (isOffHeap()) {
+      BlockInfo info = getNext(index);
+      getSlab().setNext(tripletHandle, index, handleOf(to));
+      return info;
+    }
+    final Object[] triplets = getTriplets();
+    assert index >= 0 && index*3+2 < triplets.length : "Index is out of bound";
     BlockInfo info = (BlockInfo)triplets[index*3+2];
     triplets[index*3+2] = to;
     return info;
   }
 
   public int getCapacity() {
-    assert this.triplets != null : "BlockInfo is not initialized";
+    if (isOffHeap()) {
+      return tripletHandle == BlockInfoSlab.NULL_HANDLE ?
+          0 : getSlab().getCapacity(tripletHandle);
+    }
+    return getHeapCapacity();
+  }
+
+  /** @return the number of triplets allocated on the heap. */
+  int getHeapCapacity() {
+    if (triplets == null || isOffHeap()) {
+      return 0;
+    }
+    final Object[] triplets = getTriplets();
     assert triplets.length % 3 == 0 : "Malformed BlockInfo";
     return triplets.length / 3;
   }
@@ -166,24 +265,48 @@ public int getCapacity() {
    * @return first free triplet index.
    */
   private int ensureCapacity(int num) {
-    assert this.triplets != null : "BlockInfo is not initialized";
+    if (isOffHeap()) {
+      final BlockInfoSlab slab = getSlab();
+      if (tripletHandle == BlockInfoSlab.NULL_HANDLE) {
+        tripletHandle = slab.allocate(this);
+      }
+      int last = numNodes();
+      slab.ensureCapacity(tripletHandle, last+num);
+      return last;
+    }
+    if (triplets == null) {
+      // the first storage, allocate the triplets for the replication
+      final int replication = bc == null ? 0 : bc.getBlockReplication();
+      triplets = new Object[Math.max(replication, num)*3];
+      return 0;
+    }
     int last = numNodes();
-    if(triplets.length >= (last+num)*3)
+    Object[] old = getTriplets();
+    if(old.length >= (last+num)*3)
       return last;
     /* Not enough space left. Create a new array. Should normally 
      * happen only when replication is manually increased by the user. */
-    Object[] old = triplets;
     triplets = new Object[(last+num)*3];
     System.arraycopy(old, 0, triplets, 0, last*3);
     return last;
   }
 
+  /**
+   * Release the off-heap record of a block which is no longer on any
+   * storage list.
+   */
+  private void releaseTripletsIfEmpty() {
+    if (isOffHeap() && tripletHandle != BlockInfoSlab.NULL_HANDLE
+        && numNodes() == 0) {
+      getSlab().release(tripletHandle);
+      tripletHandle = BlockInfoSlab.NULL_HANDLE;
+    }
+  }
+
   /**
    * Count the number of data-nodes the block belongs to.
    */
   public int numNodes() {
-    assert this.triplets != null : "BlockInfo is not initialized";
-    assert triplets.length % 3 == 0 : "Malformed BlockInfo";
     for(int idx = getCapacity()-1; idx >= 0; idx--) {
       if(getDatanode(idx) != null)
         return idx+1;
@@ -234,6 +357,7 @@ assert getPrevious(dnIndex) == null && getNext(dnIndex) == null :
     setStorageInfo(lastNode, null);
     setNext(lastNode, null); 
     setPrevious(lastNode, null); 
+    releaseTripletsIfEmpty();
     return true;
   }
 
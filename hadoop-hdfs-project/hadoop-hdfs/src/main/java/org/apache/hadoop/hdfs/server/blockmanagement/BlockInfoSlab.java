@@ -0,0 +1,284 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Off-heap storage for the {@link BlockInfo} triplets.
+ * <p>
+ * Instead of an Object[] of 3*replication references per block, a block
+ * stored in the slab is addressed by an integer handle to a fixed-width
+ * record in a direct buffer. A record starts with the handle of an overflow
+ * record (or {@link #NULL_HANDLE}) followed by {@link #SLOTS_PER_RECORD}
+ * slots. Each slot holds three ints: the index of the
+ * {@link DatanodeStorageInfo} (plus one, so that zero means no storage) and
+ * the handles of the previous and the next blocks in the list of blocks
+ * belonging to that storage. Blocks whose replica count exceeds
+ * {@link #SLOTS_PER_RECORD} chain additional overflow records.
+ * <p>
+ * The only on-heap cost per block is one reference in the owner table, which
+ * is used to resolve the handle of the first record back to its
+ * {@link BlockInfo}. The lists only link first records, so the overflow
+ * records have no owner.
+ * <p>
+ * Each {@link BlocksMap} storing its blocks off-heap owns a slab, so the
+ * namesystems sharing a JVM do not share records or storage indices. The
+ * direct buffers are freed once the slab is garbage collected.
+ * <p>
+ * Record contents are modified under the namesystem lock, like the on-heap
+ * triplets. Allocation, release and the storage table are also synchronized,
+ * so that the statistics can be read without the lock.
+ */
+@InterfaceAudience.Private
+class BlockInfoSlab {
+  /** The handle that does not refer to any record. */
+  static final int NULL_HANDLE = 0;
+
+  /** Number of replica slots in a record. */
+  static final int SLOTS_PER_RECORD = 3;
+
+  /** Record width in ints: the overflow link followed by the slots. */
+  private static final int RECORD_WIDTH = 1 + 3 * SLOTS_PER_RECORD;
+
+  /** Records per chunk. Each chunk is a separate direct buffer. */
+  private static final int CHUNK_SHIFT = 16;
+  private static final int CHUNK_RECORDS = 1 << CHUNK_SHIFT;
+  private static final int CHUNK_MASK = CHUNK_RECORDS - 1;
+
+  private volatile IntBuffer[] chunks = new IntBuffer[0];
+  private volatile BlockInfo[][] owners = new BlockInfo[0][];
+
+  /** The next never-used handle. Handle 0 is reserved for null. */
+  private int nextUnused = 1;
+  /** Head of the list of released records, linked through their first int. */
+  private int freeList = NULL_HANDLE;
+  private long numRecords = 0;
+
+  private volatile DatanodeStorageInfo[] storages = new DatanodeStorageInfo[16];
+  private int numStorages = 0;
+  /** The indices released by {@link #unregisterStorage}, to be reused. */
+  private int[] freeStorages = new int[16];
+  private int numFreeStorages = 0;
+
+  /**
+   * Allocate a record for the given block.
+   * @param owner the block, or null for an overflow record.
+   * @return the handle of the new record.
+   */
+  synchronized int allocate(BlockInfo owner) {
+    final int handle;
+    if (freeList != NULL_HANDLE) {
+      handle = freeList;
+      freeList = getInt(handle, 0);
+    } else {
+      if (nextUnused == Integer.MAX_VALUE) {
+        throw new IllegalStateException("BlockInfoSlab is full: "
+            + numRecords + " records allocated");
+      }
+      handle = nextUnused++;
+      if ((handle >>> CHUNK_SHIFT) >= chunks.length) {
+        addChunk();
+      }
+    }
+    for (int i = 0; i < RECORD_WIDTH; i++) {
+      setInt(handle, i, 0);
+    }
+    owners[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK] = owner;
+    numRecords++;
+    return handle;
+  }
+
+  private void addChunk() {
+    final int n = chunks.length;
+    final IntBuffer chunk = ByteBuffer
+        .allocateDirect(CHUNK_RECORDS * RECORD_WIDTH * 4)
+        .order(ByteOrder.nativeOrder()).asIntBuffer();
+    final BlockInfo[][] newOwners = Arrays.copyOf(owners, n + 1);
+    newOwners[n] = new BlockInfo[CHUNK_RECORDS];
+    final IntBuffer[] newChunks = Arrays.copyOf(chunks, n + 1);
+    newChunks[n] = chunk;
+    owners = newOwners;
+    chunks = newChunks;
+  }
+
+  /** Release the record chain starting at the given handle. */
+  synchronized void release(int handle) {
+    while (handle != NULL_HANDLE) {
+      final int overflow = getInt(handle, 0);
+      owners[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK] = null;
+      setInt(handle, 0, freeList);
+      freeList = handle;
+      numRecords--;
+      handle = overflow;
+    }
+  }
+
+  /**
+   * @return the block owning the given first record, or null for
+   *         NULL_HANDLE.
+   */
+  BlockInfo getOwner(int handle) {
+    if (handle == NULL_HANDLE) {
+      return null;
+    }
+    return owners[handle >>> CHUNK_SHIFT][handle & CHUNK_MASK];
+  }
+
+  /** @return the number of slots in the record chain. */
+  int getCapacity(int handle) {
+    int capacity = 0;
+    for(; handle != NULL_HANDLE; handle = getInt(handle, 0)) {
+      capacity += SLOTS_PER_RECORD;
+    }
+    return capacity;
+  }
+
+  /**
+   * Append overflow records to the chain until it has at least the given
+   * number of slots.
+   */
+  void ensureCapacity(int handle, int slots) {
+    int last = handle;
+    int capacity = SLOTS_PER_RECORD;
+    for(int next; (next = getInt(last, 0)) != NULL_HANDLE; last = next) {
+      capacity += SLOTS_PER_RECORD;
+    }
+    for(; capacity < slots; capacity += SLOTS_PER_RECORD) {
+      final int overflow = allocate(null);
+      setInt(last, 0, overflow);
+      last = overflow;
+    }
+  }
+
+  DatanodeStorageInfo getStorage(int handle, int index) {
+    final int id = getSlotInt(handle, index, 0);
+    return id == 0 ? null : storages[id - 1];
+  }
+
+  void setStorage(int handle, int index, DatanodeStorageInfo storage) {
+    setSlotInt(handle, index, 0,
+        storage == null ? 0 : getStorageIndex(storage) + 1);
+  }
+
+  int getPrevious(int handle, int index) {
+    return getSlotInt(handle, index, 1);
+  }
+
+  void setPrevious(int handle, int index, int previous) {
+    setSlotInt(handle, index, 1, previous);
+  }
+
+  int getNext(int handle, int index) {
+    return getSlotInt(handle, index, 2);
+  }
+
+  void setNext(int handle, int index, int next) {
+    setSlotInt(handle, index, 2, next);
+  }
+
+  private int getStorageIndex(DatanodeStorageInfo storage) {
+    int index = storage.getSlabIndex();
+    if (index < 0) {
+      index = registerStorage(storage);
+    }
+    return index;
+  }
+
+  private synchronized int registerStorage(DatanodeStorageInfo storage) {
+    int index = storage.getSlabIndex();
+    if (index >= 0) {
+      return index;
+    }
+    if (numFreeStorages > 0) {
+      index = freeStorages[--numFreeStorages];
+    } else {
+      index = numStorages++;
+      if (index == storages.length) {
+        storages = Arrays.copyOf(storages, 2 * index);
+      }
+    }
+    storages[index] = storage;
+    storage.setSlabIndex(index);
+    return index;
+  }
+
+  /**
+   * Release the index of a storage which is no longer on any record, so that
+   * the slab does not keep the storage and its datanode reachable. The
+   * storage is registered again if a block is added to it later.
+   */
+  synchronized void unregisterStorage(DatanodeStorageInfo storage) {
+    final int index = storage.getSlabIndex();
+    if (index < 0 || index >= numStorages || storages[index] != storage) {
+      return;
+    }
+    storages[index] = null;
+    storage.setSlabIndex(-1);
+    if (numFreeStorages == freeStorages.length) {
+      freeStorages = Arrays.copyOf(freeStorages, 2 * numFreeStorages);
+    }
+    freeStorages[numFreeStorages++] = index;
+  }
+
+  /** @return the number of storages currently registered. */
+  synchronized int getNumStorages() {
+    return numStorages - numFreeStorages;
+  }
+
+  /** @return the number of records currently allocated. */
+  synchronized long getNumRecords() {
+    return numRecords;
+  }
+
+  /** @return the number of off-heap bytes reserved by the slab. */
+  long getReservedBytes() {
+    return (long)chunks.length * CHUNK_RECORDS * RECORD_WIDTH * 4;
+  }
+
+  private int getSlotInt(int handle, int index, int field) {
+    for(; index >= SLOTS_PER_RECORD; index -= SLOTS_PER_RECORD) {
+      handle = getInt(handle, 0);
+      assert handle != NULL_HANDLE : "Index is out of bound";
+    }
+    return getInt(handle, 1 + 3 * index + field);
+  }
+
+  private void setSlotInt(int handle, int index, int field, int value) {
+    for(; index >= SLOTS_PER_RECORD; index -= SLOTS_PER_RECORD) {
+      handle = getInt(handle, 0);
+      assert handle != NULL_HANDLE : "Index is out of bound";
+    }
+    setInt(handle, 1 + 3 * index + field, value);
+  }
+
+  private int getInt(int handle, int offset) {
+    return chunks[handle >>> CHUNK_SHIFT].get(
+        (handle & CHUNK_MASK) * RECORD_WIDTH + offset);
+  }
+
+  private void setInt(int handle, int offset, int value) {
+    chunks[handle >>> CHUNK_SHIFT].put(
+        (handle & CHUNK_MASK) * RECORD_WIDTH + offset, value);
+  }
+}
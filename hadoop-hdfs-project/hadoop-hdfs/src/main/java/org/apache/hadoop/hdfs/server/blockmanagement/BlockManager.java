@@ -78,6 +78,7 @@
 import org.apache.hadoop.hdfs.server.protocol.ReceivedDeletedBlockInfo;
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
 import org.apache.hadoop.hdfs.util.LightWeightLinkedSet;
+import org.apache.hadoop.ipc.RetriableException;
 import org.apache.hadoop.net.Node;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.util.Daemon;
@@ -226,6 +227,12 @@ public int getPendingDataNodeMessageCount() {
   // Max number of blocks to log info about during a block report.
   private final long maxNumBlocksToLog;
 
+  /**
+   * Number of reported blocks processed in one acquisition of the namesystem
+   * write lock, or 0 to process a whole storage report at once.
+   */
+  private final int blockReportBatchSize;
+
   /**
    * When running inside a Standby node, the node may receive block reports
    * from datanodes before receiving the corresponding namespace edits from
@@ -249,7 +256,9 @@ public BlockManager(final Namesystem namesystem, final FSClusterStats stats,
 
     // Compute the map capacity by allocating 2% of total memory
     blocksMap = new BlocksMap(
-        LightWeightGSet.computeCapacity(2.0, "BlocksMap"));
+        LightWeightGSet.computeCapacity(2.0, "BlocksMap"),
+        conf.getBoolean(DFSConfigKeys.DFS_NAMENODE_BLOCKSMAP_OFF_HEAP_KEY,
+            DFSConfigKeys.DFS_NAMENODE_BLOCKSMAP_OFF_HEAP_DEFAULT));
     blockplacement = BlockPlacementPolicy.getInstance(
         conf, stats, datanodeManager.getNetworkTopology());
     pendingReplications = new PendingReplicationBlocks(conf.getInt(
@@ -310,6 +319,10 @@ public BlockManager(final Namesystem namesystem, final FSClusterStats stats,
     this.maxNumBlocksToLog =
         conf.getLong(DFSConfigKeys.DFS_MAX_NUM_BLOCKS_TO_LOG_KEY,
             DFSConfigKeys.DFS_MAX_NUM_BLOCKS_TO_LOG_DEFAULT);
+
+    this.blockReportBatchSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_BATCH_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_BATCH_SIZE_DEFAULT);
     
     LOG.info("defaultReplication         = " + defaultReplication);
     LOG.info("maxReplication             = " + maxReplication);
@@ -319,6 +332,8 @@ public BlockManager(final Namesystem namesystem, final FSClusterStats stats,
     LOG.info("replicationRecheckInterval = " + replicationRecheckInterval);
     LOG.info("encryptDataTransfer        = " + encryptDataTransfer);
     LOG.info("maxNumBlocksToLog          = " + maxNumBlocksToLog);
+    LOG.info("blockReportBatchSize       = " + blockReportBatchSize);
+    LOG.info("blocksMapOffHeap           = " + blocksMap.isOffHeap());
   }
 
   private static BlockTokenSecretManager createBlockTokenSecretManager(
@@ -991,6 +1006,9 @@ void removeBlocksAssociatedTo(final DatanodeDescriptor node) {
     while(it.hasNext()) {
       removeStoredBlock(it.next(), node);
     }
+    for (DatanodeStorageInfo storage : node.getStorageInfos()) {
+      blocksMap.removeStorage(storage);
+    }
 
     node.resetBlocks();
     invalidateBlocks.remove(node.getDatanodeUuid());
@@ -1077,7 +1095,7 @@ private void markBlockAsCorrupt(BlockToMarkCorrupt b,
     } 
 
     // Add replica to the data-node if it is not already there
-    node.addBlock(storageID, b.stored);
+    blocksMap.addReplica(node, storageID, b.stored);
 
     // Add this replica to corruptReplicas Map
     corruptReplicas.addToCorruptReplicasMap(b.corrupted, node, b.reason,
@@ -1591,6 +1609,12 @@ private static class BlockToMarkCorrupt {
     final String reason;
     /** The reason code to be stored */
     final Reason reasonCode;
+    /**
+     * The replica and its state as reported in a block report, so that it
+     * can be checked again after the namesystem lock was released.
+     */
+    Block reported;
+    ReplicaState reportedState;
 
     BlockToMarkCorrupt(BlockInfo corrupted, BlockInfo stored, String reason,
         Reason reasonCode) {
@@ -1631,10 +1655,12 @@ public String toString() {
   public boolean processReport(final DatanodeID nodeID,
       final DatanodeStorage storage, final String poolId,
       final BlockListAsLongs newReport) throws IOException {
-    namesystem.writeLock();
+    final BlockReportLock lock = new BlockReportLock();
+    lock.lock();
     final long startTime = Time.now(); //after acquiring write lock
     final long endTime;
     DatanodeDescriptor node;
+    DatanodeStorageInfo reportingStorage = null;
     try {
       node = datanodeManager.getDatanode(nodeID);
       if (node == null || !node.isAlive) {
@@ -1661,12 +1687,23 @@ public boolean processReport(final DatanodeID nodeID,
         return !node.hasStaleStorages();
       }
 
+      if (storageInfo.isBlockReportInProgress()) {
+        // The lock is released while a report is processed, do not let a
+        // second report of the same storage interleave with it. The
+        // DataNode sends it again later.
+        throw new RetriableException("A block report from storage "
+            + storage.getStorageID() + " of " + nodeID
+            + " is already being processed");
+      }
+      storageInfo.setBlockReportInProgress(true);
+      reportingStorage = storageInfo;
+
       if (storageInfo.numBlocks() == 0) {
         // The first block report can be processed a lot more efficiently than
         // ordinary block reports.  This shortens restart times.
-        processFirstBlockReport(node, storage.getStorageID(), newReport);
+        processFirstBlockReport(node, storageInfo, newReport, lock);
       } else {
-        processReport(node, storage, newReport);
+        processReport(node, storage, newReport, lock);
       }
       
       // Now that we have an up-to-date block report, we know that any
@@ -1681,21 +1718,125 @@ public boolean processReport(final DatanodeID nodeID,
       }
       
     } finally {
+      if (reportingStorage != null) {
+        reportingStorage.setBlockReportInProgress(false);
+      }
       endTime = Time.now();
-      namesystem.writeUnlock();
+      lock.unlock();
     }
 
     // Log the block report processing stats from Namenode perspective
     final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
     if (metrics != null) {
       metrics.addBlockReport((int) (endTime - startTime));
+      metrics.addBlockReportLockHold(lock.getHoldTime());
+      metrics.incrBlockReportLockYields(lock.getYields());
     }
     blockLog.info("BLOCK* processReport: from storage " + storage.getStorageID()
         + " node " + nodeID + ", blocks: " + newReport.getNumberOfBlocks()
-        + ", processing time: " + (endTime - startTime) + " msecs");
+        + ", processing time: " + (endTime - startTime) + " msecs"
+        + ", lock hold time: " + lock.getHoldTime() + " msecs in "
+        + (lock.getYields() + 1) + " batches");
     return !node.hasStaleStorages();
   }
 
+  /**
+   * The namesystem write lock held while processing a block report.
+   * Every {@link #blockReportBatchSize} processed blocks the lock is released
+   * and acquired again, so that other operations can make progress during
+   * the processing of a large report. The time the lock is held is recorded.
+   */
+  private class BlockReportLock {
+    private long lockTime;
+    private long holdTime = 0;
+    private int count = 0;
+    private int yields = 0;
+
+    void lock() {
+      namesystem.writeLock();
+      lockTime = Time.monotonicNow();
+    }
+
+    void unlock() {
+      holdTime += Time.monotonicNow() - lockTime;
+      namesystem.writeUnlock();
+    }
+
+    /**
+     * Count a processed block and release the lock if a batch is complete.
+     * @return true if the lock has been released and acquired again. The
+     *         caller must then check that its state is still valid.
+     */
+    boolean yieldIfNeeded() {
+      if (blockReportBatchSize <= 0 || ++count % blockReportBatchSize != 0) {
+        return false;
+      }
+      unlock();
+      lock();
+      yields++;
+      return true;
+    }
+
+    /** @return true if the lock has been released at least once. */
+    boolean hasYielded() {
+      return yields > 0;
+    }
+
+    int getYields() {
+      return yields;
+    }
+
+    long getHoldTime() {
+      return holdTime;
+    }
+  }
+
+  /**
+   * Check that a storage whose report is being processed is still valid
+   * after the namesystem lock has been released.
+   */
+  private void checkReportingStorage(DatanodeDescriptor node,
+      DatanodeStorageInfo storageInfo) throws IOException {
+    if (!node.isAlive
+        || node.getStorageInfo(storageInfo.getStorageID()) != storageInfo) {
+      throw new IOException("Storage " + storageInfo + " of " + node
+          + " was removed while its block report was processed");
+    }
+  }
+
+  /**
+   * @return true if the given block has been replaced in or removed from the
+   *         blocks map after the lock was released.
+   */
+  private boolean isStaleAfterYield(BlockReportLock lock, BlockInfo stored) {
+    return lock.hasYielded() && blocksMap.getStoredBlock(stored) != stored;
+  }
+
+  /**
+   * Check a replica found corrupt by a block report again, against the
+   * blocks map as it is after the lock was released.
+   * @return the replica to mark corrupt, or null if it is not corrupt anymore
+   *         or its block was removed or replaced.
+   */
+  private BlockToMarkCorrupt recheckCorruptAfterYield(BlockReportLock lock,
+      BlockToMarkCorrupt b, DatanodeDescriptor dn) {
+    if (!lock.hasYielded()) {
+      return b;
+    }
+    final BlockInfo stored = blocksMap.getStoredBlock(b.reported);
+    if (stored != b.stored
+        || invalidateBlocks.contains(dn.getDatanodeUuid(), b.reported)) {
+      return null;
+    }
+    final BlockToMarkCorrupt c = checkReplicaCorrupt(b.reported,
+        b.reportedState, stored, stored.getBlockUCState(), dn);
+    if (c != null) {
+      c.reported = b.reported;
+      c.reportedState = b.reportedState;
+    }
+    return c;
+  }
+
   /**
    * Rescan the list of blocks which were previously postponed.
    */
@@ -1729,28 +1870,48 @@ private void rescanPostponedMisreplicatedBlocks() {
   
   private void processReport(final DatanodeDescriptor node,
       final DatanodeStorage storage,
-      final BlockListAsLongs report) throws IOException {
+      final BlockListAsLongs report, final BlockReportLock lock)
+      throws IOException {
     // Normal case:
     // Modify the (block-->datanode) map, according to the difference
     // between the old and new block report.
     //
+    final DatanodeStorageInfo storageInfo =
+        node.getStorageInfo(storage.getStorageID());
     Collection<BlockInfo> toAdd = new LinkedList<BlockInfo>();
     Collection<Block> toRemove = new TreeSet<Block>();
     Collection<Block> toInvalidate = new LinkedList<Block>();
     Collection<BlockToMarkCorrupt> toCorrupt = new LinkedList<BlockToMarkCorrupt>();
     Collection<StatefulBlockInfo> toUC = new LinkedList<StatefulBlockInfo>();
     reportDiff(node, storage, report,
-        toAdd, toRemove, toInvalidate, toCorrupt, toUC);
+        toAdd, toRemove, toInvalidate, toCorrupt, toUC, lock);
 
-    // Process the blocks on each queue
+    // Process the blocks on each queue. If the lock has been released since
+    // the diff was computed, blocks replaced in the meantime are skipped,
+    // and the replicas to invalidate or mark corrupt are checked again; the
+    // next report of this storage will account for them.
     for (StatefulBlockInfo b : toUC) { 
-      addStoredBlockUnderConstruction(b, node, storage.getStorageID());
+      if (lock.yieldIfNeeded()) {
+        checkReportingStorage(node, storageInfo);
+      }
+      if (!isStaleAfterYield(lock, b.storedBlock)) {
+        addStoredBlockUnderConstruction(b, node, storage.getStorageID());
+      }
     }
     for (Block b : toRemove) {
+      if (lock.yieldIfNeeded()) {
+        checkReportingStorage(node, storageInfo);
+      }
       removeStoredBlock(b, node);
     }
     int numBlocksLogged = 0;
     for (BlockInfo b : toAdd) {
+      if (lock.yieldIfNeeded()) {
+        checkReportingStorage(node, storageInfo);
+      }
+      if (isStaleAfterYield(lock, b)) {
+        continue;
+      }
       addStoredBlock(b, node, storage.getStorageID(), null, numBlocksLogged < maxNumBlocksToLog);
       numBlocksLogged++;
     }
@@ -1759,13 +1920,26 @@ private void processReport(final DatanodeDescriptor node,
           + " of " + numBlocksLogged + " reported.");
     }
     for (Block b : toInvalidate) {
+      if (lock.yieldIfNeeded()) {
+        checkReportingStorage(node, storageInfo);
+      }
+      if (lock.hasYielded() && blocksMap.getStoredBlock(b) != null) {
+        // added to the namespace while the lock was released
+        continue;
+      }
       blockLog.info("BLOCK* processReport: "
           + b + " on " + node + " size " + b.getNumBytes()
           + " does not belong to any file");
       addToInvalidates(b, node);
     }
     for (BlockToMarkCorrupt b : toCorrupt) {
-      markBlockAsCorrupt(b, node, storage.getStorageID());
+      if (lock.yieldIfNeeded()) {
+        checkReportingStorage(node, storageInfo);
+      }
+      final BlockToMarkCorrupt c = recheckCorruptAfterYield(lock, b, node);
+      if (c != null) {
+        markBlockAsCorrupt(c, node, storage.getStorageID());
+      }
     }
   }
 
@@ -1781,14 +1955,19 @@ private void processReport(final DatanodeDescriptor node,
    * @throws IOException 
    */
   private void processFirstBlockReport(final DatanodeDescriptor node,
-      final String storageID,
-      final BlockListAsLongs report) throws IOException {
+      final DatanodeStorageInfo storageInfo,
+      final BlockListAsLongs report, final BlockReportLock lock)
+      throws IOException {
     if (report == null) return;
     assert (namesystem.hasWriteLock());
-    assert (node.getStorageInfo(storageID).numBlocks() == 0);
+    assert (storageInfo.numBlocks() == 0);
+    final String storageID = storageInfo.getStorageID();
     BlockReportIterator itBR = report.getBlockReportIterator();
 
     while(itBR.hasNext()) {
+      if (lock.yieldIfNeeded()) {
+        checkReportingStorage(node, storageInfo);
+      }
       Block iblk = itBR.next();
       ReplicaState reportedState = itBR.getCurrentReplicaState();
       
@@ -1846,41 +2025,51 @@ private void reportDiff(DatanodeDescriptor dn, DatanodeStorage storage,
       Collection<Block> toRemove,           // remove from DatanodeDescriptor
       Collection<Block> toInvalidate,       // should be removed from DN
       Collection<BlockToMarkCorrupt> toCorrupt, // add to corrupt replicas list
-      Collection<StatefulBlockInfo> toUC) { // add to under-construction list
+      Collection<StatefulBlockInfo> toUC, // add to under-construction list
+      BlockReportLock lock) throws IOException {
 
     final DatanodeStorageInfo storageInfo = dn.getStorageInfo(storage.getStorageID());
 
     // place a delimiter in the list which separates blocks 
     // that have been reported from those that have not
-    BlockInfo delimiter = new BlockInfo(new Block(), 1);
-    boolean added = storageInfo.addBlock(delimiter);
-    assert added : "Delimiting block cannot be present in the node";
+    BlockInfo delimiter = storageInfo.addReportDelimiter(
+        blocksMap.initTriplets(new BlockInfo(new Block(), 1)));
     int headIndex = 0; //currently the delimiter is in the head of the list
     int curIndex;
 
-    if (newReport == null)
-      newReport = new BlockListAsLongs();
-    // scan the report and process newly reported blocks
-    BlockReportIterator itBR = newReport.getBlockReportIterator();
-    while(itBR.hasNext()) {
-      Block iblk = itBR.next();
-      ReplicaState iState = itBR.getCurrentReplicaState();
-      BlockInfo storedBlock = processReportedBlock(dn, storage.getStorageID(),
-          iblk, iState, toAdd, toInvalidate, toCorrupt, toUC);
-
-      // move block to the head of the list
-      if (storedBlock != null &&
-          (curIndex = storedBlock.findStorageInfo(storageInfo)) >= 0) {
-        headIndex = storageInfo.moveBlockToHead(storedBlock, curIndex, headIndex);
+    try {
+      if (newReport == null)
+        newReport = new BlockListAsLongs();
+      // scan the report and process newly reported blocks
+      BlockReportIterator itBR = newReport.getBlockReportIterator();
+      while(itBR.hasNext()) {
+        if (lock.yieldIfNeeded()) {
+          // Blocks added to the storage while the lock was released are
+          // inserted at the head, so they are kept as reported. The head
+          // may have changed, though.
+          checkReportingStorage(dn, storageInfo);
+          headIndex = storageInfo.getBlockListHeadIndex();
+        }
+        Block iblk = itBR.next();
+        ReplicaState iState = itBR.getCurrentReplicaState();
+        BlockInfo storedBlock = processReportedBlock(dn, storage.getStorageID(),
+            iblk, iState, toAdd, toInvalidate, toCorrupt, toUC);
+
+        // move block to the head of the list
+        if (storedBlock != null &&
+            (curIndex = storedBlock.findStorageInfo(storageInfo)) >= 0) {
+          headIndex = storageInfo.moveBlockToHead(storedBlock, curIndex, headIndex);
+        }
       }
-    }
 
-    // collect blocks that have not been reported
-    // all of them are next to the delimiter
-    Iterator<BlockInfo> it = storageInfo.new BlockIterator(delimiter.getNext(0));
-    while(it.hasNext())
-      toRemove.add(it.next());
-    storageInfo.removeBlock(delimiter);
+      // collect blocks that have not been reported
+      // all of them are next to the delimiter
+      Iterator<BlockInfo> it = storageInfo.new BlockIterator(delimiter.getNext(0));
+      while(it.hasNext())
+        toRemove.add(it.next());
+    } finally {
+      storageInfo.removeReportDelimiter();
+    }
   }
 
   /**
@@ -1968,6 +2157,8 @@ private BlockInfo processReportedBlock(final DatanodeDescriptor dn,
         queueReportedBlock(dn, storageID, storedBlock, reportedState,
             QUEUE_REASON_CORRUPT_STATE);
       } else {
+        c.reported = new Block(block);
+        c.reportedState = reportedState;
         toCorrupt.add(c);
       }
       return storedBlock;
@@ -2180,7 +2371,7 @@ private void addStoredBlockImmediate(BlockInfo storedBlock,
     }
 
     // just add it
-    node.addBlock(storageID, storedBlock);
+    blocksMap.addReplica(node, storageID, storedBlock);
 
     // Now check for completion of blocks and safe block count
     int numCurrentReplica = countLiveNodes(storedBlock);
@@ -2229,7 +2420,7 @@ private Block addStoredBlock(final BlockInfo block,
     assert bc != null : "Block must belong to a file";
 
     // add block to the datanode
-    boolean added = node.addBlock(storageID, storedBlock);
+    boolean added = blocksMap.addReplica(node, storageID, storedBlock);
 
     int curReplicaDelta;
     if (added) {
@@ -2395,6 +2586,11 @@ public void processMisReplicatedBlocks() {
     }
     
     LOG.info("Total number of blocks            = " + blocksMap.size());
+    if (blocksMap.isOffHeap()) {
+      final BlockInfoSlab slab = blocksMap.getSlab();
+      LOG.info("Off-heap block triplet records    = " + slab.getNumRecords()
+          + " (" + slab.getReservedBytes() + " bytes reserved)");
+    }
     LOG.info("Number of invalid blocks          = " + nrInvalid);
     LOG.info("Number of under-replicated blocks = " + nrUnderReplicated);
     LOG.info("Number of  over-replicated blocks = " + nrOverReplicated +
@@ -3184,6 +3380,26 @@ public int getCapacity() {
       namesystem.readUnlock();
     }
   }
+
+  /** @return true if the block triplets are stored off-heap. */
+  public boolean isBlocksMapOffHeap() {
+    return blocksMap.isOffHeap();
+  }
+
+  /** @return the number of block triplets allocated on the heap. */
+  public long getHeapTriplets() {
+    return blocksMap.getHeapTriplets();
+  }
+
+  /** @return the number of off-heap records holding block triplets. */
+  public long getOffHeapTripletRecords() {
+    return blocksMap.isOffHeap() ? blocksMap.getSlab().getNumRecords() : 0;
+  }
+
+  /** @return the number of off-heap bytes reserved for block triplets. */
+  public long getOffHeapTripletBytes() {
+    return blocksMap.isOffHeap() ? blocksMap.getSlab().getReservedBytes() : 0;
+  }
   
   /**
    * Return a range of corrupt replica block ids. Up to numExpectedBlocks 
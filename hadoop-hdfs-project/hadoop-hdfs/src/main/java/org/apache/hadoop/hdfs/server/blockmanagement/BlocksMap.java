@@ -63,9 +63,20 @@ public void remove()  {
   
   private GSet<Block, BlockInfo> blocks;
 
+  /** The slab holding the block triplets off-heap, or null. */
+  private final BlockInfoSlab slab;
+
+  /** Number of triplets allocated on the heap by the blocks in the map. */
+  private long heapTriplets = 0;
+
   BlocksMap(int capacity) {
+    this(capacity, false);
+  }
+
+  BlocksMap(int capacity, boolean offHeap) {
     // Use 2% of total memory to size the GSet capacity
     this.capacity = capacity;
+    this.slab = offHeap ? new BlockInfoSlab() : null;
     this.blocks = new LightWeightGSet<Block, BlockInfo>(capacity);
   }
 
@@ -73,6 +84,7 @@ public void remove()  {
   void close() {
     if (blocks != null) {
       blocks.clear();
+      heapTriplets = 0;
       blocks = null;
     }
   }
@@ -89,19 +101,42 @@ BlockInfo addBlockCollection(BlockInfo b, BlockCollection bc) {
     BlockInfo info = blocks.get(b);
     if (info != b) {
       info = b;
-      blocks.put(info);
+      initTriplets(info);
+      put(info);
     }
     info.setBlockCollection(bc);
     return info;
   }
 
+  /**
+   * Prepare a block which is not on any storage list yet to be linked into
+   * the storage lists of the blocks in this map.
+   * @return the block.
+   */
+  BlockInfo initTriplets(BlockInfo b) {
+    if (slab != null) {
+      b.moveTripletsToSlab(slab);
+    }
+    return b;
+  }
+
+  /**
+   * Release the resources held for a storage which no longer has any block,
+   * e.g. when its datanode is removed.
+   */
+  void removeStorage(DatanodeStorageInfo storage) {
+    if (slab != null && storage.numBlocks() == 0) {
+      slab.unregisterStorage(storage);
+    }
+  }
+
   /**
    * Remove the block from the block map;
    * remove it from all data-node lists it belongs to;
    * and remove all data-node locations associated with the block.
    */
   void removeBlock(Block block) {
-    BlockInfo blockInfo = blocks.remove(block);
+    BlockInfo blockInfo = remove(block);
     if (blockInfo == null)
       return;
 
@@ -175,7 +210,7 @@ boolean removeNode(Block b, DatanodeDescriptor node) {
 
     if (info.getDatanode(0) == null     // no datanodes left
               && info.getBlockCollection() == null) {  // does not belong to a file
-      blocks.remove(b);  // remove block from the map
+      remove(b);  // remove block from the map
     }
     return removed;
   }
@@ -193,6 +228,16 @@ int getCapacity() {
     return capacity;
   }
 
+  /** @return true if the block triplets are stored off-heap. */
+  boolean isOffHeap() {
+    return slab != null;
+  }
+
+  /** @return the slab holding the block triplets, or null if on-heap. */
+  BlockInfoSlab getSlab() {
+    return slab;
+  }
+
   /**
    * Replace a block in the block map by a new block.
    * The new block and the old one have the same key.
@@ -202,13 +247,46 @@ int getCapacity() {
   BlockInfo replaceBlock(BlockInfo newBlock) {
     BlockInfo currentBlock = blocks.get(newBlock);
     assert currentBlock != null : "the block if not in blocksMap";
+    initTriplets(newBlock);
     // replace block in data-node lists
     for(int idx = currentBlock.numNodes()-1; idx >= 0; idx--) {
       DatanodeDescriptor dn = currentBlock.getDatanode(idx);
       dn.replaceBlock(currentBlock, newBlock);
     }
     // replace block in the map itself
-    blocks.put(newBlock);
+    put(newBlock);
     return newBlock;
   }
+
+  private void put(BlockInfo b) {
+    final BlockInfo old = blocks.put(b);
+    heapTriplets += b.getHeapCapacity()
+        - (old == null ? 0 : old.getHeapCapacity());
+  }
+
+  private BlockInfo remove(Block b) {
+    final BlockInfo old = blocks.remove(b);
+    if (old != null) {
+      heapTriplets -= old.getHeapCapacity();
+    }
+    return old;
+  }
+
+  /**
+   * Add a replica of a block in the map to a storage of the datanode,
+   * accounting for the triplets allocated if the block has to grow.
+   * @return true if the replica was added.
+   */
+  boolean addReplica(DatanodeDescriptor node, String storageID,
+      BlockInfo b) {
+    final int capacity = b.getHeapCapacity();
+    final boolean added = node.addBlock(storageID, b);
+    heapTriplets += b.getHeapCapacity() - capacity;
+    return added;
+  }
+
+  /** @return the number of triplets allocated on the heap. */
+  long getHeapTriplets() {
+    return heapTriplets;
+  }
 }
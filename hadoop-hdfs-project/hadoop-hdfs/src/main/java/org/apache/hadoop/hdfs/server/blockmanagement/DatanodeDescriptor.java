@@ -21,11 +21,13 @@
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -168,6 +170,23 @@ public CachedBlocksList getPendingUncached() {
     return pendingUncached;
   }
 
+  /**
+   * The IDs of the blocks which this datanode cached on its own because they
+   * are read frequently.  They are only used to advertise cached replicas to
+   * clients; the CacheReplicationMonitor does not manage them.
+   * This set is replaced by periodic cache reports.
+   */
+  private Set<Long> autoCached = Collections.emptySet();
+
+  public void setAutoCached(Collection<Long> blockIds) {
+    autoCached = blockIds.isEmpty() ? Collections.<Long>emptySet() :
+        new HashSet<Long>(blockIds);
+  }
+
+  public boolean isAutoCached(long blockId) {
+    return autoCached.contains(blockId);
+  }
+
   /**
    * The time when the last batch of caching directives was sent, in
    * monotonic milliseconds.
@@ -327,6 +346,7 @@ public void resetBlocks() {
     this.pendingCached.clear();
     this.cached.clear();
     this.pendingUncached.clear();
+    this.autoCached = Collections.emptySet();
   }
   
   public void clearBlockQueues() {
@@ -340,6 +360,7 @@ public void clearBlockQueues() {
     this.pendingCached.clear();
     this.cached.clear();
     this.pendingUncached.clear();
+    this.autoCached = Collections.emptySet();
   }
 
   public int numBlocks() {
@@ -372,6 +393,13 @@ public void updateHeartbeat(StorageReport[] reports, long cacheCapacity,
         // is received before the initial block reports from each storage.
         storage = updateStorage(report.getStorage());
       }
+      if (report.isSlow() != storage.isSlow()) {
+        if (report.isSlow()) {
+          LOG.warn("Storage " + storage + " on " + this + " is slow");
+        } else {
+          LOG.info("Storage " + storage + " on " + this + " is no longer slow");
+        }
+      }
       storage.receivedHeartbeat(report);
       totalCapacity += report.getCapacity();
       totalRemaining += report.getRemaining();
@@ -616,6 +644,19 @@ public int getVolumeFailures() {
     return volumeFailures;
   }
 
+  /**
+   * @return number of storages the datanode reported as slow.
+   */
+  public int getSlowVolumes() {
+    int slow = 0;
+    for (DatanodeStorageInfo storage : getStorageInfos()) {
+      if (storage.isSlow()) {
+        slow++;
+      }
+    }
+    return slow;
+  }
+
   /**
    * @param nodeReg DatanodeID to update registration for.
    */
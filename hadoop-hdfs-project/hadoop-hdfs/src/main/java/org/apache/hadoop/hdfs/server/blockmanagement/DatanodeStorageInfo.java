@@ -78,7 +78,7 @@ class BlockIterator implements Iterator<BlockInfo> {
     private BlockInfo current;
 
     BlockIterator(BlockInfo head) {
-      this.current = head;
+      this.current = skipReportDelimiter(head);
     }
 
     public boolean hasNext() {
@@ -87,10 +87,18 @@ public boolean hasNext() {
 
     public BlockInfo next() {
       BlockInfo res = current;
-      current = current.getNext(current.findStorageInfo(DatanodeStorageInfo.this));
+      current = skipReportDelimiter(
+          current.getNext(current.findStorageInfo(DatanodeStorageInfo.this)));
       return res;
     }
 
+    private BlockInfo skipReportDelimiter(BlockInfo b) {
+      if (b != null && b == reportDelimiter) {
+        return b.getNext(b.findStorageInfo(DatanodeStorageInfo.this));
+      }
+      return b;
+    }
+
     public void remove() {
       throw new UnsupportedOperationException("Sorry. can't remove.");
     }
@@ -105,6 +113,8 @@ public void remove() {
   private long dfsUsed;
   private long remaining;
   private long blockPoolUsed;
+  /** Whether the datanode reported the I/O latency as an outlier. */
+  private boolean slow;
 
   private volatile BlockInfo blockList = null;
   private int numBlocks = 0;
@@ -128,6 +138,21 @@ public void remove() {
    */
   private boolean blockContentsStale = true;
 
+  /** Index of this storage in the {@link BlockInfoSlab}, or -1. */
+  private int slabIndex = -1;
+
+  /**
+   * Set while a block report of this storage is being processed. The
+   * namesystem lock may be released during the processing.
+   */
+  private boolean blockReportInProgress = false;
+
+  /**
+   * The block separating reported from not yet reported blocks while a block
+   * report is processed. It is not visible to the block iterators.
+   */
+  private BlockInfo reportDelimiter = null;
+
   DatanodeStorageInfo(DatanodeDescriptor dn, DatanodeStorage s) {
     this.dn = dn;
     this.storageID = s.getStorageID();
@@ -135,6 +160,14 @@ public void remove() {
     this.state = s.getState();
   }
 
+  int getSlabIndex() {
+    return slabIndex;
+  }
+
+  void setSlabIndex(int slabIndex) {
+    this.slabIndex = slabIndex;
+  }
+
   int getBlockReportCount() {
     return blockReportCount;
   }
@@ -202,12 +235,23 @@ long getBlockPoolUsed() {
   }
 
   boolean addBlock(BlockInfo b) {
-    if(!b.addStorage(this))
-      return false;
+    // The replica may have moved from another storage of the same datanode,
+    // e.g. when a lazily persisted replica is evicted from RAM_DISK.
+    boolean moved = false;
+    final int idx = b.findDatanode(getDatanodeDescriptor());
+    if (idx >= 0) {
+      final DatanodeStorageInfo otherStorage = b.getStorageInfo(idx);
+      if (otherStorage == this) {
+        return false;
+      }
+      otherStorage.removeBlock(b);
+      moved = true;
+    }
+    b.addStorage(this);
     // add to the head of the data-node list
     blockList = b.listInsert(blockList, this);
     numBlocks++;
-    return true;
+    return !moved;
   }
 
   boolean removeBlock(BlockInfo b) {
@@ -221,7 +265,7 @@ boolean removeBlock(BlockInfo b) {
   }
 
   int numBlocks() {
-    return numBlocks;
+    return reportDelimiter == null ? numBlocks : numBlocks - 1;
   }
   
   Iterator<BlockInfo> getBlockIterator() {
@@ -238,6 +282,42 @@ int moveBlockToHead(BlockInfo b, int curIndex, int headIndex) {
     return curIndex;
   }
 
+  /**
+   * @return the index of this storage in the triplets of the head of the
+   *         blockList, or -1 if the list is empty.
+   */
+  int getBlockListHeadIndex() {
+    return blockList == null ? -1 : blockList.findStorageInfo(this);
+  }
+
+  /**
+   * Insert a delimiter at the head of the block list. The blocks behind it
+   * are those not yet moved to the head by {@link #moveBlockToHead}.
+   * @param delimiter a block which is not on any list.
+   * @return the delimiter
+   */
+  BlockInfo addReportDelimiter(BlockInfo delimiter) {
+    boolean added = addBlock(delimiter);
+    assert added : "Delimiting block cannot be present in the node";
+    reportDelimiter = delimiter;
+    return delimiter;
+  }
+
+  void removeReportDelimiter() {
+    if (reportDelimiter != null) {
+      removeBlock(reportDelimiter);
+      reportDelimiter = null;
+    }
+  }
+
+  boolean isBlockReportInProgress() {
+    return blockReportInProgress;
+  }
+
+  void setBlockReportInProgress(boolean blockReportInProgress) {
+    this.blockReportInProgress = blockReportInProgress;
+  }
+
   /**
    * Used for testing only
    * @return the head of the blockList
@@ -252,6 +332,11 @@ void updateState(StorageReport r) {
     dfsUsed = r.getDfsUsed();
     remaining = r.getRemaining();
     blockPoolUsed = r.getBlockPoolUsed();
+    slow = r.isSlow();
+  }
+
+  boolean isSlow() {
+    return slow;
   }
 
   public DatanodeDescriptor getDatanodeDescriptor() {
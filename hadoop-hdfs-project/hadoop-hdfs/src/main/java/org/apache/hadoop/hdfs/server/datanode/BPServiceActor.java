@@ -85,6 +85,12 @@ class BPServiceActor implements Runnable {
 
   boolean resetBlockReportTime = true;
 
+  /**
+   * The index of the storage to report next, when the periodic block reports
+   * are spread over the storages.
+   */
+  private int nextStorageToReport = 0;
+
   volatile long lastCacheReport = 0;
 
   Thread bpThread;
@@ -480,7 +486,30 @@ List<DatanodeCommand> blockReport() throws IOException {
     // Send the reports to the NN.
     int numReportsSent;
     long brSendStartTime = now();
-    if (totalBlockCount < dnConf.blockReportSplitThreshold) {
+    final boolean spreadStorages = dnConf.blockReportSpreadStorages
+        && !resetBlockReportTime && reports.length > 1;
+    if (spreadStorages) {
+      // Send the report of a single storage, the next storages are reported
+      // later in the interval.
+      Arrays.sort(reports, new Comparator<StorageBlockReport>() {
+        @Override
+        public int compare(StorageBlockReport a, StorageBlockReport b) {
+          return a.getStorage().getStorageID().compareTo(
+              b.getStorage().getStorageID());
+        }
+      });
+      numReportsSent = 1;
+      StorageBlockReport report =
+          reports[nextStorageToReport++ % reports.length];
+      totalBlockCount =
+          new BlockListAsLongs(report.getBlocks()).getNumberOfBlocks();
+      StorageBlockReport singleReport[] = { report };
+      DatanodeCommand cmd = bpNamenode.blockReport(
+          bpRegistration, bpos.getBlockPoolId(), singleReport);
+      if (cmd != null) {
+        cmds.add(cmd);
+      }
+    } else if (totalBlockCount < dnConf.blockReportSplitThreshold) {
       // Below split threshold, send all reports in a single message.
       numReportsSent = 1;
       DatanodeCommand cmd =
@@ -512,17 +541,29 @@ List<DatanodeCommand> blockReport() throws IOException {
         " Got back commands " +
             (cmds.size() == 0 ? "none" : Joiner.on("; ").join(cmds)));
 
-    scheduleNextBlockReport(startTime);
+    scheduleNextBlockReport(startTime, spreadStorages ? reports.length : 1);
     return cmds.size() == 0 ? null : cmds;
   }
 
-  private void scheduleNextBlockReport(long previousReportStartTime) {
+  /**
+   * @param numReportsPerInterval the number of reports sent in an interval,
+   *        one per storage if the reports are spread over the storages.
+   */
+  private void scheduleNextBlockReport(long previousReportStartTime,
+      int numReportsPerInterval) {
     // If we have sent the first set of block reports, then wait a random
     // time before we start the periodic block reports.
     if (resetBlockReportTime) {
       lastBlockReport = previousReportStartTime -
           DFSUtil.getRandom().nextInt((int)(dnConf.blockReportInterval));
       resetBlockReportTime = false;
+    } else if (numReportsPerInterval > 1) {
+      // The next report is due one step after the current one, skipping the
+      // steps missed if the current report is late.
+      long step = Math.max(1,
+          dnConf.blockReportInterval / numReportsPerInterval);
+      lastBlockReport += ((now() - lastBlockReport
+          - dnConf.blockReportInterval) / step + 1) * step;
     } else {
       /* say the last block report was at 8:20:14. The current report
        * should have started around 9:20:14 (default 1 hour interval).
@@ -551,15 +592,19 @@ DatanodeCommand cacheReport() throws IOException {
 
       String bpid = bpos.getBlockPoolId();
       List<Long> blockIds = dn.getFSDataset().getCacheReport(bpid);
+      List<Long> autoCachedBlockIds =
+          dn.getFSDataset().getAutoCacheReport(bpid);
       long createTime = Time.monotonicNow();
 
-      cmd = bpNamenode.cacheReport(bpRegistration, bpid, blockIds);
+      cmd = bpNamenode.cacheReport(bpRegistration, bpid, blockIds,
+          autoCachedBlockIds);
       long sendTime = Time.monotonicNow();
       long createCost = createTime - startTime;
       long sendCost = sendTime - createTime;
       dn.getMetrics().addCacheReport(sendCost);
       LOG.debug("CacheReport of " + blockIds.size()
-          + " block(s) took " + createCost + " msec to generate and "
+          + " block(s) and " + autoCachedBlockIds.size()
+          + " automatically cached block(s) took " + createCost + " msec to generate and "
           + sendCost + " msecs for RPC and NN processing");
     }
     return cmd;
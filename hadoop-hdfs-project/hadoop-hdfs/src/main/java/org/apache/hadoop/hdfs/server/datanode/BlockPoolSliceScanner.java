@@ -28,6 +28,7 @@
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -61,6 +62,10 @@
  * files are not corrupt.
  * This keeps track of blocks and their last verification times.
  * Currently it does not modify the metadata for block.
+ * <p>
+ * The blocks which failed to be read, see {@link #markSuspectBlock(Block)},
+ * are verified before the others. The periodic scan backs off while the
+ * DataNode is busy serving clients.
  */
 
 class BlockPoolSliceScanner {
@@ -75,13 +80,23 @@ class BlockPoolSliceScanner {
 
   private static final String VERIFICATION_PREFIX = "dncp_block_verification.log";
 
+  /** The maximum number of suspect blocks waiting to be verified. */
+  private static final int MAX_SUSPECT_BLOCKS = 1000;
+  /** The longest a block waits for a busy DataNode before it is verified. */
+  private static final long MAX_BACKOFF_MS = 5 * 1000;
+  private static final long BACKOFF_SLEEP_MS = 100;
+
   private final String blockPoolId;
   private final long scanPeriod;
   private final AtomicLong lastScanTime = new AtomicLong();
 
   private final DataNode datanode;
   private final FsDatasetSpi<? extends FsVolumeSpi> dataset;
+  /** Back off while the DataNode has at least this many xceivers, if > 0. */
+  private final int busyXceivers;
   
+  /** Blocks which failed to be read, in the order they were reported. */
+  private final LinkedHashSet<Block> suspectBlocks = new LinkedHashSet<Block>();
   private final SortedSet<BlockScanInfo> blockInfoSet
       = new TreeSet<BlockScanInfo>(BlockScanInfo.LAST_SCAN_TIME_COMPARATOR);
   private final GSet<Block, BlockScanInfo> blockMap
@@ -101,6 +116,8 @@ class BlockPoolSliceScanner {
   private long bytesLeft = 0; // Bytes to scan in this period
   private long totalBytesToScan = 0;
   private boolean isNewPeriod = true;
+  /** Have the verification times been read from the log? */
+  private boolean verificationTimesLoaded = false;
   
   private final LogFileHandler verificationLog;
   
@@ -183,6 +200,9 @@ public LinkedElement getNext() {
       hours = DEFAULT_SCAN_PERIOD_HOURS;
     }
     this.scanPeriod = hours * 3600 * 1000;
+    this.busyXceivers = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_SCAN_BUSY_XCEIVERS_KEY,
+        DFSConfigKeys.DFS_DATANODE_SCAN_BUSY_XCEIVERS_DEFAULT);
     LOG.info("Periodic Block Verification Scanner initialized with interval "
         + hours + " hours for block pool " + bpid);
 
@@ -285,6 +305,89 @@ synchronized void deleteBlock(Block block) {
     if ( info != null ) {
       delBlockInfo(info);
     }
+    removeSuspectBlock(block);
+  }
+
+  /**
+   * Queue a block which failed to be read to be verified before the other
+   * blocks.
+   * @return true if the block is waiting to be verified.
+   */
+  synchronized boolean markSuspectBlock(Block block) {
+    if (suspectBlocks.contains(block)) {
+      return true;
+    }
+    if (blockMap.get(block) == null
+        || suspectBlocks.size() >= MAX_SUSPECT_BLOCKS) {
+      return false;
+    }
+    LOG.info("Queueing suspect block " + block + " for verification");
+    suspectBlocks.add(block);
+    datanode.getMetrics().incrSuspectBlocksQueued();
+    return true;
+  }
+
+  private synchronized void removeSuspectBlock(Block block) {
+    if (suspectBlocks.remove(block)) {
+      datanode.getMetrics().decrSuspectBlocksQueued();
+    }
+  }
+
+  /** @return the next suspect block to verify, or null. */
+  private synchronized Block pollSuspectBlock() {
+    while (!suspectBlocks.isEmpty()) {
+      final Iterator<Block> i = suspectBlocks.iterator();
+      final Block block = i.next();
+      i.remove();
+      datanode.getMetrics().decrSuspectBlocksQueued();
+      // verify the replica known to the scanner, which may have changed
+      final BlockScanInfo info = blockMap.get(block);
+      if (info != null) {
+        return new Block(info);
+      }
+    }
+    return null;
+  }
+
+  @VisibleForTesting
+  synchronized int getNumSuspectBlocks() {
+    return suspectBlocks.size();
+  }
+
+  /** Verify the suspect blocks, if any. */
+  void verifySuspectBlocks() {
+    Block block;
+    while (datanode.shouldRun
+        && !datanode.blockScanner.blockScannerThread.isInterrupted()
+        && (block = pollSuspectBlock()) != null) {
+      verifyBlock(new ExtendedBlock(blockPoolId, block));
+    }
+  }
+
+  /**
+   * Wait a bit while the DataNode is busy serving clients, so that the
+   * periodic scan does not compete with their I/O. Suspect blocks do not
+   * wait.
+   */
+  private void backOffWhileBusy() {
+    if (busyXceivers <= 0) {
+      return;
+    }
+    final long deadline = Time.monotonicNow() + MAX_BACKOFF_MS;
+    while (datanode.getXceiverCount() >= busyXceivers
+        && Time.monotonicNow() < deadline) {
+      synchronized (this) {
+        if (!suspectBlocks.isEmpty()) {
+          return;
+        }
+      }
+      try {
+        Thread.sleep(BACKOFF_SLEEP_MS);
+      } catch (InterruptedException e) {
+        datanode.blockScanner.blockScannerThread.interrupt();
+        return;
+      }
+    }
   }
 
   @VisibleForTesting
@@ -424,7 +527,8 @@ void verifyBlock(ExtendedBlock block) {
         DataOutputStream out = 
                 new DataOutputStream(new IOUtils.NullOutputStream());
         
-        blockSender.sendBlock(out, null, throttler);
+        long bytesVerified = blockSender.sendBlock(out, null, throttler);
+        datanode.getMetrics().incrBytesVerified(bytesVerified);
 
         LOG.info((second ? "Second " : "") +
                  "Verification succeeded for " + block);
@@ -470,6 +574,8 @@ void verifyBlock(ExtendedBlock block) {
         } 
       } finally {
         IOUtils.closeStream(blockSender);
+        // the failures of this verification do not make the block suspect
+        removeSuspectBlock(block.getLocalBlock());
         datanode.getMetrics().incrBlocksVerified();
         totalScans++;
       }
@@ -517,12 +623,16 @@ int getBlocksScannedInLastRun() {
    * Reads the current and previous log files (if any) and marks the blocks
    * processed if they were processed within last scan period. Copies the log
    * records of recently scanned blocks from previous to current file. 
+   * The log files are only read by the first run; the later runs use the
+   * verification times kept in memory.
    * Returns false if the process was interrupted because the thread is marked 
    * to exit.
    */
   private boolean assignInitialVerificationTimes() {
     //First updates the last verification times from the log file.
-    if (verificationLog != null) {
+    if (verificationTimesLoaded) {
+      markRecentlyVerifiedBlocks();
+    } else if (verificationLog != null) {
       long now = Time.now();
       RollingLogs.LineIterator logIterator = null;
       try {
@@ -562,6 +672,7 @@ private boolean assignInitialVerificationTimes() {
         IOUtils.closeStream(logIterator);
       }
       isNewPeriod = false;
+      verificationTimesLoaded = true;
     }
     
     
@@ -590,6 +701,25 @@ private boolean assignInitialVerificationTimes() {
     return true;
   }
   
+  /**
+   * Mark the blocks processed if they were verified within the last scan
+   * period, as recorded in memory.
+   */
+  private synchronized void markRecentlyVerifiedBlocks() {
+    final long now = Time.now();
+    for (BlockScanInfo info : blockInfoSet) {
+      if (info.lastScanType == ScanType.VERIFICATION_SCAN && info.lastScanOk
+          && now - info.lastScanTime < scanPeriod
+          && processedBlocks.get(info.getBlockId()) == null) {
+        if (isNewPeriod) {
+          updateBytesLeft(-info.getNumBytes());
+        }
+        processedBlocks.put(info.getBlockId(), 1);
+      }
+    }
+    isNewPeriod = false;
+  }
+
   private synchronized void updateBytesLeft(long len) {
     bytesLeft += len;
   }
@@ -656,6 +786,7 @@ private void scan() {
       while (datanode.shouldRun
           && !datanode.blockScanner.blockScannerThread.isInterrupted()
           && datanode.isBPServiceAlive(blockPoolId)) {
+        verifySuspectBlocks();
         long now = Time.now();
         synchronized (this) {
           if ( now >= (currentPeriodStart + scanPeriod)) {
@@ -664,6 +795,7 @@ private void scan() {
         }
         if (((now - getEarliestScanTime()) >= scanPeriod)
             || ((!blockInfoSet.isEmpty()) && !(this.isFirstBlockProcessed()))) {
+          backOffWhileBusy();
           verifyFirstBlock();
         } else {
           if (LOG.isDebugEnabled()) {
@@ -691,6 +823,19 @@ private synchronized void rollVerificationLogs() {
       } catch (IOException ex) {
         LOG.warn("Received exception: ", ex);
         verificationLog.close();
+        return;
+      }
+      if (verificationTimesLoaded) {
+        // Keep the recent verification times in the new current file, from
+        // memory rather than by reading back the previous file.
+        final long now = Time.now();
+        for (BlockScanInfo info : blockInfoSet) {
+          if (info.lastScanType == ScanType.VERIFICATION_SCAN
+              && info.lastScanOk && now - info.lastScanTime < scanPeriod) {
+            verificationLog.append(info.lastScanTime,
+                info.getGenerationStamp(), info.getBlockId());
+          }
+        }
       }
     }
   }
@@ -761,6 +906,7 @@ synchronized void printBlockReport(StringBuilder buffer,
                                 "%nScans since restart          : %6d" +
                                 "%nScan errors since restart    : %6d" +
                                 "%nTransient scan errors        : %6d" +
+                                "%nSuspect blocks queued        : %6d" +
                                 "%nCurrent scan rate limit KBps : %6d" +
                                 "%nProgress this period         : %6.0f%%" +
                                 "%nTime left in cur period      : %6.2f%%" +
@@ -769,6 +915,7 @@ synchronized void printBlockReport(StringBuilder buffer,
                                 inFourWeeks, inScanPeriod, neverScanned,
                                 totalScans, totalScans, 
                                 totalScanErrors, totalTransientErrors, 
+                                suspectBlocks.size(),
                                 Math.round(throttler.getBandwidth()/1024.0),
                                 pctProgress, pctPeriodLeft));
   }
@@ -43,6 +43,7 @@
 import org.apache.hadoop.hdfs.protocol.datatransfer.PacketReceiver;
 import org.apache.hadoop.hdfs.protocol.datatransfer.PipelineAck;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.Status;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaInputStreams;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaOutputStreams;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
@@ -116,6 +117,10 @@ class BlockReceiver implements Closeable {
   private final boolean isTransfer;
 
   private boolean syncOnClose;
+  /** Is the replica on a memory-backed volume? */
+  private boolean isTransientStorage;
+  /** Syncs the replica in the background, or null to sync in this thread. */
+  private ReplicaSyncService.ReplicaSync replicaSync;
 
   BlockReceiver(final ExtendedBlock block, final DataInputStream in,
       final String inAddr, final String myAddr,
@@ -123,7 +128,8 @@ class BlockReceiver implements Closeable {
       final long newGs, final long minBytesRcvd, final long maxBytesRcvd, 
       final String clientname, final DatanodeInfo srcDataNode,
       final DataNode datanode, DataChecksum requestedChecksum,
-      CachingStrategy cachingStrategy) throws IOException {
+      CachingStrategy cachingStrategy,
+      final boolean allowLazyPersist) throws IOException {
     try{
       this.block = block;
       this.in = in;
@@ -149,6 +155,7 @@ class BlockReceiver implements Closeable {
             + "\n  isDatanode=" + isDatanode + ", srcDataNode=" + srcDataNode
             + "\n  inAddr=" + inAddr + ", myAddr=" + myAddr
             + "\n  cachingStrategy = " + cachingStrategy
+            + "\n  allowLazyPersist = " + allowLazyPersist
             );
       }
 
@@ -160,7 +167,7 @@ class BlockReceiver implements Closeable {
       } else {
         switch (stage) {
         case PIPELINE_SETUP_CREATE:
-          replicaInfo = datanode.data.createRbw(block);
+          replicaInfo = datanode.data.createRbw(block, allowLazyPersist);
           datanode.notifyNamenodeReceivingBlock(
               block, replicaInfo.getStorageUuid());
           break;
@@ -202,11 +209,18 @@ class BlockReceiver implements Closeable {
         datanode.getDnConf().dropCacheBehindWrites :
           cachingStrategy.getDropBehind();
       this.syncBehindWrites = datanode.getDnConf().syncBehindWrites;
+      final FsVolumeSpi volume = datanode.data.getVolume(block);
+      this.isTransientStorage = volume != null
+          && volume.getStorageType().isTransient();
       
       final boolean isCreate = isDatanode || isTransfer 
           || stage == BlockConstructionStage.PIPELINE_SETUP_CREATE;
       streams = replicaInfo.createStreams(isCreate, requestedChecksum);
       assert streams != null : "null streams!";
+      final ReplicaSyncService syncService = datanode.getSyncService();
+      if (syncService != null) {
+        this.replicaSync = syncService.newReplicaSync(volume, streams);
+      }
 
       // read checksum meta information
       this.clientChecksum = requestedChecksum;
@@ -265,6 +279,9 @@ public void close() throws IOException {
     if (packetReceiver != null) {
       packetReceiver.close();
     }
+    if (replicaSync != null) {
+      replicaSync.waitForIdle();
+    }
     
     IOException ioe = null;
     if (syncOnClose && (out != null || checksumOut != null)) {
@@ -362,6 +379,24 @@ void flushOrSync(boolean isSync) throws IOException {
     }
   }
 
+  /**
+   * Flush the packet to the OS and sync it if requested. The sync is done in
+   * the background if group commit is enabled, except for the last packet
+   * of the block, and the ack of the packet then waits for it.
+   * @param offsetInBlock the length of the replica with the packet
+   * @return true if the packet waits for a background sync.
+   */
+  private boolean flushOrRequestSync(boolean syncBlock,
+      boolean lastPacketInBlock, long offsetInBlock) throws IOException {
+    if (!syncBlock || replicaSync == null || lastPacketInBlock) {
+      flushOrSync(syncBlock);
+      return false;
+    }
+    flushOrSync(false);
+    replicaSync.requestSync(offsetInBlock);
+    return true;
+  }
+
   /**
    * While writing to mirrorOut, failure to write to mirror should not
    * affect this datanode unless it is caused by interruption.
@@ -494,6 +529,7 @@ private int receivePacket() throws IOException {
     
     ByteBuffer dataBuf = packetReceiver.getDataSlice();
     ByteBuffer checksumBuf = packetReceiver.getChecksumSlice();
+    boolean waitForSync = false;
     
     if (lastPacketInBlock || len == 0) {
       if(LOG.isDebugEnabled()) {
@@ -501,7 +537,8 @@ private int receivePacket() throws IOException {
       }
       // sync block if requested
       if (syncBlock) {
-        flushOrSync(true);
+        waitForSync = flushOrRequestSync(true, lastPacketInBlock,
+            offsetInBlock);
       }
     } else {
       int checksumLen = ((len + bytesPerChecksum - 1)/bytesPerChecksum)*
@@ -569,7 +606,7 @@ private int receivePacket() throws IOException {
           int numBytesToDisk = (int)(offsetInBlock-onDiskLen);
           
           // Write data to disk.
-          out.write(dataBuf.array(), startByteToDisk, numBytesToDisk);
+          streams.writeDataOut(dataBuf.array(), startByteToDisk, numBytesToDisk);
 
           // If this is a partial chunk, then verify that this is the only
           // chunk in the packet. Calculate new crc for this chunk.
@@ -601,7 +638,8 @@ private int receivePacket() throws IOException {
                 checksumLen);
           }
           /// flush entire packet, sync if requested
-          flushOrSync(syncBlock);
+          waitForSync = flushOrRequestSync(syncBlock, lastPacketInBlock,
+              offsetInBlock);
           
           replicaInfo.setLastChecksumAndDataLen(
             offsetInBlock, lastChunkChecksum
@@ -618,10 +656,10 @@ private int receivePacket() throws IOException {
     }
 
     // if sync was requested, put in queue for pending acks here
-    // (after the fsync finished)
+    // (after the fsync finished, or was requested in the background)
     if (responder != null && (syncBlock || shouldVerifyChecksum())) {
       ((PacketResponder) responder.getRunnable()).enqueue(seqno,
-          lastPacketInBlock, offsetInBlock, Status.SUCCESS);
+          lastPacketInBlock, offsetInBlock, Status.SUCCESS, waitForSync);
     }
 
     if (throttler != null) { // throttle I/O
@@ -680,7 +718,8 @@ void receiveBlock(
       String mirrAddr, DataTransferThrottler throttlerArg,
       DatanodeInfo[] downstreams) throws IOException {
 
-      syncOnClose = datanode.getDnConf().syncOnClose;
+      // There is nothing to gain from syncing a memory-backed file.
+      syncOnClose = datanode.getDnConf().syncOnClose && !isTransientStorage;
       boolean responderClosed = false;
       mirrorOut = mirrOut;
       mirrorAddr = mirrAddr;
@@ -898,8 +937,19 @@ private boolean isRunning() {
      */
     void enqueue(final long seqno, final boolean lastPacketInBlock,
         final long offsetInBlock, final Status ackStatus) {
+      enqueue(seqno, lastPacketInBlock, offsetInBlock, ackStatus, false);
+    }
+
+    /**
+     * enqueue the seqno that is still be to acked by the downstream datanode.
+     * @param waitForSync whether the ack must wait for the packet to be
+     *                    synced in the background
+     */
+    void enqueue(final long seqno, final boolean lastPacketInBlock,
+        final long offsetInBlock, final Status ackStatus,
+        final boolean waitForSync) {
       final Packet p = new Packet(seqno, lastPacketInBlock, offsetInBlock,
-          System.nanoTime(), ackStatus);
+          System.nanoTime(), ackStatus, waitForSync);
       if(LOG.isDebugEnabled()) {
         LOG.debug(myString + ": enqueue " + p);
       }
@@ -1031,6 +1081,17 @@ public void run() {
             continue;
           }
 
+          if (pkt != null && pkt.waitForSync) {
+            // do not ack the packet before it is on disk
+            try {
+              replicaSync.waitForSync(pkt.offsetInBlock);
+            } catch (InterruptedException e) {
+              LOG.info(myString + ": Thread is interrupted.");
+              running = false;
+              continue;
+            }
+          }
+
           if (lastPacketInBlock) {
             // Finalize the block and close the block file
             finalizeBlock(startTime);
@@ -1167,14 +1228,16 @@ private static class Packet {
     final long offsetInBlock;
     final long ackEnqueueNanoTime;
     final Status ackStatus;
+    final boolean waitForSync;
 
     Packet(long seqno, boolean lastPacketInBlock, long offsetInBlock,
-        long ackEnqueueNanoTime, Status ackStatus) {
+        long ackEnqueueNanoTime, Status ackStatus, boolean waitForSync) {
       this.seqno = seqno;
       this.lastPacketInBlock = lastPacketInBlock;
       this.offsetInBlock = offsetInBlock;
       this.ackEnqueueNanoTime = ackEnqueueNanoTime;
       this.ackStatus = ackStatus;
+      this.waitForSync = waitForSync;
     }
 
     @Override
@@ -1184,6 +1247,7 @@ public String toString() {
         + ", offsetInBlock=" + offsetInBlock
         + ", ackEnqueueNanoTime=" + ackEnqueueNanoTime
         + ", ackStatus=" + ackStatus
+        + ", waitForSync=" + waitForSync
         + ")";
     }
   }
@@ -511,27 +511,36 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     int checksumOff = pkt.position();
     byte[] buf = pkt.array();
     
-    if (checksumSize > 0 && checksumIn != null) {
-      readChecksum(buf, checksumOff, checksumDataLen);
+    int dataOff = checksumOff + checksumDataLen;
+    try {
+      if (checksumSize > 0 && checksumIn != null) {
+        readChecksum(buf, checksumOff, checksumDataLen);
 
-      // write in progress that we need to use to get last checksum
-      if (lastDataPacket && lastChunkChecksum != null) {
-        int start = checksumOff + checksumDataLen - checksumSize;
-        byte[] updatedChecksum = lastChunkChecksum.getChecksum();
+        // write in progress that we need to use to get last checksum
+        if (lastDataPacket && lastChunkChecksum != null) {
+          int start = checksumOff + checksumDataLen - checksumSize;
+          byte[] updatedChecksum = lastChunkChecksum.getChecksum();
         
-        if (updatedChecksum != null) {
-          System.arraycopy(updatedChecksum, 0, buf, start, checksumSize);
+          if (updatedChecksum != null) {
+            System.arraycopy(updatedChecksum, 0, buf, start, checksumSize);
+          }
         }
       }
-    }
     
-    int dataOff = checksumOff + checksumDataLen;
-    if (!transferTo) { // normal transfer
-      IOUtils.readFully(blockIn, buf, dataOff, dataLen);
+      if (!transferTo) { // normal transfer
+        IOUtils.readFully(blockIn, buf, dataOff, dataLen);
 
-      if (verifyChecksum) {
-        verifyChecksum(buf, dataOff, dataLen, numChunks, checksumOff);
+        if (verifyChecksum) {
+          verifyChecksum(buf, dataOff, dataLen, numChunks, checksumOff);
+        }
+      }
+    } catch (IOException e) {
+      // the replica may be corrupt: have the block scanner verify it soon
+      DataBlockScanner blockScanner = datanode.getBlockScanner();
+      if (blockScanner != null) {
+        blockScanner.markSuspectBlock(block);
       }
+      throw e;
     }
     
     try {
@@ -25,9 +25,19 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCKREPORT_INTERVAL_MSEC_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCKREPORT_SPLIT_THRESHOLD_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCKREPORT_SPLIT_THRESHOLD_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCKREPORT_SPREAD_STORAGES_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCKREPORT_SPREAD_STORAGES_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CACHEREPORT_INTERVAL_MSEC_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CACHEREPORT_INTERVAL_MSEC_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_SOCKET_TIMEOUT_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_AUTO_CACHE_DECAY_INTERVAL_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_AUTO_CACHE_DECAY_INTERVAL_MS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_AUTO_CACHE_MAX_BYTES_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_AUTO_CACHE_MAX_BYTES_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_AUTO_CACHE_MAX_TRACKED_BLOCKS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_AUTO_CACHE_MAX_TRACKED_BLOCKS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_AUTO_CACHE_MIN_READS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_AUTO_CACHE_MIN_READS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_SIZE_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_SIZE_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_DEFAULT;
@@ -35,6 +45,10 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SOCKET_WRITE_TIMEOUT_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SYNCONCLOSE_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SYNCONCLOSE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SYNC_GROUP_COMMIT_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SYNC_GROUP_COMMIT_ENABLED_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SYNC_THREADS_PER_VOLUME_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SYNC_THREADS_PER_VOLUME_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_TRANSFERTO_ALLOWED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_XCEIVER_STOP_TIMEOUT_MILLIS_DEFAULT;
@@ -66,6 +80,8 @@ public class DNConf {
   final boolean syncBehindWrites;
   final boolean dropCacheBehindReads;
   final boolean syncOnClose;
+  final boolean syncGroupCommit;
+  final int syncThreadsPerVolume;
   final boolean encryptDataTransfer;
   final boolean connectToDnViaHostname;
 
@@ -73,6 +89,7 @@ public class DNConf {
   final long heartBeatInterval;
   final long blockReportInterval;
   final long blockReportSplitThreshold;
+  final boolean blockReportSpreadStorages;
   final long deleteReportInterval;
   final long initialBlockReportDelay;
   final long cacheReportInterval;
@@ -85,6 +102,11 @@ public class DNConf {
 
   final long maxLockedMemory;
 
+  final long autoCacheMaxBytes;
+  final int autoCacheMinReads;
+  final long autoCacheDecayIntervalMs;
+  final int autoCacheMaxTrackedBlocks;
+
   public DNConf(Configuration conf) {
     socketTimeout = conf.getInt(DFS_CLIENT_SOCKET_TIMEOUT_KEY,
         HdfsServerConstants.READ_TIMEOUT);
@@ -122,6 +144,9 @@ public DNConf(Configuration conf) {
         DFS_BLOCKREPORT_INTERVAL_MSEC_DEFAULT);
     this.blockReportSplitThreshold = conf.getLong(DFS_BLOCKREPORT_SPLIT_THRESHOLD_KEY,
                                             DFS_BLOCKREPORT_SPLIT_THRESHOLD_DEFAULT);
+    this.blockReportSpreadStorages = conf.getBoolean(
+        DFS_BLOCKREPORT_SPREAD_STORAGES_KEY,
+        DFS_BLOCKREPORT_SPREAD_STORAGES_DEFAULT);
     this.cacheReportInterval = conf.getLong(DFS_CACHEREPORT_INTERVAL_MSEC_KEY,
         DFS_CACHEREPORT_INTERVAL_MSEC_DEFAULT);
     
@@ -142,6 +167,13 @@ public DNConf(Configuration conf) {
     // do we need to sync block file contents to disk when blockfile is closed?
     this.syncOnClose = conf.getBoolean(DFS_DATANODE_SYNCONCLOSE_KEY, 
         DFS_DATANODE_SYNCONCLOSE_DEFAULT);
+    // are the hsync requests synced to disk in the background?
+    this.syncGroupCommit = conf.getBoolean(
+        DFS_DATANODE_SYNC_GROUP_COMMIT_ENABLED_KEY,
+        DFS_DATANODE_SYNC_GROUP_COMMIT_ENABLED_DEFAULT);
+    this.syncThreadsPerVolume = conf.getInt(
+        DFS_DATANODE_SYNC_THREADS_PER_VOLUME_KEY,
+        DFS_DATANODE_SYNC_THREADS_PER_VOLUME_DEFAULT);
 
     this.minimumNameNodeVersion = conf.get(DFS_DATANODE_MIN_SUPPORTED_NAMENODE_VERSION_KEY,
         DFS_DATANODE_MIN_SUPPORTED_NAMENODE_VERSION_DEFAULT);
@@ -157,6 +189,19 @@ public DNConf(Configuration conf) {
     this.maxLockedMemory = conf.getLong(
         DFS_DATANODE_MAX_LOCKED_MEMORY_KEY,
         DFS_DATANODE_MAX_LOCKED_MEMORY_DEFAULT);
+
+    this.autoCacheMaxBytes = Math.min(maxLockedMemory, conf.getLong(
+        DFS_DATANODE_AUTO_CACHE_MAX_BYTES_KEY,
+        DFS_DATANODE_AUTO_CACHE_MAX_BYTES_DEFAULT));
+    this.autoCacheMinReads = conf.getInt(
+        DFS_DATANODE_AUTO_CACHE_MIN_READS_KEY,
+        DFS_DATANODE_AUTO_CACHE_MIN_READS_DEFAULT);
+    this.autoCacheDecayIntervalMs = conf.getLong(
+        DFS_DATANODE_AUTO_CACHE_DECAY_INTERVAL_MS_KEY,
+        DFS_DATANODE_AUTO_CACHE_DECAY_INTERVAL_MS_DEFAULT);
+    this.autoCacheMaxTrackedBlocks = conf.getInt(
+        DFS_DATANODE_AUTO_CACHE_MAX_TRACKED_BLOCKS_KEY,
+        DFS_DATANODE_AUTO_CACHE_MAX_TRACKED_BLOCKS_DEFAULT);
   }
   
   // We get minimumNameNodeVersion via a method so it can be mocked out in tests.
@@ -171,4 +216,20 @@ public long getXceiverStopTimeout() {
   public long getMaxLockedMemory() {
     return maxLockedMemory;
   }
+
+  public long getAutoCacheMaxBytes() {
+    return autoCacheMaxBytes;
+  }
+
+  public int getAutoCacheMinReads() {
+    return autoCacheMinReads;
+  }
+
+  public long getAutoCacheDecayIntervalMs() {
+    return autoCacheDecayIntervalMs;
+  }
+
+  public int getAutoCacheMaxTrackedBlocks() {
+    return autoCacheMaxTrackedBlocks;
+  }
 }
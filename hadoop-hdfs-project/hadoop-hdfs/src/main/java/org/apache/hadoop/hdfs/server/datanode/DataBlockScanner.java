@@ -75,7 +75,10 @@ public void run() {
       //Sleep everytime except in the first iteration.
       if (!firstRun) {
         try {
-          Thread.sleep(SLEEP_PERIOD_MS);
+          // woken up early by suspect blocks
+          synchronized (this) {
+            wait(SLEEP_PERIOD_MS);
+          }
         } catch (InterruptedException ex) {
           // Interrupt itself again to set the interrupt status
           blockScannerThread.interrupt();
@@ -98,6 +101,7 @@ public void run() {
         removeBlockPool(currentBpId);
         continue;
       }
+      verifySuspectBlocks();
       bpScanner.scanBlockPoolSlice();
     }
 
@@ -197,6 +201,29 @@ public void addBlock(ExtendedBlock block) {
     }
   }
   
+  /**
+   * Queue a block which failed to be read to be verified as soon as
+   * possible, before the blocks due for their periodic verification.
+   */
+  public void markSuspectBlock(ExtendedBlock block) {
+    BlockPoolSliceScanner bpScanner = getBPScanner(block.getBlockPoolId());
+    if (bpScanner != null && bpScanner.markSuspectBlock(block.getLocalBlock())) {
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+  }
+
+  /** Verify the suspect blocks of all the block pools. */
+  private void verifySuspectBlocks() {
+    for (String bpid : getBpIdList()) {
+      BlockPoolSliceScanner bpScanner = getBPScanner(bpid);
+      if (bpScanner != null && datanode.isBPServiceAlive(bpid)) {
+        bpScanner.verifySuspectBlocks();
+      }
+    }
+  }
+
   boolean isInitialized(String bpid) {
     return getBPScanner(bpid) != null;
   }
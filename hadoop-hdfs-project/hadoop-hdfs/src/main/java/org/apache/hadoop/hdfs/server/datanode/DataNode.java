@@ -232,6 +232,7 @@ public static InetSocketAddress createSocketAddr(String target) {
   Daemon localDataXceiverServer = null;
   ThreadGroup threadGroup = null;
   private DNConf dnConf;
+  private ReplicaSyncService syncService = null;
   private volatile boolean heartbeatsDisabledForTests = false;
   private DataStorage storage = null;
 
@@ -535,7 +536,7 @@ private synchronized void initDirectoryScanner(Configuration conf) {
       reason = "verifcation is not supported by SimulatedFSDataset";
     } 
     if (reason == null) {
-      directoryScanner = new DirectoryScanner(data, conf);
+      directoryScanner = new DirectoryScanner(this, data, conf);
       directoryScanner.start();
     } else {
       LOG.info("Periodic Directory Tree Verification scan is disabled because " +
@@ -562,7 +563,10 @@ private void initDataXceiver(Configuration conf) throws IOException {
     streamingAddr = tcpPeerServer.getStreamingAddr();
     LOG.info("Opened streaming server at " + streamingAddr);
     this.threadGroup = new ThreadGroup("dataXceiverServer");
-    this.dataXceiverServer = new Daemon(threadGroup, 
+    this.dataXceiverServer = new Daemon(threadGroup,
+        conf.getBoolean(DFSConfigKeys.DFS_DATANODE_TRANSFER_SERVER_NIO_KEY,
+            DFSConfigKeys.DFS_DATANODE_TRANSFER_SERVER_NIO_DEFAULT) ?
+        new NioDataXceiverServer(tcpPeerServer, conf, this) :
         new DataXceiverServer(tcpPeerServer, conf, this));
     this.threadGroup.setDaemon(true); // auto destroy when empty
 
@@ -611,7 +615,7 @@ static DomainPeerServer getDomainPeerServer(Configuration conf,
   }
   
   // calls specific to BP
-  protected void notifyNamenodeReceivedBlock(
+  public void notifyNamenodeReceivedBlock(
       ExtendedBlock block, String delHint, String storageUuid) {
     BPOfferService bpos = blockPoolManager.get(block.getBlockPoolId());
     if(bpos != null) {
@@ -783,6 +787,11 @@ void startDataNode(Configuration conf,
     // Create the ReadaheadPool from the DataNode context so we can
     // exit without having to explicitly shutdown its thread pool.
     readaheadPool = ReadaheadPool.getInstance();
+
+    if (dnConf.syncGroupCommit) {
+      syncService = new ReplicaSyncService(metrics,
+          dnConf.syncThreadsPerVolume);
+    }
   }
   
   public static String generateUuid() {
@@ -1072,7 +1081,7 @@ public InterDatanodeProtocol run() throws IOException {
     }
   }
     
-  DataNodeMetrics getMetrics() {
+  public DataNodeMetrics getMetrics() {
     return metrics;
   }
   
@@ -1307,6 +1316,9 @@ public void shutdown() {
         LOG.warn("Exception when unlocking storage: " + ie, ie);
       }
     }
+    if (syncService != null) {
+      syncService.shutdown();
+    }
     if (data != null) {
       data.shutdown();
     }
@@ -1399,7 +1411,15 @@ private void handleDiskError(String errMsgr) {
   /** Number of concurrent xceivers per node. */
   @Override // DataNodeMXBean
   public int getXceiverCount() {
-    return threadGroup == null ? 0 : threadGroup.activeCount();
+    if (threadGroup == null) {
+      return 0;
+    }
+    int count = threadGroup.activeCount();
+    if (dataXceiverServer != null) {
+      count += ((DataXceiverServer) dataXceiverServer.getRunnable())
+          .getNumMultiplexedPeers();
+    }
+    return count;
   }
   
   int getXmitsInProgress() {
@@ -1637,7 +1657,8 @@ public void run() {
         }
 
         new Sender(out).writeBlock(b, accessToken, clientname, targets, srcNode,
-            stage, 0, 0, 0, 0, blockSender.getChecksum(), cachingStrategy);
+            stage, 0, 0, 0, 0, blockSender.getChecksum(), cachingStrategy,
+            false);
 
         // send data & checksum
         blockSender.sendBlock(out, unbufOut, null);
@@ -2507,6 +2528,11 @@ public DNConf getDnConf() {
     return dnConf;
   }
 
+  /** @return the service syncing replicas in the background, or null. */
+  ReplicaSyncService getSyncService() {
+    return syncService;
+  }
+
   public String getDatanodeUuid() {
     return id == null ? null : id.getDatanodeUuid();
   }
@@ -65,6 +65,7 @@ public class DataStorage extends Storage {
   public final static String STORAGE_DIR_RBW = "rbw";
   public final static String STORAGE_DIR_FINALIZED = "finalized";
   public final static String STORAGE_DIR_TMP = "tmp";
+  public final static String STORAGE_DIR_LAZY_PERSIST = "lazypersist";
 
   /**
    * Datanode UUID that this storage is currently attached to. This
@@ -94,6 +94,9 @@ class DataXceiver extends Receiver implements Runnable {
   private long opStartTime; //the start time of receiving an Op
   private final InputStream socketIn;
   private OutputStream socketOut;
+  /** The buffered stream ops are read from, set up on the first run. */
+  private InputStream input;
+  private int opsProcessed = 0;
 
   /**
    * Client Name used in previous operation. Not available on first request
@@ -155,37 +158,28 @@ private OutputStream getOutputStream() {
    */
   @Override
   public void run() {
-    int opsProcessed = 0;
     Op op = null;
+    boolean parked = false;
+    boolean opProcessedInThisRun = false;
 
-    dataXceiverServer.addPeer(peer);
+    if (input == null) {
+      dataXceiverServer.addPeer(peer);
+    }
     try {
-      peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
-      InputStream input = socketIn;
-      if ((!peer.hasSecureChannel()) && dnConf.encryptDataTransfer) {
-        IOStreamPair encryptedStreams = null;
-        try {
-          encryptedStreams = DataTransferEncryptor.getEncryptedStreams(socketOut,
-              socketIn, datanode.blockPoolTokenSecretManager,
-              dnConf.encryptionAlgorithm);
-        } catch (InvalidMagicNumberException imne) {
-          LOG.info("Failed to read expected encryption handshake from client " +
-              "at " + peer.getRemoteAddressString() + ". Perhaps the client " +
-              "is running an older version of Hadoop which does not support " +
-              "encryption");
-          return;
-        }
-        input = encryptedStreams.in;
-        socketOut = encryptedStreams.out;
+      if (input == null && !initialize()) {
+        return;
       }
-      input = new BufferedInputStream(input, HdfsConstants.SMALL_BUFFER_SIZE);
-      
-      super.initialize(new DataInputStream(input));
       
       // We process requests in a loop, and stay around for a short timeout.
       // This optimistic behaviour allows the other end to reuse connections.
       // Setting keepalive timeout to 0 disable this behavior.
       do {
+        if (opProcessedInThisRun && input.available() == 0 &&
+            dataXceiverServer.park(this)) {
+          // The server runs us again once the next op arrives.
+          parked = true;
+          return;
+        }
         updateCurrentThreadName("Waiting for operation #" + (opsProcessed + 1));
 
         try {
@@ -220,6 +214,7 @@ public void run() {
         opStartTime = now();
         processOp(op);
         ++opsProcessed;
+        opProcessedInThisRun = true;
       } while (!peer.isClosed() && dnConf.socketKeepaliveTimeout > 0);
     } catch (Throwable t) {
       LOG.error(datanode.getDisplayName() + ":DataXceiver error processing " +
@@ -227,16 +222,63 @@ public void run() {
                 " src: " + remoteAddress +
                 " dest: " + localAddress, t);
     } finally {
-      if (LOG.isDebugEnabled()) {
-        LOG.debug(datanode.getDisplayName() + ":Number of active connections is: "
-            + datanode.getXceiverCount());
+      if (!parked) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(datanode.getDisplayName() + ":Number of active connections is: "
+              + datanode.getXceiverCount());
+        }
+        updateCurrentThreadName("Cleaning up");
+        close();
       }
-      updateCurrentThreadName("Cleaning up");
-      dataXceiverServer.closePeer(peer);
-      IOUtils.closeStream(in);
     }
   }
 
+  /**
+   * Set up the streams of the connection, negotiating encryption if needed.
+   *
+   * @return false if the connection should be closed without reading an op.
+   */
+  private boolean initialize() throws IOException {
+    peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
+    InputStream input = socketIn;
+    if ((!peer.hasSecureChannel()) && dnConf.encryptDataTransfer) {
+      IOStreamPair encryptedStreams = null;
+      try {
+        encryptedStreams = DataTransferEncryptor.getEncryptedStreams(socketOut,
+            socketIn, datanode.blockPoolTokenSecretManager,
+            dnConf.encryptionAlgorithm);
+      } catch (InvalidMagicNumberException imne) {
+        LOG.info("Failed to read expected encryption handshake from client " +
+            "at " + peer.getRemoteAddressString() + ". Perhaps the client " +
+            "is running an older version of Hadoop which does not support " +
+            "encryption");
+        return false;
+      }
+      input = encryptedStreams.in;
+      socketOut = encryptedStreams.out;
+    }
+    this.input = new BufferedInputStream(input,
+        HdfsConstants.SMALL_BUFFER_SIZE);
+    super.initialize(new DataInputStream(this.input));
+    return true;
+  }
+
+  /** Close the connection, e.g. once it has been idle for too long. */
+  void close() {
+    dataXceiverServer.closePeer(peer);
+    IOUtils.closeStream(in);
+  }
+
+  Peer getPeer() {
+    return peer;
+  }
+
+  /** @return the read timeout while waiting for the next op. */
+  int getIdleTimeout() {
+    return opsProcessed == 0 ? dnConf.socketTimeout :
+        dnConf.socketKeepaliveTimeout;
+  }
+
   @Override
   public void requestShortCircuitFds(final ExtendedBlock blk,
       final Token<BlockTokenIdentifier> token,
@@ -250,6 +292,7 @@ public void requestShortCircuitFds(final ExtendedBlock blk,
             "anything but a UNIX domain socket.");
       }
       fis = datanode.requestShortCircuitFdsForRead(blk, token, maxVersion);
+      recordBlockRead(blk);
       bld.setStatus(SUCCESS);
       bld.setShortCircuitAccessVersion(DataNode.CURRENT_BLOCK_FORMAT_VERSION);
     } catch (ShortCircuitFdsVersionException e) {
@@ -333,6 +376,7 @@ public void readBlock(final ExtendedBlock block,
         sendResponse(ERROR, msg);
         throw e;
       }
+      recordBlockRead(block);
       
       // send op status
       writeSuccessWithChecksumInfo(blockSender, new DataOutputStream(getOutputStream()));
@@ -350,6 +394,10 @@ public void readBlock(final ExtendedBlock block,
                 " did not send a valid status code after reading. " +
                 "Will close connection.");
             IOUtils.closeStream(out);
+          } else if (stat.getStatus() == Status.ERROR_CHECKSUM
+              && datanode.getBlockScanner() != null) {
+            // the client found a checksum error in the data it was sent
+            datanode.getBlockScanner().markSuspectBlock(block);
           }
         } catch (IOException ioe) {
           LOG.debug("Error reading client status response. Will close connection.", ioe);
@@ -396,7 +444,8 @@ public void writeBlock(final ExtendedBlock block,
       final long maxBytesRcvd,
       final long latestGenerationStamp,
       DataChecksum requestedChecksum,
-      CachingStrategy cachingStrategy) throws IOException {
+      CachingStrategy cachingStrategy,
+      final boolean allowLazyPersist) throws IOException {
     previousOpClientName = clientname;
     updateCurrentThreadName("Receiving block " + block);
     final boolean isDatanode = clientname.length() == 0;
@@ -457,7 +506,7 @@ public void writeBlock(final ExtendedBlock block,
             peer.getLocalAddressString(),
             stage, latestGenerationStamp, minBytesRcvd, maxBytesRcvd,
             clientname, srcDataNode, datanode, requestedChecksum,
-            cachingStrategy);
+            cachingStrategy, allowLazyPersist);
         storageUuid = blockReceiver.getStorageUuid();
       } else {
         storageUuid = datanode.data.recoverClose(
@@ -505,7 +554,7 @@ public void writeBlock(final ExtendedBlock block,
           new Sender(mirrorOut).writeBlock(originalBlock, blockToken,
               clientname, targets, srcDataNode, stage, pipelineSize,
               minBytesRcvd, maxBytesRcvd, latestGenerationStamp, requestedChecksum,
-              cachingStrategy);
+              cachingStrategy, allowLazyPersist);
 
           mirrorOut.flush();
 
@@ -680,7 +729,7 @@ public void blockChecksum(final ExtendedBlock block,
         .writeDelimitedTo(out);
       out.flush();
     } finally {
-      IOUtils.closeStream(out);
+      // The connection is kept open for the next operation of the client.
       IOUtils.closeStream(checksumIn);
       IOUtils.closeStream(metadataIn);
     }
@@ -856,7 +905,7 @@ public void replaceBlock(final ExtendedBlock block,
           block, proxyReply, proxySock.getRemoteSocketAddress().toString(),
           proxySock.getLocalSocketAddress().toString(),
           null, 0, 0, 0, "", null, datanode, remoteChecksum,
-          CachingStrategy.newDropBehind());
+          CachingStrategy.newDropBehind(), false);
 
       // receive a block
       blockReceiver.receiveBlock(null, null, null, null, 
@@ -901,6 +950,23 @@ public void replaceBlock(final ExtendedBlock block,
     datanode.metrics.addReplaceBlockOp(elapsed());
   }
 
+  /**
+   * Count a client read of a block in the cache metrics, and let the dataset
+   * cache the block if it is read frequently.
+   */
+  private void recordBlockRead(ExtendedBlock block) {
+    if (datanode.data.getCacheCapacity() <= 0) {
+      return;
+    }
+    final String bpid = block.getBlockPoolId();
+    if (datanode.data.isCached(bpid, block.getBlockId())) {
+      datanode.metrics.incrCacheHits();
+    } else {
+      datanode.metrics.incrCacheMisses();
+    }
+    datanode.data.recordBlockRead(bpid, block.getBlockId());
+  }
+
   private long elapsed() {
     return now() - opStartTime;
   }
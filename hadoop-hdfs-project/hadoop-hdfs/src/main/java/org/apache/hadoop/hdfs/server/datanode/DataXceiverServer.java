@@ -43,8 +43,8 @@
 class DataXceiverServer implements Runnable {
   public static final Log LOG = DataNode.LOG;
   
-  private final PeerServer peerServer;
-  private final DataNode datanode;
+  protected final PeerServer peerServer;
+  protected final DataNode datanode;
   private final Set<Peer> peers = new HashSet<Peer>();
   
   /**
@@ -139,9 +139,7 @@ public void run() {
               + maxXceiverCount);
         }
 
-        new Daemon(datanode.threadGroup,
-            DataXceiver.create(peer, datanode, this))
-            .start();
+        serve(peer);
       } catch (SocketTimeoutException ignored) {
         // wake up to see if should continue to run
       } catch (AsynchronousCloseException ace) {
@@ -183,6 +181,37 @@ public void run() {
     }
   }
 
+  /**
+   * Start processing the operations sent over a newly accepted connection.
+   * By default every connection is served by a thread of its own.
+   */
+  protected void serve(Peer peer) throws IOException {
+    new Daemon(datanode.threadGroup,
+        DataXceiver.create(peer, datanode, this))
+        .start();
+  }
+
+  /**
+   * Called by a {@link DataXceiver} which has finished an operation and is
+   * about to wait for the next one on the same connection.
+   *
+   * @return true if the server took over the connection and will run the
+   *         xceiver again once the next operation arrives, in which case the
+   *         calling thread must not touch the connection any more; false if
+   *         the xceiver should keep blocking on the connection.
+   */
+  boolean park(DataXceiver xceiver) {
+    return false;
+  }
+
+  /**
+   * @return the number of open connections which are not served by a
+   *         thread of their own in the DataNode's xceiver thread group.
+   */
+  int getNumMultiplexedPeers() {
+    return 0;
+  }
+
   void kill() {
     assert datanode.shouldRun == false :
       "shoudRun should be set to false before killing";
@@ -19,7 +19,9 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -37,6 +39,7 @@
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
@@ -46,6 +49,7 @@
 import org.apache.hadoop.hdfs.server.common.GenerationStamp;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
 import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.Time;
 
@@ -56,11 +60,15 @@
 @InterfaceAudience.Private
 public class DirectoryScanner implements Runnable {
   private static final Log LOG = LogFactory.getLog(DirectoryScanner.class);
+  private static final long MILLIS_PER_SECOND = 1000;
 
   private final FsDatasetSpi<?> dataset;
   private final ExecutorService reportCompileThreadPool;
   private final ScheduledExecutorService masterThread;
   private final long scanPeriodMsecs;
+  /** How long each volume may be scanned in every second. */
+  private final long throttleLimitMsPerSec;
+  private final DataNodeMetrics metrics;
   private volatile boolean shouldRun = false;
   private boolean retainDiffs = false;
 
@@ -106,49 +114,6 @@ static class ScanInfoPerBlockPool extends
     ScanInfoPerBlockPool() {super();}
     
     ScanInfoPerBlockPool(int sz) {super(sz);}
-    
-    /**
-     * Merges "that" ScanInfoPerBlockPool into this one
-     * @param that
-     */
-    public void addAll(ScanInfoPerBlockPool that) {
-      if (that == null) return;
-      
-      for (Entry<String, LinkedList<ScanInfo>> entry : that.entrySet()) {
-        String bpid = entry.getKey();
-        LinkedList<ScanInfo> list = entry.getValue();
-        
-        if (this.containsKey(bpid)) {
-          //merge that per-bpid linked list with this one
-          this.get(bpid).addAll(list);
-        } else {
-          //add that new bpid and its linked list to this
-          this.put(bpid, list);
-        }
-      }
-    }
-    
-    /**
-     * Convert all the LinkedList values in this ScanInfoPerBlockPool map
-     * into sorted arrays, and return a new map of these arrays per blockpool
-     * @return a map of ScanInfo arrays per blockpool
-     */
-    public Map<String, ScanInfo[]> toSortedArrays() {
-      Map<String, ScanInfo[]> result = 
-        new HashMap<String, ScanInfo[]>(this.size());
-      
-      for (Entry<String, LinkedList<ScanInfo>> entry : this.entrySet()) {
-        String bpid = entry.getKey();
-        LinkedList<ScanInfo> list = entry.getValue();
-        
-        // convert list to array
-        ScanInfo[] record = list.toArray(new ScanInfo[list.size()]);
-        // Sort array based on blockId
-        Arrays.sort(record);
-        result.put(bpid, record);            
-      }
-      return result;
-    }
   }
 
   /**
@@ -308,14 +273,25 @@ public long getGenStamp() {
     }
   }
 
-  DirectoryScanner(FsDatasetSpi<?> dataset, Configuration conf) {
+  DirectoryScanner(DataNode datanode, FsDatasetSpi<?> dataset,
+      Configuration conf) {
     this.dataset = dataset;
+    this.metrics = datanode.getMetrics();
     int interval = conf.getInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INTERVAL_KEY,
         DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INTERVAL_DEFAULT);
     scanPeriodMsecs = interval * 1000L; //msec
     int threads = 
         conf.getInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_KEY,
                     DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_DEFAULT);
+    throttleLimitMsPerSec = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_DEFAULT);
+    if (throttleLimitMsPerSec <= 0 || throttleLimitMsPerSec > MILLIS_PER_SECOND) {
+      throw new HadoopIllegalArgumentException(
+          DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY
+          + " must be in the range 1 - " + MILLIS_PER_SECOND + ": "
+          + throttleLimitMsPerSec);
+    }
 
     reportCompileThreadPool = Executors.newFixedThreadPool(threads, 
         new Daemon.DaemonFactory());
@@ -417,81 +393,68 @@ void reconcile() {
   /**
    * Scan for the differences between disk and in-memory blocks
    * Scan only the "finalized blocks" lists of both disk and memory.
+   * <p>
+   * The volumes are walked in parallel. Every directory is compared with a
+   * snapshot of the in-memory blocks as soon as it is listed, so that only
+   * the differences are kept in memory, and the dataset lock is only held
+   * while taking the snapshots.
    */
   void scan() {
     clear();
-    Map<String, ScanInfo[]> diskReport = getDiskReport();
-
-    // Hold FSDataset lock to prevent further changes to the block map
-    synchronized(dataset) {
-      for (Entry<String, ScanInfo[]> entry : diskReport.entrySet()) {
-        String bpid = entry.getKey();
-        ScanInfo[] blockpoolReport = entry.getValue();
-        
-        Stats statsRecord = new Stats(bpid);
-        stats.put(bpid, statsRecord);
-        LinkedList<ScanInfo> diffRecord = new LinkedList<ScanInfo>();
-        diffs.put(bpid, diffRecord);
-        
-        statsRecord.totalBlocks = blockpoolReport.length;
-        List<FinalizedReplica> bl = dataset.getFinalizedBlocks(bpid);
-        FinalizedReplica[] memReport = bl.toArray(new FinalizedReplica[bl.size()]);
-        Arrays.sort(memReport); // Sort based on blockId
-  
-        int d = 0; // index for blockpoolReport
-        int m = 0; // index for memReprot
-        while (m < memReport.length && d < blockpoolReport.length) {
-          Block memBlock = memReport[Math.min(m, memReport.length - 1)];
-          ScanInfo info = blockpoolReport[Math.min(
-              d, blockpoolReport.length - 1)];
-          if (info.getBlockId() < memBlock.getBlockId()) {
-            // Block is missing in memory
-            statsRecord.missingMemoryBlocks++;
-            addDifference(diffRecord, statsRecord, info);
-            d++;
-            continue;
-          }
-          if (info.getBlockId() > memBlock.getBlockId()) {
-            // Block is missing on the disk
-            addDifference(diffRecord, statsRecord,
-                          memBlock.getBlockId(), info.getVolume());
-            m++;
-            continue;
-          }
-          // Block file and/or metadata file exists on the disk
-          // Block exists in memory
-          if (info.getBlockFile() == null) {
-            // Block metadata file exits and block file is missing
-            addDifference(diffRecord, statsRecord, info);
-          } else if (info.getGenStamp() != memBlock.getGenerationStamp()
-              || info.getBlockFileLength() != memBlock.getNumBytes()) {
-            // Block metadata file is missing or has wrong generation stamp,
-            // or block file length is different than expected
-            statsRecord.mismatchBlocks++;
-            addDifference(diffRecord, statsRecord, info);
-          }
-          d++;
-          m++;
-        }
-        while (m < memReport.length) {
-          FinalizedReplica current = memReport[m++];
-          addDifference(diffRecord, statsRecord,
-                        current.getBlockId(), current.getVolume());
-        }
-        while (d < blockpoolReport.length) {
-          statsRecord.missingMemoryBlocks++;
-          addDifference(diffRecord, statsRecord, blockpoolReport[d++]);
+    final long startTime = Time.monotonicNow();
+    final List<? extends FsVolumeSpi> volumes = dataset.getVolumes();
+
+    // Take the snapshots before walking the volumes. Blocks changed during
+    // the walk may show up as differences; checkAndUpdate checks them again.
+    final Map<String, BlockPoolScan> scans =
+        new HashMap<String, BlockPoolScan>();
+    for (FsVolumeSpi volume : volumes) {
+      for (String bpid : volume.getBlockPoolList()) {
+        if (!scans.containsKey(bpid)) {
+          scans.put(bpid, new BlockPoolScan(bpid,
+              dataset.getFinalizedBlocks(bpid)));
         }
-        LOG.info(statsRecord.toString());
-      } //end for
-    } //end synchronized
+      }
+    }
+
+    final List<Future<Long>> compilersInProgress = new LinkedList<Future<Long>>();
+    for (FsVolumeSpi volume : volumes) {
+      if (isValid(dataset, volume)) {
+        compilersInProgress.add(reportCompileThreadPool.submit(
+            new ReportCompiler(volume, scans)));
+      }
+    }
+    long stallMs = 0;
+    for (Future<Long> compiler : compilersInProgress) {
+      try {
+        stallMs += compiler.get();
+      } catch (Exception ex) {
+        LOG.error("Error compiling report", ex);
+        // Propagate ex to DataBlockScanner to deal with
+        throw new RuntimeException(ex);
+      }
+    }
+
+    long numDiffs = 0;
+    for (BlockPoolScan scan : scans.values()) {
+      scan.addMissingOnDisk();
+      stats.put(scan.bpid, scan.statsRecord);
+      diffs.put(scan.bpid, scan.diffRecord);
+      numDiffs += scan.diffRecord.size();
+      LOG.info(scan.statsRecord.toString());
+    }
+    final long scanTime = Time.monotonicNow() - startTime;
+    LOG.info("Scanned " + volumes.size() + " volumes in " + scanTime +
+        " ms, throttled for " + stallMs + " ms, " + numDiffs + " differences");
+    metrics.addDirectoryScan(scanTime);
+    metrics.incrDirectoryScanDifferences(numDiffs);
   }
 
   /**
    * Block is found on the disk. In-memory block is missing or does not match
    * the block on the disk
    */
-  private void addDifference(LinkedList<ScanInfo> diffRecord, 
+  private static void addDifference(LinkedList<ScanInfo> diffRecord, 
                              Stats statsRecord, ScanInfo info) {
     statsRecord.missingMetaFile += info.getMetaFile() == null ? 1 : 0;
     statsRecord.missingBlockFile += info.getBlockFile() == null ? 1 : 0;
@@ -499,7 +462,7 @@ private void addDifference(LinkedList<ScanInfo> diffRecord,
   }
 
   /** Block is not found on the disk */
-  private void addDifference(LinkedList<ScanInfo> diffRecord,
+  private static void addDifference(LinkedList<ScanInfo> diffRecord,
                              Stats statsRecord, long blockId,
                              FsVolumeSpi vol) {
     statsRecord.missingBlockFile++;
@@ -518,49 +481,70 @@ private static boolean isValid(final FsDatasetSpi<?> dataset,
     return false;
   }
 
-  /** Get lists of blocks on the disk sorted by blockId, per blockpool */
-  private Map<String, ScanInfo[]> getDiskReport() {
-    // First get list of data directories
-    final List<? extends FsVolumeSpi> volumes = dataset.getVolumes();
-
-    // Use an array since the threads may return out of order and
-    // compilersInProgress#keySet may return out of order as well.
-    ScanInfoPerBlockPool[] dirReports = new ScanInfoPerBlockPool[volumes.size()];
-
-    Map<Integer, Future<ScanInfoPerBlockPool>> compilersInProgress =
-      new HashMap<Integer, Future<ScanInfoPerBlockPool>>();
-
-    for (int i = 0; i < volumes.size(); i++) {
-      if (isValid(dataset, volumes.get(i))) {
-        ReportCompiler reportCompiler =
-          new ReportCompiler(volumes.get(i));
-        Future<ScanInfoPerBlockPool> result = 
-          reportCompileThreadPool.submit(reportCompiler);
-        compilersInProgress.put(i, result);
+  /**
+   * The comparison of the blocks of a block pool on the disks with a
+   * snapshot of its finalized blocks in memory. The volumes of the block
+   * pool are compared concurrently, one directory at a time.
+   */
+  private static class BlockPoolScan {
+    private final String bpid;
+    /** The in-memory blocks, sorted by blockId. */
+    private final FinalizedReplica[] memReport;
+    private final long[] memBlockIds;
+    /** The in-memory blocks found on the disk. */
+    private final BitSet found;
+
+    private final Stats statsRecord;
+    private final LinkedList<ScanInfo> diffRecord = new LinkedList<ScanInfo>();
+
+    BlockPoolScan(String bpid, List<FinalizedReplica> bl) {
+      this.bpid = bpid;
+      this.memReport = bl.toArray(new FinalizedReplica[bl.size()]);
+      Arrays.sort(memReport); // Sort based on blockId
+      this.memBlockIds = new long[memReport.length];
+      for (int i = 0; i < memReport.length; i++) {
+        memBlockIds[i] = memReport[i].getBlockId();
       }
+      this.found = new BitSet(memReport.length);
+      this.statsRecord = new Stats(bpid);
     }
-    
-    for (Entry<Integer, Future<ScanInfoPerBlockPool>> report :
-        compilersInProgress.entrySet()) {
-      try {
-        dirReports[report.getKey()] = report.getValue().get();
-      } catch (Exception ex) {
-        LOG.error("Error compiling report", ex);
-        // Propagate ex to DataBlockScanner to deal with
-        throw new RuntimeException(ex);
+
+    /** Compare the blocks of a directory with the in-memory blocks. */
+    synchronized void compare(List<ScanInfo> report) {
+      for (ScanInfo info : report) {
+        statsRecord.totalBlocks++;
+        final int m = Arrays.binarySearch(memBlockIds, info.getBlockId());
+        if (m < 0 || found.get(m)) {
+          // Block is missing in memory
+          statsRecord.missingMemoryBlocks++;
+          addDifference(diffRecord, statsRecord, info);
+          continue;
+        }
+        found.set(m);
+        // Block file and/or metadata file exists on the disk
+        // Block exists in memory
+        final Block memBlock = memReport[m];
+        if (info.getBlockFile() == null) {
+          // Block metadata file exits and block file is missing
+          addDifference(diffRecord, statsRecord, info);
+        } else if (info.getGenStamp() != memBlock.getGenerationStamp()
+            || info.getBlockFileLength() != memBlock.getNumBytes()) {
+          // Block metadata file is missing or has wrong generation stamp,
+          // or block file length is different than expected
+          statsRecord.mismatchBlocks++;
+          addDifference(diffRecord, statsRecord, info);
+        }
       }
     }
 
-    // Compile consolidated report for all the volumes
-    ScanInfoPerBlockPool list = new ScanInfoPerBlockPool();
-    for (int i = 0; i < volumes.size(); i++) {
-      if (isValid(dataset, volumes.get(i))) {
-        // volume is still valid
-        list.addAll(dirReports[i]);
+    /** Add the in-memory blocks not found on any disk to the differences. */
+    synchronized void addMissingOnDisk() {
+      for (int m = found.nextClearBit(0); m < memReport.length;
+          m = found.nextClearBit(m + 1)) {
+        addDifference(diffRecord, statsRecord, memReport[m].getBlockId(),
+            memReport[m].getVolume());
       }
     }
-
-    return list.toSortedArrays();
   }
 
   private static boolean isBlockMetaFile(String blockId, String metaFile) {
@@ -568,38 +552,52 @@ private static boolean isBlockMetaFile(String blockId, String metaFile) {
         && metaFile.endsWith(Block.METADATA_EXTENSION);
   }
 
-  private static class ReportCompiler 
-  implements Callable<ScanInfoPerBlockPool> {
-    private FsVolumeSpi volume;
+  /**
+   * Walks the finalized directories of a volume and compares them with the
+   * in-memory blocks, one directory at a time.
+   */
+  private class ReportCompiler implements Callable<Long> {
+    private final FsVolumeSpi volume;
+    private final Map<String, BlockPoolScan> scans;
+    private long periodStart;
+    private long stallMs = 0;
 
-    public ReportCompiler(FsVolumeSpi volume) {
+    public ReportCompiler(FsVolumeSpi volume,
+        Map<String, BlockPoolScan> scans) {
       this.volume = volume;
+      this.scans = scans;
     }
 
+    /** @return the time in milliseconds the compiler was throttled. */
     @Override
-    public ScanInfoPerBlockPool call() throws Exception {
-      String[] bpList = volume.getBlockPoolList();
-      ScanInfoPerBlockPool result = new ScanInfoPerBlockPool(bpList.length);
-      for (String bpid : bpList) {
-        LinkedList<ScanInfo> report = new LinkedList<ScanInfo>();
-        File bpFinalizedDir = volume.getFinalizedDir(bpid);
-        result.put(bpid, compileReport(volume, bpFinalizedDir, report));
+    public Long call() throws Exception {
+      periodStart = Time.monotonicNow();
+      for (String bpid : volume.getBlockPoolList()) {
+        final BlockPoolScan scan = scans.get(bpid);
+        if (scan != null) {
+          compileReport(volume, volume.getFinalizedDir(bpid), scan);
+        }
       }
-      return result;
+      return stallMs;
     }
 
-    /** Compile list {@link ScanInfo} for the blocks in the directory <dir> */
-    private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol, File dir,
-        LinkedList<ScanInfo> report) {
+    /**
+     * Compare the blocks in the directory <dir> and in its subdirectories
+     * with the in-memory blocks.
+     */
+    private void compileReport(FsVolumeSpi vol, File dir, BlockPoolScan scan)
+        throws InterruptedException {
       File[] files;
       try {
         files = FileUtil.listFiles(dir);
       } catch (IOException ioe) {
         LOG.warn("Exception occured while compiling report: ", ioe);
         // Ignore this directory and proceed.
-        return report;
+        return;
       }
       Arrays.sort(files);
+      final List<ScanInfo> report = new ArrayList<ScanInfo>(files.length);
+      final List<File> subdirs = new ArrayList<File>();
       /*
        * Assumption: In the sorted list of files block file appears immediately
        * before block metadata file. This is true for the current naming
@@ -608,7 +606,7 @@ private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol, File dir,
        */
       for (int i = 0; i < files.length; i++) {
         if (files[i].isDirectory()) {
-          compileReport(vol, files[i], report);
+          subdirs.add(files[i]);
           continue;
         }
         if (!Block.isBlockFilename(files[i])) {
@@ -634,7 +632,32 @@ private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol, File dir,
         }
         report.add(new ScanInfo(blockId, blockFile, metaFile, vol));
       }
-      return report;
+      scan.compare(report);
+      throttle();
+
+      for (File subdir : subdirs) {
+        compileReport(vol, subdir, scan);
+      }
+    }
+
+    /**
+     * Sleep for the rest of the current second if the compiler has already
+     * run for longer than the limit in it.
+     */
+    private void throttle() throws InterruptedException {
+      if (throttleLimitMsPerSec >= MILLIS_PER_SECOND) {
+        return;
+      }
+      final long elapsed = Time.monotonicNow() - periodStart;
+      if (elapsed >= MILLIS_PER_SECOND) {
+        periodStart = Time.monotonicNow();
+      } else if (elapsed >= throttleLimitMsPerSec) {
+        final long stall = MILLIS_PER_SECOND - elapsed;
+        Thread.sleep(stall);
+        stallMs += stall;
+        metrics.addDirectoryScanThrottleStall(stall);
+        periodStart = Time.monotonicNow();
+      }
     }
   }
 }
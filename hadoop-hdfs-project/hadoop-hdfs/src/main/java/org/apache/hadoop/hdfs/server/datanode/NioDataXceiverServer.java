@@ -0,0 +1,324 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.net.Peer;
+import org.apache.hadoop.hdfs.net.PeerServer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.net.SocketInputStream;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.Time;
+
+/**
+ * A {@link DataXceiverServer} which does not dedicate a thread to every
+ * connection.
+ * <p>
+ * Connections which are waiting for an operation, either because they were
+ * just accepted or because the client keeps them open for reuse, are
+ * watched by a few selector threads. Once an operation arrives, the
+ * connection is handed to a pool of handler threads which runs the same
+ * {@link DataXceiver} code as the thread-per-connection server, including
+ * the zero-copy transfers of {@link BlockSender}. After the operation the
+ * connection goes back to the selectors, so that idle connections cost a
+ * file descriptor rather than a thread stack.
+ * <p>
+ * Connections without a selectable channel are served by a thread of their
+ * own, like in the default server.
+ */
+class NioDataXceiverServer extends DataXceiverServer {
+
+  private final ThreadGroup threadGroup =
+      new ThreadGroup("nioDataXceiverServer");
+  private final Reactor[] reactors;
+  private final ThreadPoolExecutor handlers;
+  private final AtomicInteger numParked = new AtomicInteger();
+
+  NioDataXceiverServer(PeerServer peerServer, Configuration conf,
+      DataNode datanode) throws IOException {
+    super(peerServer, conf, datanode);
+    int numSelectors = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_SERVER_NIO_SELECTORS_KEY,
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_SERVER_NIO_SELECTORS_DEFAULT);
+    int numHandlers = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_SERVER_NIO_HANDLERS_KEY,
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_SERVER_NIO_HANDLERS_DEFAULT);
+
+    // Operations such as writeBlock block a handler for as long as the
+    // pipeline is open, so the pool grows up to the xceiver limit rather
+    // than queueing operations behind them.
+    this.handlers = new ThreadPoolExecutor(numHandlers,
+        Math.max(numHandlers, maxXceiverCount), 60, TimeUnit.SECONDS,
+        new SynchronousQueue<Runnable>(), new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = new Daemon(threadGroup, r);
+            t.setName("DataXceiver handler " + count.incrementAndGet());
+            return t;
+          }
+        });
+    this.reactors = new Reactor[numSelectors];
+    for (int i = 0; i < reactors.length; i++) {
+      reactors[i] = new Reactor(i);
+    }
+    LOG.info("Serving data transfer connections with " + numSelectors +
+        " selector threads and " + numHandlers + " handler threads");
+  }
+
+  @Override
+  public void run() {
+    for (Reactor r : reactors) {
+      r.start();
+    }
+    try {
+      super.run();
+    } finally {
+      handlers.shutdownNow();
+      for (Reactor r : reactors) {
+        r.shutdown();
+      }
+    }
+  }
+
+  @Override
+  void kill() {
+    super.kill();
+    for (Reactor r : reactors) {
+      r.selector.wakeup();
+    }
+  }
+
+  @Override
+  protected void serve(Peer peer) throws IOException {
+    if (getChannel(peer) == null) {
+      super.serve(peer);
+      return;
+    }
+    DataXceiver xceiver = DataXceiver.create(peer, datanode, this);
+    addPeer(peer);
+    park(xceiver);
+  }
+
+  @Override
+  boolean park(DataXceiver xceiver) {
+    SelectableChannel channel = getChannel(xceiver.getPeer());
+    if (channel == null) {
+      return false;
+    }
+    // Always the same selector for a connection, so its key can be reused.
+    Reactor r = reactors[(System.identityHashCode(xceiver) & Integer.MAX_VALUE)
+                         % reactors.length];
+    numParked.incrementAndGet();
+    r.add(new Parked(xceiver, channel));
+    return true;
+  }
+
+  @Override
+  int getNumMultiplexedPeers() {
+    return numParked.get() + handlers.getActiveCount();
+  }
+
+  private static SelectableChannel getChannel(Peer peer) {
+    ReadableByteChannel in = peer.getInputStreamChannel();
+    if (in instanceof SocketInputStream) {
+      ReadableByteChannel ch = ((SocketInputStream)in).getChannel();
+      if (ch instanceof SelectableChannel) {
+        return (SelectableChannel)ch;
+      }
+    }
+    return null;
+  }
+
+  /** Run the next operation of a connection on a handler thread. */
+  private void dispatch(final Parked p) {
+    numParked.decrementAndGet();
+    try {
+      handlers.execute(new Runnable() {
+        @Override
+        public void run() {
+          String name = Thread.currentThread().getName();
+          try {
+            p.xceiver.run();
+          } finally {
+            Thread.currentThread().setName(name);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      if (datanode.shouldRun) {
+        LOG.warn(datanode.getDisplayName() + ":NioDataXceiverServer: " +
+            "no handler available for " + p.xceiver.getPeer() +
+            ", closing it", e);
+      }
+      p.xceiver.close();
+    }
+  }
+
+  /** A connection waiting for its next operation. */
+  private static class Parked {
+    final DataXceiver xceiver;
+    final SelectableChannel channel;
+    final long deadline;
+
+    Parked(DataXceiver xceiver, SelectableChannel channel) {
+      this.xceiver = xceiver;
+      this.channel = channel;
+      int timeout = xceiver.getIdleTimeout();
+      this.deadline = timeout > 0 ? Time.monotonicNow() + timeout :
+          Long.MAX_VALUE;
+    }
+  }
+
+  /**
+   * A selector thread. It registers the parked connections, dispatches
+   * those which become readable and closes those which stay idle past
+   * their timeout.
+   */
+  private class Reactor implements Runnable {
+    /** Wake up at least this often to expire idle connections. */
+    private static final long EXPIRY_INTERVAL_MS = 100;
+
+    private final Daemon thread;
+    private final Selector selector;
+    private final Queue<Parked> pending = new ConcurrentLinkedQueue<Parked>();
+    private volatile boolean running = true;
+
+    Reactor(int id) throws IOException {
+      this.selector = Selector.open();
+      this.thread = new Daemon(threadGroup, this);
+      thread.setName("DataXceiver selector " + id);
+    }
+
+    void start() {
+      thread.start();
+    }
+
+    void add(Parked p) {
+      pending.add(p);
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      long lastExpiry = Time.monotonicNow();
+      while (running && datanode.shouldRun) {
+        try {
+          selector.select(EXPIRY_INTERVAL_MS);
+          registerPending();
+          Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+          while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            if (key.isValid() && key.interestOps() != 0) {
+              // Stop watching the connection while a handler owns it. The
+              // key is kept so that parking it again is cheap.
+              key.interestOps(0);
+              dispatch((Parked)key.attachment());
+            }
+          }
+          long now = Time.monotonicNow();
+          if (now - lastExpiry >= EXPIRY_INTERVAL_MS) {
+            expireIdle(now);
+            lastExpiry = now;
+          }
+        } catch (Throwable t) {
+          if (running && datanode.shouldRun) {
+            LOG.error(datanode.getDisplayName() +
+                ":NioDataXceiverServer: error in " + thread.getName(), t);
+          }
+        }
+      }
+      closeAll();
+    }
+
+    private void registerPending() {
+      Parked p;
+      while ((p = pending.poll()) != null) {
+        try {
+          SelectionKey key = p.channel.keyFor(selector);
+          if (key != null && key.isValid()) {
+            key.attach(p);
+            key.interestOps(SelectionKey.OP_READ);
+          } else {
+            p.channel.register(selector, SelectionKey.OP_READ, p);
+          }
+        } catch (ClosedChannelException e) {
+          numParked.decrementAndGet();
+          p.xceiver.close();
+        }
+      }
+    }
+
+    private void expireIdle(long now) {
+      for (SelectionKey key : selector.keys()) {
+        if (!key.isValid() || key.interestOps() == 0) {
+          continue;
+        }
+        Parked p = (Parked)key.attachment();
+        if (now > p.deadline) {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Closing idle " + p.xceiver.getPeer());
+          }
+          key.cancel();
+          numParked.decrementAndGet();
+          p.xceiver.close();
+        }
+      }
+    }
+
+    private void closeAll() {
+      registerPending();
+      for (SelectionKey key : selector.keys()) {
+        if (key.isValid() && key.interestOps() != 0) {
+          numParked.decrementAndGet();
+          ((Parked)key.attachment()).xceiver.close();
+        }
+      }
+      IOUtils.cleanup(LOG, selector);
+    }
+
+    void shutdown() {
+      running = false;
+      selector.wakeup();
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
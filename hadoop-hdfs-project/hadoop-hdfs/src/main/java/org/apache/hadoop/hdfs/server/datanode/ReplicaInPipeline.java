@@ -239,7 +239,9 @@ public ReplicaOutputStreams createStreams(boolean isCreate,
         blockOut.getChannel().position(blockDiskSize);
         crcOut.getChannel().position(crcDiskSize);
       }
-      return new ReplicaOutputStreams(blockOut, crcOut, checksum);
+      final FsVolumeSpi volume = getVolume();
+      return new ReplicaOutputStreams(blockOut, crcOut, checksum,
+          volume == null ? null : volume.getIoStats());
     } catch (IOException e) {
       IOUtils.closeStream(blockOut);
       IOUtils.closeStream(metaRAF);
@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaOutputStreams;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
+
+/**
+ * Syncs the replicas being written to disk in the background, for the hsync
+ * requests of the writers, see {@link BlockReceiver}.
+ * <p>
+ * The receiver of a replica only flushes the packets to be synced to the
+ * OS and goes on receiving; a packet is acknowledged once a sync covering it
+ * has finished. The sync requests made for a replica while it is being
+ * synced are served together by its next sync, so that a replica has at
+ * most one sync in progress however many requests its writer makes. The
+ * replicas of a volume are synced by a few threads of that volume, so that
+ * the syncs of concurrent writers are issued together and share the commits
+ * of the file system journal, and a slow disk does not hold up the syncs of
+ * the other volumes.
+ */
+class ReplicaSyncService {
+  static final Log LOG = DataNode.LOG;
+
+  private static final long THREADS_KEEP_ALIVE_SECONDS = 60;
+
+  private final DataNodeMetrics metrics;
+  private final int threadsPerVolume;
+  private final ThreadGroup threadGroup =
+      new ThreadGroup(getClass().getSimpleName());
+  private Map<FsVolumeSpi, ThreadPoolExecutor> executors =
+      new HashMap<FsVolumeSpi, ThreadPoolExecutor>();
+
+  ReplicaSyncService(DataNodeMetrics metrics, int threadsPerVolume) {
+    this.metrics = metrics;
+    this.threadsPerVolume = threadsPerVolume;
+  }
+
+  /** @return the sync state of a replica being written to the volume. */
+  ReplicaSync newReplicaSync(FsVolumeSpi volume, ReplicaOutputStreams streams) {
+    return new ReplicaSync(volume, streams);
+  }
+
+  /** Execute the task in the thread pool of the volume. */
+  private synchronized void execute(final FsVolumeSpi volume, Runnable task)
+      throws IOException {
+    if (executors == null) {
+      throw new IOException(getClass().getSimpleName() + " is shut down");
+    }
+    ThreadPoolExecutor executor = executors.get(volume);
+    if (executor == null) {
+      final ThreadFactory threadFactory = new ThreadFactory() {
+        int counter = 0;
+
+        @Override
+        public Thread newThread(Runnable r) {
+          final int thisIndex;
+          synchronized (this) {
+            thisIndex = counter++;
+          }
+          final Thread t = new Thread(threadGroup, r);
+          t.setName("Sync worker #" + thisIndex + " for volume " + volume);
+          t.setDaemon(true);
+          return t;
+        }
+      };
+      executor = new ThreadPoolExecutor(threadsPerVolume, threadsPerVolume,
+          THREADS_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(), threadFactory);
+      // This can reduce the number of running threads
+      executor.allowCoreThreadTimeOut(true);
+      executors.put(volume, executor);
+    }
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      throw new IOException("Failed to sync a replica on " + volume, e);
+    }
+  }
+
+  /** Stop the sync threads. */
+  synchronized void shutdown() {
+    if (executors == null) {
+      return;
+    }
+    LOG.info("Shutting down " + getClass().getSimpleName());
+    for (ThreadPoolExecutor executor : executors.values()) {
+      executor.shutdown();
+    }
+    executors = null;
+  }
+
+  /**
+   * The sync state of a replica being written. The offsets are the lengths
+   * of the replica requested to be synced, and known to be synced.
+   */
+  class ReplicaSync implements Runnable {
+    private final FsVolumeSpi volume;
+    private final ReplicaOutputStreams streams;
+
+    private long requestedOffset = 0;
+    private long syncedOffset = 0;
+    /** The number of requests which are not being served yet. */
+    private int pendingRequests = 0;
+    /** Is a task syncing the replica scheduled or running? */
+    private boolean scheduled = false;
+    private IOException error = null;
+
+    private ReplicaSync(FsVolumeSpi volume, ReplicaOutputStreams streams) {
+      this.volume = volume;
+      this.streams = streams;
+    }
+
+    /**
+     * Request the replica, already flushed up to the given offset, to be
+     * synced in the background.
+     * @throws IOException if an earlier sync of the replica failed.
+     */
+    synchronized void requestSync(long offset) throws IOException {
+      if (error != null) {
+        throw error;
+      }
+      requestedOffset = Math.max(requestedOffset, offset);
+      pendingRequests++;
+      if (!scheduled) {
+        execute(volume, this);
+        scheduled = true;
+      }
+    }
+
+    /**
+     * Wait for the replica to be synced up to the given offset.
+     * @throws IOException if the sync failed.
+     */
+    synchronized void waitForSync(long offset)
+        throws IOException, InterruptedException {
+      while (syncedOffset < offset && error == null) {
+        wait();
+      }
+      if (syncedOffset < offset) {
+        throw error;
+      }
+    }
+
+    /**
+     * Wait for the sync in progress, if any, to finish before the streams
+     * are closed.
+     */
+    synchronized void waitForIdle() {
+      boolean interrupted = false;
+      while (scheduled) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        final long offset;
+        final int requests;
+        synchronized (this) {
+          offset = requestedOffset;
+          requests = pendingRequests;
+          pendingRequests = 0;
+        }
+
+        IOException ioe = null;
+        try {
+          long fsyncStartNanos = System.nanoTime();
+          streams.syncChecksumOut();
+          metrics.addFsyncNanos(System.nanoTime() - fsyncStartNanos);
+          fsyncStartNanos = System.nanoTime();
+          streams.syncDataOut();
+          metrics.addFsyncNanos(System.nanoTime() - fsyncStartNanos);
+        } catch (IOException e) {
+          ioe = e;
+        }
+        metrics.incrFsyncCount();
+        if (requests > 1) {
+          metrics.incrFsyncsCoalesced(requests - 1);
+        }
+
+        synchronized (this) {
+          if (ioe != null) {
+            LOG.warn("Failed to sync a replica on " + volume, ioe);
+            error = ioe;
+          } else {
+            syncedOffset = offset;
+          }
+          if (ioe != null || pendingRequests == 0) {
+            scheduled = false;
+            notifyAll();
+            return;
+          }
+          notifyAll();
+        }
+      }
+    }
+  }
+}
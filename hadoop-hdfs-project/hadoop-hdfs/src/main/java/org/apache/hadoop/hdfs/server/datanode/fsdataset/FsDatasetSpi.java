@@ -184,11 +184,13 @@ public ReplicaInPipelineInterface createTemporary(ExtendedBlock b
    * Creates a RBW replica and returns the meta info of the replica
    * 
    * @param b block
+   * @param allowLazyPersist whether the replica may be written to a
+   *        memory-backed volume and lazily persisted to disk
    * @return the meta info of the replica which is being written to
    * @throws IOException if an error occurs
    */
-  public ReplicaInPipelineInterface createRbw(ExtendedBlock b
-      ) throws IOException;
+  public ReplicaInPipelineInterface createRbw(ExtendedBlock b,
+      boolean allowLazyPersist) throws IOException;
 
   /**
    * Recovers a RBW replica and returns the meta info of the replica
@@ -281,6 +283,15 @@ public String recoverClose(ExtendedBlock b, long newGS, long expectedBlockLen
    */
   public List<Long> getCacheReport(String bpid);
 
+  /**
+   * Returns the IDs of the blocks of a block pool which were cached
+   * automatically because they are read frequently, rather than because the
+   * NameNode asked the DataNode to cache them.
+   * @param   bpid Block Pool Id
+   * @return  the list of automatically cached block IDs.
+   */
+  public List<Long> getAutoCacheReport(String bpid);
+
   /** Does the dataset contain the block? */
   public boolean contains(ExtendedBlock block);
 
@@ -320,6 +331,22 @@ public String recoverClose(ExtendedBlock b, long newGS, long expectedBlockLen
    */
   public void uncache(String bpid, long[] blockIds);
 
+  /**
+   * Determine if the specified block is cached.
+   * @param bpid Block pool id
+   * @param blockId - block id
+   * @return true if the block is cached
+   */
+  public boolean isCached(String bpid, long blockId);
+
+  /**
+   * Record a client read of the specified block, which may cause the block
+   * to be cached if it is read frequently.
+   * @param bpid Block pool id
+   * @param blockId - block id
+   */
+  public void recordBlockRead(String bpid, long blockId);
+
     /**
      * Check if all the data directories are healthy
      * @throws DiskErrorException
@@ -45,4 +45,7 @@ public interface FsVolumeSpi {
   public File getFinalizedDir(String bpid) throws IOException;
   
   public StorageType getStorageType();
+
+  /** @return the I/O statistics of the volume. */
+  public VolumeIoStats getIoStats();
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SLOW_VOLUME_THRESHOLD_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SLOW_VOLUME_THRESHOLD_MS_KEY;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.DiskChecker.DiskOutOfSpaceException;
+
+/**
+ * A DN volume choosing policy which keeps new replicas away from slow
+ * volumes, see {@link VolumeIoStats#getSlowVolumes(List, long)}, so that a
+ * single degraded disk does not slow down every pipeline writing to the DN.
+ * Among the other volumes with enough space, the volume with the fewest
+ * outstanding I/O operations is chosen, in round-robin order when they are
+ * equally busy. The slow volumes are only used when no other volume has
+ * enough space.
+ */
+public class LatencyAwareVolumeChoosingPolicy<V extends FsVolumeSpi>
+    implements VolumeChoosingPolicy<V>, Configurable {
+
+  private static final Log LOG =
+      LogFactory.getLog(LatencyAwareVolumeChoosingPolicy.class);
+
+  private long slowThresholdMs = DFS_DATANODE_SLOW_VOLUME_THRESHOLD_MS_DEFAULT;
+  private int curVolume = 0;
+
+  @Override
+  public synchronized void setConf(Configuration conf) {
+    slowThresholdMs = conf.getLong(DFS_DATANODE_SLOW_VOLUME_THRESHOLD_MS_KEY,
+        DFS_DATANODE_SLOW_VOLUME_THRESHOLD_MS_DEFAULT);
+    LOG.info("Latency aware volume choosing policy initialized: " +
+        DFS_DATANODE_SLOW_VOLUME_THRESHOLD_MS_KEY + " = " + slowThresholdMs);
+  }
+
+  @Override
+  public synchronized Configuration getConf() {
+    // Nothing to do. Only added to fulfill the Configurable contract.
+    return null;
+  }
+
+  @Override
+  public synchronized V chooseVolume(List<V> volumes, long replicaSize)
+      throws IOException {
+    if (volumes.size() < 1) {
+      throw new DiskOutOfSpaceException("No more available volumes");
+    }
+    // since volumes could've been removed because of the failure
+    // make sure we are not out of bounds
+    if (curVolume >= volumes.size()) {
+      curVolume = 0;
+    }
+    final int startVolume = curVolume;
+    curVolume = (curVolume + 1) % volumes.size();
+
+    final Set<V> slow = VolumeIoStats.getSlowVolumes(volumes, slowThresholdMs);
+    V chosen = null;
+    int chosenIos = Integer.MAX_VALUE;
+    V chosenSlow = null;
+    long maxAvailable = 0;
+    for (int i = 0; i < volumes.size(); i++) {
+      final V volume = volumes.get((startVolume + i) % volumes.size());
+      final long available = volume.getAvailable();
+      if (available > maxAvailable) {
+        maxAvailable = available;
+      }
+      if (available <= replicaSize) {
+        continue;
+      }
+      if (slow.contains(volume)) {
+        if (chosenSlow == null) {
+          chosenSlow = volume;
+        }
+        continue;
+      }
+      final int ios = volume.getIoStats().getOutstandingIos();
+      if (ios < chosenIos) {
+        chosen = volume;
+        chosenIos = ios;
+      }
+    }
+
+    if (chosen == null) {
+      chosen = chosenSlow;
+    }
+    if (chosen == null) {
+      throw new DiskOutOfSpaceException("Out of space: "
+          + "The volume with the most available space (=" + maxAvailable
+          + " B) is less than the block size (=" + replicaSize + " B).");
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Selecting " + chosen + " for write of block size " +
+          replicaSize + ", slow volumes: " + slow);
+    }
+    return chosen;
+  }
+}
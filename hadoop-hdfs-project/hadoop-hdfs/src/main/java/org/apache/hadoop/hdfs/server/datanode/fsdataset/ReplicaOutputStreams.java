@@ -32,6 +32,8 @@ public class ReplicaOutputStreams implements Closeable {
   private final OutputStream dataOut;
   private final OutputStream checksumOut;
   private final DataChecksum checksum;
+  /** The I/O statistics of the volume of the replica, or null. */
+  private final VolumeIoStats ioStats;
 
   /**
    * Create an object with a data output stream, a checksum output stream
@@ -39,9 +41,19 @@ public class ReplicaOutputStreams implements Closeable {
    */
   public ReplicaOutputStreams(OutputStream dataOut, OutputStream checksumOut,
       DataChecksum checksum) {
+    this(dataOut, checksumOut, checksum, null);
+  }
+
+  /**
+   * Create an object with a data output stream, a checksum output stream,
+   * a checksum and the I/O statistics to update on writes and syncs.
+   */
+  public ReplicaOutputStreams(OutputStream dataOut, OutputStream checksumOut,
+      DataChecksum checksum, VolumeIoStats ioStats) {
     this.dataOut = dataOut;
     this.checksumOut = checksumOut;
     this.checksum = checksum;
+    this.ioStats = ioStats;
   }
 
   /** @return the data output stream. */
@@ -65,21 +77,49 @@ public void close() {
     IOUtils.closeStream(checksumOut);
   }
 
+  /**
+   * Write to the data stream.
+   */
+  public void writeDataOut(byte[] b, int off, int len) throws IOException {
+    if (ioStats == null) {
+      dataOut.write(b, off, len);
+      return;
+    }
+    final long start = ioStats.beginIo();
+    try {
+      dataOut.write(b, off, len);
+    } finally {
+      ioStats.endWrite(start);
+    }
+  }
+
   /**
    * Sync the data stream if it supports it.
    */
   public void syncDataOut() throws IOException {
-    if (dataOut instanceof FileOutputStream) {
-      ((FileOutputStream)dataOut).getChannel().force(true);
-    }
+    sync(dataOut);
   }
   
   /**
    * Sync the checksum stream if it supports it.
    */
   public void syncChecksumOut() throws IOException {
-    if (checksumOut instanceof FileOutputStream) {
-      ((FileOutputStream)checksumOut).getChannel().force(true);
+    sync(checksumOut);
+  }
+
+  private void sync(OutputStream out) throws IOException {
+    if (!(out instanceof FileOutputStream)) {
+      return;
+    }
+    if (ioStats == null) {
+      ((FileOutputStream)out).getChannel().force(true);
+      return;
+    }
+    final long start = ioStats.beginIo();
+    try {
+      ((FileOutputStream)out).getChannel().force(true);
+    } finally {
+      ioStats.endSync(start);
     }
   }
 
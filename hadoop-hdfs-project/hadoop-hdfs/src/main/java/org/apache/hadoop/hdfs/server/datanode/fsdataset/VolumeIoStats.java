@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * The recent I/O latencies of a volume and the number of its outstanding
+ * I/O operations, as seen by the writers of replicas.
+ * <p>
+ * Only the latest samples are kept, and samples older than
+ * {@link #SAMPLE_EXPIRY_MS} are ignored, so that a volume which is avoided
+ * because it was slow is tried again after a while.
+ */
+@InterfaceAudience.Private
+public class VolumeIoStats {
+  /** The number of latency samples kept for each kind of operation. */
+  static final int NUM_SAMPLES = 256;
+  /** The minimum number of samples needed to compute a percentile. */
+  static final int MIN_SAMPLES = 16;
+  static final long SAMPLE_EXPIRY_MS = 10 * 60 * 1000L;
+
+  /** The percentile of the latencies compared to find slow volumes. */
+  static final double OUTLIER_PERCENTILE = 90;
+  /**
+   * How many times larger than the median latency of the volumes the latency
+   * of a slow volume is.
+   */
+  static final long OUTLIER_FACTOR = 3;
+
+  private final AtomicInteger outstandingIos = new AtomicInteger();
+  private final LatencySamples writeLatencies = new LatencySamples();
+  private final LatencySamples syncLatencies = new LatencySamples();
+
+  /**
+   * Start an I/O operation.
+   * @return the start time to pass to {@link #endWrite(long)} or
+   *         {@link #endSync(long)}.
+   */
+  public long beginIo() {
+    outstandingIos.incrementAndGet();
+    return System.nanoTime();
+  }
+
+  /** End a write started at the given time. */
+  public void endWrite(long startNanos) {
+    writeLatencies.add(System.nanoTime() - startNanos);
+    outstandingIos.decrementAndGet();
+  }
+
+  /** End a sync started at the given time. */
+  public void endSync(long startNanos) {
+    syncLatencies.add(System.nanoTime() - startNanos);
+    outstandingIos.decrementAndGet();
+  }
+
+  /** @return the number of I/O operations in progress. */
+  public int getOutstandingIos() {
+    return outstandingIos.get();
+  }
+
+  /**
+   * @return the given percentile of the recent write latencies in
+   *         microseconds, or -1 if there are too few recent writes.
+   */
+  public long getWriteLatencyMicros(double percentile) {
+    return toMicros(writeLatencies.getPercentile(percentile));
+  }
+
+  /**
+   * @return the given percentile of the recent sync latencies in
+   *         microseconds, or -1 if there are too few recent syncs.
+   */
+  public long getSyncLatencyMicros(double percentile) {
+    return toMicros(syncLatencies.getPercentile(percentile));
+  }
+
+  private static long toMicros(long nanos) {
+    return nanos < 0 ? -1 : nanos / 1000;
+  }
+
+  /**
+   * Find the slow volumes. A volume is slow when the
+   * {@link #OUTLIER_PERCENTILE} of its write or sync latencies is over the
+   * given threshold and at least {@link #OUTLIER_FACTOR} times the median of
+   * the same latency over the volumes.
+   *
+   * @return the slow volumes among the given volumes.
+   */
+  public static <V extends FsVolumeSpi> Set<V> getSlowVolumes(
+      List<V> volumes, long thresholdMs) {
+    if (volumes.size() < 2) {
+      return Collections.emptySet();
+    }
+    final long[] writeMicros = new long[volumes.size()];
+    final long[] syncMicros = new long[volumes.size()];
+    for (int i = 0; i < writeMicros.length; i++) {
+      final VolumeIoStats stats = volumes.get(i).getIoStats();
+      writeMicros[i] = stats.getWriteLatencyMicros(OUTLIER_PERCENTILE);
+      syncMicros[i] = stats.getSyncLatencyMicros(OUTLIER_PERCENTILE);
+    }
+    Set<V> slow = null;
+    for (long[] micros : Arrays.asList(writeMicros, syncMicros)) {
+      final long limit = Math.max(thresholdMs * 1000,
+          OUTLIER_FACTOR * median(micros));
+      for (int i = 0; i < micros.length; i++) {
+        if (micros[i] > limit) {
+          if (slow == null) {
+            slow = new HashSet<V>();
+          }
+          slow.add(volumes.get(i));
+        }
+      }
+    }
+    return slow == null ? Collections.<V>emptySet() : slow;
+  }
+
+  /** @return the lower median of the known values, or 0. */
+  private static long median(long[] values) {
+    final List<Long> known = new ArrayList<Long>(values.length);
+    for (long v : values) {
+      if (v >= 0) {
+        known.add(v);
+      }
+    }
+    if (known.isEmpty()) {
+      return 0;
+    }
+    Collections.sort(known);
+    return known.get((known.size() - 1) / 2);
+  }
+
+  /** A ring of the latest latency samples. */
+  @VisibleForTesting
+  static class LatencySamples {
+    private final long[] nanos = new long[NUM_SAMPLES];
+    private final long[] times = new long[NUM_SAMPLES];
+    /** The total number of samples added. */
+    private long count = 0;
+
+    synchronized void add(long latencyNanos) {
+      add(latencyNanos, Time.monotonicNow());
+    }
+
+    @VisibleForTesting
+    synchronized void add(long latencyNanos, long now) {
+      final int i = (int)(count++ % NUM_SAMPLES);
+      nanos[i] = latencyNanos;
+      times[i] = now;
+    }
+
+    long getPercentile(double percentile) {
+      return getPercentile(percentile, Time.monotonicNow());
+    }
+
+    @VisibleForTesting
+    long getPercentile(double percentile, long now) {
+      final long[] recent = new long[NUM_SAMPLES];
+      int n = 0;
+      synchronized (this) {
+        final int size = (int)Math.min(count, NUM_SAMPLES);
+        for (int i = 0; i < size; i++) {
+          if (now - times[i] <= SAMPLE_EXPIRY_MS) {
+            recent[n++] = nanos[i];
+          }
+        }
+      }
+      if (n < MIN_SAMPLES) {
+        return -1;
+      }
+      Arrays.sort(recent, 0, n);
+      final int index = (int)Math.ceil(percentile / 100 * n) - 1;
+      return recent[Math.max(0, Math.min(n - 1, index))];
+    }
+  }
+}
@@ -18,12 +18,23 @@
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.DU;
@@ -31,34 +42,56 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.datanode.BlockMetadataHeader;
 import org.apache.hadoop.hdfs.server.datanode.DataStorage;
 import org.apache.hadoop.hdfs.server.datanode.DatanodeUtil;
 import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaUnderRecovery;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaWaitingToBeRecovered;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.nativeio.NativeIO;
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.DiskChecker;
 import org.apache.hadoop.util.DiskChecker.DiskErrorException;
+import org.apache.hadoop.util.Time;
 
 /**
  * A block pool slice represents a portion of a block pool stored on a volume.  
  * Taken together, all BlockPoolSlices sharing a block pool ID across a 
  * cluster represent a single block pool.
  * 
- * This class is synchronized by {@link FsVolumeImpl}.
+ * The finalized directory tree is guarded by the slice itself, so that
+ * blocks are finalized on different volumes in parallel.
  */
 class BlockPoolSlice {
+  /**
+   * The finalized replicas saved on shutdown, see {@link #saveReplicas}.
+   */
+  static final String REPLICA_CACHE_FILE = "replicas";
+  private static final int REPLICA_CACHE_VERSION = 3;
+  /**
+   * The coarsest granularity of the directory modification times, so that
+   * a directory modified within it of the cache being saved may be modified
+   * again without changing its modification time.
+   */
+  static final long MTIME_GRANULARITY = 2000;
+
   private final String bpid;
   private final FsVolumeImpl volume; // volume to which this BlockPool belongs to
   private final File currentDir; // StorageDirectory/current/bpid/current
   private final LDir finalizedDir; // directory store Finalized replica
   private final File rbwDir; // directory store RBW replica
   private final File tmpDir; // directory store Temporary replica
+  // directory store the saved copies of the replicas on RAM_DISK volumes
+  private final File lazypersistDir;
   
   // TODO:FEDERATION scalability issue - a thread per DU is needed
   private final DU dfsUsage;
+  private final boolean replicaCacheEnabled;
+  /** The finalized replicas loaded from the cache, until added to the map. */
+  private List<ReplicaInfo> cachedReplicas = null;
 
   /**
    * Create a blook pool slice 
@@ -75,6 +108,9 @@ class BlockPoolSlice {
     this.currentDir = new File(bpDir, DataStorage.STORAGE_DIR_CURRENT); 
     final File finalizedDir = new File(
         currentDir, DataStorage.STORAGE_DIR_FINALIZED);
+    this.replicaCacheEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_ENABLED_DEFAULT);
 
     // Files that were being written when the datanode was last shutdown
     // are now moved back to the data directory. It is possible that
@@ -86,6 +122,8 @@ class BlockPoolSlice {
       FileUtil.fullyDelete(tmpDir);
     }
     this.rbwDir = new File(currentDir, DataStorage.STORAGE_DIR_RBW);
+    this.lazypersistDir = new File(currentDir,
+        DataStorage.STORAGE_DIR_LAZY_PERSIST);
     final boolean supportAppends = conf.getBoolean(
         DFSConfigKeys.DFS_SUPPORT_APPEND_KEY,
         DFSConfigKeys.DFS_SUPPORT_APPEND_DEFAULT);
@@ -95,7 +133,9 @@ class BlockPoolSlice {
     final int maxBlocksPerDir = conf.getInt(
         DFSConfigKeys.DFS_DATANODE_NUMBLOCKS_KEY,
         DFSConfigKeys.DFS_DATANODE_NUMBLOCKS_DEFAULT);
-    this.finalizedDir = new LDir(finalizedDir, maxBlocksPerDir);
+    final LDir cachedTree = loadReplicaCache(finalizedDir, maxBlocksPerDir);
+    this.finalizedDir = cachedTree != null ? cachedTree
+        : new LDir(finalizedDir, maxBlocksPerDir);
     if (!rbwDir.mkdirs()) {  // create rbw directory if not exist
       if (!rbwDir.isDirectory()) {
         throw new IOException("Mkdirs failed to create " + rbwDir.toString());
@@ -122,6 +162,14 @@ File getRbwDir() {
     return rbwDir;
   }
 
+  /**
+   * @return the directory of the saved copies of RAM_DISK replicas. It is
+   *         only created when a copy is saved.
+   */
+  File getLazypersistDir() {
+    return lazypersistDir;
+  }
+
   /** Run DU on local drives.  It must be synchronized from caller. */
   void decDfsUsed(long value) {
     dfsUsage.decDfsUsed(value);
@@ -149,14 +197,90 @@ File createRbwFile(Block b) throws IOException {
     return DatanodeUtil.createTmpFile(b, f);
   }
 
-  File addBlock(Block b, File f) throws IOException {
+  /**
+   * Save a copy of a RAM_DISK replica. The files are first copied to the tmp
+   * directory, which is cleared on startup, and then moved to the
+   * lazypersist directory, the block file last, so that the copy is
+   * complete if the block file exists.
+   * @return the saved block file.
+   */
+  File saveLazyPersistCopy(Block b, File srcBlockFile, File srcMetaFile)
+      throws IOException {
+    if (!lazypersistDir.mkdirs() && !lazypersistDir.isDirectory()) {
+      throw new IOException("Mkdirs failed to create " + lazypersistDir);
+    }
+    final File tmpBlockFile = new File(tmpDir, b.getBlockName());
+    final File tmpMetaFile = FsDatasetUtil.getMetaFile(tmpBlockFile,
+        b.getGenerationStamp());
+    final File blockFile = new File(lazypersistDir, b.getBlockName());
+    final File metaFile = FsDatasetUtil.getMetaFile(blockFile,
+        b.getGenerationStamp());
+    try {
+      copyFileAndSync(srcMetaFile, tmpMetaFile);
+      copyFileAndSync(srcBlockFile, tmpBlockFile);
+      NativeIO.renameTo(tmpMetaFile, metaFile);
+      NativeIO.renameTo(tmpBlockFile, blockFile);
+    } catch (IOException e) {
+      deleteFiles(tmpBlockFile, tmpMetaFile, metaFile);
+      throw e;
+    }
+    dfsUsage.incDfsUsed(blockFile.length() + metaFile.length());
+    return blockFile;
+  }
+
+  private static void copyFileAndSync(File src, File dst) throws IOException {
+    FileInputStream in = null;
+    FileOutputStream out = null;
+    try {
+      in = new FileInputStream(src);
+      out = new FileOutputStream(dst);
+      IOUtils.copyBytes(in, out, HdfsConstants.IO_FILE_BUFFER_SIZE);
+      out.getChannel().force(true);
+      out.close();
+      out = null;
+    } finally {
+      IOUtils.closeStream(in);
+      IOUtils.closeStream(out);
+    }
+  }
+
+  /**
+   * Move the saved copy of a RAM_DISK replica to the finalized directory.
+   * The copy is already accounted for in the used space.
+   * @return the finalized block file.
+   */
+  synchronized File activateLazyPersistCopy(Block b, File savedBlockFile)
+      throws IOException {
+    return finalizedDir.addBlock(b, savedBlockFile);
+  }
+
+  /** Delete the saved copy of a RAM_DISK replica. */
+  void deleteLazyPersistCopy(File blockFile, File metaFile) {
+    final long length = blockFile.length() + metaFile.length();
+    if (deleteFiles(blockFile, metaFile)) {
+      dfsUsage.decDfsUsed(length);
+    }
+  }
+
+  private static boolean deleteFiles(File... files) {
+    boolean deleted = true;
+    for (File f : files) {
+      if (f.exists() && !f.delete()) {
+        FsDatasetImpl.LOG.warn("Failed to delete " + f);
+        deleted = false;
+      }
+    }
+    return deleted;
+  }
+
+  synchronized File addBlock(Block b, File f) throws IOException {
     File blockFile = finalizedDir.addBlock(b, f);
     File metaFile = FsDatasetUtil.getMetaFile(blockFile, b.getGenerationStamp());
     dfsUsage.incDfsUsed(b.getNumBytes()+metaFile.length());
     return blockFile;
   }
     
-  void checkDirs() throws DiskErrorException {
+  synchronized void checkDirs() throws DiskErrorException {
     finalizedDir.checkDirTree();
     DiskChecker.checkDir(tmpDir);
     DiskChecker.checkDir(rbwDir);
@@ -164,11 +288,234 @@ void checkDirs() throws DiskErrorException {
     
   void getVolumeMap(ReplicaMap volumeMap) throws IOException {
     // add finalized replicas
-    finalizedDir.getVolumeMap(bpid, volumeMap, volume);
+    if (cachedReplicas != null) {
+      for (ReplicaInfo r : cachedReplicas) {
+        ReplicaInfo oldReplica = volumeMap.add(bpid, r);
+        if (oldReplica != null) {
+          FsDatasetImpl.LOG.warn("Two block files with the same block id " +
+              "exist on disk: " + oldReplica.getBlockFile() + " and " +
+              r.getBlockFile());
+        }
+      }
+      cachedReplicas = null;
+    } else {
+      finalizedDir.getVolumeMap(bpid, volumeMap, volume);
+    }
     // add rbw replicas
     addToReplicasMap(volumeMap, rbwDir, false);
   }
 
+  /** @return the number of finalized directories listed on startup. */
+  int getNumFinalizedDirsListed() {
+    return finalizedDir.getNumDirsListed();
+  }
+
+  /**
+   * Save the finalized replicas of this slice, so that the next startup
+   * can build the finalized directory tree and add the replicas to the
+   * volume map without listing any directory. The cache records the shape
+   * of the tree with the number of block files and the modification time
+   * of every directory, and is only used if none of the directories was
+   * modified since. Replicas whose files change in place after the cache
+   * is saved, if any, are reconciled by the DirectoryScanner.
+   * <p>
+   * The caller holds all the replica locks, so that the replicas saved and
+   * the modification times of their directories are consistent.
+   */
+  synchronized void saveReplicas(ReplicaMap volumeMap) {
+    final Collection<ReplicaInfo> replicas = volumeMap.replicas(bpid);
+    if (!replicaCacheEnabled || replicas == null) {
+      return;
+    }
+    final Map<File, List<ReplicaInfo>> dirReplicas =
+        new HashMap<File, List<ReplicaInfo>>();
+    for (ReplicaInfo r : replicas) {
+      if (r.getState() == ReplicaState.RUR) {
+        r = ((ReplicaUnderRecovery)r).getOriginalReplica();
+      }
+      if (r.getVolume() != volume || r.getState() != ReplicaState.FINALIZED) {
+        continue;
+      }
+      final File dir = r.getBlockFile().getParentFile();
+      List<ReplicaInfo> list = dirReplicas.get(dir);
+      if (list == null) {
+        list = new ArrayList<ReplicaInfo>();
+        dirReplicas.put(dir, list);
+      }
+      list.add(r);
+    }
+
+    final File tmpFile = new File(currentDir, REPLICA_CACHE_FILE + ".tmp");
+    final File cacheFile = new File(currentDir, REPLICA_CACHE_FILE);
+    final long start = Time.monotonicNow();
+    final long saveTime = Time.now();
+    FileOutputStream fos = null;
+    try {
+      fos = new FileOutputStream(tmpFile);
+      final CRC32 crc = new CRC32();
+      final DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+          new BufferedOutputStream(fos, HdfsConstants.IO_FILE_BUFFER_SIZE),
+          crc));
+      out.writeInt(REPLICA_CACHE_VERSION);
+      out.writeLong(saveTime);
+      final int numReplicas = saveDir(finalizedDir, dirReplicas, out);
+      if (!dirReplicas.isEmpty()) {
+        throw new IOException("Replicas outside of the finalized directory "
+            + "tree in " + dirReplicas.keySet());
+      }
+      out.flush();
+      // The checksum marks the cache as complete.
+      out.writeLong(crc.getValue());
+      out.flush();
+      fos.getFD().sync();
+      fos.close();
+      fos = null;
+      if (!tmpFile.renameTo(cacheFile)) {
+        throw new IOException("Failed to rename " + tmpFile + " to "
+            + cacheFile);
+      }
+      FsDatasetImpl.LOG.info("Saved " + numReplicas + " replicas of " + this
+          + " in " + (Time.monotonicNow() - start) + "ms");
+    } catch (IOException e) {
+      FsDatasetImpl.LOG.warn("Failed to save the replicas of " + this, e);
+      IOUtils.closeStream(fos);
+      if (tmpFile.exists() && !tmpFile.delete()) {
+        FsDatasetImpl.LOG.warn("Failed to delete " + tmpFile);
+      }
+    }
+  }
+
+  /**
+   * Save a directory of the finalized tree with its replicas, which are
+   * removed from dirReplicas, and then its subtrees.
+   * @return the number of replicas saved.
+   */
+  private static int saveDir(LDir dir, Map<File, List<ReplicaInfo>> dirReplicas,
+      DataOutputStream out) throws IOException {
+    out.writeLong(dir.dir.lastModified());
+    out.writeInt(dir.getNumBlocks());
+    final List<ReplicaInfo> replicas = dirReplicas.remove(dir.dir);
+    int numReplicas = replicas == null ? 0 : replicas.size();
+    out.writeInt(numReplicas);
+    if (replicas != null) {
+      for (ReplicaInfo r : replicas) {
+        out.writeLong(r.getBlockId());
+        out.writeLong(r.getNumBytes());
+        out.writeLong(r.getGenerationStamp());
+      }
+    }
+    final LDir[] children = dir.getChildren();
+    out.writeInt(children == null ? 0 : children.length);
+    if (children != null) {
+      for (LDir child : children) {
+        out.writeUTF(child.dir.getName());
+        numReplicas += saveDir(child, dirReplicas, out);
+      }
+    }
+    return numReplicas;
+  }
+
+  /**
+   * Build the finalized directory tree from the cache saved by
+   * {@link #saveReplicas}, and keep its replicas in {@link #cachedReplicas}
+   * for {@link #getVolumeMap}. The modification time of every directory is
+   * checked, but no directory is listed. A directory whose modification time
+   * is unchanged has the same entries, so its block files are the cached
+   * ones and it has no unlinked tmp files to recover either: these are only
+   * left behind by a crash, and no cache is saved then. A directory modified
+   * shortly before the cache was saved is listed anyway, since it may have
+   * been modified again without changing its modification time.
+   * <p>
+   * The cache is deleted whether it was used or not, so that it is never
+   * used after the replicas change again. It is not used when the cache is
+   * disabled, since it may be older than the replicas then.
+   * @return the tree, or null if the directories need to be scanned.
+   */
+  private LDir loadReplicaCache(File dir, int maxBlocksPerDir) {
+    final File cacheFile = new File(currentDir, REPLICA_CACHE_FILE);
+    if (!cacheFile.exists()) {
+      return null;
+    }
+    if (!replicaCacheEnabled) {
+      if (!cacheFile.delete()) {
+        FsDatasetImpl.LOG.warn("Failed to delete " + cacheFile);
+      }
+      return null;
+    }
+    final long start = Time.monotonicNow();
+    DataInputStream in = null;
+    try {
+      final CRC32 crc = new CRC32();
+      in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(
+          new FileInputStream(cacheFile), HdfsConstants.IO_FILE_BUFFER_SIZE),
+          crc));
+      final int version = in.readInt();
+      if (version != REPLICA_CACHE_VERSION) {
+        FsDatasetImpl.LOG.info("Not using " + cacheFile
+            + ": unknown version " + version);
+        return null;
+      }
+      final long saveTime = in.readLong();
+      final List<ReplicaInfo> replicas = new ArrayList<ReplicaInfo>();
+      final LDir tree = loadDir(dir, maxBlocksPerDir, saveTime, in, replicas);
+      final long expected = crc.getValue();
+      if (in.readLong() != expected) {
+        FsDatasetImpl.LOG.info("Not using " + cacheFile
+            + ": checksum mismatch");
+        return null;
+      }
+      if (tree == null) {
+        FsDatasetImpl.LOG.info("Not using " + cacheFile
+            + ": the directories changed");
+        return null;
+      }
+      cachedReplicas = replicas;
+      FsDatasetImpl.LOG.info("Loaded " + replicas.size() + " replicas of "
+          + this + " from " + cacheFile + " in "
+          + (Time.monotonicNow() - start) + "ms");
+      return tree;
+    } catch (IOException e) {
+      FsDatasetImpl.LOG.warn("Failed to read " + cacheFile, e);
+      return null;
+    } finally {
+      IOUtils.closeStream(in);
+      if (!cacheFile.delete()) {
+        FsDatasetImpl.LOG.warn("Failed to delete " + cacheFile);
+      }
+    }
+  }
+
+  /**
+   * Load a directory saved by {@link #saveDir} and its subtrees. The whole
+   * record is read even if the directory changed, so that the checksum of
+   * the cache can be verified.
+   * @return the directory, or null if it or any of its subtrees changed.
+   */
+  private LDir loadDir(File dir, int maxBlocksPerDir, long saveTime,
+      DataInputStream in, List<ReplicaInfo> replicas) throws IOException {
+    final long mtime = in.readLong();
+    final int numBlocks = in.readInt();
+    boolean changed = mtime != dir.lastModified()
+        || mtime > saveTime - MTIME_GRANULARITY;
+    final int n = in.readInt();
+    for (int j = 0; j < n; j++) {
+      final long blockId = in.readLong();
+      final long numBytes = in.readLong();
+      final long genStamp = in.readLong();
+      replicas.add(new FinalizedReplica(blockId, numBytes, genStamp,
+          volume, dir));
+    }
+    final int numChildren = in.readInt();
+    final LDir[] children = numChildren == 0 ? null : new LDir[numChildren];
+    for (int i = 0; i < numChildren; i++) {
+      children[i] = loadDir(new File(dir, in.readUTF()), maxBlocksPerDir,
+          saveTime, in, replicas);
+      changed |= children[i] == null;
+    }
+    return changed ? null
+        : new LDir(dir, maxBlocksPerDir, numBlocks, children);
+  }
+
   /**
    * Add replicas under the given directory to the volume map
    * @param volumeMap the replicas map
@@ -286,7 +633,7 @@ private long validateIntegrityAndSetLength(File blockFile, long genStamp) {
     }
   }
     
-  void clearPath(File f) {
+  synchronized void clearPath(File f) {
     finalizedDir.clearPath(f);
   }
     
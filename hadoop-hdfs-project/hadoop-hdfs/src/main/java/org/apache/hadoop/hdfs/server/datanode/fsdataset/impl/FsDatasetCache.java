@@ -19,16 +19,21 @@
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
 import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
@@ -46,12 +51,24 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.DNConf;
 import org.apache.hadoop.io.nativeio.NativeIO;
+import org.apache.hadoop.util.Time;
 
 /**
  * Manages caching for an FsDatasetImpl by using the mmap(2) and mlock(2)
  * system calls to lock blocks into memory. Block checksums are verified upon
  * entry into the cache.
+ * <p>
+ * Besides the blocks the NameNode asks us to cache, the blocks read most
+ * frequently by clients may be cached automatically within
+ * {@link DFSConfigKeys#DFS_DATANODE_AUTO_CACHE_MAX_BYTES_KEY}. When that space
+ * is full, the automatically cached blocks read least frequently, then least
+ * recently, are uncached to make room for a block read more often, which is
+ * cached by one of its next reads once they are unmapped. These blocks are
+ * reported
+ * to the NameNode separately, so that it advertises them to clients without
+ * managing them.
  */
 @InterfaceAudience.Private
 @InterfaceStability.Unstable
@@ -101,16 +118,73 @@ public boolean shouldAdvertise() {
     }
   }
 
+  /**
+   * The recent client reads of a block.
+   */
+  private static final class ReadStats {
+    final AtomicLong count = new AtomicLong();
+    volatile long lastReadMs;
+  }
+
+  /**
+   * The read statistics of a cached block at a point in time, ordered from
+   * the block read least frequently, then least recently. A block without
+   * statistics comes first.
+   */
+  private static final class Heat implements Comparable<Heat> {
+    final ExtendedBlockId key;
+    final long count;
+    final long lastReadMs;
+
+    Heat(ExtendedBlockId key, ReadStats stats) {
+      this.key = key;
+      this.count = stats == null ? -1 : stats.count.get();
+      this.lastReadMs = stats == null ? -1 : stats.lastReadMs;
+    }
+
+    @Override
+    public int compareTo(Heat other) {
+      if (count != other.count) {
+        return count < other.count ? -1 : 1;
+      }
+      return lastReadMs < other.lastReadMs ? -1 :
+          (lastReadMs == other.lastReadMs ? 0 : 1);
+    }
+  }
+
   private static final Log LOG = LogFactory.getLog(FsDatasetCache.class);
 
   /**
-   * Stores MappableBlock objects and the states they're in.
+   * Stores MappableBlock objects and the states they're in.  It is only
+   * updated with the FsDatasetCache monitor held, but may be read without.
    */
-  private final HashMap<ExtendedBlockId, Value> mappableBlockMap =
-      new HashMap<ExtendedBlockId, Value>();
+  private final ConcurrentMap<ExtendedBlockId, Value> mappableBlockMap =
+      new ConcurrentHashMap<ExtendedBlockId, Value>();
 
   private final AtomicLong numBlocksCached = new AtomicLong(0);
 
+  /**
+   * The lengths of the blocks which were cached automatically, rather than
+   * because the NameNode asked us to.  They are in the mappableBlockMap as
+   * well, and count against the automatic caching space until they are
+   * unmapped.
+   */
+  private final HashMap<ExtendedBlockId, Long> autoCachedBlocks =
+      new HashMap<ExtendedBlockId, Long>();
+
+  /**
+   * The total length of the autoCachedBlocks.
+   */
+  private long autoCachedBytes = 0;
+
+  /**
+   * The read counts of the blocks read most recently.  Reads are counted
+   * without the FsDatasetCache monitor, which the cache operations hold.
+   */
+  private final ConcurrentMap<ExtendedBlockId, ReadStats> readStats;
+
+  private final AtomicLong lastDecayMs = new AtomicLong(Time.monotonicNow());
+
   private final FsDatasetImpl dataset;
 
   private final ThreadPoolExecutor uncachingExecutor;
@@ -193,6 +267,14 @@ long get() {
    */
   private final long maxBytes;
 
+  /**
+   * The part of the cache capacity which may be used by blocks cached
+   * automatically, or 0 if automatic caching is disabled.
+   */
+  private final long autoCacheMaxBytes;
+  private final int autoCacheMinReads;
+  private final long autoCacheDecayIntervalMs;
+
   /**
    * Number of cache commands that could not be completed successfully
    */
@@ -204,7 +286,15 @@ long get() {
 
   public FsDatasetCache(FsDatasetImpl dataset) {
     this.dataset = dataset;
-    this.maxBytes = dataset.datanode.getDnConf().getMaxLockedMemory();
+    final DNConf dnConf = dataset.datanode.getDnConf();
+    this.maxBytes = dnConf.getMaxLockedMemory();
+    this.autoCacheMaxBytes = dnConf.getAutoCacheMaxBytes();
+    this.autoCacheMinReads = dnConf.getAutoCacheMinReads();
+    this.autoCacheDecayIntervalMs = dnConf.getAutoCacheDecayIntervalMs();
+    final int maxTrackedBlocks = dnConf.getAutoCacheMaxTrackedBlocks();
+    this.readStats = CacheBuilder.newBuilder()
+        .maximumSize(maxTrackedBlocks)
+        .<ExtendedBlockId, ReadStats>build().asMap();
     ThreadFactory workerFactory = new ThreadFactoryBuilder()
         .setDaemon(true)
         .setNameFormat("FsDatasetCache-%d-" + dataset.toString())
@@ -223,12 +313,25 @@ public FsDatasetCache(FsDatasetImpl dataset) {
    * {@link BlockListAsLongs} for a cache report.
    */
   synchronized List<Long> getCachedBlocks(String bpid) {
+    return getCachedBlocks(bpid, false);
+  }
+
+  /**
+   * @return List of the blocks which were cached automatically, reported
+   * separately in a cache report.
+   */
+  synchronized List<Long> getAutoCachedBlocks(String bpid) {
+    return getCachedBlocks(bpid, true);
+  }
+
+  private List<Long> getCachedBlocks(String bpid, boolean auto) {
     List<Long> blocks = new ArrayList<Long>();
     for (Iterator<Entry<ExtendedBlockId, Value>> iter =
         mappableBlockMap.entrySet().iterator(); iter.hasNext(); ) {
       Entry<ExtendedBlockId, Value> entry = iter.next();
       if (entry.getKey().getBlockPoolId().equals(bpid)) {
-        if (entry.getValue().state.shouldAdvertise()) {
+        if (entry.getValue().state.shouldAdvertise() &&
+            autoCachedBlocks.containsKey(entry.getKey()) == auto) {
           blocks.add(entry.getKey().getBlockId());
         }
       }
@@ -236,26 +339,200 @@ synchronized List<Long> getCachedBlocks(String bpid) {
     return blocks;
   }
 
+  /**
+   * @return true if the block is in the cache.
+   */
+  synchronized boolean isCached(String bpid, long blockId) {
+    Value value = mappableBlockMap.get(new ExtendedBlockId(blockId, bpid));
+    return value != null && value.state.shouldAdvertise();
+  }
+
+  /**
+   * Count a client read of a block.
+   *
+   * @return true if the block is read frequently enough to be cached
+   *         automatically, and is not cached yet.
+   */
+  boolean recordRead(String bpid, long blockId) {
+    if (autoCacheMaxBytes <= 0) {
+      return false;
+    }
+    final long now = Time.monotonicNow();
+    final long lastDecay = lastDecayMs.get();
+    if (now - lastDecay >= autoCacheDecayIntervalMs &&
+        lastDecayMs.compareAndSet(lastDecay, now)) {
+      decayReadCounts();
+    }
+    ExtendedBlockId key = new ExtendedBlockId(blockId, bpid);
+    ReadStats stats = readStats.get(key);
+    if (stats == null) {
+      final ReadStats newStats = new ReadStats();
+      stats = readStats.putIfAbsent(key, newStats);
+      if (stats == null) {
+        stats = newStats;
+      }
+    }
+    stats.lastReadMs = now;
+    return stats.count.incrementAndGet() >= autoCacheMinReads &&
+        !mappableBlockMap.containsKey(key);
+  }
+
+  /**
+   * Halve the read counts, forgetting the blocks which were not read since
+   * the last time.  A read counted concurrently may be lost.
+   */
+  private void decayReadCounts() {
+    for (Iterator<Entry<ExtendedBlockId, ReadStats>> iter =
+        readStats.entrySet().iterator(); iter.hasNext(); ) {
+      final Entry<ExtendedBlockId, ReadStats> entry = iter.next();
+      final AtomicLong count = entry.getValue().count;
+      long c;
+      do {
+        c = count.get();
+      } while (!count.compareAndSet(c, c / 2));
+      if (c / 2 == 0) {
+        readStats.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Reserve room in the cache for a block read frequently.  If the cache is
+   * full, uncache the automatically cached blocks which are read less
+   * frequently, then less recently, to make room.  Their space is only
+   * released once they are unmapped, so the block is cached by one of its
+   * next reads.
+   *
+   * @return true if the block fits in the cache now.
+   */
+  private boolean reserveAutoCachedBytes(ExtendedBlockId key, long length) {
+    final long needed = Math.max(autoCachedBytes + length - autoCacheMaxBytes,
+        usedBytesCount.get() + length - maxBytes);
+    if (needed <= 0) {
+      autoCachedBlocks.put(key, length);
+      autoCachedBytes += length;
+      return true;
+    }
+    // The blocks already being uncached free some of the space.
+    long freed = 0;
+    for (Entry<ExtendedBlockId, Long> entry : autoCachedBlocks.entrySet()) {
+      if (mappableBlockMap.get(entry.getKey()).state == State.UNCACHING) {
+        freed += entry.getValue();
+      }
+    }
+    final Heat heat = new Heat(key, readStats.get(key));
+    final List<Heat> victims = getAutoCachedBlocksByHeat();
+    int numVictims = 0;
+    for (Heat victim : victims) {
+      if (freed >= needed || victim.count >= heat.count) {
+        break;
+      }
+      freed += autoCachedBlocks.get(victim.key);
+      numVictims++;
+    }
+    if (freed < needed) {
+      return false;
+    }
+    for (Heat victim : victims.subList(0, numVictims)) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Uncaching " + victim.key + " to make room for " + key +
+            " which is read more frequently.");
+      }
+      uncacheBlock(victim.key.getBlockPoolId(), victim.key.getBlockId());
+    }
+    dataset.datanode.getMetrics().incrBlocksAutoUncached(numVictims);
+    return false;
+  }
+
+  /**
+   * @return the automatically cached blocks which are not being uncached,
+   *         read least frequently, then least recently, first.
+   */
+  private List<Heat> getAutoCachedBlocksByHeat() {
+    final List<Heat> blocks = new ArrayList<Heat>();
+    for (ExtendedBlockId key : autoCachedBlocks.keySet()) {
+      if (mappableBlockMap.get(key).state == State.CACHED) {
+        blocks.add(new Heat(key, readStats.get(key)));
+      }
+    }
+    Collections.sort(blocks);
+    return blocks;
+  }
+
+  /**
+   * Stop counting a block against the automatic caching space.
+   */
+  private void releaseAutoCachedBytes(ExtendedBlockId key) {
+    final Long length = autoCachedBlocks.remove(key);
+    if (length != null) {
+      autoCachedBytes -= length;
+    }
+  }
+
+  /**
+   * Uncache enough automatically cached blocks to make room for a block the
+   * NameNode asked us to cache.
+   */
+  private synchronized void evictAutoCachedBlocks(long needed) {
+    long freed = 0;
+    int numVictims = 0;
+    for (Heat victim : getAutoCachedBlocksByHeat()) {
+      if (freed >= needed) {
+        break;
+      }
+      freed += autoCachedBlocks.get(victim.key);
+      numVictims++;
+      uncacheBlock(victim.key.getBlockPoolId(), victim.key.getBlockId());
+    }
+    if (numVictims > 0) {
+      LOG.info("Uncaching " + numVictims + " automatically cached blocks " +
+          "to make room for blocks with cache directives.");
+      dataset.datanode.getMetrics().incrBlocksAutoUncached(numVictims);
+    }
+  }
+
   /**
    * Attempt to begin caching a block.
+   *
+   * @param auto  true if the block is cached automatically because it is
+   *              read frequently, rather than because the NameNode asked.
    */
   synchronized void cacheBlock(long blockId, String bpid,
       String blockFileName, long length, long genstamp,
-      Executor volumeExecutor) {
+      Executor volumeExecutor, boolean auto) {
     ExtendedBlockId key = new ExtendedBlockId(blockId, bpid);
     Value prevValue = mappableBlockMap.get(key);
     if (prevValue != null) {
+      if (!auto && autoCachedBlocks.containsKey(key) &&
+          (prevValue.state == State.CACHING ||
+           prevValue.state == State.CACHED)) {
+        // The block stays in the cache, but the NameNode manages it now.
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Block with id " + blockId + ", pool " + bpid +
+              " was cached automatically and is now cached on request.");
+        }
+        releaseAutoCachedBytes(key);
+        return;
+      }
       if (LOG.isDebugEnabled()) {
         LOG.debug("Block with id " + blockId + ", pool " + bpid +
             " already exists in the FsDatasetCache with state " +
             prevValue.state);
       }
-      numBlocksFailedToCache.incrementAndGet();
+      if (!auto) {
+        numBlocksFailedToCache.incrementAndGet();
+      }
+      return;
+    }
+    if (auto && !reserveAutoCachedBytes(key, length)) {
       return;
     }
     mappableBlockMap.put(key, new Value(null, State.CACHING));
     volumeExecutor.execute(
-        new CachingTask(key, blockFileName, length, genstamp));
+        new CachingTask(key, blockFileName, length, genstamp, auto));
+    if (auto) {
+      dataset.datanode.getMetrics().incrBlocksAutoCached(1);
+    }
     if (LOG.isDebugEnabled()) {
       LOG.debug("Initiating caching for Block with id " + blockId +
           ", pool " + bpid);
@@ -312,12 +589,15 @@ private class CachingTask implements Runnable {
     private final String blockFileName;
     private final long length;
     private final long genstamp;
+    private final boolean auto;
 
-    CachingTask(ExtendedBlockId key, String blockFileName, long length, long genstamp) {
+    CachingTask(ExtendedBlockId key, String blockFileName, long length,
+        long genstamp, boolean auto) {
       this.key = key;
       this.blockFileName = blockFileName;
       this.length = length;
       this.genstamp = genstamp;
+      this.auto = auto;
     }
 
     @Override
@@ -329,11 +609,25 @@ public void run() {
           key.getBlockId(), length, genstamp);
       long newUsedBytes = usedBytesCount.reserve(length);
       if (newUsedBytes < 0) {
-        LOG.warn("Failed to cache " + key + ": could not reserve " + length +
-            " more bytes in the cache: " +
-            DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_KEY +
-            " of " + maxBytes + " exceeded.");
-        numBlocksFailedToCache.incrementAndGet();
+        if (auto) {
+          // The blocks uncached to make room are not released yet.
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Failed to cache " + key + " automatically: could " +
+                "not reserve " + length + " more bytes in the cache.");
+          }
+        } else {
+          LOG.warn("Failed to cache " + key + ": could not reserve " +
+              length + " more bytes in the cache: " +
+              DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_KEY +
+              " of " + maxBytes + " exceeded.");
+          numBlocksFailedToCache.incrementAndGet();
+          // Make room for the next attempt, which the NameNode will request.
+          evictAutoCachedBlocks(length);
+        }
+        synchronized (FsDatasetCache.this) {
+          mappableBlockMap.remove(key);
+          releaseAutoCachedBytes(key);
+        }
         return;
       }
       try {
@@ -394,10 +688,13 @@ public void run() {
           if (mappableBlock != null) {
             mappableBlock.close();
           }
-          numBlocksFailedToCache.incrementAndGet();
+          if (!auto) {
+            numBlocksFailedToCache.incrementAndGet();
+          }
 
           synchronized (FsDatasetCache.this) {
             mappableBlockMap.remove(key);
+            releaseAutoCachedBytes(key);
           }
         }
       }
@@ -425,6 +722,8 @@ public void run() {
       IOUtils.closeQuietly(value.mappableBlock);
       synchronized (FsDatasetCache.this) {
         mappableBlockMap.remove(key);
+        // the block no longer uses the automatic caching space
+        releaseAutoCachedBytes(key);
       }
       long newUsedBytes =
           usedBytesCount.release(value.mappableBlock.getLength());
@@ -29,10 +29,11 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.management.NotCompliantMBeanException;
 import javax.management.ObjectName;
@@ -43,6 +44,7 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.StorageType;
@@ -77,6 +79,8 @@
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.RollingLogs;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.RoundRobinVolumeChoosingPolicy;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeChoosingPolicy;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeIoStats;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.impl.RamDiskReplicaTracker.RamDiskReplica;
 import org.apache.hadoop.hdfs.server.datanode.metrics.FSDatasetMBean;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand.RecoveringBlock;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
@@ -84,6 +88,7 @@
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
 import org.apache.hadoop.io.nativeio.NativeIO;
 import org.apache.hadoop.metrics2.util.MBeans;
+import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.DiskChecker.DiskErrorException;
 import org.apache.hadoop.util.DiskChecker.DiskOutOfSpaceException;
@@ -94,6 +99,14 @@
  * FSDataset manages a set of data blocks.  Each block
  * has a unique name and an extent on disk.
  *
+ * Operations which change a replica hold the lock of its block in
+ * {@link ReplicaLocks}, including while they create, rename or delete its
+ * files, so that a slow disk does not stall the blocks on other volumes.
+ * Lookups of replicas do not lock. The block reports and the lists of
+ * finalized replicas lock every replica, so that they see no operation
+ * half done. The dataset lock is only held by the operations which span
+ * block pools or volumes.
+ *
  ***************************************************/
 @InterfaceAudience.Private
 class FsDatasetImpl implements FsDatasetSpi<FsVolumeImpl> {
@@ -117,6 +130,7 @@ public List<FsVolumeImpl> getVolumes() {
   public StorageReport[] getStorageReports(String bpid)
       throws IOException {
     StorageReport[] reports;
+    final Set<FsVolumeImpl> slow = getSlowVolumes();
     synchronized (statsLock) {
       reports = new StorageReport[volumes.volumes.size()];
       int i = 0;
@@ -126,21 +140,27 @@ public StorageReport[] getStorageReports(String bpid)
                                          volume.getCapacity(),
                                          volume.getDfsUsed(),
                                          volume.getAvailable(),
-                                         volume.getBlockPoolUsed(bpid));
+                                         volume.getBlockPoolUsed(bpid),
+                                         slow.contains(volume));
       }
     }
 
     return reports;
   }
 
+  /** @return the volumes whose I/O latency is an outlier. */
+  Set<FsVolumeImpl> getSlowVolumes() {
+    return VolumeIoStats.getSlowVolumes(volumes.volumes, slowVolumeThresholdMs);
+  }
+
   @Override
-  public synchronized FsVolumeImpl getVolume(final ExtendedBlock b) {
+  public FsVolumeImpl getVolume(final ExtendedBlock b) {
     final ReplicaInfo r =  volumeMap.get(b.getBlockPoolId(), b.getLocalBlock());
     return r != null? (FsVolumeImpl)r.getVolume(): null;
   }
 
   @Override // FsDatasetSpi
-  public synchronized Block getStoredBlock(String bpid, long blkid)
+  public Block getStoredBlock(String bpid, long blkid)
       throws IOException {
     File blockfile = getFile(bpid, blkid);
     if (blockfile == null) {
@@ -199,6 +219,13 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
   private final int validVolsRequired;
 
   final ReplicaMap volumeMap;
+  final ReplicaLocks replicaLocks;
+  private final long slowVolumeThresholdMs;
+
+  final RamDiskReplicaTracker ramDiskReplicaTracker =
+      new RamDiskReplicaTracker();
+  private final LazyWriter lazyWriter;
+  private final Daemon lazyWriterThread;
 
   // Used for synchronizing access to usage stats
   private final Object statsLock = new Object();
@@ -245,6 +272,12 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
       LOG.info("Added volume - " + dir + ", StorageType: " + storageType);
     }
     volumeMap = new ReplicaMap(this);
+    replicaLocks = new ReplicaLocks(conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_LOCK_STRIPES_KEY,
+        DFSConfigKeys.DFS_DATANODE_REPLICA_LOCK_STRIPES_DEFAULT));
+    slowVolumeThresholdMs = conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_SLOW_VOLUME_THRESHOLD_MS_KEY,
+        DFSConfigKeys.DFS_DATANODE_SLOW_VOLUME_THRESHOLD_MS_DEFAULT);
 
     @SuppressWarnings("unchecked")
     final VolumeChoosingPolicy<FsVolumeImpl> blockChooserImpl =
@@ -261,6 +294,14 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
     }
     asyncDiskService = new FsDatasetAsyncDiskService(datanode, roots);
     cacheManager = new FsDatasetCache(this);
+    if (volumes.getVolumes(true).isEmpty()) {
+      lazyWriter = null;
+      lazyWriterThread = null;
+    } else {
+      lazyWriter = new LazyWriter(conf);
+      lazyWriterThread = new Daemon(lazyWriter);
+      lazyWriterThread.start();
+    }
     registerMBean(datanode.getDatanodeUuid());
   }
 
@@ -355,6 +396,16 @@ public long getNumBlocksCached() {
     return cacheManager.getNumBlocksCached();
   }
 
+  @Override // FSDatasetMBean
+  public long getReplicaLockContentionCount() {
+    return replicaLocks.getContentionCount();
+  }
+
+  @Override // FSDatasetMBean
+  public long getReplicaLockWaitTimeMillis() {
+    return replicaLocks.getWaitTimeMillis();
+  }
+
   /**
    * Find the block's on-disk length
    */
@@ -389,10 +440,7 @@ File getBlockFile(String bpid, Block b) throws IOException {
    */
   private File getBlockFileNoExistsCheck(ExtendedBlock b)
       throws IOException {
-    final File f;
-    synchronized(this) {
-      f = getFile(b.getBlockPoolId(), b.getLocalBlock().getBlockId());
-    }
+    final File f = getFile(b.getBlockPoolId(), b.getLocalBlock().getBlockId());
     if (f == null) {
       throw new IOException("Block " + b + " is not valid");
     }
@@ -462,7 +510,7 @@ private ReplicaInfo getReplicaInfo(String bpid, long blkid)
    * Returns handles to the block file and its metadata file
    */
   @Override // FsDatasetSpi
-  public synchronized ReplicaInputStreams getTmpInputStreams(ExtendedBlock b, 
+  public ReplicaInputStreams getTmpInputStreams(ExtendedBlock b, 
                           long blkOffset, long ckoff) throws IOException {
     ReplicaInfo info = getReplicaInfo(b);
     File blockFile = info.getBlockFile();
@@ -555,33 +603,38 @@ static private void truncateBlock(File blockFile, File metaFile,
 
 
   @Override  // FsDatasetSpi
-  public synchronized ReplicaInPipeline append(ExtendedBlock b,
+  public ReplicaInPipeline append(ExtendedBlock b,
       long newGS, long expectedBlockLen) throws IOException {
-    // If the block was successfully finalized because all packets
-    // were successfully processed at the Datanode but the ack for
-    // some of the packets were not received by the client. The client 
-    // re-opens the connection and retries sending those packets.
-    // The other reason is that an "append" is occurring to this block.
+    final ReentrantLock lock = replicaLocks.lock(b.getBlockId());
+    try {
+      // If the block was successfully finalized because all packets
+      // were successfully processed at the Datanode but the ack for
+      // some of the packets were not received by the client. The client 
+      // re-opens the connection and retries sending those packets.
+      // The other reason is that an "append" is occurring to this block.
     
-    // check the validity of the parameter
-    if (newGS < b.getGenerationStamp()) {
-      throw new IOException("The new generation stamp " + newGS + 
-          " should be greater than the replica " + b + "'s generation stamp");
-    }
-    ReplicaInfo replicaInfo = getReplicaInfo(b);
-    LOG.info("Appending to " + replicaInfo);
-    if (replicaInfo.getState() != ReplicaState.FINALIZED) {
-      throw new ReplicaNotFoundException(
-          ReplicaNotFoundException.UNFINALIZED_REPLICA + b);
-    }
-    if (replicaInfo.getNumBytes() != expectedBlockLen) {
-      throw new IOException("Corrupted replica " + replicaInfo + 
-          " with a length of " + replicaInfo.getNumBytes() + 
-          " expected length is " + expectedBlockLen);
-    }
+      // check the validity of the parameter
+      if (newGS < b.getGenerationStamp()) {
+        throw new IOException("The new generation stamp " + newGS + 
+            " should be greater than the replica " + b + "'s generation stamp");
+      }
+      ReplicaInfo replicaInfo = getReplicaInfo(b);
+      LOG.info("Appending to " + replicaInfo);
+      if (replicaInfo.getState() != ReplicaState.FINALIZED) {
+        throw new ReplicaNotFoundException(
+            ReplicaNotFoundException.UNFINALIZED_REPLICA + b);
+      }
+      if (replicaInfo.getNumBytes() != expectedBlockLen) {
+        throw new IOException("Corrupted replica " + replicaInfo + 
+            " with a length of " + replicaInfo.getNumBytes() + 
+            " expected length is " + expectedBlockLen);
+      }
 
-    return append(b.getBlockPoolId(), (FinalizedReplica)replicaInfo, newGS,
-        b.getNumBytes());
+      return append(b.getBlockPoolId(), (FinalizedReplica)replicaInfo, newGS,
+          b.getNumBytes());
+    } finally {
+      lock.unlock();
+    }
   }
   
   /** Append to a finalized replica
@@ -596,7 +649,7 @@ public synchronized ReplicaInPipeline append(ExtendedBlock b,
    * @throws IOException if moving the replica from finalized directory 
    *         to rbw directory fails
    */
-  private synchronized ReplicaBeingWritten append(String bpid,
+  private ReplicaBeingWritten append(String bpid,
       FinalizedReplica replicaInfo, long newGS, long estimateBlockLen)
       throws IOException {
     // If the block is cached, start uncaching it.
@@ -704,35 +757,45 @@ private ReplicaInfo recoverCheck(ExtendedBlock b, long newGS,
   }
   
   @Override  // FsDatasetSpi
-  public synchronized ReplicaInPipeline recoverAppend(ExtendedBlock b,
+  public ReplicaInPipeline recoverAppend(ExtendedBlock b,
       long newGS, long expectedBlockLen) throws IOException {
-    LOG.info("Recover failed append to " + b);
+    final ReentrantLock lock = replicaLocks.lock(b.getBlockId());
+    try {
+      LOG.info("Recover failed append to " + b);
 
-    ReplicaInfo replicaInfo = recoverCheck(b, newGS, expectedBlockLen);
+      ReplicaInfo replicaInfo = recoverCheck(b, newGS, expectedBlockLen);
 
-    // change the replica's state/gs etc.
-    if (replicaInfo.getState() == ReplicaState.FINALIZED ) {
-      return append(b.getBlockPoolId(), (FinalizedReplica) replicaInfo, newGS, 
-          b.getNumBytes());
-    } else { //RBW
-      bumpReplicaGS(replicaInfo, newGS);
-      return (ReplicaBeingWritten)replicaInfo;
+      // change the replica's state/gs etc.
+      if (replicaInfo.getState() == ReplicaState.FINALIZED ) {
+        return append(b.getBlockPoolId(), (FinalizedReplica) replicaInfo, newGS, 
+            b.getNumBytes());
+      } else { //RBW
+        bumpReplicaGS(replicaInfo, newGS);
+        return (ReplicaBeingWritten)replicaInfo;
+      }
+    } finally {
+      lock.unlock();
     }
   }
 
   @Override // FsDatasetSpi
   public String recoverClose(ExtendedBlock b, long newGS,
       long expectedBlockLen) throws IOException {
-    LOG.info("Recover failed close " + b);
-    // check replica's state
-    ReplicaInfo replicaInfo = recoverCheck(b, newGS, expectedBlockLen);
-    // bump the replica's GS
-    bumpReplicaGS(replicaInfo, newGS);
-    // finalize the replica if RBW
-    if (replicaInfo.getState() == ReplicaState.RBW) {
-      finalizeReplica(b.getBlockPoolId(), replicaInfo);
+    final ReentrantLock lock = replicaLocks.lock(b.getBlockId());
+    try {
+      LOG.info("Recover failed close " + b);
+      // check replica's state
+      ReplicaInfo replicaInfo = recoverCheck(b, newGS, expectedBlockLen);
+      // bump the replica's GS
+      bumpReplicaGS(replicaInfo, newGS);
+      // finalize the replica if RBW
+      if (replicaInfo.getState() == ReplicaState.RBW) {
+        finalizeReplica(b.getBlockPoolId(), replicaInfo);
+      }
+      return replicaInfo.getStorageUuid();
+    } finally {
+      lock.unlock();
     }
-    return replicaInfo.getStorageUuid();
   }
   
   /**
@@ -765,161 +828,185 @@ private void bumpReplicaGS(ReplicaInfo replicaInfo,
   }
 
   @Override // FsDatasetSpi
-  public synchronized ReplicaInPipeline createRbw(ExtendedBlock b)
+  public ReplicaInPipeline createRbw(ExtendedBlock b, boolean allowLazyPersist)
       throws IOException {
-    ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(), 
-        b.getBlockId());
-    if (replicaInfo != null) {
-      throw new ReplicaAlreadyExistsException("Block " + b +
-      " already exists in state " + replicaInfo.getState() +
-      " and thus cannot be created.");
-    }
-    // create a new block
-    FsVolumeImpl v = volumes.getNextVolume(b.getNumBytes());
-    // create a rbw file to hold block in the designated volume
-    File f = v.createRbwFile(b.getBlockPoolId(), b.getLocalBlock());
-    ReplicaBeingWritten newReplicaInfo = new ReplicaBeingWritten(b.getBlockId(), 
-        b.getGenerationStamp(), v, f.getParentFile());
-    volumeMap.add(b.getBlockPoolId(), newReplicaInfo);
-    return newReplicaInfo;
+    final ReentrantLock lock = replicaLocks.lock(b.getBlockId());
+    try {
+      ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(), 
+          b.getBlockId());
+      if (replicaInfo != null) {
+        throw new ReplicaAlreadyExistsException("Block " + b +
+        " already exists in state " + replicaInfo.getState() +
+        " and thus cannot be created.");
+      }
+      // create a new block, in memory if allowed and there is enough space
+      FsVolumeImpl v = allowLazyPersist ?
+          volumes.getNextTransientVolume(b.getNumBytes()) : null;
+      if (v == null) {
+        v = volumes.getNextVolume(b.getNumBytes());
+      }
+      // create a rbw file to hold block in the designated volume
+      File f = v.createRbwFile(b.getBlockPoolId(), b.getLocalBlock());
+      ReplicaBeingWritten newReplicaInfo = new ReplicaBeingWritten(b.getBlockId(), 
+          b.getGenerationStamp(), v, f.getParentFile());
+      volumeMap.add(b.getBlockPoolId(), newReplicaInfo);
+      return newReplicaInfo;
+    } finally {
+      lock.unlock();
+    }
   }
   
   @Override // FsDatasetSpi
-  public synchronized ReplicaInPipeline recoverRbw(ExtendedBlock b,
+  public ReplicaInPipeline recoverRbw(ExtendedBlock b,
       long newGS, long minBytesRcvd, long maxBytesRcvd)
       throws IOException {
-    LOG.info("Recover RBW replica " + b);
+    final ReentrantLock lock = replicaLocks.lock(b.getBlockId());
+    try {
+      LOG.info("Recover RBW replica " + b);
 
-    ReplicaInfo replicaInfo = getReplicaInfo(b.getBlockPoolId(), b.getBlockId());
+      ReplicaInfo replicaInfo = getReplicaInfo(b.getBlockPoolId(), b.getBlockId());
     
-    // check the replica's state
-    if (replicaInfo.getState() != ReplicaState.RBW) {
-      throw new ReplicaNotFoundException(
-          ReplicaNotFoundException.NON_RBW_REPLICA + replicaInfo);
-    }
-    ReplicaBeingWritten rbw = (ReplicaBeingWritten)replicaInfo;
+      // check the replica's state
+      if (replicaInfo.getState() != ReplicaState.RBW) {
+        throw new ReplicaNotFoundException(
+            ReplicaNotFoundException.NON_RBW_REPLICA + replicaInfo);
+      }
+      ReplicaBeingWritten rbw = (ReplicaBeingWritten)replicaInfo;
     
-    LOG.info("Recovering " + rbw);
+      LOG.info("Recovering " + rbw);
 
-    // Stop the previous writer
-    rbw.stopWriter(datanode.getDnConf().getXceiverStopTimeout());
-    rbw.setWriter(Thread.currentThread());
+      // Stop the previous writer
+      rbw.stopWriter(datanode.getDnConf().getXceiverStopTimeout());
+      rbw.setWriter(Thread.currentThread());
 
-    // check generation stamp
-    long replicaGenerationStamp = rbw.getGenerationStamp();
-    if (replicaGenerationStamp < b.getGenerationStamp() ||
-        replicaGenerationStamp > newGS) {
-      throw new ReplicaNotFoundException(
-          ReplicaNotFoundException.UNEXPECTED_GS_REPLICA + b +
-          ". Expected GS range is [" + b.getGenerationStamp() + ", " + 
-          newGS + "].");
-    }
+      // check generation stamp
+      long replicaGenerationStamp = rbw.getGenerationStamp();
+      if (replicaGenerationStamp < b.getGenerationStamp() ||
+          replicaGenerationStamp > newGS) {
+        throw new ReplicaNotFoundException(
+            ReplicaNotFoundException.UNEXPECTED_GS_REPLICA + b +
+            ". Expected GS range is [" + b.getGenerationStamp() + ", " + 
+            newGS + "].");
+      }
     
-    // check replica length
-    long bytesAcked = rbw.getBytesAcked();
-    long numBytes = rbw.getNumBytes();
-    if (bytesAcked < minBytesRcvd || numBytes > maxBytesRcvd){
-      throw new ReplicaNotFoundException("Unmatched length replica " + 
-          replicaInfo + ": BytesAcked = " + bytesAcked + 
-          " BytesRcvd = " + numBytes + " are not in the range of [" + 
-          minBytesRcvd + ", " + maxBytesRcvd + "].");
-    }
-
-    // Truncate the potentially corrupt portion.
-    // If the source was client and the last node in the pipeline was lost,
-    // any corrupt data written after the acked length can go unnoticed. 
-    if (numBytes > bytesAcked) {
-      final File replicafile = rbw.getBlockFile();
-      truncateBlock(replicafile, rbw.getMetaFile(), numBytes, bytesAcked);
-      rbw.setNumBytes(bytesAcked);
-      rbw.setLastChecksumAndDataLen(bytesAcked, null);
-    }
-
-    // bump the replica's generation stamp to newGS
-    bumpReplicaGS(rbw, newGS);
+      // check replica length
+      long bytesAcked = rbw.getBytesAcked();
+      long numBytes = rbw.getNumBytes();
+      if (bytesAcked < minBytesRcvd || numBytes > maxBytesRcvd){
+        throw new ReplicaNotFoundException("Unmatched length replica " + 
+            replicaInfo + ": BytesAcked = " + bytesAcked + 
+            " BytesRcvd = " + numBytes + " are not in the range of [" + 
+            minBytesRcvd + ", " + maxBytesRcvd + "].");
+      }
+
+      // Truncate the potentially corrupt portion.
+      // If the source was client and the last node in the pipeline was lost,
+      // any corrupt data written after the acked length can go unnoticed. 
+      if (numBytes > bytesAcked) {
+        final File replicafile = rbw.getBlockFile();
+        truncateBlock(replicafile, rbw.getMetaFile(), numBytes, bytesAcked);
+        rbw.setNumBytes(bytesAcked);
+        rbw.setLastChecksumAndDataLen(bytesAcked, null);
+      }
+
+      // bump the replica's generation stamp to newGS
+      bumpReplicaGS(rbw, newGS);
     
-    return rbw;
+      return rbw;
+    } finally {
+      lock.unlock();
+    }
   }
   
   @Override // FsDatasetSpi
-  public synchronized ReplicaInPipeline convertTemporaryToRbw(
+  public ReplicaInPipeline convertTemporaryToRbw(
       final ExtendedBlock b) throws IOException {
-    final long blockId = b.getBlockId();
-    final long expectedGs = b.getGenerationStamp();
-    final long visible = b.getNumBytes();
-    LOG.info("Convert " + b + " from Temporary to RBW, visible length="
-        + visible);
-
-    final ReplicaInPipeline temp;
-    {
-      // get replica
-      final ReplicaInfo r = volumeMap.get(b.getBlockPoolId(), blockId);
-      if (r == null) {
-        throw new ReplicaNotFoundException(
-            ReplicaNotFoundException.NON_EXISTENT_REPLICA + b);
+    final ReentrantLock lock = replicaLocks.lock(b.getBlockId());
+    try {
+      final long blockId = b.getBlockId();
+      final long expectedGs = b.getGenerationStamp();
+      final long visible = b.getNumBytes();
+      LOG.info("Convert " + b + " from Temporary to RBW, visible length="
+          + visible);
+
+      final ReplicaInPipeline temp;
+      {
+        // get replica
+        final ReplicaInfo r = volumeMap.get(b.getBlockPoolId(), blockId);
+        if (r == null) {
+          throw new ReplicaNotFoundException(
+              ReplicaNotFoundException.NON_EXISTENT_REPLICA + b);
+        }
+        // check the replica's state
+        if (r.getState() != ReplicaState.TEMPORARY) {
+          throw new ReplicaAlreadyExistsException(
+              "r.getState() != ReplicaState.TEMPORARY, r=" + r);
+        }
+        temp = (ReplicaInPipeline)r;
       }
-      // check the replica's state
-      if (r.getState() != ReplicaState.TEMPORARY) {
+      // check generation stamp
+      if (temp.getGenerationStamp() != expectedGs) {
         throw new ReplicaAlreadyExistsException(
-            "r.getState() != ReplicaState.TEMPORARY, r=" + r);
+            "temp.getGenerationStamp() != expectedGs = " + expectedGs
+            + ", temp=" + temp);
       }
-      temp = (ReplicaInPipeline)r;
-    }
-    // check generation stamp
-    if (temp.getGenerationStamp() != expectedGs) {
-      throw new ReplicaAlreadyExistsException(
-          "temp.getGenerationStamp() != expectedGs = " + expectedGs
-          + ", temp=" + temp);
-    }
 
-    // TODO: check writer?
-    // set writer to the current thread
-    // temp.setWriter(Thread.currentThread());
+      // TODO: check writer?
+      // set writer to the current thread
+      // temp.setWriter(Thread.currentThread());
 
-    // check length
-    final long numBytes = temp.getNumBytes();
-    if (numBytes < visible) {
-      throw new IOException(numBytes + " = numBytes < visible = "
-          + visible + ", temp=" + temp);
-    }
-    // check volume
-    final FsVolumeImpl v = (FsVolumeImpl)temp.getVolume();
-    if (v == null) {
-      throw new IOException("r.getVolume() = null, temp="  + temp);
-    }
+      // check length
+      final long numBytes = temp.getNumBytes();
+      if (numBytes < visible) {
+        throw new IOException(numBytes + " = numBytes < visible = "
+            + visible + ", temp=" + temp);
+      }
+      // check volume
+      final FsVolumeImpl v = (FsVolumeImpl)temp.getVolume();
+      if (v == null) {
+        throw new IOException("r.getVolume() = null, temp="  + temp);
+      }
     
-    // move block files to the rbw directory
-    BlockPoolSlice bpslice = v.getBlockPoolSlice(b.getBlockPoolId());
-    final File dest = moveBlockFiles(b.getLocalBlock(), temp.getBlockFile(), 
-        bpslice.getRbwDir());
-    // create RBW
-    final ReplicaBeingWritten rbw = new ReplicaBeingWritten(
-        blockId, numBytes, expectedGs,
-        v, dest.getParentFile(), Thread.currentThread());
-    rbw.setBytesAcked(visible);
-    // overwrite the RBW in the volume map
-    volumeMap.add(b.getBlockPoolId(), rbw);
-    return rbw;
+      // move block files to the rbw directory
+      BlockPoolSlice bpslice = v.getBlockPoolSlice(b.getBlockPoolId());
+      final File dest = moveBlockFiles(b.getLocalBlock(), temp.getBlockFile(), 
+          bpslice.getRbwDir());
+      // create RBW
+      final ReplicaBeingWritten rbw = new ReplicaBeingWritten(
+          blockId, numBytes, expectedGs,
+          v, dest.getParentFile(), Thread.currentThread());
+      rbw.setBytesAcked(visible);
+      // overwrite the RBW in the volume map
+      volumeMap.add(b.getBlockPoolId(), rbw);
+      return rbw;
+    } finally {
+      lock.unlock();
+    }
   }
 
   @Override // FsDatasetSpi
-  public synchronized ReplicaInPipeline createTemporary(ExtendedBlock b)
+  public ReplicaInPipeline createTemporary(ExtendedBlock b)
       throws IOException {
-    ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(), b.getBlockId());
-    if (replicaInfo != null) {
-      throw new ReplicaAlreadyExistsException("Block " + b +
-          " already exists in state " + replicaInfo.getState() +
-          " and thus cannot be created.");
-    }
+    final ReentrantLock lock = replicaLocks.lock(b.getBlockId());
+    try {
+      ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(), b.getBlockId());
+      if (replicaInfo != null) {
+        throw new ReplicaAlreadyExistsException("Block " + b +
+            " already exists in state " + replicaInfo.getState() +
+            " and thus cannot be created.");
+      }
     
-    FsVolumeImpl v = volumes.getNextVolume(b.getNumBytes());
-    // create a temporary file to hold block in the designated volume
-    File f = v.createTmpFile(b.getBlockPoolId(), b.getLocalBlock());
-    ReplicaInPipeline newReplicaInfo = new ReplicaInPipeline(b.getBlockId(), 
-        b.getGenerationStamp(), v, f.getParentFile());
-    volumeMap.add(b.getBlockPoolId(), newReplicaInfo);
+      FsVolumeImpl v = volumes.getNextVolume(b.getNumBytes());
+      // create a temporary file to hold block in the designated volume
+      File f = v.createTmpFile(b.getBlockPoolId(), b.getLocalBlock());
+      ReplicaInPipeline newReplicaInfo = new ReplicaInPipeline(b.getBlockId(), 
+          b.getGenerationStamp(), v, f.getParentFile());
+      volumeMap.add(b.getBlockPoolId(), newReplicaInfo);
     
-    return newReplicaInfo;
+      return newReplicaInfo;
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
@@ -952,21 +1039,26 @@ public void adjustCrcChannelPosition(ExtendedBlock b, ReplicaOutputStreams strea
    * Complete the block write!
    */
   @Override // FsDatasetSpi
-  public synchronized void finalizeBlock(ExtendedBlock b) throws IOException {
-    if (Thread.interrupted()) {
-      // Don't allow data modifications from interrupted threads
-      throw new IOException("Cannot finalize block from Interrupted Thread");
-    }
-    ReplicaInfo replicaInfo = getReplicaInfo(b);
-    if (replicaInfo.getState() == ReplicaState.FINALIZED) {
-      // this is legal, when recovery happens on a file that has
-      // been opened for append but never modified
-      return;
+  public void finalizeBlock(ExtendedBlock b) throws IOException {
+    final ReentrantLock lock = replicaLocks.lock(b.getBlockId());
+    try {
+      if (Thread.interrupted()) {
+        // Don't allow data modifications from interrupted threads
+        throw new IOException("Cannot finalize block from Interrupted Thread");
+      }
+      ReplicaInfo replicaInfo = getReplicaInfo(b);
+      if (replicaInfo.getState() == ReplicaState.FINALIZED) {
+        // this is legal, when recovery happens on a file that has
+        // been opened for append but never modified
+        return;
+      }
+      finalizeReplica(b.getBlockPoolId(), replicaInfo);
+    } finally {
+      lock.unlock();
     }
-    finalizeReplica(b.getBlockPoolId(), replicaInfo);
   }
   
-  private synchronized FinalizedReplica finalizeReplica(String bpid,
+  private FinalizedReplica finalizeReplica(String bpid,
       ReplicaInfo replicaInfo) throws IOException {
     FinalizedReplica newReplicaInfo = null;
     if (replicaInfo.getState() == ReplicaState.RUR &&
@@ -986,6 +1078,11 @@ private synchronized FinalizedReplica finalizeReplica(String bpid,
       newReplicaInfo = new FinalizedReplica(replicaInfo, v, dest.getParentFile());
     }
     volumeMap.add(bpid, newReplicaInfo);
+    if (((FsVolumeImpl)newReplicaInfo.getVolume()).isTransientStorage()) {
+      // (Re)start persisting the replica; any copy saved before is stale.
+      deleteLazyPersistCopy(ramDiskReplicaTracker.addReplica(bpid,
+          newReplicaInfo.getBlockId(), (FsVolumeImpl)newReplicaInfo.getVolume()));
+    }
     return newReplicaInfo;
   }
 
@@ -993,18 +1090,23 @@ private synchronized FinalizedReplica finalizeReplica(String bpid,
    * Remove the temporary block file (if any)
    */
   @Override // FsDatasetSpi
-  public synchronized void unfinalizeBlock(ExtendedBlock b) throws IOException {
-    ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(), 
-        b.getLocalBlock());
-    if (replicaInfo != null && replicaInfo.getState() == ReplicaState.TEMPORARY) {
-      // remove from volumeMap
-      volumeMap.remove(b.getBlockPoolId(), b.getLocalBlock());
+  public void unfinalizeBlock(ExtendedBlock b) throws IOException {
+    final ReentrantLock lock = replicaLocks.lock(b.getBlockId());
+    try {
+      ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(), 
+          b.getLocalBlock());
+      if (replicaInfo != null && replicaInfo.getState() == ReplicaState.TEMPORARY) {
+        // remove from volumeMap
+        volumeMap.remove(b.getBlockPoolId(), b.getLocalBlock());
       
-      // delete the on-disk temp file
-      if (delBlockFromDisk(replicaInfo.getBlockFile(), 
-          replicaInfo.getMetaFile(), b.getLocalBlock())) {
-        LOG.warn("Block " + b + " unfinalized and removed. " );
+        // delete the on-disk temp file
+        if (delBlockFromDisk(replicaInfo.getBlockFile(), 
+            replicaInfo.getMetaFile(), b.getLocalBlock())) {
+          LOG.warn("Block " + b + " unfinalized and removed. " );
+        }
       }
+    } finally {
+      lock.unlock();
     }
   }
 
@@ -1038,6 +1140,11 @@ public List<Long> getCacheReport(String bpid) {
     return cacheManager.getCachedBlocks(bpid);
   }
 
+  @Override // FsDatasetSpi
+  public List<Long> getAutoCacheReport(String bpid) {
+    return cacheManager.getAutoCachedBlocks(bpid);
+  }
+
   @Override
   public Map<DatanodeStorage, BlockListAsLongs> getBlockReports(String bpid) {
     Map<DatanodeStorage, BlockListAsLongs> blockReportsMap =
@@ -1053,7 +1160,8 @@ public Map<DatanodeStorage, BlockListAsLongs> getBlockReports(String bpid) {
       uc.put(v.getStorageID(), new ArrayList<ReplicaInfo>());
     }
 
-    synchronized(this) {
+    replicaLocks.lockAll();
+    try {
       for (ReplicaInfo b : volumeMap.replicas(bpid)) {
         switch(b.getState()) {
           case FINALIZED:
@@ -1073,6 +1181,8 @@ public Map<DatanodeStorage, BlockListAsLongs> getBlockReports(String bpid) {
             assert false : "Illegal ReplicaInfo state.";
         }
       }
+    } finally {
+      replicaLocks.unlockAll();
     }
 
     for (FsVolumeImpl v : volumes.volumes) {
@@ -1089,15 +1199,20 @@ public Map<DatanodeStorage, BlockListAsLongs> getBlockReports(String bpid) {
    * Get the list of finalized blocks from in-memory blockmap for a block pool.
    */
   @Override
-  public synchronized List<FinalizedReplica> getFinalizedBlocks(String bpid) {
-    ArrayList<FinalizedReplica> finalized =
-        new ArrayList<FinalizedReplica>(volumeMap.size(bpid));
-    for (ReplicaInfo b : volumeMap.replicas(bpid)) {
-      if(b.getState() == ReplicaState.FINALIZED) {
-        finalized.add(new FinalizedReplica((FinalizedReplica)b));
+  public List<FinalizedReplica> getFinalizedBlocks(String bpid) {
+    replicaLocks.lockAll();
+    try {
+      ArrayList<FinalizedReplica> finalized =
+          new ArrayList<FinalizedReplica>(volumeMap.size(bpid));
+      for (ReplicaInfo b : volumeMap.replicas(bpid)) {
+        if(b.getState() == ReplicaState.FINALIZED) {
+          finalized.add(new FinalizedReplica((FinalizedReplica)b));
+        }
       }
+      return finalized;
+    } finally {
+      replicaLocks.unlockAll();
     }
-    return finalized;
   }
 
   /**
@@ -1131,11 +1246,8 @@ private boolean isValid(final ExtendedBlock b, final ReplicaState state) {
    */
   File validateBlockFile(String bpid, Block b) {
     //Should we check for metadata file too?
-    final File f;
-    synchronized(this) {
-      f = getFile(bpid, b.getBlockId());
-    }
-    
+    final File f = getFile(bpid, b.getBlockId());
+
     if(f != null ) {
       if(f.exists())
         return f;
@@ -1183,7 +1295,8 @@ public void invalidate(String bpid, Block invalidBlks[]) throws IOException {
     for (int i = 0; i < invalidBlks.length; i++) {
       final File f;
       final FsVolumeImpl v;
-      synchronized (this) {
+      final ReentrantLock lock = replicaLocks.lock(invalidBlks[i].getBlockId());
+      try {
         f = getFile(bpid, invalidBlks[i].getBlockId());
         ReplicaInfo info = volumeMap.get(bpid, invalidBlks[i]);
         if (info == null) {
@@ -1226,6 +1339,10 @@ public void invalidate(String bpid, Block invalidBlks[]) throws IOException {
           v.clearPath(bpid, parent);
         }
         volumeMap.remove(bpid, invalidBlks[i]);
+        deleteLazyPersistCopy(ramDiskReplicaTracker.discardReplica(bpid,
+            invalidBlks[i].getBlockId()));
+      } finally {
+        lock.unlock();
       }
       // If the block is cached, start uncaching it.
       cacheManager.uncacheBlock(bpid, invalidBlks[i].getBlockId());
@@ -1243,15 +1360,26 @@ public void invalidate(String bpid, Block invalidBlks[]) throws IOException {
 
   /**
    * Asynchronously attempts to cache a single block via {@link FsDatasetCache}.
+   *
+   * @param auto  true if the block is cached because it is read frequently.
    */
-  private void cacheBlock(String bpid, long blockId) {
+  private void cacheBlock(String bpid, long blockId, boolean auto) {
     FsVolumeImpl volume;
     String blockFileName;
     long length, genstamp;
     Executor volumeExecutor;
 
-    synchronized (this) {
+    final ReentrantLock lock = replicaLocks.lock(blockId);
+    try {
       ReplicaInfo info = volumeMap.get(bpid, blockId);
+      if (auto && (info == null
+          || info.getState() != ReplicaState.FINALIZED
+          || !(info.getVolume() instanceof FsVolumeImpl)
+          || ((FsVolumeImpl)info.getVolume()).isTransientStorage())) {
+        // Only finalized replicas which are not already in memory are
+        // worth caching automatically.
+        return;
+      }
       boolean success = false;
       try {
         if (info == null) {
@@ -1287,15 +1415,17 @@ private void cacheBlock(String bpid, long blockId) {
       length = info.getVisibleLength();
       genstamp = info.getGenerationStamp();
       volumeExecutor = volume.getCacheExecutor();
+    } finally {
+      lock.unlock();
     }
     cacheManager.cacheBlock(blockId, bpid, 
-        blockFileName, length, genstamp, volumeExecutor);
+        blockFileName, length, genstamp, volumeExecutor, auto);
   }
 
   @Override // FsDatasetSpi
   public void cache(String bpid, long[] blockIds) {
     for (int i=0; i < blockIds.length; i++) {
-      cacheBlock(bpid, blockIds[i]);
+      cacheBlock(bpid, blockIds[i], false);
     }
   }
 
@@ -1307,7 +1437,19 @@ public void uncache(String bpid, long[] blockIds) {
   }
 
   @Override // FsDatasetSpi
-  public synchronized boolean contains(final ExtendedBlock block) {
+  public boolean isCached(String bpid, long blockId) {
+    return cacheManager.isCached(bpid, blockId);
+  }
+
+  @Override // FsDatasetSpi
+  public void recordBlockRead(String bpid, long blockId) {
+    if (cacheManager.recordRead(bpid, blockId)) {
+      cacheBlock(bpid, blockId, true);
+    }
+  }
+
+  @Override // FsDatasetSpi
+  public boolean contains(final ExtendedBlock block) {
     final long blockId = block.getLocalBlock().getBlockId();
     return getFile(block.getBlockPoolId(), blockId) != null;
   }
@@ -1343,24 +1485,29 @@ public void checkDataDir() throws DiskErrorException {
     
     // Otherwise remove blocks for the failed volumes
     long mlsec = Time.now();
-    synchronized (this) {
-      for (FsVolumeImpl fv: failedVols) {
-        for (String bpid : fv.getBlockPoolList()) {
-          Iterator<ReplicaInfo> ib = volumeMap.replicas(bpid).iterator();
-          while(ib.hasNext()) {
-            ReplicaInfo b = ib.next();
-            totalBlocks++;
-            // check if the volume block belongs to still valid
-            if(b.getVolume() == fv) {
-              LOG.warn("Removing replica " + bpid + ":" + b.getBlockId()
+    for (FsVolumeImpl fv: failedVols) {
+      for (String bpid : fv.getBlockPoolList()) {
+        for (ReplicaInfo b : volumeMap.replicas(bpid)) {
+          totalBlocks++;
+          if (b.getVolume() != fv) {
+            continue;
+          }
+          // the replica may have changed since, recheck it under its lock
+          final ReentrantLock lock = replicaLocks.lock(b.getBlockId());
+          try {
+            ReplicaInfo r = volumeMap.get(bpid, b.getBlockId());
+            if (r != null && r.getVolume() == fv) {
+              LOG.warn("Removing replica " + bpid + ":" + r.getBlockId()
                   + " on failed volume " + fv.getCurrentDir().getAbsolutePath());
-              ib.remove();
+              volumeMap.remove(bpid, r.getBlockId());
               removedBlocks++;
             }
+          } finally {
+            lock.unlock();
           }
         }
       }
-    } // end of sync
+    }
     mlsec = Time.now() - mlsec;
     LOG.warn("Removed " + removedBlocks + " out of " + totalBlocks +
         "(took " + mlsec + " millisecs)");
@@ -1402,12 +1549,25 @@ void registerMBean(final String datanodeUuid) {
   public void shutdown() {
     if (mbeanName != null)
       MBeans.unregister(mbeanName);
+
+    if (lazyWriter != null) {
+      lazyWriter.stop();
+      lazyWriterThread.interrupt();
+    }
     
     if (asyncDiskService != null) {
       asyncDiskService.shutdown();
     }
     
     if(volumes != null) {
+      replicaLocks.lockAll();
+      try {
+        for (String bpid : volumeMap.getBlockPoolList()) {
+          volumes.saveReplicas(bpid, volumeMap);
+        }
+      } finally {
+        replicaLocks.unlockAll();
+      }
       volumes.shutdown();
     }
   }
@@ -1445,7 +1605,8 @@ public void checkAndUpdate(String bpid, long blockId, File diskFile,
       File diskMetaFile, FsVolumeSpi vol) {
     Block corruptBlock = null;
     ReplicaInfo memBlockInfo;
-    synchronized (this) {
+    final ReentrantLock lock = replicaLocks.lock(blockId);
+    try {
       memBlockInfo = volumeMap.get(bpid, blockId);
       if (memBlockInfo != null && memBlockInfo.getState() != ReplicaState.FINALIZED) {
         // Block is not finalized - ignore the difference
@@ -1564,6 +1725,8 @@ public void checkAndUpdate(String bpid, long blockId, File diskFile,
             + memBlockInfo.getNumBytes() + " to " + memFile.length());
         memBlockInfo.setNumBytes(memFile.length());
       }
+    } finally {
+      lock.unlock();
     }
 
     // Send corrupt block report outside the lock
@@ -1588,17 +1751,23 @@ public ReplicaInfo getReplica(String bpid, long blockId) {
   }
 
   @Override 
-  public synchronized String getReplicaString(String bpid, long blockId) {
+  public String getReplicaString(String bpid, long blockId) {
     final Replica r = volumeMap.get(bpid, blockId);
     return r == null? "null": r.toString();
   }
 
   @Override // FsDatasetSpi
-  public synchronized ReplicaRecoveryInfo initReplicaRecovery(
+  public ReplicaRecoveryInfo initReplicaRecovery(
       RecoveringBlock rBlock) throws IOException {
-    return initReplicaRecovery(rBlock.getBlock().getBlockPoolId(), volumeMap,
-        rBlock.getBlock().getLocalBlock(), rBlock.getNewGenerationStamp(),
-        datanode.getDnConf().getXceiverStopTimeout());
+    final ExtendedBlock b = rBlock.getBlock();
+    final ReentrantLock lock = replicaLocks.lock(b.getBlockId());
+    try {
+      return initReplicaRecovery(b.getBlockPoolId(), volumeMap,
+          b.getLocalBlock(), rBlock.getNewGenerationStamp(),
+          datanode.getDnConf().getXceiverStopTimeout());
+    } finally {
+      lock.unlock();
+    }
   }
 
   /** static version of {@link #initReplicaRecovery(Block, long)}. */
@@ -1667,54 +1836,59 @@ static ReplicaRecoveryInfo initReplicaRecovery(String bpid, ReplicaMap map,
   }
 
   @Override // FsDatasetSpi
-  public synchronized String updateReplicaUnderRecovery(
+  public String updateReplicaUnderRecovery(
                                     final ExtendedBlock oldBlock,
                                     final long recoveryId,
                                     final long newlength) throws IOException {
-    //get replica
-    final String bpid = oldBlock.getBlockPoolId();
-    final ReplicaInfo replica = volumeMap.get(bpid, oldBlock.getBlockId());
-    LOG.info("updateReplica: " + oldBlock
-        + ", recoveryId=" + recoveryId
-        + ", length=" + newlength
-        + ", replica=" + replica);
+    final ReentrantLock lock = replicaLocks.lock(oldBlock.getBlockId());
+    try {
+      //get replica
+      final String bpid = oldBlock.getBlockPoolId();
+      final ReplicaInfo replica = volumeMap.get(bpid, oldBlock.getBlockId());
+      LOG.info("updateReplica: " + oldBlock
+          + ", recoveryId=" + recoveryId
+          + ", length=" + newlength
+          + ", replica=" + replica);
 
-    //check replica
-    if (replica == null) {
-      throw new ReplicaNotFoundException(oldBlock);
-    }
+      //check replica
+      if (replica == null) {
+        throw new ReplicaNotFoundException(oldBlock);
+      }
 
-    //check replica state
-    if (replica.getState() != ReplicaState.RUR) {
-      throw new IOException("replica.getState() != " + ReplicaState.RUR
-          + ", replica=" + replica);
-    }
+      //check replica state
+      if (replica.getState() != ReplicaState.RUR) {
+        throw new IOException("replica.getState() != " + ReplicaState.RUR
+            + ", replica=" + replica);
+      }
 
-    //check replica's byte on disk
-    if (replica.getBytesOnDisk() != oldBlock.getNumBytes()) {
-      throw new IOException("THIS IS NOT SUPPOSED TO HAPPEN:"
-          + " replica.getBytesOnDisk() != block.getNumBytes(), block="
-          + oldBlock + ", replica=" + replica);
-    }
+      //check replica's byte on disk
+      if (replica.getBytesOnDisk() != oldBlock.getNumBytes()) {
+        throw new IOException("THIS IS NOT SUPPOSED TO HAPPEN:"
+            + " replica.getBytesOnDisk() != block.getNumBytes(), block="
+            + oldBlock + ", replica=" + replica);
+      }
 
-    //check replica files before update
-    checkReplicaFiles(replica);
+      //check replica files before update
+      checkReplicaFiles(replica);
 
-    //update replica
-    final FinalizedReplica finalized = updateReplicaUnderRecovery(oldBlock
-        .getBlockPoolId(), (ReplicaUnderRecovery) replica, recoveryId, newlength);
-    assert finalized.getBlockId() == oldBlock.getBlockId()
-        && finalized.getGenerationStamp() == recoveryId
-        && finalized.getNumBytes() == newlength
-        : "Replica information mismatched: oldBlock=" + oldBlock
-            + ", recoveryId=" + recoveryId + ", newlength=" + newlength
-            + ", finalized=" + finalized;
+      //update replica
+      final FinalizedReplica finalized = updateReplicaUnderRecovery(oldBlock
+          .getBlockPoolId(), (ReplicaUnderRecovery) replica, recoveryId, newlength);
+      assert finalized.getBlockId() == oldBlock.getBlockId()
+          && finalized.getGenerationStamp() == recoveryId
+          && finalized.getNumBytes() == newlength
+          : "Replica information mismatched: oldBlock=" + oldBlock
+              + ", recoveryId=" + recoveryId + ", newlength=" + newlength
+              + ", finalized=" + finalized;
 
-    //check replica files after update
-    checkReplicaFiles(finalized);
+      //check replica files after update
+      checkReplicaFiles(finalized);
 
-    //return storage ID
-    return getVolume(new ExtendedBlock(bpid, finalized)).getStorageID();
+      //return storage ID
+      return getVolume(new ExtendedBlock(bpid, finalized)).getStorageID();
+    } finally {
+      lock.unlock();
+    }
   }
 
   private FinalizedReplica updateReplicaUnderRecovery(
@@ -1749,7 +1923,7 @@ private FinalizedReplica updateReplicaUnderRecovery(
   }
 
   @Override // FsDatasetSpi
-  public synchronized long getReplicaVisibleLength(final ExtendedBlock block)
+  public long getReplicaVisibleLength(final ExtendedBlock block)
   throws IOException {
     final Replica replica = getReplicaInfo(block.getBlockPoolId(), 
         block.getBlockId());
@@ -1762,19 +1936,119 @@ public synchronized long getReplicaVisibleLength(final ExtendedBlock block)
   }
   
   @Override
-  public synchronized void addBlockPool(String bpid, Configuration conf)
+  public void addBlockPool(String bpid, Configuration conf)
       throws IOException {
     LOG.info("Adding block pool " + bpid);
-    volumes.addBlockPool(bpid, conf);
-    volumeMap.initBlockPool(bpid);
-    volumes.getAllVolumesMap(bpid, volumeMap);
+    replicaLocks.lockAll();
+    try {
+      synchronized (this) {
+        volumes.addBlockPool(bpid, conf);
+        volumeMap.initBlockPool(bpid);
+        volumes.getAllVolumesMap(bpid, volumeMap);
+        recoverLazyPersistReplicas(bpid);
+      }
+    } finally {
+      replicaLocks.unlockAll();
+    }
   }
 
   @Override
-  public synchronized void shutdownBlockPool(String bpid) {
+  public void shutdownBlockPool(String bpid) {
     LOG.info("Removing block pool " + bpid);
-    volumeMap.cleanUpBlockPool(bpid);
-    volumes.removeBlockPool(bpid);
+    replicaLocks.lockAll();
+    try {
+      synchronized (this) {
+        volumes.saveReplicas(bpid, volumeMap);
+        volumeMap.cleanUpBlockPool(bpid);
+        ramDiskReplicaTracker.discardBlockPool(bpid);
+        volumes.removeBlockPool(bpid);
+      }
+    } finally {
+      replicaLocks.unlockAll();
+    }
+  }
+
+  /**
+   * Reconcile the replicas on RAM_DISK volumes with their copies saved to
+   * the disk volumes. A copy whose RAM_DISK replica was lost, e.g. on reboot,
+   * becomes the replica. The other RAM_DISK replicas are persisted again
+   * unless their copy is up to date. The caller holds all the replica locks.
+   */
+  private void recoverLazyPersistReplicas(String bpid) throws IOException {
+    for (FsVolumeImpl v : volumes.getVolumes(false)) {
+      recoverLazyPersistCopies(bpid, v);
+    }
+    if (volumes.getVolumes(true).isEmpty()) {
+      return;
+    }
+    final Collection<ReplicaInfo> replicas = volumeMap.replicas(bpid);
+    if (replicas == null) {
+      return;
+    }
+    int numNotPersisted = 0;
+    for (ReplicaInfo r : new ArrayList<ReplicaInfo>(replicas)) {
+      if (r.getState() == ReplicaState.FINALIZED
+          && ((FsVolumeImpl)r.getVolume()).isTransientStorage()
+          && !ramDiskReplicaTracker.isTracked(bpid, r.getBlockId())) {
+        ramDiskReplicaTracker.addReplica(bpid, r.getBlockId(),
+            (FsVolumeImpl)r.getVolume());
+        numNotPersisted++;
+      }
+    }
+    if (numNotPersisted > 0) {
+      LOG.info(numNotPersisted + " replicas on RAM_DISK volumes of block pool "
+          + bpid + " are waiting to be persisted");
+    }
+  }
+
+  private void recoverLazyPersistCopies(String bpid, FsVolumeImpl v)
+      throws IOException {
+    final File dir = v.getLazypersistDir(bpid);
+    if (!dir.isDirectory()) {
+      return;
+    }
+    final File[] files = FileUtil.listFiles(dir);
+    int numRecovered = 0;
+    for (File blockFile : files) {
+      if (!Block.isBlockFilename(blockFile)) {
+        continue;
+      }
+      final long genStamp = FsDatasetUtil.getGenerationStampFromFile(
+          files, blockFile);
+      final File metaFile = FsDatasetUtil.getMetaFile(blockFile, genStamp);
+      final Block b = new Block(Block.filename2id(blockFile.getName()),
+          blockFile.length(), genStamp);
+      final ReplicaInfo r = volumeMap.get(bpid, b.getBlockId());
+      if (r == null) {
+        // The RAM_DISK replica was lost.
+        final File dest = v.activateLazyPersistCopy(bpid, b, blockFile);
+        volumeMap.add(bpid, new FinalizedReplica(b, v, dest.getParentFile()));
+        numRecovered++;
+      } else if (r.getState() == ReplicaState.FINALIZED
+          && ((FsVolumeImpl)r.getVolume()).isTransientStorage()
+          && r.getGenerationStamp() == genStamp
+          && r.getNumBytes() == b.getNumBytes()) {
+        // The copy is up to date.
+        deleteLazyPersistCopy(ramDiskReplicaTracker.addPersistedReplica(bpid,
+            b.getBlockId(), (FsVolumeImpl)r.getVolume(), v, blockFile,
+            metaFile, genStamp));
+      } else {
+        LOG.info("Deleting the stale copy " + blockFile + " of " + r);
+        v.deleteLazyPersistCopy(bpid, blockFile, metaFile);
+      }
+    }
+    if (numRecovered > 0) {
+      LOG.info("Recovered " + numRecovered + " replicas of block pool " + bpid
+          + " lost from RAM_DISK volumes from " + dir);
+    }
+  }
+
+  /** Delete the copy saved for a discarded RAM_DISK replica, if any. */
+  private static void deleteLazyPersistCopy(RamDiskReplica r) {
+    if (r != null && r.isPersisted()) {
+      r.getLazyPersistVolume().deleteLazyPersistCopy(r.bpid,
+          r.getSavedBlockFile(), r.getSavedMetaFile());
+    }
   }
   
   /**
@@ -1785,17 +2059,22 @@ private static class VolumeInfo {
     final long usedSpace;
     final long freeSpace;
     final long reservedSpace;
+    final VolumeIoStats ioStats;
+    final boolean slow;
 
-    VolumeInfo(FsVolumeImpl v, long usedSpace, long freeSpace) {
+    VolumeInfo(FsVolumeImpl v, long usedSpace, long freeSpace, boolean slow) {
       this.directory = v.toString();
       this.usedSpace = usedSpace;
       this.freeSpace = freeSpace;
       this.reservedSpace = v.getReserved();
+      this.ioStats = v.getIoStats();
+      this.slow = slow;
     }
   }  
 
   private Collection<VolumeInfo> getVolumeInfo() {
     Collection<VolumeInfo> info = new ArrayList<VolumeInfo>();
+    final Set<FsVolumeImpl> slow = getSlowVolumes();
     for (FsVolumeImpl volume : volumes.volumes) {
       long used = 0;
       long free = 0;
@@ -1808,7 +2087,7 @@ private Collection<VolumeInfo> getVolumeInfo() {
         free = 0;
       }
       
-      info.add(new VolumeInfo(volume, used, free));
+      info.add(new VolumeInfo(volume, used, free, slow.contains(volume)));
     }
     return info;
   }
@@ -1822,6 +2101,15 @@ public Map<String, Object> getVolumeInfoMap() {
       innerInfo.put("usedSpace", v.usedSpace);
       innerInfo.put("freeSpace", v.freeSpace);
       innerInfo.put("reservedSpace", v.reservedSpace);
+      // Latencies are in microseconds, -1 when there were too few I/Os.
+      innerInfo.put("writeLatencyMedian", v.ioStats.getWriteLatencyMicros(50));
+      innerInfo.put("writeLatency90th", v.ioStats.getWriteLatencyMicros(90));
+      innerInfo.put("writeLatency99th", v.ioStats.getWriteLatencyMicros(99));
+      innerInfo.put("syncLatencyMedian", v.ioStats.getSyncLatencyMicros(50));
+      innerInfo.put("syncLatency90th", v.ioStats.getSyncLatencyMicros(90));
+      innerInfo.put("syncLatency99th", v.ioStats.getSyncLatencyMicros(99));
+      innerInfo.put("outstandingIos", v.ioStats.getOutstandingIos());
+      innerInfo.put("slow", v.slow);
       info.put(v.directory, innerInfo);
     }
     return info;
@@ -1912,5 +2200,182 @@ public RollingLogs createRollingLogs(String bpid, String prefix
     }
     return new RollingLogsImpl(dir, prefix);
   }
-}
 
+  /**
+   * Saves a copy of the replicas finalized on RAM_DISK volumes to the disk
+   * volumes in the background, oldest first, and evicts the saved replicas
+   * from a RAM_DISK volume when its free space falls below the low
+   * watermark, so that new lazy persist writes keep landing in memory.
+   */
+  class LazyWriter implements Runnable {
+    private volatile boolean shouldRun = true;
+    private final long intervalMs;
+    private final int lowWatermarkPercent;
+
+    LazyWriter(Configuration conf) {
+      this.intervalMs = 1000L * conf.getInt(
+          DFSConfigKeys.DFS_DATANODE_LAZY_WRITER_INTERVAL_SEC_KEY,
+          DFSConfigKeys.DFS_DATANODE_LAZY_WRITER_INTERVAL_SEC_DEFAULT);
+      this.lowWatermarkPercent = conf.getInt(
+          DFSConfigKeys.DFS_DATANODE_RAM_DISK_LOW_WATERMARK_PERCENT_KEY,
+          DFSConfigKeys.DFS_DATANODE_RAM_DISK_LOW_WATERMARK_PERCENT_DEFAULT);
+    }
+
+    @Override
+    public void run() {
+      while (shouldRun) {
+        try {
+          final boolean saved = saveNextReplica();
+          evictReplicas();
+          if (!saved) {
+            Thread.sleep(intervalMs);
+          }
+        } catch (InterruptedException e) {
+          LOG.info("LazyWriter was interrupted, exiting");
+          break;
+        } catch (Throwable t) {
+          LOG.error("Ignoring exception in LazyWriter", t);
+        }
+      }
+    }
+
+    void stop() {
+      shouldRun = false;
+    }
+
+    /**
+     * Save a copy of the next replica waiting to be persisted.
+     * @return true if a replica was handled; false if there is nothing to
+     *         do or the copy failed and should be retried later.
+     */
+    private boolean saveNextReplica() {
+      final RamDiskReplica r = ramDiskReplicaTracker.getNextReplicaToPersist();
+      if (r == null) {
+        return false;
+      }
+      final Block b;
+      final File blockFile;
+      final File metaFile;
+      final ReentrantLock lock = replicaLocks.lock(r.blockId);
+      try {
+        final ReplicaInfo info = volumeMap.get(r.bpid, r.blockId);
+        if (info == null || info.getVolume() != r.ramDiskVolume
+            || info.getState() != ReplicaState.FINALIZED) {
+          // The replica was deleted or is being appended to. In the latter
+          // case, it is tracked again once finalized.
+          ramDiskReplicaTracker.discardReplica(r);
+          return true;
+        }
+        b = new Block(info);
+        blockFile = info.getBlockFile();
+        metaFile = info.getMetaFile();
+      } finally {
+        lock.unlock();
+      }
+
+      final FsVolumeImpl target;
+      final File savedBlockFile;
+      try {
+        target = volumes.getNextVolume(blockFile.length() + metaFile.length());
+        savedBlockFile = target.saveLazyPersistCopy(r.bpid, b, blockFile,
+            metaFile);
+      } catch (IOException e) {
+        LOG.warn("Failed to save a copy of " + r + ", will retry", e);
+        ramDiskReplicaTracker.requeueReplicaNotPersisted(r);
+        return false;
+      }
+      final File savedMetaFile = FsDatasetUtil.getMetaFile(savedBlockFile,
+          b.getGenerationStamp());
+      if (!ramDiskReplicaTracker.recordEndLazyPersist(r, target,
+          savedBlockFile, savedMetaFile, b.getGenerationStamp())) {
+        target.deleteLazyPersistCopy(r.bpid, savedBlockFile, savedMetaFile);
+      } else if (LOG.isDebugEnabled()) {
+        LOG.debug("Saved a copy of " + b + " to " + savedBlockFile);
+      }
+      return true;
+    }
+
+    /**
+     * Evict saved replicas from the RAM_DISK volumes whose free space is
+     * below the low watermark. The freed space is counted here since the
+     * free space of a volume is only refreshed periodically.
+     */
+    private void evictReplicas() throws IOException {
+      for (FsVolumeImpl v : volumes.getVolumes(true)) {
+        final long lowWatermark = v.getCapacity() * lowWatermarkPercent / 100;
+        long available = v.getAvailable();
+        while (shouldRun && available < lowWatermark) {
+          final RamDiskReplica r =
+              ramDiskReplicaTracker.getNextCandidateForEviction(v);
+          if (r == null) {
+            break;
+          }
+          available += evictReplica(r);
+        }
+      }
+    }
+
+    /**
+     * Replace a RAM_DISK replica with its saved copy, and tell the NameNode
+     * that the replica moved to the storage of the copy.
+     * @return the number of bytes freed on the RAM_DISK volume.
+     */
+    private long evictReplica(RamDiskReplica r) {
+      final FinalizedReplica newReplica;
+      final File blockFile;
+      final File metaFile;
+      final ReentrantLock lock = replicaLocks.lock(r.blockId);
+      try {
+        if (!ramDiskReplicaTracker.discardReplica(r)) {
+          return 0; // replaced by a newer entry
+        }
+        final ReplicaInfo info = volumeMap.get(r.bpid, r.blockId);
+        if (info == null || info.getVolume() != r.ramDiskVolume
+            || info.getState() != ReplicaState.FINALIZED
+            || info.getGenerationStamp() != r.getSavedGenStamp()
+            || info.getNumBytes() != r.getSavedBlockFile().length()) {
+          // The replica changed after the copy was saved.
+          deleteLazyPersistCopy(r);
+          if (info != null && info.getVolume() == r.ramDiskVolume
+              && info.getState() == ReplicaState.FINALIZED) {
+            ramDiskReplicaTracker.addReplica(r.bpid, r.blockId,
+                r.ramDiskVolume);
+          }
+          return 0;
+        }
+        final File dest;
+        try {
+          dest = r.getLazyPersistVolume().activateLazyPersistCopy(r.bpid,
+              info, r.getSavedBlockFile());
+        } catch (IOException e) {
+          LOG.warn("Failed to evict " + r + ", will persist it again", e);
+          deleteLazyPersistCopy(r);
+          ramDiskReplicaTracker.addReplica(r.bpid, r.blockId, r.ramDiskVolume);
+          return 0;
+        }
+        newReplica = new FinalizedReplica(info, r.getLazyPersistVolume(),
+            dest.getParentFile());
+        volumeMap.add(r.bpid, newReplica);
+        blockFile = info.getBlockFile();
+        metaFile = info.getMetaFile();
+      } finally {
+        lock.unlock();
+      }
+
+      // Readers which opened the replica before can still read the files.
+      final long freed = blockFile.length() + metaFile.length();
+      if (!blockFile.delete() || !metaFile.delete()) {
+        LOG.warn("Failed to delete " + blockFile + " or " + metaFile
+            + " after evicting it");
+      }
+      r.ramDiskVolume.decDfsUsed(r.bpid, freed);
+      datanode.notifyNamenodeReceivedBlock(
+          new ExtendedBlock(r.bpid, newReplica), "",
+          newReplica.getStorageUuid());
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Evicted " + newReplica + " from " + r.ramDiskVolume);
+      }
+      return freed;
+    }
+  }
+}
@@ -38,6 +38,7 @@
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.datanode.DataStorage;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeIoStats;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
 import org.apache.hadoop.util.DiskChecker.DiskErrorException;
 
@@ -65,6 +66,7 @@ class FsVolumeImpl implements FsVolumeSpi {
    * contention.
    */
   private final ThreadPoolExecutor cacheExecutor;
+  private final VolumeIoStats ioStats = new VolumeIoStats();
   
   FsVolumeImpl(FsDatasetImpl dataset, String storageID, File currentDir,
       Configuration conf, StorageType storageType) throws IOException {
@@ -199,6 +201,31 @@ File addBlock(String bpid, Block b, File f) throws IOException {
     return getBlockPoolSlice(bpid).addBlock(b, f);
   }
 
+  File getLazypersistDir(String bpid) throws IOException {
+    return getBlockPoolSlice(bpid).getLazypersistDir();
+  }
+
+  /**
+   * Save a copy of a replica of a transient volume to this volume.
+   * @return the saved block file.
+   */
+  File saveLazyPersistCopy(String bpid, Block b, File blockFile,
+      File metaFile) throws IOException {
+    return getBlockPoolSlice(bpid).saveLazyPersistCopy(b, blockFile, metaFile);
+  }
+
+  File activateLazyPersistCopy(String bpid, Block b, File savedBlockFile)
+      throws IOException {
+    return getBlockPoolSlice(bpid).activateLazyPersistCopy(b, savedBlockFile);
+  }
+
+  void deleteLazyPersistCopy(String bpid, File blockFile, File metaFile) {
+    final BlockPoolSlice bp = bpSlices.get(bpid);
+    if (bp != null) {
+      bp.deleteLazyPersistCopy(blockFile, metaFile);
+    }
+  }
+
   Executor getCacheExecutor() {
     return cacheExecutor;
   }
@@ -219,6 +246,14 @@ void getVolumeMap(ReplicaMap volumeMap) throws IOException {
   void getVolumeMap(String bpid, ReplicaMap volumeMap) throws IOException {
     getBlockPoolSlice(bpid).getVolumeMap(volumeMap);
   }
+
+  /** Save the finalized replicas of the block pool for the next startup. */
+  void saveReplicas(String bpid, ReplicaMap volumeMap) {
+    BlockPoolSlice bp = bpSlices.get(bpid);
+    if (bp != null) {
+      bp.saveReplicas(volumeMap);
+    }
+  }
   
   /**
    * Add replicas under the given directory to the volume map
@@ -274,12 +309,18 @@ boolean isBPDirEmpty(String bpid) throws IOException {
     File finalizedDir = new File(bpCurrentDir,
         DataStorage.STORAGE_DIR_FINALIZED);
     File rbwDir = new File(bpCurrentDir, DataStorage.STORAGE_DIR_RBW);
+    File lazypersistDir = new File(bpCurrentDir,
+        DataStorage.STORAGE_DIR_LAZY_PERSIST);
     if (finalizedDir.exists() && FileUtil.list(finalizedDir).length != 0) {
       return false;
     }
     if (rbwDir.exists() && FileUtil.list(rbwDir).length != 0) {
       return false;
     }
+    if (lazypersistDir.exists() &&
+        FileUtil.list(lazypersistDir).length != 0) {
+      return false;
+    }
     return true;
   }
   
@@ -295,12 +336,17 @@ void deleteBPDirectories(String bpid, boolean force) throws IOException {
     File finalizedDir = new File(bpCurrentDir,
         DataStorage.STORAGE_DIR_FINALIZED);
     File rbwDir = new File(bpCurrentDir, DataStorage.STORAGE_DIR_RBW);
+    File lazypersistDir = new File(bpCurrentDir,
+        DataStorage.STORAGE_DIR_LAZY_PERSIST);
     if (force) {
       FileUtil.fullyDelete(bpDir);
     } else {
       if (!rbwDir.delete()) {
         throw new IOException("Failed to delete " + rbwDir);
       }
+      if (lazypersistDir.exists() && !lazypersistDir.delete()) {
+        throw new IOException("Failed to delete " + lazypersistDir);
+      }
       if (!finalizedDir.delete()) {
         throw new IOException("Failed to delete " + finalizedDir);
       }
@@ -333,6 +379,16 @@ public String getStorageID() {
   public StorageType getStorageType() {
     return storageType;
   }
+
+  /** @return true if the content of the volume is lost on reboot. */
+  boolean isTransientStorage() {
+    return storageType.isTransient();
+  }
+
+  @Override
+  public VolumeIoStats getIoStats() {
+    return ioStats;
+  }
   
   DatanodeStorage toDatanodeStorage() {
     return new DatanodeStorage(storageID, DatanodeStorage.State.NORMAL, storageType);
@@ -22,6 +22,7 @@
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.RoundRobinVolumeChoosingPolicy;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeChoosingPolicy;
 import org.apache.hadoop.util.DiskChecker.DiskErrorException;
 
@@ -33,6 +34,8 @@ class FsVolumeList {
   volatile List<FsVolumeImpl> volumes = null;
 
   private final VolumeChoosingPolicy<FsVolumeImpl> blockChooser;
+  private final VolumeChoosingPolicy<FsVolumeImpl> transientBlockChooser =
+      new RoundRobinVolumeChoosingPolicy<FsVolumeImpl>();
   private volatile int numFailedVolumes;
 
   FsVolumeList(List<FsVolumeImpl> volumes, int failedVols,
@@ -55,7 +58,42 @@ int numberOfFailedVolumes() {
    */
   // TODO should choose volume with storage type
   synchronized FsVolumeImpl getNextVolume(long blockSize) throws IOException {
-    return blockChooser.chooseVolume(volumes, blockSize);
+    return blockChooser.chooseVolume(getVolumes(false), blockSize);
+  }
+
+  /**
+   * Get next transient volume, for a replica which is lazily persisted.
+   * @param blockSize free space needed on the volume
+   * @return next transient volume to store the block in, or null if there
+   *         is no transient volume with enough space.
+   */
+  synchronized FsVolumeImpl getNextTransientVolume(long blockSize) {
+    final List<FsVolumeImpl> transientVolumes = getVolumes(true);
+    if (transientVolumes.isEmpty()) {
+      return null;
+    }
+    try {
+      return transientBlockChooser.chooseVolume(transientVolumes, blockSize);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /** @return the volumes whose storage is, or is not, transient. */
+  List<FsVolumeImpl> getVolumes(boolean isTransient) {
+    final List<FsVolumeImpl> curVolumes = volumes;
+    List<FsVolumeImpl> list = null;
+    for (int i = 0; i < curVolumes.size(); i++) {
+      final FsVolumeImpl v = curVolumes.get(i);
+      if (v.isTransientStorage() != isTransient) {
+        if (list == null) {
+          list = new ArrayList<FsVolumeImpl>(curVolumes.subList(0, i));
+        }
+      } else if (list != null) {
+        list.add(v);
+      }
+    }
+    return list == null ? curVolumes : list;
   }
     
   long getDfsUsed() throws IOException {
@@ -206,6 +244,12 @@ public void run() {
         bpid + ": " + totalTimeTaken + "ms");
   }
   
+  void saveReplicas(String bpid, ReplicaMap volumeMap) {
+    for (FsVolumeImpl v : volumes) {
+      v.saveReplicas(bpid, volumeMap);
+    }
+  }
+
   void removeBlockPool(String bpid) {
     for (FsVolumeImpl v : volumes) {
       v.shutdownBlockPool(bpid);
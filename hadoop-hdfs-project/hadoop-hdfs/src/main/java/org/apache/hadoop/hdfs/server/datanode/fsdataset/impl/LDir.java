@@ -41,6 +41,8 @@ class LDir {
   private int numBlocks = 0;
   private LDir[] children = null;
   private int lastChildIdx = 0;
+  /** Was the directory listed to build this node? */
+  private boolean listed = false;
 
   LDir(File dir, int maxBlocksPerDir) throws IOException {
     this.dir = dir;
@@ -51,6 +53,7 @@ class LDir {
         throw new IOException("Failed to mkdirs " + dir);
       }
     } else {
+      listed = true;
       File[] files = FileUtil.listFiles(dir); 
       List<LDir> dirList = new ArrayList<LDir>();
       for (int idx = 0; idx < files.length; idx++) {
@@ -65,6 +68,17 @@ class LDir {
       }
     }
   }
+
+  /**
+   * Build a node from a known number of block files and children, without
+   * listing the directory.
+   */
+  LDir(File dir, int maxBlocksPerDir, int numBlocks, LDir[] children) {
+    this.dir = dir;
+    this.maxBlocksPerDir = maxBlocksPerDir;
+    this.numBlocks = numBlocks;
+    this.children = children;
+  }
       
   File addBlock(Block b, File src) throws IOException {
     //First try without creating subdirectories
@@ -165,6 +179,27 @@ void checkDirTree() throws DiskErrorException {
       }
     }
   }
+
+  /** @return the number of block files in the directory. */
+  int getNumBlocks() {
+    return numBlocks;
+  }
+
+  /** @return the subtrees of the directory, possibly null. */
+  LDir[] getChildren() {
+    return children;
+  }
+
+  /** @return the number of directories of the tree which were listed. */
+  int getNumDirsListed() {
+    int n = listed ? 1 : 0;
+    if (children != null) {
+      for (int i = 0; i < children.length; i++) {
+        n += children[i].getNumDirsListed();
+      }
+    }
+    return n;
+  }
       
   void clearPath(File f) {
     String root = dir.getAbsolutePath();
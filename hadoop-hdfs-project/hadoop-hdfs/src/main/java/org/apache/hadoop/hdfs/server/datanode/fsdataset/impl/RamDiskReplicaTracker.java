@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * Tracks the finalized replicas on RAM_DISK volumes, see
+ * {@link FsDatasetImpl.LazyWriter}. A replica is first waiting to be
+ * persisted; once a copy of it has been saved to a disk volume, it may be
+ * evicted from memory, oldest first.
+ * <p>
+ * A replica is identified by its entry: an entry which was discarded or
+ * replaced while its replica was being persisted does not record the copy,
+ * and the caller deletes it.
+ */
+class RamDiskReplicaTracker {
+
+  /** A finalized replica on a RAM_DISK volume. */
+  static class RamDiskReplica {
+    final String bpid;
+    final long blockId;
+    final FsVolumeImpl ramDiskVolume;
+
+    /** The disk volume with the saved copy, or null if not persisted yet. */
+    private FsVolumeImpl lazyPersistVolume;
+    private File savedBlockFile;
+    private File savedMetaFile;
+    private long savedGenStamp;
+
+    private RamDiskReplica(String bpid, long blockId,
+        FsVolumeImpl ramDiskVolume) {
+      this.bpid = bpid;
+      this.blockId = blockId;
+      this.ramDiskVolume = ramDiskVolume;
+    }
+
+    boolean isPersisted() {
+      return lazyPersistVolume != null;
+    }
+
+    FsVolumeImpl getLazyPersistVolume() {
+      return lazyPersistVolume;
+    }
+
+    File getSavedBlockFile() {
+      return savedBlockFile;
+    }
+
+    File getSavedMetaFile() {
+      return savedMetaFile;
+    }
+
+    long getSavedGenStamp() {
+      return savedGenStamp;
+    }
+
+    @Override
+    public String toString() {
+      return "RamDiskReplica[bpid=" + bpid + ", blockId=" + blockId
+          + ", ramDiskVolume=" + ramDiskVolume
+          + (isPersisted() ? ", savedBlockFile=" + savedBlockFile : "") + "]";
+    }
+  }
+
+  private final Map<String, Map<Long, RamDiskReplica>> replicas =
+      new HashMap<String, Map<Long, RamDiskReplica>>();
+  /** The replicas waiting to be persisted, in the order they were added. */
+  private final LinkedHashSet<RamDiskReplica> replicasNotPersisted =
+      new LinkedHashSet<RamDiskReplica>();
+  /** The replicas which may be evicted, in the order they were persisted. */
+  private final LinkedHashSet<RamDiskReplica> replicasPersisted =
+      new LinkedHashSet<RamDiskReplica>();
+
+  /**
+   * Start tracking a replica which was finalized on a RAM_DISK volume.
+   * @return the entry replaced by the new one, if any. The caller deletes
+   *         its saved copy since the replica has changed.
+   */
+  synchronized RamDiskReplica addReplica(String bpid, long blockId,
+      FsVolumeImpl ramDiskVolume) {
+    final RamDiskReplica old = discardReplica(bpid, blockId);
+    final RamDiskReplica r = new RamDiskReplica(bpid, blockId, ramDiskVolume);
+    Map<Long, RamDiskReplica> map = replicas.get(bpid);
+    if (map == null) {
+      map = new HashMap<Long, RamDiskReplica>();
+      replicas.put(bpid, map);
+    }
+    map.put(blockId, r);
+    replicasNotPersisted.add(r);
+    return old;
+  }
+
+  /**
+   * Start tracking a replica on a RAM_DISK volume which already has a saved
+   * copy, e.g. after a restart.
+   * @return the entry replaced by the new one, if any.
+   */
+  synchronized RamDiskReplica addPersistedReplica(String bpid, long blockId,
+      FsVolumeImpl ramDiskVolume, FsVolumeImpl lazyPersistVolume,
+      File savedBlockFile, File savedMetaFile, long savedGenStamp) {
+    final RamDiskReplica old = addReplica(bpid, blockId, ramDiskVolume);
+    recordEndLazyPersist(replicas.get(bpid).get(blockId), lazyPersistVolume,
+        savedBlockFile, savedMetaFile, savedGenStamp);
+    return old;
+  }
+
+  /** @return the next replica to persist, or null. */
+  synchronized RamDiskReplica getNextReplicaToPersist() {
+    final Iterator<RamDiskReplica> i = replicasNotPersisted.iterator();
+    return i.hasNext() ? i.next() : null;
+  }
+
+  /** Retry persisting a replica after the other waiting replicas. */
+  synchronized void requeueReplicaNotPersisted(RamDiskReplica r) {
+    if (replicasNotPersisted.remove(r)) {
+      replicasNotPersisted.add(r);
+    }
+  }
+
+  /**
+   * Record the copy of a replica saved to a disk volume.
+   * @return false if the entry is not tracked anymore, in which case the
+   *         caller deletes the copy.
+   */
+  synchronized boolean recordEndLazyPersist(RamDiskReplica r,
+      FsVolumeImpl lazyPersistVolume, File savedBlockFile, File savedMetaFile,
+      long savedGenStamp) {
+    if (!replicasNotPersisted.remove(r)) {
+      return false;
+    }
+    r.lazyPersistVolume = lazyPersistVolume;
+    r.savedBlockFile = savedBlockFile;
+    r.savedMetaFile = savedMetaFile;
+    r.savedGenStamp = savedGenStamp;
+    replicasPersisted.add(r);
+    return true;
+  }
+
+  /**
+   * @return the persisted replica on the given RAM_DISK volume which was
+   *         persisted first, or null.
+   */
+  synchronized RamDiskReplica getNextCandidateForEviction(
+      FsVolumeImpl ramDiskVolume) {
+    for (RamDiskReplica r : replicasPersisted) {
+      if (r.ramDiskVolume == ramDiskVolume) {
+        return r;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Stop tracking a replica.
+   * @return the discarded entry, or null if the replica was not tracked.
+   *         The caller deletes its saved copy, if any.
+   */
+  synchronized RamDiskReplica discardReplica(String bpid, long blockId) {
+    final Map<Long, RamDiskReplica> map = replicas.get(bpid);
+    final RamDiskReplica r = map == null ? null : map.remove(blockId);
+    if (r != null) {
+      replicasNotPersisted.remove(r);
+      replicasPersisted.remove(r);
+    }
+    return r;
+  }
+
+  /**
+   * Stop tracking a replica if the given entry is still its entry.
+   * @return true if the entry was discarded. The caller deletes its saved
+   *         copy, if any.
+   */
+  synchronized boolean discardReplica(RamDiskReplica r) {
+    final Map<Long, RamDiskReplica> map = replicas.get(r.bpid);
+    if (map == null || map.get(r.blockId) != r) {
+      return false;
+    }
+    discardReplica(r.bpid, r.blockId);
+    return true;
+  }
+
+  /** Stop tracking the replicas of a block pool. */
+  synchronized void discardBlockPool(String bpid) {
+    final Map<Long, RamDiskReplica> map = replicas.remove(bpid);
+    if (map != null) {
+      for (RamDiskReplica r : map.values()) {
+        replicasNotPersisted.remove(r);
+        replicasPersisted.remove(r);
+      }
+    }
+  }
+
+  synchronized boolean isTracked(String bpid, long blockId) {
+    final Map<Long, RamDiskReplica> map = replicas.get(bpid);
+    return map != null && map.containsKey(blockId);
+  }
+
+  synchronized int numReplicasNotPersisted() {
+    return replicasNotPersisted.size();
+  }
+}
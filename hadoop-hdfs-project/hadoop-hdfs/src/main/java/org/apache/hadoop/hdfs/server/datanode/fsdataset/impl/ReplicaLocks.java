@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+
+/**
+ * Striped locks over block ids, which serialize the operations changing
+ * the state of the same replica while letting the operations on other
+ * replicas, and thus on other volumes, run in parallel.
+ * <p>
+ * A replica lock is always taken before the dataset lock, never while
+ * holding it. The locks are reentrant, so that an operation can call
+ * helpers which lock the same replica again. The operations which need a
+ * stable view of all the replicas lock every stripe with {@link #lockAll()}.
+ */
+class ReplicaLocks {
+  private final ReentrantLock[] locks;
+
+  /** The number of times a thread had to wait for a replica lock. */
+  private final AtomicLong contentionCount = new AtomicLong();
+  /** The total time threads waited for replica locks. */
+  private final AtomicLong waitTimeNanos = new AtomicLong();
+
+  ReplicaLocks(int numStripes) {
+    if (numStripes <= 0) {
+      throw new HadoopIllegalArgumentException(
+          "The number of replica lock stripes must be positive: " + numStripes);
+    }
+    locks = new ReentrantLock[numStripes];
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new ReentrantLock();
+    }
+  }
+
+  /** @return the lock of the given block. */
+  ReentrantLock getLock(long blockId) {
+    // Block ids are sequential, spread them over the stripes.
+    long h = blockId * 0x9E3779B97F4A7C15L;
+    int hash = (int)(h ^ (h >>> 32));
+    return locks[(hash & Integer.MAX_VALUE) % locks.length];
+  }
+
+  /** Lock the given block. The caller must unlock the returned lock. */
+  ReentrantLock lock(long blockId) {
+    ReentrantLock lock = getLock(blockId);
+    if (lock.tryLock()) {
+      return lock;
+    }
+    contentionCount.incrementAndGet();
+    long start = System.nanoTime();
+    lock.lock();
+    waitTimeNanos.addAndGet(System.nanoTime() - start);
+    return lock;
+  }
+
+  /**
+   * Lock every block, taking the stripes in order. The caller must not hold
+   * any replica lock, and must call {@link #unlockAll()}.
+   */
+  void lockAll() {
+    for (ReentrantLock lock : locks) {
+      assert !lock.isHeldByCurrentThread() : "Replica lock already held";
+      lock.lock();
+    }
+  }
+
+  /** Unlock every block locked by {@link #lockAll()}. */
+  void unlockAll() {
+    for (int i = locks.length - 1; i >= 0; i--) {
+      locks[i].unlock();
+    }
+  }
+
+  long getContentionCount() {
+    return contentionCount.get();
+  }
+
+  long getWaitTimeMillis() {
+    return waitTimeNanos.get() / 1000000;
+  }
+}
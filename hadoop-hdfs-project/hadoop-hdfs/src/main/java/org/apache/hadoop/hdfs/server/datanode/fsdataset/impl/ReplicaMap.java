@@ -18,8 +18,9 @@
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.hdfs.protocol.Block;
@@ -27,14 +28,18 @@
 
 /**
  * Maintains the replica map. 
+ * <p>
+ * Lookups and updates of single replicas do not take any lock, so that
+ * operations on independent blocks proceed in parallel. Callers serialize
+ * the operations on the same replica themselves, see {@link ReplicaLocks}.
  */
 class ReplicaMap {
-  // Object using which this class is synchronized
+  // Object which callers synchronize on for a stable view of the block pools
   private final Object mutex;
   
   // Map of block pool Id to another map of block Id to ReplicaInfo.
-  private Map<String, Map<Long, ReplicaInfo>> map = 
-    new HashMap<String, Map<Long, ReplicaInfo>>();
+  private final ConcurrentMap<String, ConcurrentMap<Long, ReplicaInfo>> map =
+    new ConcurrentHashMap<String, ConcurrentMap<Long, ReplicaInfo>>();
   
   ReplicaMap(Object mutex) {
     if (mutex == null) {
@@ -45,9 +50,7 @@ class ReplicaMap {
   }
   
   String[] getBlockPoolList() {
-    synchronized(mutex) {
-      return map.keySet().toArray(new String[map.keySet().size()]);   
-    }
+    return map.keySet().toArray(new String[0]);
   }
   
   private void checkBlockPool(String bpid) {
@@ -90,10 +93,8 @@ ReplicaInfo get(String bpid, Block block) {
    */
   ReplicaInfo get(String bpid, long blockId) {
     checkBlockPool(bpid);
-    synchronized(mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      return m != null ? m.get(blockId) : null;
-    }
+    Map<Long, ReplicaInfo> m = map.get(bpid);
+    return m != null ? m.get(blockId) : null;
   }
   
   /**
@@ -107,22 +108,31 @@ ReplicaInfo get(String bpid, long blockId) {
   ReplicaInfo add(String bpid, ReplicaInfo replicaInfo) {
     checkBlockPool(bpid);
     checkBlock(replicaInfo);
-    synchronized(mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      if (m == null) {
-        // Add an entry for block pool if it does not exist already
-        m = new HashMap<Long, ReplicaInfo>();
-        map.put(bpid, m);
-      }
-      return  m.put(replicaInfo.getBlockId(), replicaInfo);
-    }
+    return getOrCreate(bpid).put(replicaInfo.getBlockId(), replicaInfo);
   }
 
   /**
    * Add all entries from the given replica map into the local replica map.
    */
   void addAll(ReplicaMap other) {
-    map.putAll(other.map);
+    for (Map.Entry<String, ConcurrentMap<Long, ReplicaInfo>> e :
+        other.map.entrySet()) {
+      getOrCreate(e.getKey()).putAll(e.getValue());
+    }
+  }
+
+  /** Get the replicas of a block pool, adding the block pool if needed. */
+  private ConcurrentMap<Long, ReplicaInfo> getOrCreate(String bpid) {
+    ConcurrentMap<Long, ReplicaInfo> m = map.get(bpid);
+    if (m == null) {
+      // Add an entry for block pool if it does not exist already
+      m = new ConcurrentHashMap<Long, ReplicaInfo>();
+      ConcurrentMap<Long, ReplicaInfo> prev = map.putIfAbsent(bpid, m);
+      if (prev != null) {
+        m = prev;
+      }
+    }
+    return m;
   }
   
   /**
@@ -136,18 +146,17 @@ void addAll(ReplicaMap other) {
   ReplicaInfo remove(String bpid, Block block) {
     checkBlockPool(bpid);
     checkBlock(block);
-    synchronized(mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      if (m != null) {
-        Long key = Long.valueOf(block.getBlockId());
-        ReplicaInfo replicaInfo = m.get(key);
-        if (replicaInfo != null &&
-            block.getGenerationStamp() == replicaInfo.getGenerationStamp()) {
-          return m.remove(key);
-        } 
+    ConcurrentMap<Long, ReplicaInfo> m = map.get(bpid);
+    if (m != null) {
+      Long key = Long.valueOf(block.getBlockId());
+      ReplicaInfo replicaInfo = m.get(key);
+      // Only remove the replica which was checked, not one added since.
+      if (replicaInfo != null &&
+          block.getGenerationStamp() == replicaInfo.getGenerationStamp() &&
+          m.remove(key, replicaInfo)) {
+        return replicaInfo;
       }
     }
-    
     return null;
   }
   
@@ -159,11 +168,9 @@ ReplicaInfo remove(String bpid, Block block) {
    */
   ReplicaInfo remove(String bpid, long blockId) {
     checkBlockPool(bpid);
-    synchronized(mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      if (m != null) {
-        return m.remove(blockId);
-      }
+    Map<Long, ReplicaInfo> m = map.get(bpid);
+    if (m != null) {
+      return m.remove(blockId);
     }
     return null;
   }
@@ -174,19 +181,16 @@ ReplicaInfo remove(String bpid, long blockId) {
    * @return the number of replicas in the map
    */
   int size(String bpid) {
-    Map<Long, ReplicaInfo> m = null;
-    synchronized(mutex) {
-      m = map.get(bpid);
-      return m != null ? m.size() : 0;
-    }
+    Map<Long, ReplicaInfo> m = map.get(bpid);
+    return m != null ? m.size() : 0;
   }
   
   /**
    * Get a collection of the replicas for given block pool
-   * This method is <b>not synchronized</b>. It needs to be synchronized
-   * externally using the mutex, both for getting the replicas
-   * values from the map and iterating over it. Mutex can be accessed using
-   * {@link #getMutext()} method.
+   * Iterating over it does not fail with concurrent updates of replicas,
+   * which may or may not be seen. Callers which also need the block pool
+   * to stay in the map synchronize externally using the mutex. Mutex can
+   * be accessed using {@link #getMutext()} method.
    * 
    * @param bpid block pool id
    * @return a collection of the replicas belonging to the block pool
@@ -199,21 +203,12 @@ Collection<ReplicaInfo> replicas(String bpid) {
 
   void initBlockPool(String bpid) {
     checkBlockPool(bpid);
-    synchronized(mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      if (m == null) {
-        // Add an entry for block pool if it does not exist already
-        m = new HashMap<Long, ReplicaInfo>();
-        map.put(bpid, m);
-      }
-    }
+    getOrCreate(bpid);
   }
   
   void cleanUpBlockPool(String bpid) {
     checkBlockPool(bpid);
-    synchronized(mutex) {
-      map.remove(bpid);
-    }
+    map.remove(bpid);
   }
   
   /**
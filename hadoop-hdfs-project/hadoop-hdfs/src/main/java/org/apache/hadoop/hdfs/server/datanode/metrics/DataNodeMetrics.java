@@ -29,6 +29,7 @@
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
@@ -57,8 +58,16 @@ public class DataNodeMetrics {
   @Metric MutableCounterLong blocksRemoved;
   @Metric MutableCounterLong blocksVerified;
   @Metric MutableCounterLong blockVerificationFailures;
+  @Metric("Bytes of blocks verified by the block scanner")
+  MutableCounterLong bytesVerified;
+  @Metric("Blocks which failed to be read, waiting to be verified")
+  MutableGaugeInt suspectBlocksQueued;
   @Metric MutableCounterLong blocksCached;
   @Metric MutableCounterLong blocksUncached;
+  @Metric MutableCounterLong blocksAutoCached;
+  @Metric MutableCounterLong blocksAutoUncached;
+  @Metric("Client reads of cached blocks") MutableCounterLong cacheHits;
+  @Metric("Client reads of blocks not cached") MutableCounterLong cacheMisses;
   @Metric MutableCounterLong readsFromLocalClient;
   @Metric MutableCounterLong readsFromRemoteClient;
   @Metric MutableCounterLong writesFromLocalClient;
@@ -66,6 +75,8 @@ public class DataNodeMetrics {
   @Metric MutableCounterLong blocksGetLocalPathInfo;
 
   @Metric MutableCounterLong fsyncCount;
+  @Metric("Sync requests served by the fsync of another request")
+  MutableCounterLong fsyncsCoalesced;
   
   @Metric MutableCounterLong volumeFailures;
 
@@ -77,6 +88,9 @@ public class DataNodeMetrics {
   @Metric MutableRate heartbeats;
   @Metric MutableRate blockReports;
   @Metric MutableRate cacheReports;
+  @Metric MutableRate directoryScans;
+  @Metric MutableRate directoryScanThrottleStalls;
+  @Metric MutableCounterLong directoryScanDifferences;
   @Metric MutableRate packetAckRoundTripTimeNanos;
   MutableQuantiles[] packetAckRoundTripTimeNanosQuantiles;
   
@@ -154,6 +168,18 @@ public void addBlockReport(long latency) {
     blockReports.add(latency);
   }
 
+  public void addDirectoryScan(long latency) {
+    directoryScans.add(latency);
+  }
+
+  public void addDirectoryScanThrottleStall(long stall) {
+    directoryScanThrottleStalls.add(stall);
+  }
+
+  public void incrDirectoryScanDifferences(long delta) {
+    directoryScanDifferences.incr(delta);
+  }
+
   public void addCacheReport(long latency) {
     cacheReports.add(latency);
   }
@@ -182,6 +208,18 @@ public void incrBlocksVerified() {
     blocksVerified.incr();
   }
 
+  public void incrBytesVerified(long delta) {
+    bytesVerified.incr(delta);
+  }
+
+  public void incrSuspectBlocksQueued() {
+    suspectBlocksQueued.incr();
+  }
+
+  public void decrSuspectBlocksQueued() {
+    suspectBlocksQueued.decr();
+  }
+
 
   public void incrBlocksCached(int delta) {
     blocksCached.incr(delta);
@@ -191,6 +229,22 @@ public void incrBlocksUncached(int delta) {
     blocksUncached.incr(delta);
   }
 
+  public void incrBlocksAutoCached(int delta) {
+    blocksAutoCached.incr(delta);
+  }
+
+  public void incrBlocksAutoUncached(int delta) {
+    blocksAutoUncached.incr(delta);
+  }
+
+  public void incrCacheHits() {
+    cacheHits.incr();
+  }
+
+  public void incrCacheMisses() {
+    cacheMisses.incr();
+  }
+
   public void addReadBlockOp(long latency) {
     readBlockOp.add(latency);
   }
@@ -223,6 +277,10 @@ public void incrFsyncCount() {
     fsyncCount.incr();
   }
 
+  public void incrFsyncsCoalesced(long delta) {
+    fsyncsCoalesced.incr(delta);
+  }
+
   public void addPacketAckRoundTripTimeNanos(long latencyNanos) {
     packetAckRoundTripTimeNanos.add(latencyNanos);
     for (MutableQuantiles q : packetAckRoundTripTimeNanosQuantiles) {
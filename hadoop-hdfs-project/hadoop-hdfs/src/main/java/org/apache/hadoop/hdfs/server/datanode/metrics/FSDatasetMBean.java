@@ -102,4 +102,16 @@ public interface FSDatasetMBean {
    * Returns the number of blocks that the datanode was unable to uncache
    */
   public long getNumBlocksFailedToUncache();
+
+  /**
+   * Returns the number of times an operation waited for the lock of a
+   * replica held by another operation.
+   */
+  public long getReplicaLockContentionCount();
+
+  /**
+   * Returns the total time (in milliseconds) operations waited for the
+   * locks of replicas.
+   */
+  public long getReplicaLockWaitTimeMillis();
 }
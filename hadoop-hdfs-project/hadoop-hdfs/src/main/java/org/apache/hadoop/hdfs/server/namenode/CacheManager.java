@@ -63,6 +63,7 @@
 import org.apache.hadoop.hdfs.protocol.CachePoolEntry;
 import org.apache.hadoop.hdfs.protocol.CachePoolInfo;
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CacheDirectiveInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CachePoolInfoProto;
@@ -880,21 +881,28 @@ public void removeCachePool(String poolName)
   }
 
   public void setCachedLocations(LocatedBlock block) {
-    CachedBlock cachedBlock =
-        new CachedBlock(block.getBlock().getBlockId(),
-            (short)0, false);
+    final long blockId = block.getBlock().getBlockId();
+    CachedBlock cachedBlock = new CachedBlock(blockId, (short)0, false);
     cachedBlock = cachedBlocks.get(cachedBlock);
-    if (cachedBlock == null) {
-      return;
+    if (cachedBlock != null) {
+      List<DatanodeDescriptor> datanodes =
+          cachedBlock.getDatanodes(Type.CACHED);
+      for (DatanodeDescriptor datanode : datanodes) {
+        block.addCachedLoc(datanode);
+      }
     }
-    List<DatanodeDescriptor> datanodes = cachedBlock.getDatanodes(Type.CACHED);
-    for (DatanodeDescriptor datanode : datanodes) {
-      block.addCachedLoc(datanode);
+    // Add the datanodes which cached the block on their own.
+    for (DatanodeInfo loc : block.getLocations()) {
+      if (loc instanceof DatanodeDescriptor &&
+          ((DatanodeDescriptor)loc).isAutoCached(blockId)) {
+        block.addCachedLoc(loc);
+      }
     }
   }
 
   public final void processCacheReport(final DatanodeID datanodeID,
-      final List<Long> blockIds) throws IOException {
+      final List<Long> blockIds, final List<Long> autoCachedBlockIds)
+      throws IOException {
     namesystem.writeLock();
     final long startTime = Time.monotonicNow();
     final long endTime;
@@ -907,6 +915,7 @@ public final void processCacheReport(final DatanodeID datanodeID,
             datanode);
       }
       processCacheReportImpl(datanode, blockIds);
+      datanode.setAutoCached(autoCachedBlockIds);
     } finally {
       endTime = Time.monotonicNow();
       namesystem.writeUnlock();
@@ -919,6 +928,7 @@ public final void processCacheReport(final DatanodeID datanodeID,
     }
     LOG.info("Processed cache report from "
         + datanodeID + ", blocks: " + blockIds.size()
+        + ", automatically cached blocks: " + autoCachedBlockIds.size()
         + ", processing time: " + (endTime - startTime) + " msecs");
   }
 
@@ -48,6 +48,7 @@
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.protobuf.ByteString;
 
 /**
  * An implementation of the abstract class {@link EditLogInputStream}, which
@@ -125,6 +126,23 @@ public static EditLogInputStream fromUrl(
         startTxId, endTxId, inProgress);
   }
   
+  /**
+   * Open an EditLogInputStream for edits held in memory, e.g. as returned by
+   * a JournalNode from its cache of recent edits.
+   *
+   * @param data the serialized edits, including the log header
+   * @param name a description of where the edits came from
+   * @param startTxId the first txid in the data
+   * @param endTxId the last txid in the data
+   * @param inProgress whether the edits belong to an in-progress segment
+   * @return a stream from which edits may be read
+   */
+  public static EditLogInputStream fromByteString(ByteString data,
+      String name, long startTxId, long endTxId, boolean inProgress) {
+    return new EditLogFileInputStream(new ByteStringLog(data, name),
+        startTxId, endTxId, inProgress);
+  }
+
   private EditLogFileInputStream(LogSource log,
       long firstTxId, long lastTxId,
       boolean isInProgress) {
@@ -381,6 +399,31 @@ public String getName() {
     }
   }
 
+  private static class ByteStringLog implements LogSource {
+    private final ByteString data;
+    private final String name;
+
+    public ByteStringLog(ByteString data, String name) {
+      this.data = data;
+      this.name = name;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return data.newInput();
+    }
+
+    @Override
+    public long length() {
+      return data.size();
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+  }
+
   private static class URLLog implements LogSource {
     private final URL url;
     private long advertisedSize = -1;
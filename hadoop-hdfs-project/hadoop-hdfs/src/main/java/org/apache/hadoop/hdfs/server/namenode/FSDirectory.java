@@ -192,9 +192,13 @@ public int getWriteHoldCount() {
     int threshold = conf.getInt(
         DFSConfigKeys.DFS_NAMENODE_NAME_CACHE_THRESHOLD_KEY,
         DFSConfigKeys.DFS_NAMENODE_NAME_CACHE_THRESHOLD_DEFAULT);
+    int runtimeTrackingSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_NAME_CACHE_RUNTIME_TRACKING_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_NAME_CACHE_RUNTIME_TRACKING_SIZE_DEFAULT);
     NameNode.LOG.info("Caching file names occuring more than " + threshold
-        + " times");
-    nameCache = new NameCache<ByteArray>(threshold);
+        + " times, tracking up to " + runtimeTrackingSize
+        + " names created after startup");
+    nameCache = new NameCache<ByteArray>(threshold, runtimeTrackingSize);
     namesystem = ns;
   }
     
@@ -2839,12 +2843,12 @@ private static INode resolveLastINode(String src, INodesInPath iip)
   }
 
   /**
-   * Caches frequently used file names to reuse file name objects and
-   * reduce heap size.
+   * Caches frequently used file and directory names to reuse file name
+   * objects and reduce heap size.
    */
   void cacheName(INode inode) {
-    // Name is cached only for files
-    if (!inode.isFile()) {
+    // Symlink names are not cached
+    if (!inode.isFile() && !inode.isDirectory()) {
       return;
     }
     ByteArray name = new ByteArray(inode.getLocalNameBytes());
@@ -2854,6 +2858,26 @@ void cacheName(INode inode) {
     }
   }
   
+  /** @return the number of names in the name cache. */
+  int getNameCacheSize() {
+    readLock();
+    try {
+      return nameCache.size();
+    } finally {
+      readUnlock();
+    }
+  }
+
+  /** @return the number of lookups served by the name cache. */
+  int getNameCacheLookupCount() {
+    readLock();
+    try {
+      return nameCache.getLookupCount();
+    } finally {
+      readUnlock();
+    }
+  }
+
   void shutdown() {
     nameCache.reset();
     inodeMap.clear();
@@ -145,7 +145,7 @@ private enum State {
   private long txid = 0;
 
   // stores the last synced transactionId.
-  private long synctxid = 0;
+  private volatile long synctxid = 0;
 
   // the first txid of the log that's currently open for writing.
   // If this value is N, we are currently writing to edits_inprogress_N
@@ -484,6 +484,15 @@ private void endTransaction(long start) {
   public synchronized long getLastWrittenTxId() {
     return txid;
   }
+
+  /**
+   * Return the transaction ID of the last transaction synced to the log
+   * without synchronizing on the log, for callers which must not wait for a
+   * concurrent sync.
+   */
+  long getSyncTxIdWithoutLock() {
+    return synctxid;
+  }
   
   /**
    * @return the first transaction ID in the current log segment
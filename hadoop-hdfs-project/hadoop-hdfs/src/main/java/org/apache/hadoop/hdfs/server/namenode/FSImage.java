@@ -89,7 +89,7 @@ public class FSImage implements Closeable {
    * The last transaction ID that was either loaded from an image
    * or loaded by loading edits files.
    */
-  protected long lastAppliedTxId = 0;
+  protected volatile long lastAppliedTxId = 0;
 
   final private Configuration conf;
 
@@ -1219,7 +1219,7 @@ public String getBlockPoolID() {
     return storage.getBlockPoolID();
   }
 
-  public synchronized long getLastAppliedTxId() {
+  public long getLastAppliedTxId() {
     return lastAppliedTxId;
   }
 
@@ -730,8 +730,9 @@ INode loadINode(final byte[] localName, boolean isSnapshotINode,
     if (numBlocks >= 0) {
       // file
       
-      // read blocks
-      BlockInfo[] blocks = new BlockInfo[numBlocks];
+      // read blocks, sharing the empty array between empty files
+      BlockInfo[] blocks = numBlocks == 0 ? BlockInfo.EMPTY_ARRAY
+          : new BlockInfo[numBlocks];
       for (int j = 0; j < numBlocks; j++) {
         blocks[j] = new BlockInfo(replication);
         blocks[j].readFields(in);
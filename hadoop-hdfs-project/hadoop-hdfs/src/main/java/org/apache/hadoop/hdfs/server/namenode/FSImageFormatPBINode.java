@@ -240,7 +240,8 @@ private INodeFile loadINodeFile(INodeSection.INode n) {
       short replication = (short) f.getReplication();
       LoaderContext state = parent.getLoaderContext();
 
-      BlockInfo[] blocks = new BlockInfo[bp.size()];
+      BlockInfo[] blocks = bp.isEmpty() ? BlockInfo.EMPTY_ARRAY
+          : new BlockInfo[bp.size()];
       for (int i = 0, e = bp.size(); i < e; ++i) {
         blocks[i] = new BlockInfo(PBHelper.convert(bp.get(i)), replication);
       }
@@ -33,6 +33,8 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_ENCRYPT_DATA_TRANSFER_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_HA_STANDBY_CHECKPOINTS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_HA_STANDBY_CHECKPOINTS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_HA_STANDBY_READS_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_HA_STANDBY_READS_ENABLED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_ACCESSTIME_PRECISION_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_ACCESSTIME_PRECISION_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOGGERS_KEY;
@@ -209,6 +211,7 @@
 import org.apache.hadoop.hdfs.server.namenode.ha.HAContext;
 import org.apache.hadoop.hdfs.server.namenode.ha.HAState;
 import org.apache.hadoop.hdfs.server.namenode.ha.StandbyCheckpointer;
+import org.apache.hadoop.hdfs.server.namenode.ha.StandbyLagException;
 import org.apache.hadoop.hdfs.server.namenode.metrics.FSNamesystemMBean;
 import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.INodeDirectorySnapshottable;
@@ -236,6 +239,7 @@
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.ipc.RetriableException;
 import org.apache.hadoop.ipc.RetryCache;
+import org.apache.hadoop.ipc.RpcConstants;
 import org.apache.hadoop.ipc.RetryCache.CacheEntry;
 import org.apache.hadoop.ipc.RetryCache.CacheEntryWithPayload;
 import org.apache.hadoop.ipc.Server;
@@ -381,6 +385,12 @@ private void logAuditEvent(boolean succeeded,
   private final String fsOwnerShortUserName;
   private final String supergroup;
   private final boolean standbyShouldCheckpoint;
+
+  /**
+   * Whether the standby serves read operations to clients which send the
+   * state id they have seen, once its namespace has reached that state.
+   */
+  private final boolean standbyReadsEnabled;
   
   // Scan interval is not configurable.
   private static final long DELEGATION_TOKEN_REMOVER_SCAN_INTERVAL =
@@ -403,6 +413,8 @@ private void logAuditEvent(boolean succeeded,
   private final SnapshotManager snapshotManager;
   private final CacheManager cacheManager;
   private final DatanodeStatistics datanodeStatistics;
+  private final NamespaceHeapAccounting heapAccounting =
+      new NamespaceHeapAccounting();
 
   // Block pool ID used by this namenode
   private String blockPoolId;
@@ -751,6 +763,9 @@ public static FSNamesystem loadFromDisk(Configuration conf)
       
       this.standbyShouldCheckpoint = conf.getBoolean(
           DFS_HA_STANDBY_CHECKPOINTS_KEY, DFS_HA_STANDBY_CHECKPOINTS_DEFAULT);
+      this.standbyReadsEnabled = conf.getBoolean(
+          DFS_HA_STANDBY_READS_ENABLED_KEY,
+          DFS_HA_STANDBY_READS_ENABLED_DEFAULT);
       // # edit autoroll threshold is a multiple of the checkpoint threshold 
       this.editLogRollerThreshold = (long)
           (conf.getFloat(
@@ -1154,7 +1169,50 @@ public void checkOperation(OperationCategory op) throws StandbyException {
     if (haContext != null) {
       // null in some unit tests
       haContext.checkOperation(op);
+      if (op == OperationCategory.READ && standbyReadsEnabled
+          && isInStandbyState()) {
+        checkClientState();
+      }
+    }
+  }
+
+  /**
+   * On a standby serving reads, make sure the namespace has reached the state
+   * the client of the current call has seen. The call is rejected at once
+   * otherwise rather than waiting for the edit log tailer, so that lagging
+   * reads never hold on to the IPC handlers.
+   * @throws StandbyLagException if the namespace is behind the client.
+   */
+  private void checkClientState() throws StandbyException {
+    final long clientStateId = Server.getClientStateId();
+    if (clientStateId == RpcConstants.INVALID_STATE_ID) {
+      // not a consistent read, the stale reads setting applies
+      return;
     }
+    final long appliedTxId = getFSImage().getLastAppliedTxId();
+    if (appliedTxId < clientStateId) {
+      throw new StandbyLagException("The standby has applied transactions up"
+          + " to " + appliedTxId + " but the client has seen " + clientStateId);
+    }
+  }
+
+  /**
+   * @return the state id sent to the clients: the last transaction synced
+   *         by the active, or the last transaction applied by the standby.
+   *         A transaction written but not yet synced by the active may never
+   *         reach the standby, so it is not reported.
+   */
+  long getStateIdForClients() {
+    final FSImage image = getFSImage();
+    if (isInStandbyState() || image.getEditLog() == null) {
+      return image.getLastAppliedTxId();
+    }
+    return Math.max(image.getLastAppliedTxId(),
+        image.getEditLog().getSyncTxIdWithoutLock());
+  }
+
+  boolean isStandbyReadsEnabled() {
+    return standbyReadsEnabled;
   }
   
   /**
@@ -1656,8 +1714,9 @@ private LocatedBlocks getBlockLocationsUpdateTimes(String src, long offset,
           checkPathAccess(pc, src, FsAction.READ);
         }
 
-        // if the namenode is in safemode, then do not update access time
-        if (isInSafeMode()) {
+        // if the namenode is in safemode, then do not update access time.
+        // Neither does a standby serving the read, which cannot log edits.
+        if (isInSafeMode() || isInStandbyState()) {
           doAccessTime = false;
         }
 
@@ -5559,6 +5618,28 @@ public long getMillisSinceLastLoadedEdits() {
     }
   }
   
+  // HA-only metric
+  @Metric({"StandbyLagTxns",
+      "Transactions available to the standby but not yet applied"})
+  public long getStandbyLagTxns() {
+    if (isInStandbyState() && editLogTailer != null) {
+      return editLogTailer.getLagTxns();
+    } else {
+      return 0;
+    }
+  }
+
+  // HA-only metric
+  @Metric({"StandbyLagMillis",
+      "Milliseconds since the standby last applied every available edit"})
+  public long getStandbyLagMillis() {
+    if (isInStandbyState() && editLogTailer != null) {
+      return editLogTailer.getLagMillis();
+    } else {
+      return 0;
+    }
+  }
+  
   @Metric
   public int getBlockCapacity() {
     return blockManager.getCapacity();
@@ -6545,6 +6626,7 @@ public String getLiveNodes() {
           .put("blockPoolUsed", node.getBlockPoolUsed())
           .put("blockPoolUsedPercent", node.getBlockPoolUsedPercent())
           .put("volfails", node.getVolumeFailures())
+          .put("slowVolumes", node.getSlowVolumes())
           .build();
 
       info.put(node.getHostName(), innerinfo);
@@ -6736,6 +6818,16 @@ public String getCompileInfo() {
         " from " + VersionInfo.getBranch();
   }
 
+  @Override  // NameNodeMXBean
+  public String getNamespaceHeapUsage() {
+    readLock();
+    try {
+      return JSON.toString(heapAccounting.getReport(dir, blockManager));
+    } finally {
+      readUnlock();
+    }
+  }
+
   /** @return the block manager. */
   public BlockManager getBlockManager() {
     return blockManager;
@@ -108,6 +108,13 @@ static long combinePreferredBlockSize(long header, long blockSize) {
 
   private long header = 0L;
 
+  /**
+   * The blocks of the file. A file without blocks holds null or the shared
+   * {@link BlockInfo#EMPTY_ARRAY}.
+   * The blocks are referenced rather than stored as block ids: the BlockInfo
+   * objects are held by the blocks map anyway, and a reference is never
+   * larger than a long id, while an id would cost a map lookup per access.
+   */
   private BlockInfo[] blocks;
 
   INodeFile(long id, byte[] name, PermissionStatus permissions, long mtime,
@@ -237,7 +244,8 @@ boolean removeLastBlock(Block oldblock) {
     }
 
     //copy to a new list
-    BlockInfo[] newlist = new BlockInfo[size_1];
+    BlockInfo[] newlist = size_1 == 0 ? BlockInfo.EMPTY_ARRAY
+        : new BlockInfo[size_1];
     System.arraycopy(blocks, 0, newlist, 0, size_1);
     setBlocks(newlist);
     return true;
@@ -40,12 +40,18 @@ static INodeMap newInstance(INodeDirectory rootDir) {
     int capacity = LightWeightGSet.computeCapacity(1, "INodeMap");
     GSet<INode, INodeWithAdditionalFields> map
         = new LightWeightGSet<INode, INodeWithAdditionalFields>(capacity);
-    map.put(rootDir);
-    return new INodeMap(map);
+    INodeMap inodeMap = new INodeMap(map);
+    inodeMap.put(rootDir);
+    return inodeMap;
   }
   
   /** Synchronized by external lock. */
   private final GSet<INode, INodeWithAdditionalFields> map;
+
+  /** Number of files, directories and symlinks in the map. */
+  private long numFiles = 0;
+  private long numDirectories = 0;
+  private long numSymlinks = 0;
   
   public Iterator<INodeWithAdditionalFields> getMapIterator() {
     return map.iterator();
@@ -63,7 +69,8 @@ private INodeMap(GSet<INode, INodeWithAdditionalFields> map) {
    */
   public final void put(INode inode) {
     if (inode instanceof INodeWithAdditionalFields) {
-      map.put((INodeWithAdditionalFields)inode);
+      updateCounts(map.put((INodeWithAdditionalFields)inode), -1);
+      updateCounts(inode, 1);
     }
   }
   
@@ -72,7 +79,34 @@ public final void put(INode inode) {
    * @param inode The {@link INode} to be removed.
    */
   public final void remove(INode inode) {
-    map.remove(inode);
+    updateCounts(map.remove(inode), -1);
+  }
+
+  private void updateCounts(INode inode, int delta) {
+    if (inode == null) {
+      return;
+    } else if (inode.isFile()) {
+      numFiles += delta;
+    } else if (inode.isDirectory()) {
+      numDirectories += delta;
+    } else if (inode.isSymlink()) {
+      numSymlinks += delta;
+    }
+  }
+
+  /** @return the number of files in the map. */
+  public long getNumFiles() {
+    return numFiles;
+  }
+
+  /** @return the number of directories in the map. */
+  public long getNumDirectories() {
+    return numDirectories;
+  }
+
+  /** @return the number of symlinks in the map. */
+  public long getNumSymlinks() {
+    return numSymlinks;
   }
   
   /**
@@ -132,5 +166,8 @@ public Counts cleanSubtree(int snapshotId, int priorSnapshotId,
    */
   public void clear() {
     map.clear();
+    numFiles = 0;
+    numDirectories = 0;
+    numSymlinks = 0;
   }
 }
@@ -18,6 +18,7 @@
 package org.apache.hadoop.hdfs.server.namenode;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
@@ -36,6 +37,15 @@
  * discarded and cache is ready for use.
  * 
  * <p>
+ * Optionally, names created after initialization can also be promoted. Their
+ * use count is then tracked in a bounded LRU map so that names which are
+ * repeatedly created at runtime (for example "_SUCCESS" or "part-00000")
+ * are reused as well, without keeping a count for every unique name. The
+ * names promoted after initialization are kept in another bounded LRU map,
+ * so that a workload creating many distinct names cannot grow the cache
+ * without limit. Evicting a name only stops its reuse by new inodes.
+ * 
+ * <p>
  * This class must be synchronized externally.
  * 
  * @param <K> name to be added to the cache
@@ -79,13 +89,36 @@ int get() {
   /** Names and with number of occurrences tracked during initialization */
   Map<K, UseCount> transientMap = new HashMap<K, UseCount>();
 
+  /** Maximum number of names tracked after initialization, 0 to disable */
+  private final int runtimeTrackingSize;
+
+  /** Names with number of occurrences tracked after initialization */
+  private Map<K, UseCount> runtimeMap = null;
+
+  /** Names promoted after initialization */
+  private Map<K, K> runtimeCache = null;
+
   /**
    * Constructor
    * @param useThreshold names occurring more than this is promoted to the
    *          cache
    */
   NameCache(int useThreshold) {
+    this(useThreshold, 0);
+  }
+
+  /**
+   * Constructor
+   * @param useThreshold names occurring more than this is promoted to the
+   *          cache
+   * @param runtimeTrackingSize maximum number of names whose use count is
+   *          tracked after initialization, and of names promoted after
+   *          initialization; 0 disables promotion of names after
+   *          initialization
+   */
+  NameCache(int useThreshold, int runtimeTrackingSize) {
     this.useThreshold = useThreshold;
+    this.runtimeTrackingSize = runtimeTrackingSize;
   }
   
   /**
@@ -114,6 +147,24 @@ K put(final K name) {
       }
       useCount = new UseCount(name);
       transientMap.put(name, useCount);
+    } else if (runtimeMap != null) {
+      internal = runtimeCache.get(name);
+      if (internal != null) {
+        lookups++;
+        return internal;
+      }
+      UseCount useCount = runtimeMap.get(name);
+      if (useCount == null) {
+        runtimeMap.put(name, new UseCount(name));
+        return null;
+      }
+      useCount.increment();
+      if (useCount.get() >= useThreshold) {
+        runtimeMap.remove(name);
+        runtimeCache.put(useCount.value, useCount.value);
+      }
+      lookups++;
+      return useCount.value;
     }
     return null;
   }
@@ -131,7 +182,7 @@ int getLookupCount() {
    * @return Number of names stored in the cache
    */
   int size() {
-    return cache.size();
+    return cache.size() + (runtimeCache == null ? 0 : runtimeCache.size());
   }
 
   /**
@@ -144,6 +195,22 @@ void initialized() {
     this.initialized = true;
     transientMap.clear();
     transientMap = null;
+    if (runtimeTrackingSize > 0) {
+      runtimeMap = newLruMap();
+      runtimeCache = newLruMap();
+    }
+  }
+
+  /** @return a map keeping up to runtimeTrackingSize recently used names */
+  private <V> Map<K, V> newLruMap() {
+    return new LinkedHashMap<K, V>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > runtimeTrackingSize;
+      }
+    };
   }
   
   /** Promote a frequently used name to the cache */
@@ -156,6 +223,8 @@ private void promote(final K name) {
   public void reset() {
     initialized = false;
     cache.clear();
+    runtimeMap = null;
+    runtimeCache = null;
     if (transientMap == null) {
       transientMap = new HashMap<K, UseCount>();
     } else {
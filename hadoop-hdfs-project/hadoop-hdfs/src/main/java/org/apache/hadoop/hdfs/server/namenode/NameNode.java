@@ -46,6 +46,7 @@
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.StartupProgress;
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.StartupProgressMetrics;
 import org.apache.hadoop.hdfs.server.protocol.*;
+import org.apache.hadoop.ipc.RpcConstants;
 import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.ipc.StandbyException;
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
@@ -1561,7 +1562,10 @@ public void checkOperation(final OperationCategory op)
     
     @Override
     public boolean allowStaleReads() {
-      return allowStaleStandbyReads;
+      // consistent reads carry the state id seen by the client
+      return allowStaleStandbyReads
+          || (namesystem != null && namesystem.isStandbyReadsEnabled()
+              && Server.getClientStateId() != RpcConstants.INVALID_STATE_ID);
     }
 
   }
@@ -247,5 +247,14 @@ public interface NameNodeMXBean {
    * @return the number of live datanodes for each distinct versions
    */
   public Map<String, Integer> getDistinctVersions();
+
+  /**
+   * Get the estimated heap usage of the namespace: the number of inodes and
+   * blocks, the estimated bytes used by their objects and the name cache
+   * statistics.
+   *
+   * @return the namespace heap usage, as a JSON string.
+   */
+  public String getNamespaceHeapUsage();
   
 }
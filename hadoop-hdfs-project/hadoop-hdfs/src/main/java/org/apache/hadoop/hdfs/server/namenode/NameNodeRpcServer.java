@@ -103,6 +103,7 @@
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.NamenodeRole;
 import org.apache.hadoop.hdfs.server.common.IncorrectVersionException;
 import org.apache.hadoop.hdfs.server.namenode.NameNode.OperationCategory;
+import org.apache.hadoop.hdfs.server.namenode.ha.StandbyLagException;
 import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.hdfs.server.namenode.web.resources.NamenodeWebHdfsMethods;
 import org.apache.hadoop.hdfs.server.protocol.BlocksWithLocations;
@@ -291,6 +292,9 @@ public NameNodeRpcServer(Configuration conf, NameNode nn)
         .setVerbose(false)
         .setSecretManager(namesystem.getDelegationTokenSecretManager())
         .build();
+    // Tell the clients the namespace state they have seen, so that a
+    // standby can serve their reads consistently
+    clientRpcServer.setAlignmentContext(new GlobalStateIdContext(namesystem));
 
     // Add all the RPC protocols that the namenode implements
     DFSUtil.addPBProtocol(conf, HAServiceProtocolPB.class, haPbService,
@@ -341,7 +345,8 @@ public NameNodeRpcServer(Configuration conf, NameNode nn)
         InvalidToken.class,
         LeaseExpiredException.class,
         NSQuotaExceededException.class,
-        DSQuotaExceededException.class);
+        DSQuotaExceededException.class,
+        StandbyLagException.class);
  }
 
   /** Allow access to the client RPC server for testing */
@@ -1001,13 +1006,16 @@ public DatanodeCommand blockReport(DatanodeRegistration nodeReg,
 
   @Override
   public DatanodeCommand cacheReport(DatanodeRegistration nodeReg,
-      String poolId, List<Long> blockIds) throws IOException {
+      String poolId, List<Long> blockIds, List<Long> autoCachedBlockIds)
+      throws IOException {
     verifyRequest(nodeReg);
     if (blockStateChangeLog.isDebugEnabled()) {
       blockStateChangeLog.debug("*BLOCK* NameNode.cacheReport: "
-           + "from " + nodeReg + " " + blockIds.size() + " blocks");
+           + "from " + nodeReg + " " + blockIds.size() + " blocks, "
+           + autoCachedBlockIds.size() + " automatically cached blocks");
     }
-    namesystem.getCacheManager().processCacheReport(nodeReg, blockIds);
+    namesystem.getCacheManager().processCacheReport(nodeReg, blockIds,
+        autoCachedBlockIds);
     return null;
   }
 
@@ -1324,5 +1332,11 @@ public void setAcl(String src, List<AclEntry> aclSpec) throws IOException {
   public AclStatus getAclStatus(String src) throws IOException {
     return namesystem.getAclStatus(src);
   }
+
+  @Override // ClientProtocol
+  public void msync() throws IOException {
+    // only the active has the state the client synchronizes with
+    namesystem.checkOperation(OperationCategory.WRITE);
+  }
 }
 
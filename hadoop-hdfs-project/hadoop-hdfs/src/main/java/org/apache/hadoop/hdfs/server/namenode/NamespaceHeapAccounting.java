@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Estimates the heap used by the namespace from the number of inodes and
+ * blocks and the object layout of {@link INodeFile}, {@link INodeDirectory}
+ * and {@link org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo}.
+ * The estimate only uses counters which are maintained incrementally, so it
+ * is cheap enough to be polled through JMX. Local names are not included
+ * since their length is not tracked; the name cache statistics are reported
+ * instead.
+ */
+@InterfaceAudience.Private
+class NamespaceHeapAccounting {
+  /** Size of an object reference in bytes. */
+  private final int refSize;
+  /** Size of an object header in bytes. */
+  private final int headerSize;
+  /** Size of an array header in bytes, including the length field. */
+  private final int arrayHeaderSize;
+
+  NamespaceHeapAccounting() {
+    this(isCompressedOops());
+  }
+
+  @VisibleForTesting
+  NamespaceHeapAccounting(boolean compressedOops) {
+    this.refSize = compressedOops ? 4 : 8;
+    this.headerSize = compressedOops ? 12 : 16;
+    this.arrayHeaderSize = compressedOops ? 16 : 24;
+  }
+
+  /**
+   * Compressed references are used by 64-bit JVMs with a heap of less than
+   * 32GB, unless they have been disabled explicitly.
+   */
+  private static boolean isCompressedOops() {
+    if ("32".equals(System.getProperty("sun.arch.data.model"))) {
+      return true;
+    }
+    for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+      if (arg.equals("-XX:-UseCompressedOops")) {
+        return false;
+      }
+    }
+    return Runtime.getRuntime().maxMemory() < (32L << 30);
+  }
+
+  private static long align(long size) {
+    return (size + 7) & ~7L;
+  }
+
+  /** parent, name, next and features references plus the subclass fields */
+  private long inodeSize(int refs, int longs) {
+    return align(headerSize + (4 + refs) * refSize + (4 + longs) * 8L);
+  }
+
+  /** @return the estimated size of an {@link INodeFile}. */
+  @VisibleForTesting
+  long getINodeFileSize() {
+    // blocks reference, header long
+    return inodeSize(1, 1);
+  }
+
+  /** @return the estimated size of an {@link INodeDirectory}. */
+  @VisibleForTesting
+  long getINodeDirectorySize() {
+    // children reference
+    return inodeSize(1, 0);
+  }
+
+  /** @return the estimated size of a block array element. */
+  long getBlockReferenceSize() {
+    return refSize;
+  }
+
+  /** @return the estimated size of a BlockInfo without its triplets. */
+  @VisibleForTesting
+  long getBlockInfoSize() {
+    // blockId, numBytes, generationStamp, bc, nextLinkedElement, triplets,
+    // tripletHandle
+    return align(headerSize + 3 * 8L + 3 * refSize + 4);
+  }
+
+  /**
+   * @return the estimated size of the on-heap triplet arrays of the given
+   *         number of blocks, holding the given number of triplets in total.
+   *         The padding of the arrays is not included.
+   */
+  @VisibleForTesting
+  long getTripletsSize(long blocks, long triplets) {
+    return blocks * arrayHeaderSize + triplets * 3 * refSize;
+  }
+
+  /**
+   * Build the report for the given namespace.
+   * The caller should hold the namesystem read lock.
+   */
+  Map<String, Object> getReport(FSDirectory dir, BlockManager bm) {
+    final INodeMap inodeMap = dir.getINodeMap();
+    final long files = inodeMap.getNumFiles();
+    final long directories = inodeMap.getNumDirectories();
+    final long symlinks = inodeMap.getNumSymlinks();
+    final long blocks = bm.getTotalBlocks();
+    final boolean offHeap = bm.isBlocksMapOffHeap();
+
+    final long inodeBytes = files * getINodeFileSize()
+        + directories * getINodeDirectorySize();
+    final long blockArrayBytes = files * align(arrayHeaderSize)
+        + blocks * refSize;
+    final long blockInfoBytes = blocks * getBlockInfoSize();
+    final long tripletBytes = offHeap ?
+        // a reference from the slab owner table per record
+        bm.getOffHeapTripletRecords() * refSize
+        // the triplets allocated for the replication of each block
+        : getTripletsSize(blocks, bm.getHeapTriplets());
+
+    final Map<String, Object> report = new LinkedHashMap<String, Object>();
+    report.put("files", files);
+    report.put("directories", directories);
+    report.put("symlinks", symlinks);
+    report.put("blocks", blocks);
+    report.put("nameCacheSize", dir.getNameCacheSize());
+    report.put("nameCacheLookups", dir.getNameCacheLookupCount());
+    report.put("estimatedINodeBytes", inodeBytes);
+    report.put("estimatedBlockArrayBytes", blockArrayBytes);
+    report.put("estimatedBlockInfoBytes", blockInfoBytes);
+    report.put("estimatedTripletHeapBytes", tripletBytes);
+    report.put("estimatedTotalHeapBytes",
+        inodeBytes + blockArrayBytes + blockInfoBytes + tripletBytes);
+    report.put("estimatedBytesPerFile", files == 0 ? 0 :
+        (inodeBytes + blockArrayBytes + blockInfoBytes + tripletBytes) / files);
+    report.put("blocksMapOffHeap", offHeap);
+    report.put("heapTriplets", bm.getHeapTriplets());
+    report.put("offHeapTripletRecords", bm.getOffHeapTripletRecords());
+    report.put("offHeapTripletBytes", bm.getOffHeapTripletBytes());
+    return report;
+  }
+}
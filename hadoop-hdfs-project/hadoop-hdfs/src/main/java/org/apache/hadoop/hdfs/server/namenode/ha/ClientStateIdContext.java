@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.ipc.AlignmentContext;
+import org.apache.hadoop.ipc.RpcConstants;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
+
+/**
+ * The client side {@link AlignmentContext} shared by the proxies to the
+ * NameNodes of a nameservice. It keeps the largest transaction id any of
+ * the NameNodes has reported, and sends it with every call so that a
+ * standby answers a read only once it has applied that transaction.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class ClientStateIdContext implements AlignmentContext {
+  private final AtomicLong lastSeenStateId = new AtomicLong(0);
+
+  @Override
+  public void updateResponseState(RpcResponseHeaderProto.Builder header) {
+    // client side only
+  }
+
+  @Override
+  public void receiveResponseState(RpcResponseHeaderProto header) {
+    if (!header.hasStateId()) {
+      return;
+    }
+    final long stateId = header.getStateId();
+    for (long last; (last = lastSeenStateId.get()) < stateId; ) {
+      if (lastSeenStateId.compareAndSet(last, stateId)) {
+        break;
+      }
+    }
+  }
+
+  @Override
+  public void updateRequestState(RpcRequestHeaderProto.Builder header) {
+    header.setStateId(lastSeenStateId.get());
+  }
+
+  @Override
+  public long receiveRequestState(RpcRequestHeaderProto header) {
+    // client side only
+    return RpcConstants.INVALID_STATE_ID;
+  }
+
+  @Override
+  public long getLastSeenStateId() {
+    return lastSeenStateId.get();
+  }
+}
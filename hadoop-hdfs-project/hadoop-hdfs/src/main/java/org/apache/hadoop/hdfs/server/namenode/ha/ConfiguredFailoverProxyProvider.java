@@ -36,6 +36,7 @@
 import org.apache.hadoop.hdfs.NameNodeProxies;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
 import org.apache.hadoop.io.retry.FailoverProxyProvider;
+import org.apache.hadoop.ipc.AlignmentContext;
 import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.security.UserGroupInformation;
 
@@ -116,20 +117,45 @@ public Class<T> getInterface() {
   /**
    * Lazily initialize the RPC proxy object.
    */
-  @SuppressWarnings("unchecked")
   @Override
   public synchronized T getProxy() {
-    AddressRpcProxyPair current = proxies.get(currentProxyIndex);
-    if (current.namenode == null) {
+    return getProxy(currentProxyIndex);
+  }
+
+  /**
+   * Lazily initialize the RPC proxy object to the NameNode at the given
+   * index of the configured addresses.
+   */
+  protected synchronized T getProxy(int index) {
+    AddressRpcProxyPair<T> pair = proxies.get(index);
+    if (pair.namenode == null) {
       try {
-        current.namenode = NameNodeProxies.createNonHAProxy(conf,
-            current.address, xface, ugi, false).getProxy();
+        pair.namenode = NameNodeProxies.createNonHAProxy(conf,
+            pair.address, xface, ugi, false, getAlignmentContext()).getProxy();
       } catch (IOException e) {
         LOG.error("Failed to create RPC proxy to NameNode", e);
         throw new RuntimeException(e);
       }
     }
-    return (T)current.namenode;
+    return pair.namenode;
+  }
+
+  /** @return the index of the NameNode the proxy currently points to. */
+  protected synchronized int getCurrentProxyIndex() {
+    return currentProxyIndex;
+  }
+
+  /** @return the number of configured NameNode addresses. */
+  protected int getNumProxies() {
+    return proxies.size();
+  }
+
+  /**
+   * @return the context whose state the RPC calls to the NameNodes carry,
+   *         or null.
+   */
+  protected AlignmentContext getAlignmentContext() {
+    return null;
   }
 
   @Override
@@ -23,6 +23,7 @@
 import java.security.PrivilegedAction;
 import java.security.PrivilegedExceptionAction;
 import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -41,6 +42,7 @@
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocol;
+import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.security.SecurityUtil;
 
@@ -98,6 +100,26 @@ public class EditLogTailer {
    * available to be read from.
    */
   private long sleepTimeMs;
+
+  /**
+   * Whether the Standby reads edits from the in-progress segment, and the
+   * most transactions the journals return at once when it does.
+   */
+  private final boolean inProgressOk;
+  private final int maxTxnsPerRead;
+
+  /**
+   * The highest transaction ID available in the shared edits when the edits
+   * were last selected.
+   */
+  private volatile long lastAvailableTxnId = HdfsConstants.INVALID_TXID;
+
+  /**
+   * The time at which the edits were selected in the last round which left
+   * no available transactions unapplied. Every transaction which was
+   * available at that time has been applied since.
+   */
+  private volatile long lastCaughtUpTimestamp;
   
   public EditLogTailer(FSNamesystem namesystem, Configuration conf) {
     this.tailerThread = new EditLogTailerThread();
@@ -106,6 +128,7 @@ public EditLogTailer(FSNamesystem namesystem, Configuration conf) {
     this.editLog = namesystem.getEditLog();
     
     lastLoadTimestamp = now();
+    lastCaughtUpTimestamp = lastLoadTimestamp;
 
     logRollPeriodMs = conf.getInt(DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY,
         DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_DEFAULT) * 1000;
@@ -121,11 +144,25 @@ public EditLogTailer(FSNamesystem namesystem, Configuration conf) {
           DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY + " is negative.");
     }
     
-    sleepTimeMs = conf.getInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY,
-        DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_DEFAULT) * 1000;
+    // The period is in seconds unless it carries a unit, e.g. "100ms".
+    String period = conf.getTrimmed(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY,
+        String.valueOf(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_DEFAULT));
+    if (period.matches("-?\\d+")) {
+      sleepTimeMs = Long.parseLong(period) * 1000;
+    } else {
+      sleepTimeMs = conf.getTimeDuration(
+          DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 0, TimeUnit.MILLISECONDS);
+    }
+
+    inProgressOk = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
+    maxTxnsPerRead = conf.getInt(
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_DEFAULT);
     
     LOG.debug("logRollPeriodMs=" + logRollPeriodMs +
-        " sleepTime=" + sleepTimeMs);
+        " sleepTime=" + sleepTimeMs + " inProgressOk=" + inProgressOk);
   }
   
   private InetSocketAddress getActiveNodeAddress() {
@@ -180,7 +217,10 @@ public void catchupDuringFailover() throws IOException {
       @Override
       public Void run() throws Exception {
         try {
-          doTailEdits();
+          // The shared edits have been recovered by now, so every edit is
+          // in a finalized segment. Reading them from there guarantees
+          // that none is missed.
+          doTailEdits(false);
         } catch (InterruptedException e) {
           throw new IOException(e);
         }
@@ -191,38 +231,72 @@ public Void run() throws Exception {
   
   @VisibleForTesting
   void doTailEdits() throws IOException, InterruptedException {
+    doTailEdits(inProgressOk);
+  }
+
+  /**
+   * Load the edits which are available in the shared edits storage.
+   * @return the number of edits loaded.
+   */
+  private long doTailEdits(boolean inProgressOk)
+      throws IOException, InterruptedException {
+    FSImage image = namesystem.getFSImage();
+
+    // Only this thread, or the failover once it has stopped, applies edits,
+    // so the streams can be selected without holding the namesystem lock.
+    // Selecting may take a round trip to the shared edits storage, and
+    // must not hold up the reads served by the Standby.
+    long lastTxnId = image.getLastAppliedTxId();
+    
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("lastTxnId: " + lastTxnId);
+    }
+    long selectTimestamp = now();
+    Collection<EditLogInputStream> streams;
+    try {
+      streams = editLog.selectInputStreams(lastTxnId + 1, 0, null,
+          inProgressOk);
+    } catch (IOException ioe) {
+      // This is acceptable. If we try to tail edits in the middle of an edits
+      // log roll, i.e. the last one has been finalized but the new inprogress
+      // edits file hasn't been started yet.
+      LOG.warn("Edits tailer failed to find any streams. Will try again " +
+          "later.", ioe);
+      return 0;
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("edit streams to load from: " + streams.size());
+    }
+    long availableTxnId = lastTxnId;
+    for (EditLogInputStream stream : streams) {
+      availableTxnId = Math.max(availableTxnId, stream.getLastTxId());
+    }
+    lastAvailableTxnId = availableTxnId;
+    if (streams.isEmpty()) {
+      // Nothing new. Loading would still walk the namespace to update the
+      // quota counts, which is too costly to do on every short period.
+      lastLoadedTxnId = lastTxnId;
+      lastCaughtUpTimestamp = selectTimestamp;
+      return 0;
+    }
+
     // Write lock needs to be interruptible here because the 
     // transitionToActive RPC takes the write lock before calling
     // tailer.stop() -- so if we're not interruptible, it will
     // deadlock.
-    namesystem.writeLockInterruptibly();
     try {
-      FSImage image = namesystem.getFSImage();
-
-      long lastTxnId = image.getLastAppliedTxId();
-      
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("lastTxnId: " + lastTxnId);
+      namesystem.writeLockInterruptibly();
+    } catch (InterruptedException ie) {
+      for (EditLogInputStream stream : streams) {
+        IOUtils.closeStream(stream);
       }
-      Collection<EditLogInputStream> streams;
-      try {
-        streams = editLog.selectInputStreams(lastTxnId + 1, 0, null, false);
-      } catch (IOException ioe) {
-        // This is acceptable. If we try to tail edits in the middle of an edits
-        // log roll, i.e. the last one has been finalized but the new inprogress
-        // edits file hasn't been started yet.
-        LOG.warn("Edits tailer failed to find any streams. Will try again " +
-            "later.", ioe);
-        return;
-      }
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("edit streams to load from: " + streams.size());
-      }
-      
+      throw ie;
+    }
+    long editsLoaded = 0;
+    try {
       // Once we have streams to load, errors encountered are legitimate cause
       // for concern, so we don't catch them here. Simple errors reading from
       // disk are ignored.
-      long editsLoaded = 0;
       try {
         editsLoaded = image.loadEdits(streams, namesystem, null);
       } catch (EditLogInputException elie) {
@@ -239,9 +313,13 @@ void doTailEdits() throws IOException, InterruptedException {
         lastLoadTimestamp = now();
       }
       lastLoadedTxnId = image.getLastAppliedTxId();
+      if (lastLoadedTxnId >= availableTxnId) {
+        lastCaughtUpTimestamp = selectTimestamp;
+      }
     } finally {
       namesystem.writeUnlock();
     }
+    return editsLoaded;
   }
 
   /**
@@ -251,6 +329,24 @@ public long getLastLoadTimestamp() {
     return lastLoadTimestamp;
   }
 
+  /**
+   * @return the number of transactions which were available in the shared
+   *         edits when the edits were last selected, but are not applied yet.
+   */
+  public long getLagTxns() {
+    long applied = namesystem.getFSImage().getLastAppliedTxId();
+    return Math.max(0, lastAvailableTxnId - applied);
+  }
+
+  /**
+   * @return an upper bound, in msec, on how stale the namespace is: every
+   *         transaction which was available in the shared edits this long
+   *         ago has been applied.
+   */
+  public long getLagMillis() {
+    return now() - lastCaughtUpTimestamp;
+  }
+
   /**
    * @return true if the configured log roll period has elapsed.
    */
@@ -318,7 +414,12 @@ private void doWork() {
           if (!shouldRun) {
             break;
           }
-          doTailEdits();
+          long editsLoaded = doTailEdits(inProgressOk);
+          if (inProgressOk && editsLoaded >= maxTxnsPerRead) {
+            // The journals returned a full batch, so more edits are
+            // probably waiting. Read them without sleeping.
+            continue;
+          }
         } catch (EditLogInputException elie) {
           LOG.warn("Error while reading edits from disk. Will try again.", elie);
         } catch (InterruptedException ie) {
@@ -0,0 +1,200 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.ipc.AlignmentContext;
+import org.apache.hadoop.ipc.Client.ConnectionId;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RpcInvocationHandler;
+import org.apache.hadoop.ipc.StandbyException;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A {@link ConfiguredFailoverProxyProvider} which sends the read-only
+ * {@link ClientProtocol} calls to the standby NameNodes, and all other calls
+ * to the active one.
+ * <p>
+ * Every call carries the largest transaction id the client has seen from
+ * any NameNode, so a standby with dfs.ha.standby.reads.enabled rejects a read
+ * until it has applied that transaction. A client therefore always sees
+ * its own writes. Before its first read on a standby, the client calls
+ * {@link ClientProtocol#msync()} on the active so that it also sees the
+ * writes of the other clients made before it started. If a standby is
+ * still behind, rejects the read or cannot be reached, the call is sent to
+ * the next standby, and to the active after the last one. In the last two
+ * cases, reads skip that standby for
+ * dfs.client.failover.observer.backoff.millis.
+ */
+public class ObserverReadProxyProvider<T>
+    extends ConfiguredFailoverProxyProvider<T> {
+
+  private static final Log LOG =
+      LogFactory.getLog(ObserverReadProxyProvider.class);
+
+  /** The {@link ClientProtocol} methods which may be served by a standby. */
+  @VisibleForTesting
+  static final Set<String> READ_METHODS = ImmutableSet.of(
+      "getFileInfo", "getListing", "getBlockLocations");
+
+  private final ClientStateIdContext alignmentContext =
+      new ClientStateIdContext();
+  private final long observerBackoff;
+  private final T routingProxy;
+  /** Reads are not sent to the standby of each index before this time. */
+  private final AtomicLongArray observerDisabledUntil;
+  /** Whether the client has synchronized with the active. */
+  private volatile boolean msynced = false;
+
+  @SuppressWarnings("unchecked")
+  public ObserverReadProxyProvider(Configuration conf, URI uri,
+      Class<T> xface) {
+    super(conf, uri, xface);
+    this.observerBackoff = conf.getLong(
+        DFSConfigKeys.DFS_CLIENT_FAILOVER_OBSERVER_BACKOFF_KEY,
+        DFSConfigKeys.DFS_CLIENT_FAILOVER_OBSERVER_BACKOFF_DEFAULT);
+    this.observerDisabledUntil = new AtomicLongArray(getNumProxies());
+    // only the client protocol has reads a standby can serve
+    this.routingProxy = xface != ClientProtocol.class ? null :
+        (T) Proxy.newProxyInstance(xface.getClassLoader(),
+            new Class<?>[] { xface }, new ReadRoutingHandler());
+  }
+
+  @Override
+  protected AlignmentContext getAlignmentContext() {
+    return alignmentContext;
+  }
+
+  @Override
+  public synchronized T getProxy() {
+    return routingProxy != null ? routingProxy : super.getProxy();
+  }
+
+  /** @return the largest transaction id seen from the NameNodes. */
+  @VisibleForTesting
+  long getLastSeenStateId() {
+    return alignmentContext.getLastSeenStateId();
+  }
+
+  /**
+   * Synchronize with the active NameNode, unless already done, so that the
+   * state id sent to the standby covers the writes made before the client
+   * started, and not only its own.
+   * @return true if the client is synchronized with the active.
+   */
+  private boolean msyncIfNeeded() {
+    if (msynced) {
+      return true;
+    }
+    try {
+      ((ClientProtocol)getProxy(getCurrentProxyIndex())).msync();
+      msynced = true;
+    } catch (IOException e) {
+      // the read goes to the active, which fails over if needed
+      LOG.debug("Failed to msync with the active NameNode", e);
+    }
+    return msynced;
+  }
+
+  /** @return whether the client has synchronized with the active. */
+  @VisibleForTesting
+  boolean isMsynced() {
+    return msynced;
+  }
+
+  /**
+   * @return true if a read which failed on the standby of the given index
+   *         with the given exception should be sent to another NameNode.
+   */
+  private boolean shouldTryNextNameNode(int index, Throwable t) {
+    if (t instanceof RemoteException) {
+      final String className = ((RemoteException)t).getClassName();
+      if (StandbyLagException.class.getName().equals(className)) {
+        // the standby has not caught up with this client yet
+        return true;
+      } else if (!StandbyException.class.getName().equals(className)) {
+        // the answer to the read
+        return false;
+      }
+    } else if (!(t instanceof IOException)) {
+      return false;
+    }
+    LOG.info("Not sending reads to the standby NameNode " + index + " for "
+        + observerBackoff + " ms after a failed read: " + t);
+    observerDisabledUntil.set(index, Time.monotonicNow() + observerBackoff);
+    return true;
+  }
+
+  private class ReadRoutingHandler implements RpcInvocationHandler {
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws Throwable {
+      if (READ_METHODS.contains(method.getName())) {
+        // the standbys, starting after the active
+        final int activeIndex = getCurrentProxyIndex();
+        for (int i = 1; i < getNumProxies(); i++) {
+          final int observerIndex = (activeIndex + i) % getNumProxies();
+          if (Time.monotonicNow() < observerDisabledUntil.get(observerIndex)) {
+            continue;
+          }
+          if (!msyncIfNeeded()) {
+            break;
+          }
+          try {
+            return method.invoke(getProxy(observerIndex), args);
+          } catch (InvocationTargetException e) {
+            if (!shouldTryNextNameNode(observerIndex, e.getCause())) {
+              throw e.getCause();
+            }
+          }
+        }
+      }
+      try {
+        return method.invoke(getProxy(getCurrentProxyIndex()), args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+
+    @Override
+    public ConnectionId getConnectionId() {
+      return RPC.getConnectionIdForProxy(getProxy(getCurrentProxyIndex()));
+    }
+
+    @Override
+    public void close() throws IOException {
+      // the proxies are closed by the provider
+    }
+  }
+}
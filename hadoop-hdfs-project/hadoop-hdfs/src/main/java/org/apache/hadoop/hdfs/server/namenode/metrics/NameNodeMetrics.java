@@ -81,6 +81,10 @@ public class NameNodeMetrics {
   MutableCounterLong transactionsBatchedInSync;
   @Metric("Block report") MutableRate blockReport;
   MutableQuantiles[] blockReportQuantiles;
+  @Metric("Time the namesystem lock is held processing a block report")
+  MutableRate blockReportLockHold;
+  @Metric("Number of times block report processing released the lock")
+  MutableCounterLong blockReportLockYields;
   @Metric("Cache report") MutableRate cacheReport;
   MutableQuantiles[] cacheReportQuantiles;
 
@@ -248,6 +252,14 @@ public void addBlockReport(long latency) {
     }
   }
 
+  public void addBlockReportLockHold(long holdTime) {
+    blockReportLockHold.add(holdTime);
+  }
+
+  public void incrBlockReportLockYields(long yields) {
+    blockReportLockYields.incr(yields);
+  }
+
   public void addCacheBlockReport(long latency) {
     cacheReport.add(latency);
     for (MutableQuantiles q : cacheReportQuantiles) {
@@ -144,12 +144,15 @@ public DatanodeCommand blockReport(DatanodeRegistration registration,
    * @param            The datanode registration.
    * @param poolId     The block pool ID for the blocks.
    * @param blockIds   A list of block IDs.
+   * @param autoCachedBlockIds A list of the IDs of the blocks the DataNode
+   *                   cached on its own because they are read frequently.
    * @return           The DatanodeCommand.
    * @throws IOException
    */
   @Idempotent
   public DatanodeCommand cacheReport(DatanodeRegistration registration,
-      String poolId, List<Long> blockIds) throws IOException;
+      String poolId, List<Long> blockIds, List<Long> autoCachedBlockIds)
+      throws IOException;
 
   /**
    * blockReceivedAndDeleted() allows the DataNode to tell the NameNode about
@@ -39,6 +39,30 @@ public class NamespaceInfo extends StorageInfo {
   String  buildVersion;
   String blockPoolID = "";    // id of the block pool
   String softwareVersion;
+  long capabilities;
+
+  /**
+   * The optional features of a NameNode which the DataNodes only use once
+   * the NameNode reports them. A NameNode which does not report its
+   * capabilities supports none of them.
+   */
+  public enum Capability {
+    /**
+     * Block reports in the compact encoding of
+     * {@link org.apache.hadoop.hdfs.protocol.BlockListAsLongs}.
+     */
+    COMPACT_BLOCK_REPORTS;
+
+    private final long mask = 1L << ordinal();
+
+    public long getMask() {
+      return mask;
+    }
+  }
+
+  /** The capabilities of this NameNode. */
+  public static final long CAPABILITIES_SUPPORTED =
+      Capability.COMPACT_BLOCK_REPORTS.getMask();
 
   public NamespaceInfo() {
     super();
@@ -47,10 +71,18 @@ public NamespaceInfo() {
 
   public NamespaceInfo(int nsID, String clusterID, String bpID,
       long cT, String buildVersion, String softwareVersion) {
+    this(nsID, clusterID, bpID, cT, buildVersion, softwareVersion,
+        CAPABILITIES_SUPPORTED);
+  }
+
+  public NamespaceInfo(int nsID, String clusterID, String bpID,
+      long cT, String buildVersion, String softwareVersion,
+      long capabilities) {
     super(HdfsConstants.LAYOUT_VERSION, nsID, clusterID, cT);
     blockPoolID = bpID;
     this.buildVersion = buildVersion;
     this.softwareVersion = softwareVersion;
+    this.capabilities = capabilities;
   }
 
   public NamespaceInfo(int nsID, String clusterID, String bpID, 
@@ -71,6 +103,14 @@ public String getSoftwareVersion() {
     return softwareVersion;
   }
 
+  public long getCapabilities() {
+    return capabilities;
+  }
+
+  public boolean isCapabilitySupported(Capability capability) {
+    return (capabilities & capability.getMask()) != 0;
+  }
+
   @Override
   public String toString(){
     return super.toString() + ";bpid=" + blockPoolID;
@@ -27,17 +27,24 @@ public class StorageReport {
   private final long dfsUsed;
   private final long remaining;
   private final long blockPoolUsed;
+  private final boolean slow;
 
   public static final StorageReport[] EMPTY_ARRAY = {};
   
   public StorageReport(DatanodeStorage storage, boolean failed,
       long capacity, long dfsUsed, long remaining, long bpUsed) {
+    this(storage, failed, capacity, dfsUsed, remaining, bpUsed, false);
+  }
+
+  public StorageReport(DatanodeStorage storage, boolean failed,
+      long capacity, long dfsUsed, long remaining, long bpUsed, boolean slow) {
     this.storage = storage;
     this.failed = failed;
     this.capacity = capacity;
     this.dfsUsed = dfsUsed;
     this.remaining = remaining;
     this.blockPoolUsed = bpUsed;
+    this.slow = slow;
   }
 
   public DatanodeStorage getStorage() {
@@ -63,4 +70,9 @@ public long getRemaining() {
   public long getBlockPoolUsed() {
     return blockPoolUsed;
   }
+
+  /** @return true if the I/O latency of the storage is an outlier. */
+  public boolean isSlow() {
+    return slow;
+  }
 }
@@ -0,0 +1,268 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.io.IOUtils;
+
+/**
+ * An input stream reading a file of a known length over HTTP in ranges
+ * fetched in parallel, each over its own connection. Unlike
+ * {@link ByteRangeInputStream}, which reads a file over a single connection,
+ * the stream requests the next ranges of the file ahead of the reader, so
+ * that a large sequential read is not limited by the throughput of a single
+ * connection.
+ * <p>
+ * At most a given number of ranges are in flight at a time, each buffered in
+ * memory once fetched. A seek within the ranges in flight keeps them; any
+ * other seek drops them and the ranges are requested again from the new
+ * position. A positional read is served by its own range, without changing
+ * the ranges read ahead.
+ */
+@InterfaceAudience.Private
+public abstract class ParallelByteRangeInputStream extends FSInputStream {
+  private final ExecutorService executor;
+  private final long fileLength;
+  private final long rangeSize;
+  private final int maxRanges;
+
+  /** The ranges in flight, in the order of their offsets. */
+  private final LinkedList<Range> ranges = new LinkedList<Range>();
+  /** The offset of the next range to request. */
+  private long nextRangeOffset = 0;
+  private long pos = 0;
+  private boolean closed = false;
+
+  /**
+   * @param executor the executor fetching the ranges.
+   * @param fileLength the length of the file.
+   * @param rangeSize the length of the ranges.
+   * @param maxRanges the maximum number of ranges in flight.
+   */
+  public ParallelByteRangeInputStream(ExecutorService executor,
+      long fileLength, long rangeSize, int maxRanges) {
+    if (rangeSize <= 0 || rangeSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid range size " + rangeSize);
+    }
+    this.executor = executor;
+    this.fileLength = fileLength;
+    this.rangeSize = rangeSize;
+    this.maxRanges = Math.max(1, maxRanges);
+  }
+
+  /**
+   * Open a stream reading the given range of the file.
+   * @return a stream of exactly length bytes.
+   */
+  protected abstract InputStream openRange(long offset, long length)
+      throws IOException;
+
+  /** Read the given range of the file into the buffer. */
+  private void readRange(long offset, byte[] buf, int off, int len)
+      throws IOException {
+    final InputStream in = openRange(offset, len);
+    try {
+      IOUtils.readFully(in, buf, off, len);
+    } finally {
+      in.close();
+    }
+  }
+
+  /** A range of the file being fetched. */
+  private class Range implements Callable<byte[]> {
+    private final long offset;
+    private final int length;
+    private Future<byte[]> future;
+
+    Range(long offset, int length) {
+      this.offset = offset;
+      this.length = length;
+    }
+
+    boolean contains(long position) {
+      return offset <= position && position < offset + length;
+    }
+
+    @Override
+    public byte[] call() throws IOException {
+      final byte[] buf = new byte[length];
+      readRange(offset, buf, 0, length);
+      return buf;
+    }
+
+    /** Wait for the range to be fetched. */
+    byte[] getData() throws IOException {
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        throw (InterruptedIOException)new InterruptedIOException(
+            "Interrupted while reading the range at offset " + offset)
+            .initCause(e);
+      } catch (ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException)cause;
+        }
+        throw new IOException("Failed to read the range at offset " + offset,
+            cause);
+      }
+    }
+
+    void cancel() {
+      future.cancel(true);
+    }
+  }
+
+  /** Request ranges after the last range in flight, up to the maximum. */
+  private void scheduleRanges() {
+    while (ranges.size() < maxRanges && nextRangeOffset < fileLength) {
+      final Range r = new Range(nextRangeOffset,
+          (int)Math.min(rangeSize, fileLength - nextRangeOffset));
+      r.future = executor.submit(r);
+      ranges.add(r);
+      nextRangeOffset += r.length;
+    }
+  }
+
+  /** Drop the ranges in flight. */
+  private void cancelRanges() {
+    for (Range r : ranges) {
+      r.cancel();
+    }
+    ranges.clear();
+  }
+
+  /** @return the range containing the current position. */
+  private Range getCurrentRange() {
+    while (!ranges.isEmpty() && !ranges.getFirst().contains(pos)) {
+      ranges.removeFirst().cancel();
+    }
+    if (ranges.isEmpty()) {
+      nextRangeOffset = pos;
+    }
+    scheduleRanges();
+    return ranges.getFirst();
+  }
+
+  private void checkOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+  @Override
+  public synchronized int read() throws IOException {
+    final byte[] b = new byte[1];
+    return read(b, 0, 1) == -1 ? -1 : (b[0] & 0xff);
+  }
+
+  @Override
+  public synchronized int read(byte[] buf, int off, int len)
+      throws IOException {
+    checkOpen();
+    if (pos >= fileLength) {
+      return -1;
+    }
+    if (len == 0) {
+      return 0;
+    }
+    final Range r = getCurrentRange();
+    final byte[] data;
+    try {
+      data = r.getData();
+    } catch (IOException e) {
+      // The ranges are requested again by the next read.
+      cancelRanges();
+      throw e;
+    }
+    final int start = (int)(pos - r.offset);
+    final int n = Math.min(len, r.length - start);
+    System.arraycopy(data, start, buf, off, n);
+    pos += n;
+    if (!r.contains(pos)) {
+      ranges.removeFirst();
+      scheduleRanges();
+    }
+    return n;
+  }
+
+  @Override
+  public int read(long position, byte[] buf, int off, int len)
+      throws IOException {
+    synchronized (this) {
+      checkOpen();
+    }
+    if (position >= fileLength) {
+      return -1;
+    }
+    final int n = (int)Math.min(len, fileLength - position);
+    if (n > 0) {
+      readRange(position, buf, off, n);
+    }
+    return n;
+  }
+
+  @Override
+  public synchronized void seek(long targetPos) throws IOException {
+    checkOpen();
+    if (targetPos > fileLength) {
+      throw new IOException("Cannot seek after EOF");
+    }
+    if (targetPos < 0) {
+      throw new IOException("Cannot seek to negative offset");
+    }
+    pos = targetPos;
+  }
+
+  @Override
+  public synchronized long getPos() throws IOException {
+    return pos;
+  }
+
+  @Override
+  public boolean seekToNewSource(long targetPos) throws IOException {
+    return false;
+  }
+
+  @Override
+  public synchronized int available() throws IOException {
+    checkOpen();
+    if (ranges.isEmpty()) {
+      return 0;
+    }
+    final Range r = ranges.getFirst();
+    return r.contains(pos) && r.future.isDone() && !r.future.isCancelled() ?
+        (int)(r.offset + r.length - pos) : 0;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    cancelRanges();
+    closed = true;
+  }
+}
@@ -19,6 +19,7 @@
 package org.apache.hadoop.hdfs.web;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
@@ -33,6 +34,7 @@
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.security.authentication.client.AuthenticatedURL;
 import org.apache.hadoop.security.authentication.client.AuthenticationException;
@@ -175,6 +177,38 @@ public URLConnection openConnection(URL url, boolean isSpnego)
     }
   }
 
+  /**
+   * Release a connection whose response has been handled. The rest of the
+   * response is read and its stream closed, so that the underlying socket
+   * is kept alive and reused by the next connection to the same server, see
+   * the http.keepAlive system property. The connection is disconnected if
+   * the response cannot be read.
+   *
+   * @param conn
+   *          the connection to release
+   */
+  public static void release(HttpURLConnection conn) {
+    InputStream in = null;
+    try {
+      in = conn.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST ?
+          conn.getErrorStream() : conn.getInputStream();
+      if (in != null) {
+        final byte[] buf = new byte[4096];
+        while (in.read(buf) != -1) {
+          // drain the response
+        }
+      }
+    } catch (IOException e) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Failed to read the rest of the response of " + conn, e);
+      }
+      IOUtils.closeStream(in);
+      conn.disconnect();
+      return;
+    }
+    IOUtils.closeStream(in);
+  }
+
   /**
    * Sets timeout parameters on the given URLConnection.
    * 
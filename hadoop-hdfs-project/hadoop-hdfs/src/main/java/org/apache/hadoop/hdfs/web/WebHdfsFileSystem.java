@@ -33,6 +33,10 @@
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.ws.rs.core.MediaType;
 
@@ -97,6 +101,7 @@
 import org.apache.hadoop.security.authentication.client.AuthenticationException;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.security.token.TokenIdentifier;
+import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.Progressable;
 import org.mortbay.util.ajax.JSON;
 
@@ -129,6 +134,12 @@ public class WebHdfsFileSystem extends FileSystem
   private InetSocketAddress nnAddrs[];
   private int currentNNAddrIndex;
 
+  private int readParallelThreads;
+  private long readParallelRangeSize;
+  private int writeChunkSize;
+  /** The threads fetching the ranges of the files read in parallel. */
+  private ThreadPoolExecutor rangeReaderPool = null;
+
   /**
    * Return the protocol scheme for the FileSystem.
    * <p/>
@@ -164,6 +175,15 @@ public synchronized void initialize(URI uri, Configuration conf
     UserParam.setUserPattern(conf.get(DFSConfigKeys.DFS_WEBHDFS_USER_PATTERN_KEY, DFSConfigKeys.DFS_WEBHDFS_USER_PATTERN_DEFAULT));
     connectionFactory = URLConnectionFactory
         .newDefaultURLConnectionFactory(conf);
+    readParallelThreads = conf.getInt(
+        DFSConfigKeys.DFS_WEBHDFS_CLIENT_READ_PARALLEL_THREADS_KEY,
+        DFSConfigKeys.DFS_WEBHDFS_CLIENT_READ_PARALLEL_THREADS_DEFAULT);
+    readParallelRangeSize = conf.getLongBytes(
+        DFSConfigKeys.DFS_WEBHDFS_CLIENT_READ_PARALLEL_RANGE_SIZE_KEY,
+        DFSConfigKeys.DFS_WEBHDFS_CLIENT_READ_PARALLEL_RANGE_SIZE_DEFAULT);
+    writeChunkSize = conf.getInt(
+        DFSConfigKeys.DFS_WEBHDFS_CLIENT_WRITE_CHUNK_SIZE_KEY,
+        DFSConfigKeys.DFS_WEBHDFS_CLIENT_WRITE_CHUNK_SIZE_DEFAULT);
     initializeTokenAspect();
 
 
@@ -512,6 +532,14 @@ private void disconnect() {
       }
     }
 
+    /** Release the connection to be kept alive for the next request. */
+    private void release() {
+      if (conn != null) {
+        URLConnectionFactory.release(conn);
+        conn = null;
+      }
+    }
+
     AbstractRunner run() throws IOException {
       /**
        * Do the real work.
@@ -594,7 +622,7 @@ HttpURLConnection twoStepWrite() throws IOException {
       connect(false);
       validateResponse(HttpOpParam.TemporaryRedirectOp.valueOf(op), conn, false);
       final String redirect = conn.getHeaderField("Location");
-      disconnect();
+      release();
       checkRetry = false;
       
       //Step 2) Submit another Http request with the URL from the Location header with data.
@@ -602,7 +630,7 @@ HttpURLConnection twoStepWrite() throws IOException {
           redirect));
       conn.setRequestProperty("Content-Type",
           MediaType.APPLICATION_OCTET_STREAM);
-      conn.setChunkedStreamingMode(32 << 10); //32kB-chunk
+      conn.setChunkedStreamingMode(writeChunkSize);
       connect();
       return conn;
     }
@@ -612,6 +640,7 @@ FSDataOutputStream write(final int bufferSize) throws IOException {
     }
 
     void getResponse(boolean getJsonAndDisconnect) throws IOException {
+      boolean success = false;
       try {
         connect();
         final int code = conn.getResponseCode();
@@ -620,7 +649,7 @@ void getResponse(boolean getJsonAndDisconnect) throws IOException {
           final String redirect = conn.getHeaderField("Location");
           json = validateResponse(HttpOpParam.TemporaryRedirectOp.valueOf(op),
               conn, false);
-          disconnect();
+          release();
   
           checkRetry = false;
           conn = (HttpURLConnection) connectionFactory.openConnection(new URL(
@@ -632,9 +661,14 @@ void getResponse(boolean getJsonAndDisconnect) throws IOException {
         if (json == null && getJsonAndDisconnect) {
           json = jsonParse(conn, false);
         }
+        success = true;
       } finally {
         if (getJsonAndDisconnect) {
-          disconnect();
+          if (success) {
+            release();
+          } else {
+            disconnect();
+          }
         }
       }
     }
@@ -847,10 +881,16 @@ public void close() throws IOException {
         try {
           super.close();
         } finally {
+          boolean success = false;
           try {
             validateResponse(op, conn, true);
+            success = true;
           } finally {
-            conn.disconnect();
+            if (success) {
+              URLConnectionFactory.release(conn);
+            } else {
+              conn.disconnect();
+            }
           }
         }
       }
@@ -907,6 +947,13 @@ public FSDataInputStream open(final Path f, final int buffersize
     statistics.incrementReadOps(1);
     final HttpOpParam.Op op = GetOpParam.Op.OPEN;
     final URL url = toUrl(op, f, new BufferSizeParam(buffersize));
+    if (readParallelThreads > 0) {
+      final long length = getHdfsFileStatus(f).getLen();
+      if (length >= 2 * readParallelRangeSize) {
+        return new FSDataInputStream(
+            new ParallelOffsetUrlInputStream(url, length));
+      }
+    }
     return new FSDataInputStream(new OffsetUrlInputStream(
         new OffsetUrlOpener(url), new OffsetUrlOpener(null)));
   }
@@ -916,6 +963,57 @@ public void close() throws IOException {
     super.close();
     synchronized (this) {
       tokenAspect.removeRenewAction();
+      if (rangeReaderPool != null) {
+        rangeReaderPool.shutdownNow();
+        rangeReaderPool = null;
+      }
+    }
+  }
+
+  /**
+   * @return the thread pool fetching the ranges of the files read in
+   *         parallel, created on first use.
+   */
+  private synchronized ThreadPoolExecutor getRangeReaderPool() {
+    if (rangeReaderPool == null) {
+      rangeReaderPool = new ThreadPoolExecutor(readParallelThreads,
+          readParallelThreads, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(),
+          new Daemon.DaemonFactory() {
+            private final AtomicInteger threadIndex = new AtomicInteger(0);
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread t = super.newThread(r);
+              t.setName("webhdfsRangeReader-" + threadIndex.getAndIncrement());
+              return t;
+            }
+          });
+      rangeReaderPool.allowCoreThreadTimeOut(true);
+    }
+    return rangeReaderPool;
+  }
+
+  /**
+   * Read a file in ranges fetched in parallel. Each range is requested with
+   * its offset and length from the namenode, which redirects it to a
+   * datanode; the connections are kept alive between the ranges.
+   */
+  class ParallelOffsetUrlInputStream extends ParallelByteRangeInputStream {
+    private final URL url;
+
+    ParallelOffsetUrlInputStream(URL url, long fileLength) {
+      super(getRangeReaderPool(), fileLength, readParallelRangeSize,
+          readParallelThreads);
+      this.url = url;
+    }
+
+    @Override
+    protected InputStream openRange(long offset, long length)
+        throws IOException {
+      final URL rangeUrl = new URL(url + "&" + new OffsetParam(offset)
+          + "&" + new LengthParam(length));
+      return new URLRunner(GetOpParam.Op.OPEN, rangeUrl, false).run()
+          .conn.getInputStream();
     }
   }
 
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Compares the throughput of a single sequential reader verifying the
+ * checksums of the packets in the reading thread, and in the background,
+ * see dfs.client.read.checksum.pipeline.threadpool.size, for several chunk
+ * sizes, i.e. dfs.bytes-per-checksum.
+ * <p>
+ * Usage: BenchmarkChecksumPipeline [-mb N] [-threads N] [-reads N]
+ *            [-chunkSizes N,N,...]
+ * <p>
+ * For each chunk size, a single DataNode mini cluster is started and a file
+ * written, which is then read by a client of each mode in turn.
+ */
+public class BenchmarkChecksumPipeline extends Configured implements Tool {
+  private int mb = 512;
+  private int threads = 4;
+  private int reads = 3;
+  private int[] chunkSizes = new int[] { 512, 4096, 16384, 65536 };
+
+  private long read(FileSystem fs, Path path) throws Exception {
+    final byte[] buf = new byte[1024 * 1024];
+    long bytes = 0;
+    FSDataInputStream in = fs.open(path);
+    try {
+      for (int n; (n = in.read(buf)) > 0; ) {
+        bytes += n;
+      }
+    } finally {
+      in.close();
+    }
+    return bytes;
+  }
+
+  private void benchmark(int chunkSize) throws Exception {
+    Configuration conf = new HdfsConfiguration(getConf());
+    conf.setInt(DFSConfigKeys.DFS_BYTES_PER_CHECKSUM_KEY, chunkSize);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      final Path path = new Path("/benchmark");
+      DFSTestUtil.createFile(cluster.getFileSystem(), path,
+          (long)mb * 1024 * 1024, (short)1, 0L);
+      for (int numThreads : new int[] { 0, threads }) {
+        Configuration clientConf = new Configuration(conf);
+        clientConf.setInt(
+            DFSConfigKeys.DFS_CLIENT_READ_CHECKSUM_PIPELINE_THREADPOOL_SIZE_KEY,
+            numThreads);
+        FileSystem fs = FileSystem.newInstance(cluster.getURI(), clientConf);
+        try {
+          read(fs, path); // warm up
+          long bytes = 0;
+          long start = Time.monotonicNow();
+          for (int i = 0; i < reads; i++) {
+            bytes += read(fs, path);
+          }
+          long elapsed = Math.max(1, Time.monotonicNow() - start);
+          System.out.println("Chunk size " + chunkSize + ", " +
+              (numThreads > 0 ? "pipelined" : "inline") + " verification: " +
+              (bytes >> 20) + " MB in " + elapsed + " ms, " +
+              ((bytes >> 20) * 1000 / elapsed) + " MB/s");
+        } finally {
+          fs.close();
+        }
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-mb")) {
+        mb = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-threads")) {
+        threads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-reads")) {
+        reads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-chunkSizes")) {
+        String[] sizes = args[++i].split(",");
+        chunkSizes = new int[sizes.length];
+        for (int j = 0; j < sizes.length; j++) {
+          chunkSizes[j] = Integer.parseInt(sizes[j]);
+        }
+      } else {
+        System.err.println("Usage: BenchmarkChecksumPipeline [-mb N]" +
+            " [-threads N] [-reads N] [-chunkSizes N,N,...]");
+        return -1;
+      }
+    }
+    for (int chunkSize : chunkSizes) {
+      benchmark(chunkSize);
+    }
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new HdfsConfiguration(),
+        new BenchmarkChecksumPipeline(), args));
+  }
+}
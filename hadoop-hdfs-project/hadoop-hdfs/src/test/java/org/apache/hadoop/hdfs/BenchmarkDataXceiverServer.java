@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Compares the thread-per-connection and the event-driven DataXceiverServer
+ * with many concurrent short positional reads, which is the access pattern
+ * of random-read workloads such as HBase.
+ * <p>
+ * Usage: BenchmarkDataXceiverServer [-threads N] [-reads N] [-size bytes]
+ * <p>
+ * For each server, a single DataNode mini cluster is started and every
+ * reader thread opens its own stream, so that each keeps its own connections
+ * to the DataNode alive between reads. The benchmark prints the read rate
+ * and the peak number of threads in the process.
+ */
+public class BenchmarkDataXceiverServer extends Configured implements Tool {
+  private static final Path TEST_FILE = new Path("/benchmark");
+  private static final int READ_SIZE = 4096;
+
+  private int numThreads = 200;
+  private int numReads = 200;
+  private long fileSize = 16 * 1024 * 1024;
+
+  private void benchmark(boolean nio) throws Exception {
+    Configuration conf = new HdfsConfiguration(getConf());
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_TRANSFER_SERVER_NIO_KEY, nio);
+    // Keep every reader's connection cached on the client.
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_SOCKET_CACHE_CAPACITY_KEY,
+        numThreads * 2);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      final FileSystem fs = cluster.getFileSystem();
+      DFSTestUtil.createFile(fs, TEST_FILE, fileSize, (short)1, 0L);
+
+      final AtomicLong failures = new AtomicLong();
+      Thread[] readers = new Thread[numThreads];
+      for (int i = 0; i < readers.length; i++) {
+        final long seed = i;
+        readers[i] = new Thread() {
+          @Override
+          public void run() {
+            Random r = new Random(seed);
+            byte[] buf = new byte[READ_SIZE];
+            try {
+              FSDataInputStream in = fs.open(TEST_FILE);
+              try {
+                for (int j = 0; j < numReads; j++) {
+                  long pos = (long)(r.nextDouble() * (fileSize - READ_SIZE));
+                  in.readFully(pos, buf);
+                }
+              } finally {
+                in.close();
+              }
+            } catch (Exception e) {
+              e.printStackTrace();
+              failures.incrementAndGet();
+            }
+          }
+        };
+      }
+
+      ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      threads.resetPeakThreadCount();
+      long start = Time.monotonicNow();
+      for (Thread t : readers) {
+        t.start();
+      }
+      for (Thread t : readers) {
+        t.join();
+      }
+      long elapsed = Math.max(1, Time.monotonicNow() - start);
+      long reads = (long)numThreads * numReads;
+      System.out.println((nio ? "Event-driven" : "Thread-per-connection") +
+          " server: " + reads + " reads in " + elapsed + " ms, " +
+          (reads * 1000 / elapsed) + " reads/s, " + failures.get() +
+          " failed readers, peak threads " + threads.getPeakThreadCount());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-threads")) {
+        numThreads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-reads")) {
+        numReads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-size")) {
+        fileSize = Long.parseLong(args[++i]);
+      } else {
+        System.err.println("Usage: BenchmarkDataXceiverServer" +
+            " [-threads N] [-reads N] [-size bytes]");
+        return -1;
+      }
+    }
+    benchmark(false);
+    benchmark(true);
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new HdfsConfiguration(),
+        new BenchmarkDataXceiverServer(), args));
+  }
+}
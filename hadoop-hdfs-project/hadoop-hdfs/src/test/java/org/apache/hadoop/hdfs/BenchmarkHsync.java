@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.test.MetricsAsserts;
+import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Compares syncing in the DataNode threads receiving the blocks and group
+ * commit, see dfs.datanode.sync.group.commit.enabled, with many threads
+ * writing small records and calling hsync, which is the access pattern of
+ * write-ahead logs such as the one of HBase.
+ * <p>
+ * Usage: BenchmarkHsync [-files N] [-threads N] [-syncs N] [-record bytes]
+ * <p>
+ * For each mode, a three DataNode mini cluster is started and the writer
+ * threads share the files, several threads writing to each file. The
+ * benchmark prints the hsync rate and the number of fsyncs the DataNodes
+ * saved by coalescing the sync requests.
+ */
+public class BenchmarkHsync extends Configured implements Tool {
+  private int numFiles = 8;
+  private int numThreads = 64;
+  private int numSyncs = 200;
+  private int recordSize = 512;
+
+  private void benchmark(boolean groupCommit) throws Exception {
+    Configuration conf = new HdfsConfiguration(getConf());
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_SYNC_GROUP_COMMIT_ENABLED_KEY,
+        groupCommit);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(3).build();
+    try {
+      final FileSystem fs = cluster.getFileSystem();
+      final FSDataOutputStream[] outs = new FSDataOutputStream[numFiles];
+      for (int i = 0; i < outs.length; i++) {
+        outs[i] = fs.create(new Path("/benchmark" + i), (short)3);
+      }
+
+      final AtomicLong failures = new AtomicLong();
+      Thread[] writers = new Thread[numThreads];
+      for (int i = 0; i < writers.length; i++) {
+        final FSDataOutputStream out = outs[i % numFiles];
+        writers[i] = new Thread() {
+          @Override
+          public void run() {
+            byte[] record = new byte[recordSize];
+            try {
+              for (int j = 0; j < numSyncs; j++) {
+                synchronized (out) {
+                  out.write(record);
+                }
+                out.hsync();
+              }
+            } catch (Exception e) {
+              e.printStackTrace();
+              failures.incrementAndGet();
+            }
+          }
+        };
+      }
+
+      long start = Time.monotonicNow();
+      for (Thread t : writers) {
+        t.start();
+      }
+      for (Thread t : writers) {
+        t.join();
+      }
+      long elapsed = Math.max(1, Time.monotonicNow() - start);
+      for (FSDataOutputStream out : outs) {
+        out.close();
+      }
+      long coalesced = 0;
+      for (DataNode dn : cluster.getDataNodes()) {
+        coalesced += MetricsAsserts.getLongCounter("FsyncsCoalesced",
+            MetricsAsserts.getMetrics(dn.getMetrics().name()));
+      }
+      long syncs = (long)numThreads * numSyncs;
+      System.out.println((groupCommit ? "Group commit" : "Synchronous sync") +
+          ": " + syncs + " hsyncs in " + elapsed + " ms, " +
+          (syncs * 1000 / elapsed) + " hsyncs/s, " + coalesced +
+          " coalesced fsyncs, " + failures.get() + " failed writers");
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-files")) {
+        numFiles = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-threads")) {
+        numThreads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-syncs")) {
+        numSyncs = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-record")) {
+        recordSize = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println("Usage: BenchmarkHsync" +
+            " [-files N] [-threads N] [-syncs N] [-record bytes]");
+        return -1;
+      }
+    }
+    benchmark(false);
+    benchmark(true);
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new HdfsConfiguration(), new BenchmarkHsync(),
+        args));
+  }
+}
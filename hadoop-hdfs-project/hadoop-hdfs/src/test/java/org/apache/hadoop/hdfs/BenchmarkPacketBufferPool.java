@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Compares writing with and without pooling the packet buffers, see
+ * dfs.client.write.packet.pool.size, with many streams of a client writing
+ * large files concurrently.
+ * <p>
+ * Usage: BenchmarkPacketBufferPool [-streams N] [-mb N] [-poolSize N]
+ * <p>
+ * For each mode, a single DataNode mini cluster is started. The benchmark
+ * prints the write throughput, the time spent in garbage collection and the
+ * hits of the pool.
+ */
+public class BenchmarkPacketBufferPool extends Configured implements Tool {
+  private int numStreams = 8;
+  private int mbPerStream = 256;
+  private int poolSize = DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_POOL_SIZE_DEFAULT;
+
+  private static long getGcMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean gc :
+        ManagementFactory.getGarbageCollectorMXBeans()) {
+      millis += Math.max(0, gc.getCollectionTime());
+    }
+    return millis;
+  }
+
+  private void benchmark(int poolSize) throws Exception {
+    Configuration conf = new HdfsConfiguration(getConf());
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_POOL_SIZE_KEY, poolSize);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      final DistributedFileSystem fs = cluster.getFileSystem();
+      final AtomicLong failures = new AtomicLong();
+      Thread[] writers = new Thread[numStreams];
+      for (int i = 0; i < writers.length; i++) {
+        final Path path = new Path("/benchmark" + i);
+        writers[i] = new Thread() {
+          @Override
+          public void run() {
+            byte[] buf = new byte[1024 * 1024];
+            try {
+              FSDataOutputStream out = fs.create(path, (short)1);
+              try {
+                for (int j = 0; j < mbPerStream; j++) {
+                  out.write(buf);
+                }
+              } finally {
+                out.close();
+              }
+            } catch (Exception e) {
+              e.printStackTrace();
+              failures.incrementAndGet();
+            }
+          }
+        };
+      }
+
+      long gcStart = getGcMillis();
+      long start = Time.monotonicNow();
+      for (Thread t : writers) {
+        t.start();
+      }
+      for (Thread t : writers) {
+        t.join();
+      }
+      long elapsed = Math.max(1, Time.monotonicNow() - start);
+      long gcMillis = getGcMillis() - gcStart;
+      PacketBufferPool pool = fs.getClient().getPacketBufferPool();
+      long mb = (long)numStreams * mbPerStream;
+      System.out.println("Pool size " + poolSize + ": " + mb + " MB in " +
+          elapsed + " ms, " + (mb * 1000 / elapsed) + " MB/s, " + gcMillis +
+          " ms in GC, " + pool.getHits() + " pool hits, " + pool.getMisses() +
+          " pool misses, " + failures.get() + " failed writers");
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-streams")) {
+        numStreams = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-mb")) {
+        mbPerStream = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-poolSize")) {
+        poolSize = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println("Usage: BenchmarkPacketBufferPool" +
+            " [-streams N] [-mb N] [-poolSize N]");
+        return -1;
+      }
+    }
+    benchmark(0);
+    benchmark(poolSize);
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new HdfsConfiguration(),
+        new BenchmarkPacketBufferPool(), args));
+  }
+}
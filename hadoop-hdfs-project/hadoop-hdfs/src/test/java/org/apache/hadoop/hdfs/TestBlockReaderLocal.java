@@ -23,12 +23,15 @@
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.util.EnumSet;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.hadoop.fs.ChecksumException;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.ReadOption;
+import org.apache.hadoop.hdfs.client.ClientMmap;
 import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
 import org.apache.hadoop.hdfs.client.ShortCircuitCache;
 import org.apache.hadoop.hdfs.client.ShortCircuitReplica;
@@ -528,6 +531,47 @@ public void testBlockReaderLocalReadCorruptNoChecksumNoReadahead()
     runBlockReaderLocalTest(new TestBlockReaderLocalReadCorrupt(), false, 0);
   }
 
+  private static class TestBlockReaderLocalMmapOfVerifiedReplica
+      extends BlockReaderLocalTest {
+    private boolean usingChecksums;
+
+    @Override
+    public void setup(File blockFile, boolean usingChecksums)
+        throws IOException {
+      this.usingChecksums = usingChecksums;
+    }
+
+    @Override
+    public void doTest(BlockReaderLocal reader, byte original[])
+        throws IOException {
+      final EnumSet<ReadOption> opts = EnumSet.noneOf(ReadOption.class);
+      if (usingChecksums) {
+        Assert.assertNull(reader.getClientMmap(opts));
+      }
+      byte buf[] = new byte[TEST_LENGTH];
+      reader.readFully(buf, 0, TEST_LENGTH);
+      assertArrayRegionsEqual(original, 0, buf, 0, TEST_LENGTH);
+      // The whole replica has been read, so it can be mmapped.
+      ClientMmap clientMmap = reader.getClientMmap(opts);
+      Assert.assertNotNull(clientMmap);
+      clientMmap.unref();
+    }
+  }
+
+  @Test
+  public void testBlockReaderLocalMmapOfVerifiedReplica()
+      throws IOException {
+    runBlockReaderLocalTest(new TestBlockReaderLocalMmapOfVerifiedReplica(),
+        true, DFSConfigKeys.DFS_DATANODE_READAHEAD_BYTES_DEFAULT);
+  }
+
+  @Test
+  public void testBlockReaderLocalMmapOfVerifiedReplicaNoReadahead()
+      throws IOException {
+    runBlockReaderLocalTest(new TestBlockReaderLocalMmapOfVerifiedReplica(),
+        true, 0);
+  }
+
   private static class TestBlockReaderLocalWithMlockChanges
       extends BlockReaderLocalTest {
     @Override
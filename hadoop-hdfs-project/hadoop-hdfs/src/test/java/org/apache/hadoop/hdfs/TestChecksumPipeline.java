@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.junit.Test;
+
+/**
+ * Test receiving and verifying the next packets of the remote block readers
+ * in the background, see dfs.client.read.checksum.pipeline.threadpool.size.
+ */
+public class TestChecksumPipeline {
+  private static final int BLOCK_SIZE = 1024 * 1024;
+  private static final int FILE_LEN = 3 * BLOCK_SIZE + 123;
+
+  private static Configuration newConf() {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setInt(
+        DFSConfigKeys.DFS_CLIENT_READ_CHECKSUM_PIPELINE_THREADPOOL_SIZE_KEY, 2);
+    conf.setInt(DFSConfigKeys.DFS_BYTES_PER_CHECKSUM_KEY, 512);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    return conf;
+  }
+
+  /** Sequential and positional reads of all sizes return the file data. */
+  @Test(timeout=120000)
+  public void testPipelinedRead() throws Exception {
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(newConf())
+        .numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      final FileSystem fs = cluster.getFileSystem();
+      final Path file = new Path("/file");
+      DFSTestUtil.createFile(fs, file, FILE_LEN, (short)1, 1L);
+      final byte[] expected =
+          DFSTestUtil.calculateFileContentsFromSeed(1L, FILE_LEN);
+
+      final Random random = new Random();
+      final FSDataInputStream in = fs.open(file);
+      try {
+        // sequential reads of varying lengths
+        final byte[] actual = new byte[FILE_LEN];
+        int pos = 0;
+        while (pos < FILE_LEN) {
+          final int n = in.read(actual, pos,
+              Math.min(FILE_LEN - pos, 1 + random.nextInt(100000)));
+          assertTrue(n > 0);
+          pos += n;
+        }
+        assertArrayEquals(expected, actual);
+
+        // positional reads spanning packets and blocks
+        for (int i = 0; i < 20; i++) {
+          final int offset = random.nextInt(FILE_LEN);
+          final byte[] buf =
+              new byte[Math.min(FILE_LEN - offset, random.nextInt(300000))];
+          in.readFully(offset, buf);
+          for (int j = 0; j < buf.length; j++) {
+            assertEquals(expected[offset + j], buf[j]);
+          }
+        }
+      } finally {
+        in.close();
+      }
+
+      // A stream closed in the middle of a block.
+      final FSDataInputStream partial = fs.open(file);
+      try {
+        final byte[] buf = new byte[200000];
+        partial.readFully(buf);
+      } finally {
+        partial.close();
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  /** A corrupt replica is detected, and the other replica read. */
+  @Test(timeout=120000)
+  public void testCorruptReplica() throws Exception {
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(newConf())
+        .numDataNodes(2).build();
+    try {
+      cluster.waitActive();
+      final DistributedFileSystem fs = cluster.getFileSystem();
+      final Path file = new Path("/file");
+      DFSTestUtil.createFile(fs, file, BLOCK_SIZE, (short)2, 1L);
+      final LocatedBlock block = fs.getClient().getLocatedBlocks(
+          file.toString(), 0).get(0);
+      final ExtendedBlock b = block.getBlock();
+      final int dnIndex = cluster.getDataNodes().indexOf(
+          cluster.getDataNode(block.getLocations()[0].getIpcPort()));
+      assertTrue(MiniDFSCluster.corruptReplica(dnIndex, b));
+
+      for (int i = 0; i < 3; i++) {
+        assertArrayEquals(
+            DFSTestUtil.calculateFileContentsFromSeed(1L, BLOCK_SIZE),
+            DFSTestUtil.readFileBuffer(fs, file));
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
@@ -35,6 +35,7 @@
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileChecksum;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.MiniDFSCluster.DataNodeProperties;
@@ -204,6 +205,63 @@ public Boolean get() {
     IOUtils.closeStream(stm);
   }
   
+  /**
+   * Test that many ops can be sent one after the other over a single
+   * cached connection.
+   */
+  @Test(timeout=30000)
+  public void testManyOpsOnCachedConnection() throws Exception {
+    Configuration clientConf = new Configuration(conf);
+    clientConf.set(DFS_CLIENT_CONTEXT, "testManyOpsOnCachedConnection");
+    DistributedFileSystem fs =
+        (DistributedFileSystem)FileSystem.get(cluster.getURI(),
+            clientConf);
+    PeerCache peerCache = ClientContext.getFromConf(clientConf).getPeerCache();
+    DFSTestUtil.createFile(fs, TEST_FILE, 1024L, (short)1, 0L);
+
+    for (int i = 0; i < 20; i++) {
+      DFSTestUtil.readFile(fs, TEST_FILE);
+      assertEquals(1, peerCache.size());
+      assertXceiverCount(1);
+    }
+  }
+
+  /**
+   * Test that the block checksum requests are sent over the connections
+   * cached by the reads, and the other way around.
+   */
+  @Test(timeout=30000)
+  public void testChecksumOnCachedConnection() throws Exception {
+    Configuration clientConf = new Configuration(conf);
+    clientConf.set(DFS_CLIENT_CONTEXT, "testChecksumOnCachedConnection");
+    DistributedFileSystem fs =
+        (DistributedFileSystem)FileSystem.get(cluster.getURI(),
+            clientConf);
+    PeerCache peerCache = ClientContext.getFromConf(clientConf).getPeerCache();
+    DFSTestUtil.createFile(fs, TEST_FILE, 1024L, (short)1, 0L);
+
+    DFSTestUtil.readFile(fs, TEST_FILE);
+    assertEquals(1, peerCache.size());
+    final long hits = peerCache.getHits();
+    final FileChecksum checksum = fs.getFileChecksum(TEST_FILE);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(checksum, fs.getFileChecksum(TEST_FILE));
+      assertEquals(1, peerCache.size());
+    }
+    assertEquals(hits + 11, peerCache.getHits());
+
+    DFSTestUtil.readFile(fs, TEST_FILE);
+    assertEquals(1, peerCache.size());
+    assertEquals(hits + 12, peerCache.getHits());
+    // The xceiver may still be handing the connection over to the server.
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return getXceiverCountWithoutServer() == 1;
+      }
+    }, 100, 10000);
+  }
+
   @Test(timeout=30000)
   public void testManyClosedSocketsInCache() throws Exception {
     // Make a small file
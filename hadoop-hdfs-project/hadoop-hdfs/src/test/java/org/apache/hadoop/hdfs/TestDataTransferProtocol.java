@@ -187,7 +187,7 @@ private void testWrite(ExtendedBlock block, BlockConstructionStage stage, long n
     sender.writeBlock(block, BlockTokenSecretManager.DUMMY_TOKEN, "cl",
         new DatanodeInfo[1], null, stage,
         0, block.getNumBytes(), block.getNumBytes(), newGS,
-        DEFAULT_CHECKSUM, CachingStrategy.newDefaultStrategy());
+        DEFAULT_CHECKSUM, CachingStrategy.newDefaultStrategy(), false);
     if (eofExcepted) {
       sendResponse(Status.ERROR, null, null, recvOut);
       sendRecvData(description, true);
@@ -386,7 +386,7 @@ public void testDataTransferProtocol() throws IOException {
         new DatanodeInfo[1], null,
         BlockConstructionStage.PIPELINE_SETUP_CREATE,
         0, 0L, 0L, 0L,
-        badChecksum, CachingStrategy.newDefaultStrategy());
+        badChecksum, CachingStrategy.newDefaultStrategy(), false);
     recvBuf.reset();
     sendResponse(Status.ERROR, null, null, recvOut);
     sendRecvData("wrong bytesPerChecksum while writing", true);
@@ -397,7 +397,7 @@ public void testDataTransferProtocol() throws IOException {
         BlockTokenSecretManager.DUMMY_TOKEN, "cl",
         new DatanodeInfo[1], null,
         BlockConstructionStage.PIPELINE_SETUP_CREATE, 0, 0L, 0L, 0L,
-        DEFAULT_CHECKSUM, CachingStrategy.newDefaultStrategy());
+        DEFAULT_CHECKSUM, CachingStrategy.newDefaultStrategy(), false);
 
     PacketHeader hdr = new PacketHeader(
       4,     // size of packet
@@ -420,7 +420,7 @@ public void testDataTransferProtocol() throws IOException {
         BlockTokenSecretManager.DUMMY_TOKEN, "cl",
         new DatanodeInfo[1], null,
         BlockConstructionStage.PIPELINE_SETUP_CREATE, 0, 0L, 0L, 0L,
-        DEFAULT_CHECKSUM, CachingStrategy.newDefaultStrategy());
+        DEFAULT_CHECKSUM, CachingStrategy.newDefaultStrategy(), false);
 
     hdr = new PacketHeader(
       8,     // size of packet
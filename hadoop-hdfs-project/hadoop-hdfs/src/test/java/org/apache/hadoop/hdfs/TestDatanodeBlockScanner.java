@@ -18,6 +18,8 @@
 
 package org.apache.hadoop.hdfs;
 
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -47,10 +49,13 @@
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.util.Time;
 import org.apache.log4j.Level;
 import org.junit.Test;
 
+import com.google.common.base.Supplier;
+
 /**
  * This test verifies that block verification occurs on the datanode
  */
@@ -498,4 +503,42 @@ public void testDuplicateScans() throws Exception {
       cluster.shutdown();
     }
   }
+
+  /**
+   * A block marked as suspect is verified again without waiting for its
+   * next periodic verification.
+   */
+  @Test
+  public void testSuspectBlockVerified() throws Exception {
+    long startTime = Time.now();
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(new Configuration())
+        .numDataNodes(1).build();
+    FileSystem fs = null;
+    try {
+      fs = cluster.getFileSystem();
+      final DataNode dataNode = cluster.getDataNodes().get(0);
+      Path fileName = new Path("/test");
+      DFSTestUtil.createFile(fs, fileName, 1024, (short) 1, 1000L);
+      waitForVerification(dataNode.getInfoPort(), fs, fileName, 1, startTime,
+          TIMEOUT);
+      final ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, fileName);
+      final long scanTimeBefore =
+          DataNodeTestUtils.getLatestScanTime(dataNode, block);
+      Thread.sleep(10);
+
+      dataNode.getBlockScanner().markSuspectBlock(block);
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return DataNodeTestUtils.getLatestScanTime(dataNode, block)
+              > scanTimeBefore;
+        }
+      }, 100, (int)TIMEOUT);
+      assertTrue(getLongCounter("BytesVerified",
+          getMetrics(dataNode.getMetrics().name())) >= 1024);
+    } finally {
+      IOUtils.closeStream(fs);
+      cluster.shutdown();
+    }
+  }
 }
@@ -17,19 +17,26 @@
  */
 package org.apache.hadoop.hdfs;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.impl.Log4JLogger;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream.SyncFlag;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.log4j.Level;
@@ -316,6 +323,62 @@ public void testPipelineHeartbeat() throws Exception {
     }
   }
 
+  /**
+   * The asynchronous flushes and syncs of successive batches of writes
+   * complete once their data is acknowledged, across block boundaries.
+   */
+  @Test
+  public void testHsyncAsync() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    int customPerChecksumSize = 512;
+    int customBlockSize = customPerChecksumSize * 3;
+    conf.setInt(DFSConfigKeys.DFS_BYTES_PER_CHECKSUM_KEY, customPerChecksumSize);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, customBlockSize);
+    final int batchLen = 100;
+    final int numBatches = 40;
+    final byte[] fileContents = AppendTestUtil.initBuffer(batchLen * numBatches);
+    final Path p = new Path("/hsync-async");
+
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(2).build();
+    try {
+      DistributedFileSystem fs = cluster.getFileSystem();
+      HdfsDataOutputStream stm = (HdfsDataOutputStream)fs.create(p, true,
+          4096, (short)2, customBlockSize);
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int i = 0; i < numBatches; i++) {
+        stm.write(fileContents, i * batchLen, batchLen);
+        futures.add(i % 2 == 0 ? stm.hsyncAsync() : stm.hflushAsync());
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+      // The flushed data is visible to new readers.
+      byte[] buf = new byte[fileContents.length];
+      FSDataInputStream in = fs.open(p);
+      try {
+        in.readFully(0, buf);
+      } finally {
+        in.close();
+      }
+      assertArrayEquals(fileContents, buf);
+
+      // Nothing was written since: the flush is already complete.
+      assertTrue(stm.hflushAsync().isDone());
+      stm.close();
+      try {
+        stm.hsyncAsync();
+        fail("flushed a closed stream");
+      } catch (ClosedChannelException e) {
+        // expected
+      }
+      AppendTestUtil.checkFullFile(fs, p, fileContents.length,
+          fileContents, "Failed to flush asynchronously");
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   @Test
   public void testHFlushInterrupted() throws Exception {
     final int DATANODE_NUM = 2;
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.junit.Test;
+
+/**
+ * Test the thresholds and the budget of the hedged reads, see
+ * {@link HedgedReadPolicy}.
+ */
+public class TestHedgedReadPolicy {
+  private static final long FIXED_THRESHOLD = 500;
+
+  private static Configuration newConf(boolean adaptive, boolean perDatanode) {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_ENABLED_KEY, adaptive);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_PER_DATANODE_KEY,
+        perDatanode);
+    return conf;
+  }
+
+  @Test
+  public void testHistogramPercentile() {
+    final HedgedReadPolicy.LatencyHistogram h =
+        new HedgedReadPolicy.LatencyHistogram();
+    for (int i = 0; i < 90; i++) {
+      h.add(10);
+    }
+    for (int i = 0; i < 10; i++) {
+      h.add(1000);
+    }
+    assertEquals(100, h.getCount());
+    final long median = h.getPercentile(0.5);
+    assertTrue("median=" + median, median >= 10 && median <= 12);
+    final long p99 = h.getPercentile(0.99);
+    assertTrue("p99=" + p99, p99 >= 1000 && p99 <= 1200);
+    // zero latencies go to the first bucket
+    h.add(0);
+    assertTrue(h.getPercentile(0) >= 1);
+  }
+
+  @Test
+  public void testAdaptiveThreshold() {
+    final DatanodeInfo dn1 = DFSTestUtil.getLocalDatanodeInfo(1001);
+    final DatanodeInfo dn2 = DFSTestUtil.getLocalDatanodeInfo(1002);
+
+    // The fixed threshold is used if the policy is not adaptive.
+    HedgedReadPolicy policy = new HedgedReadPolicy(newConf(false, false));
+    for (int i = 0; i < 2 * HedgedReadPolicy.MIN_SAMPLES; i++) {
+      policy.addLatency(dn1, 20);
+    }
+    assertEquals(FIXED_THRESHOLD,
+        policy.getThresholdMillis(dn1, FIXED_THRESHOLD));
+
+    // ... or until enough reads are observed.
+    policy = new HedgedReadPolicy(newConf(true, false));
+    policy.addLatency(dn1, 20);
+    assertEquals(FIXED_THRESHOLD,
+        policy.getThresholdMillis(dn1, FIXED_THRESHOLD));
+    for (int i = 0; i < HedgedReadPolicy.MIN_SAMPLES; i++) {
+      policy.addLatency(dn1, 20);
+    }
+    long threshold = policy.getThresholdMillis(dn2, FIXED_THRESHOLD);
+    assertTrue("threshold=" + threshold, threshold >= 20 && threshold <= 24);
+
+    // The DataNodes have their own thresholds.
+    policy = new HedgedReadPolicy(newConf(true, true));
+    for (int i = 0; i < HedgedReadPolicy.MIN_SAMPLES; i++) {
+      policy.addLatency(dn1, 20);
+      policy.addLatency(dn2, 200);
+    }
+    threshold = policy.getThresholdMillis(dn1, FIXED_THRESHOLD);
+    assertTrue("threshold=" + threshold, threshold >= 20 && threshold <= 24);
+    threshold = policy.getThresholdMillis(dn2, FIXED_THRESHOLD);
+    assertTrue("threshold=" + threshold, threshold >= 200 && threshold <= 240);
+    // An unknown DataNode uses the threshold of the client.
+    threshold = policy.getThresholdMillis(
+        DFSTestUtil.getLocalDatanodeInfo(1003), FIXED_THRESHOLD);
+    assertTrue("threshold=" + threshold, threshold >= 200 && threshold <= 240);
+  }
+
+  @Test
+  public void testBudget() {
+    final Configuration conf = newConf(true, false);
+    conf.setFloat(DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_MAX_FRACTION_KEY,
+        0.1f);
+    final HedgedReadPolicy policy = new HedgedReadPolicy(conf);
+    int hedged = 0;
+    for (int i = 0; i < 100; i++) {
+      policy.addRead();
+      if (policy.tryHedge()) {
+        hedged++;
+      }
+    }
+    assertEquals(10, hedged);
+
+    // By default every read may be hedged, once.
+    final HedgedReadPolicy unlimited =
+        new HedgedReadPolicy(new HdfsConfiguration());
+    for (int i = 0; i < 100; i++) {
+      unlimited.addRead();
+      assertTrue(unlimited.tryHedge());
+    }
+    assertFalse(unlimited.tryHedge());
+  }
+}
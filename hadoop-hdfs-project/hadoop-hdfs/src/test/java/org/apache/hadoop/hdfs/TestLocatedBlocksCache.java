@@ -0,0 +1,267 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Test;
+
+/**
+ * Test caching the block locations of the closed files, see
+ * {@link LocatedBlocksCache}.
+ */
+public class TestLocatedBlocksCache {
+  private static final String NN_METRICS = "NameNodeActivity";
+  private static final String NS = "hdfs://ns1";
+  private static final String USER = "alice";
+
+  private static LocatedBlocks newLocatedBlocks(boolean complete) {
+    return new LocatedBlocks(0, !complete, new ArrayList<LocatedBlock>(),
+        null, complete);
+  }
+
+  @Test
+  public void testEvictionAndInvalidation() {
+    final LocatedBlocksCache cache = new LocatedBlocksCache(2, 60000);
+    final LocatedBlocks blocks = newLocatedBlocks(true);
+    cache.put(NS, USER, "/dir/a", blocks);
+    cache.put(NS, USER, "/dir/b", blocks);
+    cache.put(NS, USER, "/dir2/c", blocks);
+    // The least recently used entry is evicted.
+    assertEquals(2, cache.size());
+    assertNull(cache.get(NS, USER, "/dir/a"));
+    final LocatedBlocks cached = cache.get(NS, USER, "/dir/b");
+    assertNotNull(cached);
+    assertNotSame(blocks.getLocatedBlocks(), cached.getLocatedBlocks());
+
+    // The files being written are not cached.
+    cache.put(NS, USER, "/dir/d", newLocatedBlocks(false));
+    assertNull(cache.get(NS, USER, "/dir/d"));
+
+    cache.invalidate(NS, "/dir");
+    assertNull(cache.get(NS, USER, "/dir/b"));
+    assertNotNull(cache.get(NS, USER, "/dir2/c"));
+    cache.invalidate(NS, "/");
+    assertEquals(0, cache.size());
+    assertEquals(2, cache.getHits());
+    assertEquals(2, cache.getInvalidations());
+  }
+
+  /** The entries of the other namespaces and users are not used. */
+  @Test
+  public void testNamespacesAndUsers() {
+    final LocatedBlocksCache cache = new LocatedBlocksCache(10, 60000);
+    final LocatedBlocks blocks = newLocatedBlocks(true);
+    cache.put(NS, USER, "/a", blocks);
+    cache.put("hdfs://ns2", USER, "/a", blocks);
+    cache.put(NS, "bob", "/a", blocks);
+    assertNull(cache.get("hdfs://ns3", USER, "/a"));
+    assertNull(cache.get(NS, "carol", "/a"));
+    assertNotNull(cache.get(NS, "bob", "/a"));
+
+    // Invalidating a path in a namespace drops the entries of every user.
+    cache.invalidate(NS, "/a");
+    assertNull(cache.get(NS, USER, "/a"));
+    assertNull(cache.get(NS, "bob", "/a"));
+    assertNotNull(cache.get("hdfs://ns2", USER, "/a"));
+  }
+
+  /** Only the locations covering the whole file are cached. */
+  @Test
+  public void testPartialLocations() {
+    final LocatedBlocksCache cache = new LocatedBlocksCache(10, 60000);
+    final LocatedBlock[] lbs = new LocatedBlock[3];
+    for (int i = 0; i < lbs.length; i++) {
+      lbs[i] = new LocatedBlock(new ExtendedBlock("bp", i + 1, 100, 1),
+          new DatanodeInfo[0], i * 100, false);
+    }
+    final LocatedBlock last = lbs[2];
+    cache.put(NS, USER, "/head", new LocatedBlocks(300, false,
+        new ArrayList<LocatedBlock>(Arrays.asList(lbs[0], lbs[1])),
+        last, true));
+    cache.put(NS, USER, "/tail", new LocatedBlocks(300, false,
+        new ArrayList<LocatedBlock>(Arrays.asList(lbs[1], lbs[2])),
+        last, true));
+    cache.put(NS, USER, "/all", new LocatedBlocks(300, false,
+        new ArrayList<LocatedBlock>(Arrays.asList(lbs)), last, true));
+    assertNull(cache.get(NS, USER, "/head"));
+    assertNull(cache.get(NS, USER, "/tail"));
+    assertNotNull(cache.get(NS, USER, "/all"));
+    assertEquals(1, cache.size());
+
+    // nor the locations of a non empty file without its blocks
+    cache.put(NS, USER, "/none", new LocatedBlocks(300, false,
+        new ArrayList<LocatedBlock>(), last, true));
+    assertNull(cache.get(NS, USER, "/none"));
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    final LocatedBlocksCache cache = new LocatedBlocksCache(2, 10);
+    cache.put(NS, USER, "/a", newLocatedBlocks(true));
+    Thread.sleep(50);
+    assertNull(cache.get(NS, USER, "/a"));
+    assertEquals(0, cache.size());
+
+    final LocatedBlocksCache disabled = new LocatedBlocksCache(0, 60000);
+    disabled.put(NS, USER, "/a", newLocatedBlocks(true));
+    assertNull(disabled.get(NS, USER, "/a"));
+  }
+
+  /** Reopening a file does not ask the NameNode for its locations. */
+  @Test(timeout=120000)
+  public void testReopen() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.DFS_CLIENT_CONTEXT, "testLocatedBlocksCache");
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_SIZE_KEY, 10);
+    conf.setLong(DFSConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_EXPIRY_MSEC_KEY,
+        60000);
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      final DistributedFileSystem fs = cluster.getFileSystem();
+      final LocatedBlocksCache cache =
+          fs.getClient().getClientContext().getLocatedBlocksCache();
+      final Path file = new Path("/file");
+      DFSTestUtil.createFile(fs, file, 1024, (short)1, 1L);
+      final byte[] expected = DFSTestUtil.readFileBuffer(fs, file);
+
+      final long locations = getLongCounter("GetBlockLocations",
+          getMetrics(NN_METRICS));
+      final long hits = cache.getHits();
+      for (int i = 0; i < 3; i++) {
+        final byte[] buf = new byte[expected.length];
+        final FSDataInputStream in = fs.open(file);
+        try {
+          in.readFully(0, buf);
+        } finally {
+          in.close();
+        }
+        assertArrayEquals(expected, buf);
+      }
+      assertEquals(locations, getLongCounter("GetBlockLocations",
+          getMetrics(NN_METRICS)));
+      assertEquals(hits + 3, cache.getHits());
+
+      // Overwriting the file invalidates its locations.
+      DFSTestUtil.createFile(fs, file, 2048, (short)1, 2L);
+      assertArrayEquals(DFSTestUtil.calculateFileContentsFromSeed(2L, 2048),
+          DFSTestUtil.readFileBuffer(fs, file));
+      assertEquals(locations + 1, getLongCounter("GetBlockLocations",
+          getMetrics(NN_METRICS)));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * The clients of two clusters and of two users sharing a context do not
+   * use each other's block locations.
+   */
+  @Test(timeout=120000)
+  public void testClustersAndUsers() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.DFS_CLIENT_CONTEXT, "testClustersAndUsers");
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_SIZE_KEY, 10);
+    conf.setLong(DFSConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_EXPIRY_MSEC_KEY,
+        60000);
+    final File baseDir = new File(MiniDFSCluster.getBaseDirectory());
+    final Configuration conf1 = new HdfsConfiguration(conf);
+    conf1.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR,
+        new File(baseDir, "cluster1").getAbsolutePath());
+    final Configuration conf2 = new HdfsConfiguration(conf);
+    conf2.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR,
+        new File(baseDir, "cluster2").getAbsolutePath());
+    MiniDFSCluster cluster1 = null;
+    MiniDFSCluster cluster2 = null;
+    try {
+      cluster1 = new MiniDFSCluster.Builder(conf1).numDataNodes(1).build();
+      cluster2 = new MiniDFSCluster.Builder(conf2).numDataNodes(1).build();
+      cluster1.waitActive();
+      cluster2.waitActive();
+      final DistributedFileSystem fs1 = cluster1.getFileSystem();
+      final DistributedFileSystem fs2 = cluster2.getFileSystem();
+      final Path file = new Path("/file");
+      DFSTestUtil.createFile(fs1, file, 1024, (short)1, 1L);
+      DFSTestUtil.createFile(fs2, file, 1024, (short)1, 2L);
+      for (int i = 0; i < 2; i++) {
+        assertArrayEquals(DFSTestUtil.calculateFileContentsFromSeed(1L, 1024),
+            DFSTestUtil.readFileBuffer(fs1, file));
+        assertArrayEquals(DFSTestUtil.calculateFileContentsFromSeed(2L, 1024),
+            DFSTestUtil.readFileBuffer(fs2, file));
+      }
+
+      // A user without access to the file does not get the locations cached
+      // for the owner.
+      fs1.setPermission(file, new FsPermission((short)0600));
+      DFSTestUtil.readFileBuffer(fs1, file);
+      final UserGroupInformation bob = UserGroupInformation
+          .createUserForTesting("bob", new String[] {"bobgroup"});
+      final URI uri = cluster1.getURI();
+      final FileSystem bobFs = bob.doAs(
+          new PrivilegedExceptionAction<FileSystem>() {
+            @Override
+            public FileSystem run() throws IOException {
+              return FileSystem.newInstance(uri, conf1);
+            }
+          });
+      try {
+        bobFs.open(file).close();
+        fail("bob opened a file he has no access to");
+      } catch (AccessControlException e) {
+        GenericTestUtils.assertExceptionContains("Permission denied", e);
+      } finally {
+        bobFs.close();
+      }
+    } finally {
+      if (cluster1 != null) {
+        cluster1.shutdown();
+      }
+      if (cluster2 != null) {
+        cluster2.shutdown();
+      }
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+/**
+ * Test pooling the buffers of the packets written, see
+ * {@link PacketBufferPool}.
+ */
+public class TestPacketBufferPool {
+
+  @Test
+  public void testPool() {
+    PacketBufferPool pool = new PacketBufferPool(2);
+    byte[] a = pool.getBuffer(10);
+    byte[] b = pool.getBuffer(10);
+    byte[] c = pool.getBuffer(20);
+    assertEquals(0, pool.getHits());
+    assertEquals(3, pool.getMisses());
+
+    pool.returnBuffer(a);
+    pool.returnBuffer(c);
+    // The pool is full.
+    pool.returnBuffer(b);
+    assertEquals(2, pool.getNumBuffers());
+
+    assertSame(a, pool.getBuffer(10));
+    assertNotSame(b, pool.getBuffer(10));
+    assertSame(c, pool.getBuffer(20));
+    assertEquals(2, pool.getHits());
+    assertEquals(4, pool.getMisses());
+    assertEquals(0, pool.getNumBuffers());
+  }
+
+  @Test
+  public void testPoolDisabled() {
+    PacketBufferPool pool = new PacketBufferPool(0);
+    byte[] a = pool.getBuffer(10);
+    pool.returnBuffer(a);
+    assertEquals(0, pool.getNumBuffers());
+    assertNotSame(a, pool.getBuffer(10));
+    assertEquals(0, pool.getHits());
+  }
+
+  /** The buffers of the acknowledged packets are reused by the writers. */
+  @Test(timeout=120000)
+  public void testWriteWithPool() throws Exception {
+    final int fileLen = 4 * 1024 * 1024;
+    Configuration conf = new HdfsConfiguration();
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(2).build();
+    try {
+      DistributedFileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 3; i++) {
+        Path path = new Path("/file" + i);
+        DFSTestUtil.createFile(fs, path, 1024, fileLen, fileLen / 2, (short)2,
+            i);
+        assertArrayEquals(DFSTestUtil.calculateFileContentsFromSeed(i, fileLen),
+            DFSTestUtil.readFileBuffer(fs, path));
+      }
+      PacketBufferPool pool = fs.getClient().getPacketBufferPool();
+      assertTrue("No buffer was reused", pool.getHits() > 0);
+      assertTrue(pool.getNumBuffers() <=
+          DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_POOL_SIZE_DEFAULT);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
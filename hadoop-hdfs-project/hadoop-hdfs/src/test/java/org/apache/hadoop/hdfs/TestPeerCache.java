@@ -287,4 +287,39 @@ public void testDomainSocketPeers() throws Exception {
     assertEquals(0, cache.size());
     cache.close();
   }
+
+  @Test
+  public void testMaxPerDatanode() throws Exception {
+    final int CAPACITY = 5;
+    final int MAX_PER_DATANODE = 2;
+    PeerCache cache = new PeerCache(CAPACITY, 100000, MAX_PER_DATANODE);
+    DatanodeID dnIds[] = new DatanodeID[2];
+    for (int i = 0; i < dnIds.length; ++i) {
+      dnIds[i] = new DatanodeID("192.168.0.1",
+          "fakehostname_" + i, "fake_datanode_id_" + i,
+          100, 101, 102, 103);
+    }
+    FakePeer peers[] = new FakePeer[MAX_PER_DATANODE + 1];
+    for (int i = 0; i < peers.length; ++i) {
+      peers[i] = new FakePeer(dnIds[0], false);
+      cache.put(dnIds[0], peers[i]);
+    }
+    FakePeer other = new FakePeer(dnIds[1], false);
+    cache.put(dnIds[1], other);
+
+    // The oldest peer of the first datanode made room for the newest one.
+    assertEquals(MAX_PER_DATANODE + 1, cache.size());
+    assertTrue(peers[0].isClosed());
+    assertEquals(1, cache.getEvicted());
+
+    // The most recently cached peers are reused first.
+    assertSame(peers[2], cache.get(dnIds[0], false));
+    assertSame(peers[1], cache.get(dnIds[0], false));
+    assertSame(null, cache.get(dnIds[0], false));
+    assertSame(other, cache.get(dnIds[1], false));
+    assertEquals(3, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(0, cache.size());
+    cache.close();
+  }
 }
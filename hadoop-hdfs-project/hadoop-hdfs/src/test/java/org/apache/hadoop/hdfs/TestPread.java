@@ -19,9 +19,14 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -32,6 +37,7 @@
 import org.apache.commons.logging.impl.Log4JLogger;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.protocol.datatransfer.DataTransferProtocol;
@@ -369,6 +375,57 @@ public void testPreadLocalFS() throws IOException {
     }
   }
 
+  /**
+   * Tests reading several ranges at once, the nearby ranges being merged,
+   * and the ranges spanning blocks.
+   */
+  @Test
+  public void testVectoredReadDFS() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, blockSize);
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_READ_VECTORED_MAX_MERGE_GAP_KEY,
+        100);
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_READ_VECTORED_MAX_MERGE_SIZE_KEY,
+        2 * blockSize);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(3).build();
+    FileSystem fileSys = cluster.getFileSystem();
+    try {
+      Path file1 = new Path("vectoredreadtest.dat");
+      writeFile(fileSys, file1);
+      byte[] expected = DFSTestUtil.calculateFileContentsFromSeed(seed,
+          12 * blockSize);
+      List<FileRange> ranges = Arrays.asList(new FileRange(0, 10),
+          new FileRange(50, 100), new FileRange(blockSize - 10, 20),
+          new FileRange(5 * blockSize, 3 * blockSize),
+          new FileRange(12 * blockSize - 1, 1), new FileRange(9000, 0));
+      FSDataInputStream in = fileSys.open(file1);
+      try {
+        in.readVectored(ranges);
+        for (FileRange range : ranges) {
+          ByteBuffer data = range.getData();
+          assertEquals(range.getLength(), data.remaining());
+          byte[] actual = new byte[range.getLength()];
+          data.get(actual);
+          checkAndEraseData(actual, (int)range.getOffset(), expected,
+              "Vectored read of " + range);
+        }
+        try {
+          in.readVectored(Arrays.asList(new FileRange(12 * blockSize - 1, 2)));
+          fail("Read a range beyond the end of the file");
+        } catch (EOFException e) {
+          // expected
+        }
+      } finally {
+        in.close();
+      }
+      cleanupFile(fileSys, file1);
+    } finally {
+      fileSys.close();
+      cluster.shutdown();
+    }
+  }
+
   public static void main(String[] args) throws Exception {
     new TestPread().testPreadDFS();
   }
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test reading ahead the files read sequentially, see
+ * dfs.client.read.sequential.readahead.ranges.
+ */
+public class TestSequentialReadahead {
+  private static final int BLOCK_SIZE = 256 * 1024;
+  private static final int RANGE_SIZE = 64 * 1024;
+  private static final int FILE_LEN = 5 * BLOCK_SIZE + 1000;
+  private static final long SEED = 0xdeadbeefL;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private final Path path = new Path("/file");
+  private byte[] expected;
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_READ_SEQUENTIAL_READAHEAD_RANGES_KEY,
+        3);
+    conf.setInt(
+        DFSConfigKeys.DFS_CLIENT_READ_SEQUENTIAL_READAHEAD_RANGE_SIZE_KEY,
+        RANGE_SIZE);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    DFSTestUtil.createFile(fs, path, 1024, FILE_LEN, BLOCK_SIZE, (short)3,
+        SEED);
+    expected = DFSTestUtil.calculateFileContentsFromSeed(SEED, FILE_LEN);
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private void readFully(FSDataInputStream in, int bufferSize, int len,
+      byte[] actual) throws IOException {
+    int off = (int)in.getPos();
+    final int end = off + len;
+    while (off < end) {
+      int n = in.read(actual, off, Math.min(bufferSize, end - off));
+      assertTrue("Unexpected end of file at " + off, n > 0);
+      off += n;
+    }
+  }
+
+  @Test(timeout=120000)
+  public void testSequentialRead() throws Exception {
+    final long completedBefore =
+        DFSClient.getReadaheadThreadPool().getCompletedTaskCount();
+    final byte[] actual = new byte[FILE_LEN];
+    final FSDataInputStream in = fs.open(path);
+    try {
+      readFully(in, 4096, FILE_LEN, actual);
+      assertEquals(-1, in.read());
+    } finally {
+      IOUtils.closeStream(in);
+    }
+    assertArrayEquals(expected, actual);
+    assertTrue("Nothing was read ahead",
+        DFSClient.getReadaheadThreadPool().getCompletedTaskCount()
+        > completedBefore);
+  }
+
+  /** The ranges read ahead are discarded when the reader seeks. */
+  @Test(timeout=120000)
+  public void testSeek() throws Exception {
+    final Random random = new Random();
+    final FSDataInputStream in = fs.open(path);
+    try {
+      for (int i = 0; i < 20; i++) {
+        final byte[] actual = new byte[FILE_LEN];
+        final int start = random.nextInt(FILE_LEN);
+        final int len = random.nextInt(FILE_LEN - start) + 1;
+        in.seek(start);
+        readFully(in, 1 + random.nextInt(8192), len, actual);
+        for (int j = start; j < start + len; j++) {
+          assertEquals("Mismatch at " + j + " reading [" + start + ", "
+              + (start + len) + ")", expected[j], actual[j]);
+        }
+      }
+    } finally {
+      IOUtils.closeStream(in);
+    }
+  }
+
+  /** The ranges which cannot be read ahead are read by a block reader. */
+  @Test(timeout=120000)
+  public void testCorruptReplica() throws Exception {
+    ExtendedBlock block = DFSTestUtil.getAllBlocks(fs, path).get(2).getBlock();
+    assertTrue(MiniDFSCluster.corruptReplica(0, block));
+    final byte[] actual = new byte[FILE_LEN];
+    final FSDataInputStream in = fs.open(path);
+    try {
+      readFully(in, 4096, FILE_LEN, actual);
+    } finally {
+      IOUtils.closeStream(in);
+    }
+    assertArrayEquals(expected, actual);
+  }
+}
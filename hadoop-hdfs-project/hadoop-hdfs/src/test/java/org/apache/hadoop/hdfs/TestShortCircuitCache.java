@@ -20,12 +20,15 @@
 import org.apache.commons.lang.mutable.MutableBoolean;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hdfs.client.ClientMmap;
 import org.apache.hadoop.hdfs.client.ShortCircuitCache;
+import org.apache.hadoop.hdfs.client.ShortCircuitCache.CacheVisitor;
 import org.apache.hadoop.hdfs.client.ShortCircuitCache.ShortCircuitReplicaCreator;
 import org.apache.hadoop.hdfs.client.ShortCircuitReplica;
 import org.apache.hadoop.hdfs.client.ShortCircuitReplicaInfo;
 import org.apache.hadoop.hdfs.server.datanode.BlockMetadataHeader;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.security.token.SecretManager.InvalidToken;
 import org.apache.hadoop.net.unix.TemporarySocketDirectory;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.util.DataChecksum;
@@ -40,6 +43,7 @@
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Map;
 
 public class TestShortCircuitCache {
   static final Log LOG = LogFactory.getLog(TestShortCircuitCache.class);
@@ -343,4 +347,80 @@ public ShortCircuitReplicaInfo createShortCircuitReplicaInfo() {
     }
     cache.close();
   }
+
+  @Test(timeout=60000)
+  public void testMmapBudget() throws Exception {
+    // Each test block file is 1 byte long: the budget allows two mmaps.
+    final ShortCircuitCache cache =
+        new ShortCircuitCache(10, 10000000, 10, 10000000, 1, 10000, 2);
+    final int NUM_REPLICAS = 3;
+    TestFileDescriptorPair pairs[] = new TestFileDescriptorPair[NUM_REPLICAS];
+    ShortCircuitReplica replicas[] = new ShortCircuitReplica[NUM_REPLICAS];
+    for (int i = 0; i < NUM_REPLICAS; i++) {
+      pairs[i] = new TestFileDescriptorPair();
+      replicas[i] = cache.fetchOrCreate(
+          new ExtendedBlockId(i, "test_bp1"),
+          new SimpleReplicaCreator(i, cache, pairs[i])).getReplica();
+      Preconditions.checkNotNull(replicas[i]);
+    }
+    ClientMmap mmap0 = replicas[0].getOrCreateClientMmap();
+    ClientMmap mmap1 = replicas[1].getOrCreateClientMmap();
+    Assert.assertNotNull(mmap0);
+    Assert.assertNotNull(mmap1);
+    Assert.assertEquals(2, cache.getOutstandingMmapBytes());
+
+    // Both mmaps are in use: there is no room for another one.
+    Assert.assertNull(replicas[2].getOrCreateClientMmap());
+    Assert.assertEquals(2, cache.getOutstandingMmapBytes());
+
+    // Once the first replica is not in use, its mmap is unmapped to make
+    // room for the new one.
+    mmap0.unref();
+    replicas[0].unref();
+    ClientMmap mmap2 = replicas[2].getOrCreateClientMmap();
+    Assert.assertNotNull(mmap2);
+    Assert.assertEquals(2, cache.getOutstandingMmapBytes());
+    cache.accept(new CacheVisitor() {
+      @Override
+      public void visit(int numOutstandingMmaps,
+          Map<ExtendedBlockId, ShortCircuitReplica> replicas,
+          Map<ExtendedBlockId, InvalidToken> failedLoads,
+          Map<Long, ShortCircuitReplica> evictable,
+          Map<Long, ShortCircuitReplica> evictableMmapped) {
+        Assert.assertEquals(2, numOutstandingMmaps);
+        Assert.assertEquals(1, evictable.size());
+        Assert.assertEquals(0, evictableMmapped.size());
+      }
+    });
+
+    mmap1.unref();
+    mmap2.unref();
+    for (int i = 1; i < NUM_REPLICAS; i++) {
+      replicas[i].unref();
+    }
+    cache.close();
+    Assert.assertEquals(0, cache.getOutstandingMmapBytes());
+    for (int i = 0; i < NUM_REPLICAS; i++) {
+      pairs[i].close();
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testVerifiedRanges() throws Exception {
+    final ShortCircuitCache cache =
+        new ShortCircuitCache(10, 10000000, 10, 10000000, 1, 10000);
+    final TestFileDescriptorPair pair = new TestFileDescriptorPair();
+    ShortCircuitReplica replica = cache.fetchOrCreate(
+        new ExtendedBlockId(123, "test_bp1"),
+        new SimpleReplicaCreator(123, cache, pair)).getReplica();
+    Assert.assertFalse(replica.isVerified());
+    // A range which does not extend the verified prefix is not recorded.
+    replica.addVerifiedRange(1, 1);
+    Assert.assertFalse(replica.isVerified());
+    replica.addVerifiedRange(0, 1);
+    Assert.assertTrue(replica.isVerified());
+    replica.unref();
+    pair.close();
+    cache.close();
+  }
 }
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportIterator;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaBeingWritten;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.junit.Test;
+
+/**
+ * Test the compact encoding of {@link BlockListAsLongs}.
+ */
+public class TestBlockListAsLongs {
+  private static final Random RAND = new Random(0xB10C);
+
+  private static BlockListAsLongs createBlockList(int numFinalized,
+      int numUc) {
+    List<Block> finalized = new ArrayList<Block>();
+    for (int i = 0; i < numFinalized; i++) {
+      // Random ids, including negative ones, as for legacy blocks.
+      finalized.add(new Block(RAND.nextLong(), RAND.nextInt(1 << 27),
+          1000 + RAND.nextInt(1000)));
+    }
+    List<ReplicaInfo> uc = new ArrayList<ReplicaInfo>();
+    for (int i = 0; i < numUc; i++) {
+      uc.add(new ReplicaBeingWritten(RAND.nextLong(), RAND.nextInt(1 << 27),
+          1000 + RAND.nextInt(1000), null, null, null));
+    }
+    return new BlockListAsLongs(finalized, uc);
+  }
+
+  private static Map<Long, Block> toMap(BlockListAsLongs blocks,
+      Map<Long, ReplicaState> states) {
+    Map<Long, Block> map = new HashMap<Long, Block>();
+    BlockReportIterator i = blocks.getBlockReportIterator();
+    while (i.hasNext()) {
+      Block b = new Block(i.next());
+      map.put(b.getBlockId(), b);
+      states.put(b.getBlockId(), i.getCurrentReplicaState());
+    }
+    return map;
+  }
+
+  private static void checkEncoding(BlockListAsLongs blocks, boolean compress)
+      throws IOException {
+    byte[] encoded = BlockListAsLongs.encode(blocks.getBlockListAsLongs(),
+        compress);
+    BlockListAsLongs decoded = new BlockListAsLongs(BlockListAsLongs.decode(
+        new ByteArrayInputStream(encoded), compress));
+
+    assertEquals(blocks.getNumberOfBlocks(), decoded.getNumberOfBlocks());
+    Map<Long, ReplicaState> states = new HashMap<Long, ReplicaState>();
+    Map<Long, ReplicaState> decodedStates = new HashMap<Long, ReplicaState>();
+    Map<Long, Block> expected = toMap(blocks, states);
+    Map<Long, Block> actual = toMap(decoded, decodedStates);
+    assertEquals(expected, actual);
+    for (Block b : expected.values()) {
+      Block d = actual.get(b.getBlockId());
+      assertEquals(b.getNumBytes(), d.getNumBytes());
+      assertEquals(b.getGenerationStamp(), d.getGenerationStamp());
+    }
+    assertEquals(states, decodedStates);
+
+    // The finalized replicas are sorted by block id.
+    BlockReportIterator i = decoded.getBlockReportIterator();
+    long prev = Long.MIN_VALUE;
+    while (i.hasNext()) {
+      long id = i.next().getBlockId();
+      if (i.getCurrentReplicaState() == ReplicaState.FINALIZED) {
+        assertTrue(id >= prev);
+        prev = id;
+      }
+    }
+  }
+
+  @Test
+  public void testEncodeDecode() throws IOException {
+    for (boolean compress : new boolean[] { false, true }) {
+      checkEncoding(createBlockList(0, 0), compress);
+      checkEncoding(createBlockList(1, 0), compress);
+      checkEncoding(createBlockList(0, 1), compress);
+      checkEncoding(createBlockList(1000, 10), compress);
+    }
+  }
+
+  @Test
+  public void testEncodingIsCompact() throws IOException {
+    // Sequential block ids and generation stamps, as allocated by the
+    // NameNode.
+    List<Block> finalized = new ArrayList<Block>();
+    for (int i = 0; i < 10000; i++) {
+      finalized.add(new Block((1L << 30) + i, 128L << 20, 1000 + i));
+    }
+    long[] blockList = new BlockListAsLongs(finalized, null)
+        .getBlockListAsLongs();
+    byte[] encoded = BlockListAsLongs.encode(blockList, false);
+    assertTrue("Encoded " + encoded.length + " bytes",
+        encoded.length < finalized.size() * 8);
+    assertTrue(BlockListAsLongs.encode(blockList, true).length
+        < encoded.length);
+    assertArrayEquals(blockList, BlockListAsLongs.decode(
+        new ByteArrayInputStream(encoded), false));
+  }
+}
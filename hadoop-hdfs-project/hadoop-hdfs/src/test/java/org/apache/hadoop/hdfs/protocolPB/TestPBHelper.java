@@ -19,6 +19,7 @@
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -399,6 +400,16 @@ public void testConvertNamespaceInfo() {
     compare(info, info2); //Compare the StorageInfo
     assertEquals(info.getBlockPoolID(), info2.getBlockPoolID());
     assertEquals(info.getBuildVersion(), info2.getBuildVersion());
+    assertEquals(info.getCapabilities(), info2.getCapabilities());
+    assertTrue(info2.isCapabilitySupported(
+        NamespaceInfo.Capability.COMPACT_BLOCK_REPORTS));
+
+    // a NameNode which does not report its capabilities supports none
+    NamespaceInfo legacy = PBHelper.convert(NamespaceInfoProto.newBuilder(proto)
+        .clearCapabilities().build());
+    assertEquals(0, legacy.getCapabilities());
+    assertFalse(legacy.isCapabilitySupported(
+        NamespaceInfo.Capability.COMPACT_BLOCK_REPORTS));
   }
 
   private void compare(StorageInfo expected, StorageInfo actual) {
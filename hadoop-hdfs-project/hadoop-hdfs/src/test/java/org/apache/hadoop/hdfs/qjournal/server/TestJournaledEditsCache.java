@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import static org.apache.hadoop.hdfs.qjournal.QJMTestUtil.createTxnData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+
+import org.apache.hadoop.hdfs.qjournal.QJMTestUtil;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
+import org.apache.hadoop.hdfs.qjournal.server.JournaledEditsCache.CacheMissException;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileInputStream;
+import org.apache.hadoop.hdfs.server.namenode.EditLogInputStream;
+import org.junit.Test;
+
+public class TestJournaledEditsCache {
+
+  private static void verifyResponse(GetJournaledEditsResponseProto resp,
+      int firstTxId, int lastTxId) throws Exception {
+    assertEquals(firstTxId, resp.getFirstTxId());
+    EditLogInputStream stream = EditLogFileInputStream.fromByteString(
+        resp.getEditLog(), "test", firstTxId, lastTxId, true);
+    QJMTestUtil.verifyEdits(Collections.singletonList(stream),
+        firstTxId, lastTxId);
+  }
+
+  @Test
+  public void testRetrieveEdits() throws Exception {
+    JournaledEditsCache cache = new JournaledEditsCache(1024 * 1024);
+    cache.storeEdits(1, 1, 3, createTxnData(1, 3));
+    cache.storeEdits(1, 4, 6, createTxnData(4, 3));
+
+    GetJournaledEditsResponseProto resp = cache.retrieveEdits(1, 100);
+    assertEquals(6, resp.getTxnCount());
+    verifyResponse(resp, 1, 6);
+
+    // The edits start at the batch holding the requested transaction.
+    resp = cache.retrieveEdits(5, 100);
+    assertEquals(2, resp.getTxnCount());
+    verifyResponse(resp, 4, 6);
+
+    // Nothing written yet.
+    resp = cache.retrieveEdits(7, 100);
+    assertEquals(0, resp.getTxnCount());
+    assertFalse(resp.hasEditLog());
+  }
+
+  @Test
+  public void testMaxTxns() throws Exception {
+    JournaledEditsCache cache = new JournaledEditsCache(1024 * 1024);
+    cache.storeEdits(1, 1, 3, createTxnData(1, 3));
+    cache.storeEdits(1, 4, 6, createTxnData(4, 3));
+
+    GetJournaledEditsResponseProto resp = cache.retrieveEdits(1, 3);
+    assertEquals(3, resp.getTxnCount());
+    verifyResponse(resp, 1, 3);
+  }
+
+  @Test
+  public void testStopAtSegmentBoundary() throws Exception {
+    JournaledEditsCache cache = new JournaledEditsCache(1024 * 1024);
+    cache.storeEdits(1, 1, 3, createTxnData(1, 3));
+    cache.storeEdits(4, 4, 6, createTxnData(4, 3));
+
+    GetJournaledEditsResponseProto resp = cache.retrieveEdits(2, 100);
+    assertEquals(2, resp.getTxnCount());
+    verifyResponse(resp, 1, 3);
+    resp = cache.retrieveEdits(4, 100);
+    assertEquals(3, resp.getTxnCount());
+    verifyResponse(resp, 4, 6);
+  }
+
+  @Test
+  public void testReplaceEdits() throws Exception {
+    JournaledEditsCache cache = new JournaledEditsCache(1024 * 1024);
+    cache.storeEdits(1, 1, 3, createTxnData(1, 3));
+    cache.storeEdits(1, 4, 6, createTxnData(4, 3));
+    // A new writer rewrites the tail of the segment.
+    cache.storeEdits(1, 4, 5, createTxnData(4, 2));
+
+    GetJournaledEditsResponseProto resp = cache.retrieveEdits(1, 100);
+    assertEquals(5, resp.getTxnCount());
+    verifyResponse(resp, 1, 5);
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    byte[] batch = createTxnData(1, 3);
+    JournaledEditsCache cache = new JournaledEditsCache(batch.length * 2);
+    cache.storeEdits(1, 1, 3, batch);
+    cache.storeEdits(1, 4, 6, createTxnData(4, 3));
+    cache.storeEdits(1, 7, 9, createTxnData(7, 3));
+
+    try {
+      cache.retrieveEdits(2, 100);
+      fail("Evicted transactions should not be served");
+    } catch (CacheMissException e) {
+      // expected
+    }
+    GetJournaledEditsResponseProto resp = cache.retrieveEdits(4, 100);
+    assertEquals(6, resp.getTxnCount());
+    verifyResponse(resp, 4, 9);
+
+    cache.clear();
+    try {
+      cache.retrieveEdits(10, 100);
+      fail("An empty cache should not claim that nothing was written");
+    } catch (CacheMissException e) {
+      // expected
+    }
+  }
+}
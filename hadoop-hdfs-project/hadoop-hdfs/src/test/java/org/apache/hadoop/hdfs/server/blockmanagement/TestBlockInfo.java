@@ -19,6 +19,7 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -44,6 +45,14 @@ public class TestBlockInfo {
 
   @Test
   public void testBlockListMoveToHead() throws Exception {
+    testBlockListMoveToHead(null);
+  }
+
+  /**
+   * @param slab the slab holding the triplets of the blocks, or null to keep
+   *             them on-heap.
+   */
+  private void testBlockListMoveToHead(BlockInfoSlab slab) throws Exception {
     LOG.info("BlockInfo moveToHead tests...");
 
     final int MAX_BLOCKS = 10;
@@ -58,6 +67,9 @@ public void testBlockListMoveToHead() throws Exception {
     for (int i = 0; i < MAX_BLOCKS; i++) {
       blockList.add(new Block(i, 0, GenerationStamp.LAST_RESERVED_STAMP));
       blockInfoList.add(new BlockInfo(blockList.get(i), 3));
+      if (slab != null) {
+        blockInfoList.get(i).moveTripletsToSlab(slab);
+      }
       dd.addBlock(blockInfoList.get(i));
 
       // index of the datanode should be 0
@@ -121,4 +133,75 @@ public void testBlockListMoveToHead() throws Exception {
           blockInfoList.get(j), dd.getBlockListHeadForTesting());
     }
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testOffHeapBlockListMoveToHead() throws Exception {
+    testBlockListMoveToHead(new BlockInfoSlab());
+  }
+
+  @Test
+  public void testOffHeapTripletsReleased() throws Exception {
+    final BlockInfoSlab slab = new BlockInfoSlab();
+    DatanodeStorageInfo[] storages = new DatanodeStorageInfo[5];
+    for (int i = 0; i < storages.length; i++) {
+      storages[i] = DFSTestUtil.createDatanodeStorageInfo("s" + i,
+          "1.1.1." + i);
+    }
+    BlockInfo blockInfo = new BlockInfo(new Block(1, 0,
+        GenerationStamp.LAST_RESERVED_STAMP), 3);
+    blockInfo.moveTripletsToSlab(slab);
+    assertEquals(0, blockInfo.getCapacity());
+
+    // adding more storages than a record holds chains an overflow record
+    for (DatanodeStorageInfo storage : storages) {
+      assertTrue(storage.addBlock(blockInfo));
+    }
+    assertEquals(storages.length, blockInfo.numNodes());
+    for (int i = 0; i < storages.length; i++) {
+      assertEquals(storages[i], blockInfo.getStorageInfo(i));
+      assertEquals(blockInfo, storages[i].getBlockListHeadForTesting());
+    }
+    assertEquals(2, slab.getNumRecords());
+    assertEquals(storages.length, slab.getNumStorages());
+
+    // the records are returned once the block is on no storage
+    for (DatanodeStorageInfo storage : storages) {
+      assertTrue(storage.removeBlock(blockInfo));
+    }
+    assertEquals(0, blockInfo.numNodes());
+    assertEquals(0, slab.getNumRecords());
+
+    // the storage indices are released and reused
+    slab.unregisterStorage(storages[1]);
+    slab.unregisterStorage(storages[3]);
+    assertEquals(storages.length - 2, slab.getNumStorages());
+    assertEquals(-1, storages[1].getSlabIndex());
+    assertTrue(storages[3].addBlock(blockInfo));
+    assertEquals(storages.length - 1, slab.getNumStorages());
+    assertTrue(storages[3].getSlabIndex() < storages.length);
+    assertEquals(storages[3], blockInfo.getStorageInfo(0));
+  }
+
+  /** Blocks of different slabs do not share records or storage indices. */
+  @Test
+  public void testSeparateSlabs() throws Exception {
+    final BlockInfoSlab slab1 = new BlockInfoSlab();
+    final BlockInfoSlab slab2 = new BlockInfoSlab();
+    final DatanodeStorageInfo s1 = DFSTestUtil.createDatanodeStorageInfo(
+        "s1", "1.1.1.1");
+    final DatanodeStorageInfo s2 = DFSTestUtil.createDatanodeStorageInfo(
+        "s2", "1.1.1.2");
+    final BlockInfo b1 = new BlockInfo(new Block(1, 0,
+        GenerationStamp.LAST_RESERVED_STAMP), 3);
+    final BlockInfo b2 = new BlockInfo(new Block(1, 0,
+        GenerationStamp.LAST_RESERVED_STAMP), 3);
+    b1.moveTripletsToSlab(slab1);
+    b2.moveTripletsToSlab(slab2);
+    assertTrue(s1.addBlock(b1));
+    assertTrue(s2.addBlock(b2));
+    assertEquals(1, slab1.getNumRecords());
+    assertEquals(1, slab2.getNumRecords());
+    assertEquals(s1, b1.getStorageInfo(0));
+    assertEquals(s2, b2.getStorageInfo(0));
+  }
+}
@@ -22,17 +22,22 @@
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
@@ -45,10 +50,14 @@
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.ipc.RetriableException;
 import org.apache.hadoop.net.NetworkTopology;
+import org.apache.hadoop.test.GenericTestUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
@@ -82,6 +91,7 @@ public void setupMockCluster() throws IOException {
     conf = new HdfsConfiguration();
     conf.set(DFSConfigKeys.NET_TOPOLOGY_SCRIPT_FILE_NAME_KEY,
         "need to set a dummy value here so it assumes a multi-rack cluster");
+    initConf(conf);
     fsn = Mockito.mock(FSNamesystem.class);
     Mockito.doReturn(true).when(fsn).hasWriteLock();
     bm = new BlockManager(fsn, fsn, conf);
@@ -98,6 +108,13 @@ public void setupMockCluster() throws IOException {
     rackB = nodes.subList(3, 6);
   }
 
+  /**
+   * Allows subclasses to run the same tests against another configuration
+   * of the BlockManager.
+   */
+  protected void initConf(Configuration conf) {
+  }
+
   private void addNodes(Iterable<DatanodeDescriptor> nodesToAdd) {
     NetworkTopology cluster = bm.getDatanodeManager().getNetworkTopology();
     // construct network topology
@@ -306,6 +323,64 @@ private void doTestOneOfTwoRacksDecommissioned(int testIndex) throws Exception {
     }
   }
 
+  /** Removing a datanode drops its replicas and releases its storages. */
+  @Test
+  public void testRemoveBlocksAssociatedTo() throws Exception {
+    addNodes(nodes);
+    BlockCollection bc = Mockito.mock(BlockCollection.class);
+    Mockito.doReturn((short)3).when(bc).getBlockReplication();
+    BlockInfo blockInfo = bm.blocksMap.addBlockCollection(
+        new BlockInfo(new Block(1), 3), bc);
+    for (DatanodeDescriptor dn : getNodes(0, 1)) {
+      assertTrue(dn.getStorageInfos()[0].addBlock(blockInfo));
+    }
+    final BlockInfoSlab slab = bm.blocksMap.getSlab();
+    if (slab != null) {
+      assertEquals(2, slab.getNumStorages());
+    }
+
+    final DatanodeDescriptor removed = nodes.get(0);
+    removeNode(removed);
+    assertEquals(1, blockInfo.numNodes());
+    assertEquals(nodes.get(1), blockInfo.getDatanode(0));
+    assertEquals(0, removed.numBlocks());
+    if (slab != null) {
+      // the slab no longer refers to the storage of the removed node
+      assertEquals(1, slab.getNumStorages());
+      assertEquals(-1, removed.getStorageInfos()[0].getSlabIndex());
+    }
+  }
+
+  /** The blocks map counts the triplets allocated on the heap. */
+  @Test
+  public void testHeapTriplets() throws Exception {
+    addNodes(nodes);
+    final int perTriplet = bm.blocksMap.isOffHeap() ? 0 : 1;
+    BlockCollection bc = Mockito.mock(BlockCollection.class);
+    Mockito.doReturn((short)2).when(bc).getBlockReplication();
+    BlockInfo blockInfo = bm.blocksMap.addBlockCollection(
+        new BlockInfo(new Block(1), 2), bc);
+    // the triplets are allocated when the first replica is added
+    assertEquals(0, bm.getHeapTriplets());
+    assertEquals(0, blockInfo.getCapacity());
+
+    List<DatanodeDescriptor> replicaNodes = getNodes(0, 1, 2);
+    DatanodeDescriptor dn = replicaNodes.get(0);
+    assertTrue(bm.blocksMap.addReplica(dn,
+        dn.getStorageInfos()[0].getStorageID(), blockInfo));
+    assertEquals(2 * perTriplet, bm.getHeapTriplets());
+
+    // a replica beyond the replication grows the triplets
+    for (DatanodeDescriptor node : replicaNodes.subList(1, 3)) {
+      assertTrue(bm.blocksMap.addReplica(node,
+          node.getStorageInfos()[0].getStorageID(), blockInfo));
+    }
+    assertEquals(3 * perTriplet, bm.getHeapTriplets());
+
+    bm.blocksMap.removeBlock(blockInfo);
+    assertEquals(0, bm.getHeapTriplets());
+  }
+
   /**
    * Unit test version of testSufficientlyReplBlocksUsesNewRack from
    * {@link TestBlocksWithNotEnoughRacks}.
@@ -375,7 +450,7 @@ private void fulfillPipeline(BlockInfo blockInfo,
 
   private BlockInfo blockOnNodes(long blkId, List<DatanodeDescriptor> nodes) {
     Block block = new Block(blkId);
-    BlockInfo blockInfo = new BlockInfo(block, 3);
+    BlockInfo blockInfo = bm.blocksMap.initTriplets(new BlockInfo(block, 3));
 
     for (DatanodeDescriptor dn : nodes) {
       for (DatanodeStorageInfo storage : dn.getStorageInfos()) {
@@ -599,5 +674,184 @@ public void testSafeModeIBRAfterIncremental() throws Exception {
         new BlockListAsLongs(null, null));
     assertEquals(1, ds.getBlockReportCount());
   }
-}
 
+  /**
+   * Test that a block report is processed in batches, releasing the
+   * namesystem lock between them, and that the result is the same as when
+   * it is processed at once.
+   */
+  @Test
+  public void testBatchedBlockReport() throws Exception {
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_BATCH_SIZE_KEY, 2);
+    bm = new BlockManager(fsn, fsn, conf);
+    DatanodeDescriptor node = nodes.get(0);
+    DatanodeStorageInfo ds = node.getStorageInfos()[0];
+    node.setDatanodeUuidForTesting(ds.getStorageID());
+    node.isAlive = true;
+    bm.getDatanodeManager().registerDatanode(
+        new DatanodeRegistration(node, null, null, ""));
+    bm.getDatanodeManager().addDatanode(node);
+
+    List<Block> blocks = new ArrayList<Block>();
+    for (long blockId = 1; blockId <= 5; blockId++) {
+      BlockInfo blockInfo = addBlockOnNodes(blockId,
+          new ArrayList<DatanodeDescriptor>());
+      blocks.add(new Block(blockInfo));
+    }
+
+    // the first report takes the lock once and again after 2 and 4 blocks
+    reset(fsn);
+    doReturn(true).when(fsn).hasWriteLock();
+    bm.processReport(node, new DatanodeStorage(ds.getStorageID()), "pool",
+        new BlockListAsLongs(blocks, null));
+    verify(fsn, times(3)).writeLock();
+    verify(fsn, times(3)).writeUnlock();
+    assertEquals(5, ds.numBlocks());
+    assertFalse(ds.isBlockReportInProgress());
+
+    // a later report without the first two blocks removes them
+    bm.processReport(node, new DatanodeStorage(ds.getStorageID()), "pool",
+        new BlockListAsLongs(blocks.subList(2, 5), null));
+    assertEquals(3, ds.numBlocks());
+    assertEquals(-1, bm.blocksMap.getStoredBlock(blocks.get(0))
+        .findStorageInfo(ds));
+    assertTrue(bm.blocksMap.getStoredBlock(blocks.get(4))
+        .findStorageInfo(ds) >= 0);
+    int reported = 0;
+    for (Iterator<BlockInfo> it = ds.getBlockIterator(); it.hasNext(); it.next()) {
+      reported++;
+    }
+    assertEquals(3, reported);
+    assertFalse(ds.isBlockReportInProgress());
+  }
+
+  /**
+   * Run the given action when the namesystem lock is taken for the given
+   * time, that is after the lock was released given - 1 times.
+   */
+  private void runOnWriteLock(final int count, final Callable<Void> action) {
+    reset(fsn);
+    doReturn(true).when(fsn).hasWriteLock();
+    doAnswer(new Answer<Void>() {
+      private int n = 0;
+
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Exception {
+        if (++n == count) {
+          action.call();
+        }
+        return null;
+      }
+    }).when(fsn).writeLock();
+  }
+
+  private DatanodeDescriptor registerNodeForBatchedReports() throws Exception {
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_BATCH_SIZE_KEY, 1);
+    bm = new BlockManager(fsn, fsn, conf);
+    DatanodeDescriptor node = nodes.get(0);
+    DatanodeStorageInfo ds = node.getStorageInfos()[0];
+    node.setDatanodeUuidForTesting(ds.getStorageID());
+    node.isAlive = true;
+    bm.getDatanodeManager().registerDatanode(
+        new DatanodeRegistration(node, null, null, ""));
+    bm.getDatanodeManager().addDatanode(node);
+    return node;
+  }
+
+  /**
+   * The namespace changes while the lock is released between two batches of
+   * a block report: the replicas queued to be added, invalidated or marked
+   * corrupt are checked again against the blocks map.
+   */
+  @Test
+  public void testNamespaceChangesDuringBatchedReport() throws Exception {
+    final DatanodeDescriptor node = registerNodeForBatchedReports();
+    final DatanodeStorageInfo ds = node.getStorageInfos()[0];
+    final DatanodeStorage storage = new DatanodeStorage(ds.getStorageID());
+    final List<DatanodeDescriptor> noNodes = new ArrayList<DatanodeDescriptor>();
+    for (long blockId = 1; blockId <= 4; blockId++) {
+      addBlockOnNodes(blockId, noNodes);
+    }
+    bm.processReport(node, storage, "pool",
+        new BlockListAsLongs(Arrays.asList(new Block(1)), null));
+    assertEquals(1, ds.numBlocks());
+
+    // Block 2 is to be added, 3 and 4 have another genstamp and are to be
+    // marked corrupt, and 5 and 6 do not belong to any file.
+    final List<Block> report = Arrays.asList(new Block(1), new Block(2),
+        new Block(3, 0, 5), new Block(4, 0, 5), new Block(5), new Block(6));
+    // Each reported block is diffed in its own batch. When the lock is taken
+    // again after the diff, the files of blocks 2 and 3 are deleted, and
+    // block 5 is added to a file.
+    runOnWriteLock(report.size() + 2, new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        bm.removeBlock(new Block(2));
+        bm.removeBlock(new Block(3));
+        addBlockOnNodes(5, noNodes);
+        return null;
+      }
+    });
+    bm.processReport(node, storage, "pool",
+        new BlockListAsLongs(report, null));
+    assertNull(bm.getStoredBlock(new Block(2)));
+    // blocks 1 and 4, the corrupt replicas being kept on the storage
+    assertEquals(2, ds.numBlocks());
+    assertEquals(0, bm.numCorruptReplicas(new Block(3)));
+    assertEquals(1, bm.numCorruptReplicas(new Block(4)));
+    assertEquals(1, bm.getPendingDeletionBlocksCount());
+    assertFalse(ds.isBlockReportInProgress());
+  }
+
+  /**
+   * A second report of a storage whose report is being processed is
+   * rejected with a retriable exception, and the processing of a report
+   * stops if its storage is removed while the lock is released.
+   */
+  @Test
+  public void testStorageChangesDuringBatchedReport() throws Exception {
+    final DatanodeDescriptor node = registerNodeForBatchedReports();
+    final DatanodeStorageInfo ds = node.getStorageInfos()[0];
+    final DatanodeStorage storage = new DatanodeStorage(ds.getStorageID());
+    final List<Block> blocks = new ArrayList<Block>();
+    for (long blockId = 1; blockId <= 3; blockId++) {
+      blocks.add(new Block(addBlockOnNodes(blockId,
+          new ArrayList<DatanodeDescriptor>())));
+    }
+
+    runOnWriteLock(2, new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        try {
+          bm.processReport(node, storage, "pool",
+              new BlockListAsLongs(blocks, null));
+          fail("A concurrent report of the same storage was processed");
+        } catch (RetriableException e) {
+          GenericTestUtils.assertExceptionContains("already being processed",
+              e);
+        }
+        return null;
+      }
+    });
+    bm.processReport(node, storage, "pool",
+        new BlockListAsLongs(blocks, null));
+    assertEquals(3, ds.numBlocks());
+    assertFalse(ds.isBlockReportInProgress());
+
+    runOnWriteLock(3, new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        bm.getDatanodeManager().removeDatanode(node);
+        return null;
+      }
+    });
+    try {
+      bm.processReport(node, storage, "pool",
+          new BlockListAsLongs(blocks.subList(0, 2), null));
+      fail("The report of a removed storage was processed");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("was removed", e);
+    }
+    assertFalse(ds.isBlockReportInProgress());
+  }
+}
@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSNNTopology;
+import org.apache.hadoop.hdfs.server.namenode.ha.HATestUtil;
+import org.junit.Test;
+
+/**
+ * Runs the {@link TestBlockManager} tests with the block triplets stored
+ * in the off-heap {@link BlockInfoSlab}.
+ */
+public class TestBlockManagerOffHeap extends TestBlockManager {
+  @Override
+  protected void initConf(Configuration conf) {
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_BLOCKSMAP_OFF_HEAP_KEY, true);
+  }
+
+  /**
+   * The namenodes of an HA cluster share the JVM. Restarting one of them
+   * must not affect the blocks of the other.
+   */
+  @Test(timeout=120000)
+  public void testHACluster() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    initConf(conf);
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 1);
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .nnTopology(MiniDFSNNTopology.simpleHATopology())
+        .numDataNodes(3).build();
+    try {
+      cluster.waitActive();
+      cluster.transitionToActive(0);
+      final FileSystem fs = HATestUtil.configureFailoverFs(cluster, conf);
+      final Path path = new Path("/testHACluster");
+      DFSTestUtil.createFile(fs, path, 10 * 1024, (short)3, 0L);
+      HATestUtil.waitForStandbyToCatchUp(cluster.getNameNode(0),
+          cluster.getNameNode(1));
+
+      cluster.restartNameNode(1);
+      cluster.transitionToStandby(0);
+      cluster.transitionToActive(1);
+      DFSTestUtil.waitReplication(fs, path, (short)3);
+      DFSTestUtil.readFile(fs, path);
+      for (int i = 0; i < 2; i++) {
+        final BlockManager bm =
+            cluster.getNameNode(i).getNamesystem().getBlockManager();
+        assertTrue(bm.isBlocksMapOffHeap());
+        // one record holds the three replicas of the block
+        assertEquals(1, bm.getOffHeapTripletRecords());
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
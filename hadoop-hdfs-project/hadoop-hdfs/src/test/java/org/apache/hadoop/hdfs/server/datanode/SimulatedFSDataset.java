@@ -510,6 +510,11 @@ public List<Long> getCacheReport(String bpid) {
     return new LinkedList<Long>();
   }
 
+  @Override // FsDatasetSpi
+  public List<Long> getAutoCacheReport(String bpid) {
+    return new LinkedList<Long>();
+  }
+
   @Override // FSDatasetMBean
   public long getCapacity() {
     return storage.getCapacity();
@@ -560,6 +565,16 @@ public long getNumBlocksFailedToUncache() {
     return 0l;
   }
 
+  @Override
+  public long getReplicaLockContentionCount() {
+    return 0l;
+  }
+
+  @Override
+  public long getReplicaLockWaitTimeMillis() {
+    return 0l;
+  }
+
   @Override // FsDatasetSpi
   public synchronized long getLength(ExtendedBlock b) throws IOException {
     final Map<Block, BInfo> map = getMap(b.getBlockPoolId());
@@ -641,6 +656,15 @@ public void uncache(String bpid, long[] uncacheBlks) {
         "SimulatedFSDataset does not support uncache operation!");
   }
 
+  @Override // FSDatasetSpi
+  public boolean isCached(String bpid, long blockId) {
+    return false;
+  }
+
+  @Override // FSDatasetSpi
+  public void recordBlockRead(String bpid, long blockId) {
+  }
+
   private BInfo getBInfo(final ExtendedBlock b) {
     final Map<Block, BInfo> map = blockMap.get(b.getBlockPoolId());
     return map == null? null: map.get(b.getLocalBlock());
@@ -738,8 +762,8 @@ public synchronized ReplicaInPipelineInterface recoverRbw(ExtendedBlock b,
   }
 
   @Override // FsDatasetSpi
-  public synchronized ReplicaInPipelineInterface createRbw(ExtendedBlock b) 
-  throws IOException {
+  public synchronized ReplicaInPipelineInterface createRbw(ExtendedBlock b,
+      boolean allowLazyPersist) throws IOException {
     return createTemporary(b);
   }
 
@@ -1087,7 +1111,8 @@ public RollingLogs createRollingLogs(String bpid, String prefix) {
 
   @Override
   public FsVolumeSpi getVolume(ExtendedBlock b) {
-    throw new UnsupportedOperationException();
+    // The simulated replicas are not stored on any volume.
+    return null;
   }
 }
 
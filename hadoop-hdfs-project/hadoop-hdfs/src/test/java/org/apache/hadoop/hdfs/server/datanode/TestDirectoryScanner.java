@@ -17,6 +17,9 @@
  */
 package org.apache.hadoop.hdfs.server.datanode;
 
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -45,7 +48,9 @@
 import org.apache.hadoop.hdfs.server.common.GenerationStamp;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeIoStats;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.impl.FsDatasetTestUtil;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.junit.Test;
 
 /**
@@ -240,7 +245,7 @@ public void runTest(int parallelism) throws Exception {
       fds = DataNodeTestUtils.getFSDataset(cluster.getDataNodes().get(0));
       CONF.setInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_KEY,
                   parallelism);
-      scanner = new DirectoryScanner(fds, CONF);
+      scanner = new DirectoryScanner(cluster.getDataNodes().get(0), fds, CONF);
       scanner.setRetainDiffs(true);
 
       // Add files with 100 blocks
@@ -353,6 +358,37 @@ public void runTest(int parallelism) throws Exception {
     }
   }
 
+  @Test
+  public void testThrottle() throws Exception {
+    Configuration conf = new HdfsConfiguration(CONF);
+    // Spread the blocks over many directories
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_NUMBLOCKS_KEY, 4);
+    conf.setInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY,
+        1);
+    cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      cluster.waitActive();
+      bpid = cluster.getNamesystem().getBlockPoolId();
+      DataNode dn = cluster.getDataNodes().get(0);
+      fds = DataNodeTestUtils.getFSDataset(dn);
+      scanner = new DirectoryScanner(dn, fds, conf);
+      scanner.setRetainDiffs(true);
+      createFile("/tmp/t1", 30000);
+
+      deleteBlockFile();
+      scan(300, 1, 0, 1, 0, 0);
+
+      MetricsRecordBuilder rb = getMetrics(dn.getMetrics().name());
+      assertCounter("DirectoryScansNumOps", 1L, rb);
+      assertCounter("DirectoryScanDifferences", 1L, rb);
+      assertTrue(getLongCounter("DirectoryScanThrottleStallsNumOps", rb) > 0);
+    } finally {
+      scanner.shutdown();
+      cluster.shutdown();
+    }
+  }
+
   private void verifyAddition(long blockId, long genStamp, long size) {
     final ReplicaInfo replicainfo;
     replicainfo = FsDatasetTestUtil.fetchReplicaInfo(fds, bpid, blockId);
@@ -417,6 +453,11 @@ public StorageType getStorageType() {
     public String getStorageID() {
       return "";
     }
+
+    @Override
+    public VolumeIoStats getIoStats() {
+      return null;
+    }
   }
 
   private final static TestFsVolumeSpi TEST_VOLUME = new TestFsVolumeSpi();
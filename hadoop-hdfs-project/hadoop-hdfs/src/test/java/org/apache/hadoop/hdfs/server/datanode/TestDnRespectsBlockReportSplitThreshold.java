@@ -32,6 +32,7 @@
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.StorageBlockReport;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCKREPORT_SPLIT_THRESHOLD_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCKREPORT_SPREAD_STORAGES_KEY;
 import org.apache.hadoop.test.GenericTestUtils;
 
 import org.junit.After;
@@ -40,6 +41,7 @@
 import org.mockito.Mockito;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.times;
@@ -62,8 +64,14 @@ public class TestDnRespectsBlockReportSplitThreshold {
   static String bpid;
 
   public void startUpCluster(long splitThreshold) throws IOException {
+    startUpCluster(splitThreshold, false);
+  }
+
+  public void startUpCluster(long splitThreshold, boolean spreadStorages)
+      throws IOException {
     conf = new HdfsConfiguration();
     conf.setLong(DFS_BLOCKREPORT_SPLIT_THRESHOLD_KEY, splitThreshold);
+    conf.setBoolean(DFS_BLOCKREPORT_SPREAD_STORAGES_KEY, spreadStorages);
     cluster = new MiniDFSCluster.Builder(conf)
         .numDataNodes(REPL_FACTOR)
         .build();
@@ -202,4 +210,42 @@ public void testCornerCaseAtThreshold() throws IOException, InterruptedException
     verifyCapturedArguments(captor, 1, BLOCKS_IN_FILE);
   }
 
+  /**
+   * Test that the periodic block reports are sent one storage at a time
+   * when they are spread over the storages.
+   */
+  @Test(timeout=300000)
+  public void testSpreadStorageReports()
+      throws IOException, InterruptedException {
+    startUpCluster(BLOCKS_IN_FILE + 1, true);
+    NameNode nn = cluster.getNameNode();
+    DataNode dn = cluster.getDataNodes().get(0);
+
+    // Create a file with a few blocks.
+    createFile(GenericTestUtils.getMethodName(), BLOCKS_IN_FILE);
+
+    // Make sure that the first, full block report was sent.
+    DataNodeTestUtils.triggerBlockReport(dn);
+
+    // Insert a spy object for the NN RPC.
+    DatanodeProtocolClientSideTranslatorPB nnSpy =
+        DataNodeTestUtils.spyOnBposToNN(dn, nn);
+
+    // Each periodic block report is for the next storage.
+    DataNodeTestUtils.triggerBlockReport(dn);
+    DataNodeTestUtils.triggerBlockReport(dn);
+
+    ArgumentCaptor<StorageBlockReport[]> captor =
+        ArgumentCaptor.forClass(StorageBlockReport[].class);
+
+    Mockito.verify(nnSpy, times(2)).blockReport(
+        any(DatanodeRegistration.class),
+        anyString(),
+        captor.capture());
+
+    verifyCapturedArguments(captor, 1, BLOCKS_IN_FILE);
+    List<StorageBlockReport[]> reports = captor.getAllValues();
+    assertThat(reports.get(0)[0].getStorage().getStorageID(),
+        not(reports.get(1)[0].getStorage().getStorageID()));
+  }
 }
@@ -19,6 +19,7 @@
 
 import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 import static org.mockito.Matchers.any;
@@ -36,6 +37,7 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.HdfsBlockLocation;
@@ -519,4 +521,102 @@ public Boolean get() {
     MetricsAsserts.assertCounter("BlocksCached", 1l, dnMetrics);
     MetricsAsserts.assertCounter("BlocksUncached", 1l, dnMetrics);
   }
+
+  private static void readBlock(Path path, int blockIndex, int times)
+      throws IOException {
+    final byte[] buf = new byte[(int)BLOCK_SIZE];
+    final FSDataInputStream in = fs.open(path);
+    try {
+      for (int i = 0; i < times; i++) {
+        in.readFully(blockIndex * BLOCK_SIZE, buf);
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void waitForCachedHosts(final Path path, final int blockIndex,
+      final int expected) throws Exception {
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          return fs.getFileBlockLocations(path, blockIndex * BLOCK_SIZE, 1)[0]
+              .getCachedHosts().length == expected;
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }, 100, 30000);
+  }
+
+  @Test(timeout=60000)
+  public void testAutoCacheHotBlocks() throws Exception {
+    // Restart with room for two blocks cached automatically.
+    cluster.shutdown();
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_AUTO_CACHE_MAX_BYTES_KEY,
+        2 * BLOCK_SIZE);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_AUTO_CACHE_MIN_READS_KEY, 3);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    dn = cluster.getDataNodes().get(0);
+    fsd = dn.getFSDataset();
+
+    final Path path = new Path("/testAutoCacheHotBlocks");
+    DFSTestUtil.createFile(fs, path, 3 * BLOCK_SIZE, (short)1, 0xFADE);
+    final String bpid = cluster.getNamesystem().getBlockPoolId();
+    final long[] blockIds = new long[3];
+    for (int i = 0; i < blockIds.length; i++) {
+      blockIds[i] = ((HdfsBlockLocation)fs.getFileBlockLocations(path,
+          i * BLOCK_SIZE, 1)[0]).getLocatedBlock().getBlock().getBlockId();
+    }
+
+    // A block is cached once it has been read often enough.  The DataNode
+    // decides before it answers the read, so the decision is made once the
+    // read returns.
+    readBlock(path, 0, 2);
+    MetricsAsserts.assertCounter("BlocksAutoCached", 0L,
+        getMetrics(dn.getMetrics().name()));
+    readBlock(path, 0, 1);
+    verifyExpectedCacheUsage(BLOCK_SIZE, 1);
+    assertTrue(fsd.isCached(bpid, blockIds[0]));
+    assertTrue(fsd.getCacheReport(bpid).isEmpty());
+    assertEquals(1, fsd.getAutoCacheReport(bpid).size());
+    waitForCachedHosts(path, 0, 1);
+
+    readBlock(path, 0, 1);
+    MetricsRecordBuilder dnMetrics = getMetrics(dn.getMetrics().name());
+    MetricsAsserts.assertCounter("CacheHits", 1L, dnMetrics);
+    MetricsAsserts.assertCounter("CacheMisses", 3L, dnMetrics);
+    MetricsAsserts.assertCounter("BlocksAutoCached", 1L, dnMetrics);
+
+    readBlock(path, 1, 3);
+    verifyExpectedCacheUsage(2 * BLOCK_SIZE, 2);
+
+    // The cache is full: a block read as often as the coldest cached block
+    // does not replace it.
+    readBlock(path, 2, 3);
+    dnMetrics = getMetrics(dn.getMetrics().name());
+    MetricsAsserts.assertCounter("BlocksAutoCached", 2L, dnMetrics);
+    MetricsAsserts.assertCounter("BlocksAutoUncached", 0L, dnMetrics);
+
+    // A block read more often uncaches it, and is cached once its space is
+    // released, after it is unmapped.
+    readBlock(path, 2, 1);
+    dnMetrics = getMetrics(dn.getMetrics().name());
+    MetricsAsserts.assertCounter("BlocksAutoUncached", 1L, dnMetrics);
+    MetricsAsserts.assertCounter("BlocksAutoCached", 2L, dnMetrics);
+    verifyExpectedCacheUsage(BLOCK_SIZE, 1);
+    assertFalse(fsd.isCached(bpid, blockIds[1]));
+    readBlock(path, 2, 1);
+    verifyExpectedCacheUsage(2 * BLOCK_SIZE, 2);
+    assertTrue(fsd.isCached(bpid, blockIds[0]));
+    assertTrue(fsd.isCached(bpid, blockIds[2]));
+    dnMetrics = getMetrics(dn.getMetrics().name());
+    MetricsAsserts.assertCounter("BlocksAutoCached", 3L, dnMetrics);
+    MetricsAsserts.assertCounter("BlocksAutoUncached", 1L, dnMetrics);
+    waitForCachedHosts(path, 1, 0);
+    waitForCachedHosts(path, 2, 1);
+  }
 }
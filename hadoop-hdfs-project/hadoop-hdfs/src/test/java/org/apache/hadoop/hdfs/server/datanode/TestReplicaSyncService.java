@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaOutputStreams;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Test syncing the replicas being written in the background, see
+ * {@link ReplicaSyncService}.
+ */
+public class TestReplicaSyncService {
+
+  /** The requests made while a replica is being synced share one sync. */
+  @Test(timeout=60000)
+  public void testCoalesceSyncRequests() throws Exception {
+    final DataNodeMetrics metrics = Mockito.mock(DataNodeMetrics.class);
+    final ReplicaOutputStreams streams =
+        Mockito.mock(ReplicaOutputStreams.class);
+    final CountDownLatch syncStarted = new CountDownLatch(1);
+    final CountDownLatch finishSync = new CountDownLatch(1);
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        syncStarted.countDown();
+        finishSync.await();
+        return null;
+      }
+    }).when(streams).syncDataOut();
+
+    final ReplicaSyncService service = new ReplicaSyncService(metrics, 2);
+    try {
+      final ReplicaSyncService.ReplicaSync sync =
+          service.newReplicaSync(null, streams);
+      sync.requestSync(10);
+      syncStarted.await();
+      // The first sync is in progress: the next requests wait for it.
+      sync.requestSync(20);
+      sync.requestSync(30);
+      finishSync.countDown();
+      sync.waitForSync(30);
+      sync.waitForIdle();
+
+      Mockito.verify(streams, Mockito.times(2)).syncDataOut();
+      Mockito.verify(streams, Mockito.times(2)).syncChecksumOut();
+      Mockito.verify(metrics, Mockito.times(2)).incrFsyncCount();
+      Mockito.verify(metrics).incrFsyncsCoalesced(1);
+    } finally {
+      service.shutdown();
+    }
+  }
+
+  /** A failed sync fails the waiting packets and the later requests. */
+  @Test(timeout=60000)
+  public void testSyncError() throws Exception {
+    final DataNodeMetrics metrics = Mockito.mock(DataNodeMetrics.class);
+    final ReplicaOutputStreams streams =
+        Mockito.mock(ReplicaOutputStreams.class);
+    Mockito.doThrow(new IOException("injected")).when(streams).syncDataOut();
+
+    final ReplicaSyncService service = new ReplicaSyncService(metrics, 1);
+    try {
+      final ReplicaSyncService.ReplicaSync sync =
+          service.newReplicaSync(null, streams);
+      sync.requestSync(10);
+      try {
+        sync.waitForSync(10);
+        fail("the sync did not fail");
+      } catch (IOException e) {
+        GenericTestUtils.assertExceptionContains("injected", e);
+      }
+      try {
+        sync.requestSync(20);
+        fail("the request did not fail");
+      } catch (IOException e) {
+        GenericTestUtils.assertExceptionContains("injected", e);
+      }
+    } finally {
+      service.shutdown();
+    }
+  }
+
+  /** Many threads calling hsync on the same files with group commit. */
+  @Test(timeout=120000)
+  public void testConcurrentHsync() throws Exception {
+    final int numFiles = 4;
+    final int numWritersPerFile = 8;
+    final int numSyncs = 20;
+    final int recordLen = 100;
+
+    final Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_SYNC_GROUP_COMMIT_ENABLED_KEY,
+        true);
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(2).build();
+    try {
+      cluster.waitActive();
+      final FileSystem fs = cluster.getFileSystem();
+      final List<Thread> threads = new ArrayList<Thread>();
+      final List<Throwable> errors = new ArrayList<Throwable>();
+      final List<FSDataOutputStream> outs = new ArrayList<FSDataOutputStream>();
+      for (int f = 0; f < numFiles; f++) {
+        final FSDataOutputStream out = fs.create(new Path("/file" + f),
+            (short)2);
+        outs.add(out);
+        for (int w = 0; w < numWritersPerFile; w++) {
+          threads.add(new Thread() {
+            @Override
+            public void run() {
+              try {
+                final byte[] record = new byte[recordLen];
+                for (int i = 0; i < numSyncs; i++) {
+                  synchronized (out) {
+                    out.write(record);
+                  }
+                  out.hsync();
+                }
+              } catch (Throwable t) {
+                synchronized (errors) {
+                  errors.add(t);
+                }
+              }
+            }
+          });
+        }
+      }
+      for (Thread t : threads) {
+        t.start();
+      }
+      for (Thread t : threads) {
+        t.join();
+      }
+      assertTrue("Writers failed: " + errors, errors.isEmpty());
+      for (FSDataOutputStream out : outs) {
+        out.close();
+      }
+
+      final long fileLen = (long)numWritersPerFile * numSyncs * recordLen;
+      for (int f = 0; f < numFiles; f++) {
+        assertEquals(fileLen,
+            DFSTestUtil.readFileBuffer(fs, new Path("/file" + f)).length);
+      }
+
+      long fsyncs = 0;
+      for (DataNode dn : cluster.getDataNodes()) {
+        fsyncs += getLongCounter("FsyncCount",
+            getMetrics(dn.getMetrics().name()));
+      }
+      // Each DataNode does at most one sync per hsync call.
+      assertTrue("Unexpected fsync count " + fsyncs, fsyncs > 0
+          && fsyncs <= 2L * numFiles * numWritersPerFile * numSyncs);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
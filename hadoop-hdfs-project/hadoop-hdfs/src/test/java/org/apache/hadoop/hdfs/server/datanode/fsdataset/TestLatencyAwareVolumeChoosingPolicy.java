@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SLOW_VOLUME_THRESHOLD_MS_KEY;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.DiskChecker.DiskOutOfSpaceException;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class TestLatencyAwareVolumeChoosingPolicy {
+
+  private static List<FsVolumeSpi> createVolumes(long... available)
+      throws IOException {
+    final List<FsVolumeSpi> volumes = new ArrayList<FsVolumeSpi>();
+    for (long a : available) {
+      final FsVolumeSpi volume = Mockito.mock(FsVolumeSpi.class);
+      final VolumeIoStats stats = new VolumeIoStats();
+      Mockito.when(volume.getAvailable()).thenReturn(a);
+      Mockito.when(volume.getIoStats()).thenReturn(stats);
+      volumes.add(volume);
+    }
+    return volumes;
+  }
+
+  private static void addWrites(FsVolumeSpi volume, int count,
+      long latencyMs) {
+    final VolumeIoStats stats = volume.getIoStats();
+    for (int i = 0; i < count; i++) {
+      final long start = stats.beginIo();
+      stats.endWrite(start - TimeUnit.MILLISECONDS.toNanos(latencyMs));
+    }
+  }
+
+  private static LatencyAwareVolumeChoosingPolicy<FsVolumeSpi> createPolicy() {
+    final Configuration conf = new Configuration();
+    conf.setLong(DFS_DATANODE_SLOW_VOLUME_THRESHOLD_MS_KEY, 100);
+    @SuppressWarnings("unchecked")
+    final LatencyAwareVolumeChoosingPolicy<FsVolumeSpi> policy =
+        ReflectionUtils.newInstance(LatencyAwareVolumeChoosingPolicy.class,
+            conf);
+    return policy;
+  }
+
+  // Without latency samples, the volumes are chosen in round-robin order.
+  @Test
+  public void testRoundRobin() throws Exception {
+    final LatencyAwareVolumeChoosingPolicy<FsVolumeSpi> policy = createPolicy();
+    final List<FsVolumeSpi> volumes = createVolumes(100L, 200L);
+
+    Assert.assertEquals(volumes.get(0), policy.chooseVolume(volumes, 0));
+    Assert.assertEquals(volumes.get(1), policy.chooseVolume(volumes, 0));
+    Assert.assertEquals(volumes.get(0), policy.chooseVolume(volumes, 0));
+    Assert.assertEquals(volumes.get(1), policy.chooseVolume(volumes, 0));
+
+    // The first volume does not have enough space.
+    Assert.assertEquals(volumes.get(1), policy.chooseVolume(volumes, 150));
+
+    try {
+      policy.chooseVolume(volumes, Long.MAX_VALUE);
+      Assert.fail();
+    } catch (DiskOutOfSpaceException e) {
+      Assert.assertEquals("Not returning the expected message",
+          "Out of space: The volume with the most available space (=200 B) " +
+          "is less than the block size (=" + Long.MAX_VALUE + " B).",
+          e.getMessage());
+    }
+  }
+
+  @Test
+  public void testAvoidSlowVolume() throws Exception {
+    final LatencyAwareVolumeChoosingPolicy<FsVolumeSpi> policy = createPolicy();
+    final List<FsVolumeSpi> volumes = createVolumes(100L, 200L, 300L);
+    addWrites(volumes.get(0), 32, 1);
+    addWrites(volumes.get(1), 32, 500);
+    addWrites(volumes.get(2), 32, 2);
+
+    for (int i = 0; i < 10; i++) {
+      Assert.assertNotSame(volumes.get(1), policy.chooseVolume(volumes, 0));
+    }
+    // The slow volume is used when no other volume has enough space.
+    Assert.assertEquals(volumes.get(2), policy.chooseVolume(volumes, 250));
+    Mockito.when(volumes.get(2).getAvailable()).thenReturn(150L);
+    Assert.assertEquals(volumes.get(1), policy.chooseVolume(volumes, 150));
+  }
+
+  @Test
+  public void testPreferIdleVolume() throws Exception {
+    final LatencyAwareVolumeChoosingPolicy<FsVolumeSpi> policy = createPolicy();
+    final List<FsVolumeSpi> volumes = createVolumes(100L, 100L, 100L);
+    final long start = volumes.get(0).getIoStats().beginIo();
+    for (int i = 0; i < 10; i++) {
+      Assert.assertNotSame(volumes.get(0), policy.chooseVolume(volumes, 0));
+    }
+    volumes.get(0).getIoStats().endWrite(start);
+    Assert.assertEquals(0, volumes.get(0).getIoStats().getOutstandingIos());
+  }
+
+  @Test
+  public void testGetSlowVolumes() throws Exception {
+    final List<FsVolumeSpi> volumes = createVolumes(100L, 100L, 100L);
+    // Too few samples.
+    addWrites(volumes.get(0), VolumeIoStats.MIN_SAMPLES - 1, 500);
+    addWrites(volumes.get(1), 32, 1);
+    Assert.assertTrue(VolumeIoStats.getSlowVolumes(volumes, 100).isEmpty());
+
+    // Over the threshold and an outlier.
+    addWrites(volumes.get(0), 1, 500);
+    Assert.assertEquals(1, VolumeIoStats.getSlowVolumes(volumes, 100).size());
+    Assert.assertTrue(VolumeIoStats.getSlowVolumes(volumes, 100).contains(
+        volumes.get(0)));
+
+    // An outlier, but under the threshold.
+    Assert.assertTrue(VolumeIoStats.getSlowVolumes(volumes, 1000).isEmpty());
+
+    // Over the threshold, but not an outlier.
+    addWrites(volumes.get(1), 256, 400);
+    addWrites(volumes.get(2), 32, 400);
+    Assert.assertTrue(VolumeIoStats.getSlowVolumes(volumes, 100).isEmpty());
+
+    // A single volume is never slow.
+    Assert.assertTrue(VolumeIoStats.getSlowVolumes(volumes.subList(0, 1), 100)
+        .isEmpty());
+  }
+
+  @Test
+  public void testLatencySamples() {
+    final VolumeIoStats.LatencySamples samples =
+        new VolumeIoStats.LatencySamples();
+    final long now = 1000000;
+    for (int i = 1; i <= 100; i++) {
+      samples.add(i, now);
+    }
+    Assert.assertEquals(50, samples.getPercentile(50, now));
+    Assert.assertEquals(90, samples.getPercentile(90, now));
+    Assert.assertEquals(100, samples.getPercentile(100, now));
+
+    // Only the latest samples are kept.
+    for (int i = 0; i < VolumeIoStats.NUM_SAMPLES; i++) {
+      samples.add(7, now + 1);
+    }
+    Assert.assertEquals(7, samples.getPercentile(99, now + 1));
+
+    // Old samples are ignored.
+    Assert.assertEquals(-1, samples.getPercentile(50,
+        now + 1 + VolumeIoStats.SAMPLE_EXPIRY_MS + 1));
+  }
+}
@@ -34,6 +34,7 @@
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSCluster.DataNodeProperties;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
@@ -181,6 +182,103 @@ private void testRbwReplicas(MiniDFSCluster cluster, boolean isCorrupt)
     }
   }
 
+  // test loading the finalized replicas saved on shutdown
+  @Test public void testReplicaCache() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_ENABLED_KEY, true);
+    // build a tree of subdirectories
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_NUMBLOCKS_KEY, 2);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    cluster.waitActive();
+    try {
+      FileSystem fs = cluster.getFileSystem();
+      for (int i=0; i<12; i++) {
+        Path fileName = new Path("/test"+i);
+        DFSTestUtil.createFile(fs, fileName, 100, (short)1, 0L);
+        DFSTestUtil.waitReplication(fs, fileName, (short)1);
+      }
+      String bpid = cluster.getNamesystem().getBlockPoolId();
+      DataNode dn = cluster.getDataNodes().get(0);
+      Iterator<ReplicaInfo> replicasItor =
+          dataset(dn).volumeMap.replicas(bpid).iterator();
+      ReplicaInfo truncated = replicasItor.next();
+      ReplicaInfo deleted = replicasItor.next();
+
+      // The directories just modified are listed, since they could have been
+      // modified again without changing their modification times.
+      DataNodeProperties dnprops = cluster.stopDataNode(0);
+      assertReplicaCaches(cluster, bpid, true);
+      cluster.restartDataNode(dnprops);
+      cluster.waitActive();
+      dn = cluster.getDataNodes().get(0);
+      assertReplicaCaches(cluster, bpid, false);
+      Assert.assertTrue(getNumFinalizedDirsListed(dn, bpid) > 0);
+      Assert.assertEquals(12, dataset(dn).volumeMap.size(bpid));
+      Thread.sleep(BlockPoolSlice.MTIME_GRANULARITY);
+
+      // The saved replicas are used since no directory was modified, so the
+      // truncation is not seen, and no directory is listed.
+      dnprops = cluster.stopDataNode(0);
+      assertReplicaCaches(cluster, bpid, true);
+      RandomAccessFile raf = new RandomAccessFile(
+          truncated.getBlockFile(), "rw");
+      try {
+        raf.setLength(50);
+      } finally {
+        raf.close();
+      }
+      cluster.restartDataNode(dnprops);
+      cluster.waitActive();
+      dn = cluster.getDataNodes().get(0);
+      assertReplicaCaches(cluster, bpid, false);
+      Assert.assertEquals(0, getNumFinalizedDirsListed(dn, bpid));
+      Assert.assertEquals(12, dataset(dn).volumeMap.size(bpid));
+      Assert.assertEquals(100, dataset(dn).volumeMap.get(bpid,
+          truncated.getBlockId()).getNumBytes());
+
+      // Blocks are added to the tree built from the cache.
+      for (int i=12; i<16; i++) {
+        Path fileName = new Path("/test"+i);
+        DFSTestUtil.createFile(fs, fileName, 100, (short)1, 0L);
+        DFSTestUtil.waitReplication(fs, fileName, (short)1);
+      }
+      Assert.assertEquals(16, dataset(dn).volumeMap.size(bpid));
+
+      // The directories are scanned after a block file was removed.
+      dnprops = cluster.stopDataNode(0);
+      assertReplicaCaches(cluster, bpid, true);
+      Assert.assertTrue(deleted.getBlockFile().delete());
+      cluster.restartDataNode(dnprops);
+      cluster.waitActive();
+      dn = cluster.getDataNodes().get(0);
+      assertReplicaCaches(cluster, bpid, false);
+      Assert.assertTrue(getNumFinalizedDirsListed(dn, bpid) > 1);
+      Assert.assertEquals(15, dataset(dn).volumeMap.size(bpid));
+      Assert.assertNull(dataset(dn).volumeMap.get(bpid, deleted.getBlockId()));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  private static int getNumFinalizedDirsListed(DataNode dn, String bpid)
+      throws IOException {
+    int n = 0;
+    for (FsVolumeImpl v : dataset(dn).getVolumes()) {
+      n += v.getBlockPoolSlice(bpid).getNumFinalizedDirsListed();
+    }
+    return n;
+  }
+
+  private static void assertReplicaCaches(MiniDFSCluster cluster, String bpid,
+      boolean exist) {
+    for (int i = 0; i < 2; i++) {
+      File bpCurrentDir = MiniDFSCluster.getFinalizedDir(
+          cluster.getInstanceStorageDir(0, i), bpid).getParentFile();
+      Assert.assertEquals(exist,
+          new File(bpCurrentDir, BlockPoolSlice.REPLICA_CACHE_FILE).exists());
+    }
+  }
+
   private static FsDatasetImpl dataset(DataNode dn) {
     return (FsDatasetImpl)DataNodeTestUtils.getFSDataset(dn);
   }
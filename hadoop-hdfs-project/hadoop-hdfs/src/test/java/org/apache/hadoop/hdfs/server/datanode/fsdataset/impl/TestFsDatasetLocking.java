@@ -0,0 +1,223 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportIterator;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
+import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
+import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Tests the locking of {@link FsDatasetImpl}: the operations which read all
+ * the replicas exclude the operations changing a replica.
+ */
+public class TestFsDatasetLocking {
+  private static final long GEN_STAMP = 1001;
+
+  private MiniDFSCluster cluster;
+  private FsDatasetImpl dataset;
+  private String bpid;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws Exception {
+    cluster = new MiniDFSCluster.Builder(new HdfsConfiguration()).build();
+    cluster.waitActive();
+    dataset = (FsDatasetImpl)DataNodeTestUtils.getFSDataset(
+        cluster.getDataNodes().get(0));
+    bpid = cluster.getNamesystem().getBlockPoolId();
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private ExtendedBlock writeBlock(long blockId) throws Exception {
+    ExtendedBlock b = new ExtendedBlock(bpid, blockId, 0, GEN_STAMP);
+    ReplicaInfo rbw = (ReplicaInfo)dataset.createRbw(b, false);
+    // the meta file is created by the writer of the replica
+    assertTrue(rbw.getMetaFile().createNewFile());
+    dataset.finalizeBlock(b);
+    return b;
+  }
+
+  /** @return the ids of the replicas in the reports in the given state. */
+  private static Set<Long> getReportedIds(
+      Map<DatanodeStorage, BlockListAsLongs> reports, ReplicaState state) {
+    Set<Long> ids = new HashSet<Long>();
+    for (BlockListAsLongs report : reports.values()) {
+      BlockReportIterator it = report.getBlockReportIterator();
+      while (it.hasNext()) {
+        Block b = it.next();
+        if (it.getCurrentReplicaState() == state) {
+          assertTrue("Replica reported twice: " + b, ids.add(b.getBlockId()));
+        }
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * The block reports and the lists of finalized replicas wait for the
+   * operations changing a replica, and see their result.
+   */
+  @Test(timeout=60000)
+  public void testReadersWaitForReplicaOperations() throws Exception {
+    final long blockId = 1000;
+    final ReentrantLock lock = dataset.replicaLocks.lock(blockId);
+    Future<Map<DatanodeStorage, BlockListAsLongs>> reports;
+    Future<List<FinalizedReplica>> finalized;
+    try {
+      reports = executor.submit(
+          new Callable<Map<DatanodeStorage, BlockListAsLongs>>() {
+            @Override
+            public Map<DatanodeStorage, BlockListAsLongs> call() {
+              return dataset.getBlockReports(bpid);
+            }
+          });
+      finalized = executor.submit(new Callable<List<FinalizedReplica>>() {
+        @Override
+        public List<FinalizedReplica> call() {
+          return dataset.getFinalizedBlocks(bpid);
+        }
+      });
+      // one reader waits for the replica, the other one for the first
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return lock.hasQueuedThreads();
+        }
+      }, 10, 10000);
+      assertFalse(reports.isDone());
+      assertFalse(finalized.isDone());
+      // an operation in progress on the replica
+      writeBlock(blockId);
+    } finally {
+      lock.unlock();
+    }
+
+    assertEquals(Collections.singleton(blockId),
+        getReportedIds(reports.get(), ReplicaState.FINALIZED));
+    assertEquals(1, finalized.get().size());
+    assertEquals(blockId, finalized.get().get(0).getBlockId());
+  }
+
+  /**
+   * Replicas written concurrently with the block reports are reported once,
+   * and are reported finalized once finalized.
+   */
+  @Test(timeout=120000)
+  public void testConcurrentWritesAndReports() throws Exception {
+    final int numWriters = 4;
+    final int blocksPerWriter = 50;
+    final Set<Long> written = Collections.newSetFromMap(
+        new ConcurrentHashMap<Long, Boolean>());
+    final AtomicBoolean done = new AtomicBoolean(false);
+
+    Future<Integer> reader = executor.submit(new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        int numReports = 0;
+        while (!done.get()) {
+          Set<Long> expected = new HashSet<Long>(written);
+          Map<DatanodeStorage, BlockListAsLongs> reports =
+              dataset.getBlockReports(bpid);
+          Set<Long> finalizedIds =
+              getReportedIds(reports, ReplicaState.FINALIZED);
+          Set<Long> rbwIds = getReportedIds(reports, ReplicaState.RBW);
+          assertTrue(finalizedIds.containsAll(expected));
+          for (Long id : rbwIds) {
+            assertFalse("Replica reported finalized and rbw: " + id,
+                finalizedIds.contains(id));
+          }
+          Set<Long> listed = new HashSet<Long>();
+          for (FinalizedReplica r : dataset.getFinalizedBlocks(bpid)) {
+            listed.add(r.getBlockId());
+          }
+          assertTrue(listed.containsAll(expected));
+          numReports++;
+        }
+        return numReports;
+      }
+    });
+
+    List<Future<Void>> writers = new ArrayList<Future<Void>>();
+    for (int i = 0; i < numWriters; i++) {
+      final long firstId = 2000 + i * blocksPerWriter;
+      writers.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          for (long id = firstId; id < firstId + blocksPerWriter; id++) {
+            writeBlock(id);
+            written.add(id);
+          }
+          return null;
+        }
+      }));
+    }
+    for (Future<Void> w : writers) {
+      w.get();
+    }
+    done.set(true);
+    assertTrue(reader.get() > 0);
+
+    Map<DatanodeStorage, BlockListAsLongs> reports =
+        dataset.getBlockReports(bpid);
+    assertEquals(written, getReportedIds(reports, ReplicaState.FINALIZED));
+    assertEquals(numWriters * blocksPerWriter,
+        dataset.getFinalizedBlocks(bpid).size());
+  }
+}
@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CreateFlag;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSCluster.DataNodeProperties;
+import org.apache.hadoop.hdfs.StorageType;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
+import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Test the files written to RAM_DISK volumes with the LAZY_PERSIST create
+ * flag.
+ */
+public class TestLazyPersistFiles {
+  private static final int BLOCK_SIZE = 1024 * 1024;
+  private static final int FILE_LEN = BLOCK_SIZE / 2;
+  private static final EnumSet<CreateFlag> LAZY_PERSIST_FLAGS =
+      EnumSet.of(CreateFlag.CREATE, CreateFlag.LAZY_PERSIST);
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @After
+  public void shutDownCluster() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  /** Start a cluster with a datanode with a RAM_DISK and a DISK volume. */
+  private void startUpCluster(int lowWatermarkPercent) throws IOException {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_LAZY_WRITER_INTERVAL_SEC_KEY, 1);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_RAM_DISK_LOW_WATERMARK_PERCENT_KEY,
+        lowWatermarkPercent);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+    final File dataDir = new File(cluster.getDataDirectory());
+    conf.set(DFSConfigKeys.DFS_DATANODE_DATA_DIR_KEY,
+        "[RAM_DISK]" + new File(dataDir, "ram").toURI() + ","
+        + "[DISK]" + new File(dataDir, "disk").toURI());
+    cluster.startDataNodes(conf, 1, false, null, null, null, null);
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  private Path createLazyPersistFile(String name) throws IOException {
+    final Path path = new Path("/" + name);
+    final FSDataOutputStream out = fs.create(path, FsPermission.getDefault(),
+        LAZY_PERSIST_FLAGS, 4096, (short)1, BLOCK_SIZE, null);
+    try {
+      out.write(DFSTestUtil.generateSequentialBytes(0, FILE_LEN));
+    } finally {
+      out.close();
+    }
+    return path;
+  }
+
+  private FsDatasetImpl getDataset() {
+    return (FsDatasetImpl)DataNodeTestUtils.getFSDataset(
+        cluster.getDataNodes().get(0));
+  }
+
+  private ReplicaInfo getReplica(Path path) throws IOException {
+    final ExtendedBlock b = DFSTestUtil.getFirstBlock(fs, path);
+    return getDataset().volumeMap.get(b.getBlockPoolId(), b.getBlockId());
+  }
+
+  private StorageType getStorageType(Path path) throws IOException {
+    return getReplica(path).getVolume().getStorageType();
+  }
+
+  private void checkFile(Path path) throws IOException {
+    final byte[] expected = DFSTestUtil.generateSequentialBytes(0, FILE_LEN);
+    final byte[] actual = DFSTestUtil.readFileBuffer(fs, path);
+    assertEquals(FILE_LEN, actual.length);
+    for (int i = 0; i < FILE_LEN; i++) {
+      assertEquals("Mismatch at byte " + i, expected[i], actual[i]);
+    }
+  }
+
+  private void waitForPersisted(final Path path) throws Exception {
+    final ExtendedBlock b = DFSTestUtil.getFirstBlock(fs, path);
+    final RamDiskReplicaTracker tracker = getDataset().ramDiskReplicaTracker;
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        for (FsVolumeImpl v : getDataset().volumes.getVolumes(false)) {
+          try {
+            if (new File(v.getLazypersistDir(b.getBlockPoolId()),
+                b.getLocalBlock().getBlockName()).exists()) {
+              return tracker.numReplicasNotPersisted() == 0;
+            }
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+        return false;
+      }
+    }, 100, 30000);
+  }
+
+  @Test
+  public void testLazyPersistRequiresSingleReplica() throws Exception {
+    startUpCluster(0);
+    try {
+      fs.create(new Path("/file"), FsPermission.getDefault(),
+          LAZY_PERSIST_FLAGS, 4096, (short)2, BLOCK_SIZE, null);
+      fail("a lazy persist file with two replicas was created");
+    } catch (IllegalArgumentException e) {
+      GenericTestUtils.assertExceptionContains("single replica", e);
+    }
+  }
+
+  @Test
+  public void testWritesToRamDiskAndPersists() throws Exception {
+    startUpCluster(0);
+    final Path path = createLazyPersistFile("file");
+    assertEquals(StorageType.RAM_DISK, getStorageType(path));
+    waitForPersisted(path);
+    // Nothing is evicted while the RAM_DISK volume has free space.
+    assertEquals(StorageType.RAM_DISK, getStorageType(path));
+    checkFile(path);
+
+    // A file without the flag is not written to memory.
+    final Path diskPath = new Path("/disk");
+    DFSTestUtil.createFile(fs, diskPath, FILE_LEN, (short)1, 0L);
+    assertEquals(StorageType.DISK, getStorageType(diskPath));
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    // The RAM_DISK volume is always below the watermark.
+    startUpCluster(100);
+    final Path path = createLazyPersistFile("file");
+    final File ramBlockFile = getReplica(path).getBlockFile();
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          return getStorageType(path) == StorageType.DISK;
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }, 100, 30000);
+    final ReplicaInfo replica = getReplica(path);
+    assertEquals(ReplicaState.FINALIZED, replica.getState());
+    assertTrue(replica.getBlockFile().exists());
+    assertFalse(ramBlockFile.exists());
+    checkFile(path);
+  }
+
+  @Test
+  public void testDeleteDiscardsCopy() throws Exception {
+    startUpCluster(0);
+    final Path path = createLazyPersistFile("file");
+    waitForPersisted(path);
+    final ExtendedBlock b = DFSTestUtil.getFirstBlock(fs, path);
+    final File copy = new File(getDataset().volumes.getVolumes(false).get(0)
+        .getLazypersistDir(b.getBlockPoolId()),
+        b.getLocalBlock().getBlockName());
+    assertTrue(copy.exists());
+
+    fs.delete(path, false);
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return !copy.exists();
+      }
+    }, 100, 30000);
+  }
+
+  @Test
+  public void testRecoverLostReplicaOnRestart() throws Exception {
+    startUpCluster(0);
+    final Path path = createLazyPersistFile("file");
+    waitForPersisted(path);
+    final File ramBlockFile = getReplica(path).getBlockFile();
+    final File ramMetaFile = getReplica(path).getMetaFile();
+
+    // Lose the content of the RAM_DISK volume, as on reboot.
+    final DataNodeProperties dnProps = cluster.stopDataNode(0);
+    assertTrue(ramBlockFile.delete());
+    assertTrue(ramMetaFile.delete());
+    cluster.restartDataNode(dnProps, true);
+    cluster.waitActive();
+
+    assertEquals(StorageType.DISK, getStorageType(path));
+    assertEquals(0, getDataset().getNumFailedVolumes());
+    checkFile(path);
+  }
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.Test;
+
+/**
+ * Unit test for ReplicaLocks class
+ */
+public class TestReplicaLocks {
+
+  @Test
+  public void testSameBlockSameLock() {
+    ReplicaLocks locks = new ReplicaLocks(16);
+    ReentrantLock lock = locks.lock(1234);
+    try {
+      assertSame(lock, locks.getLock(1234));
+      // reentrant
+      locks.lock(1234).unlock();
+    } finally {
+      lock.unlock();
+    }
+    assertEquals(0, locks.getContentionCount());
+  }
+
+  @Test
+  public void testSequentialBlocksSpread() {
+    ReplicaLocks locks = new ReplicaLocks(16);
+    Set<ReentrantLock> used = Collections.newSetFromMap(
+        new IdentityHashMap<ReentrantLock, Boolean>());
+    // Block ids are allocated sequentially.
+    for (long id = 1073741825L; id < 1073741825L + 64; id++) {
+      used.add(locks.getLock(id));
+    }
+    assertEquals(16, used.size());
+  }
+
+  @Test(timeout=10000)
+  public void testContention() throws Exception {
+    final ReplicaLocks locks = new ReplicaLocks(16);
+    final CountDownLatch waiting = new CountDownLatch(1);
+    ReentrantLock lock = locks.lock(1);
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        waiting.countDown();
+        locks.lock(1).unlock();
+      }
+    };
+    try {
+      t.start();
+      waiting.await();
+      while (!lock.hasQueuedThreads()) {
+        Thread.sleep(10);
+      }
+      Thread.sleep(50);
+    } finally {
+      lock.unlock();
+    }
+    t.join();
+    assertEquals(1, locks.getContentionCount());
+    assertTrue(locks.getWaitTimeMillis() >= 50);
+  }
+}
@@ -843,7 +843,8 @@ public Boolean get() {
     String bpid = cluster.getNamesystem().getBlockPoolId();
     LinkedList<Long> bogusBlockIds = new LinkedList<Long> ();
     bogusBlockIds.add(999999L);
-    nnRpc.cacheReport(dn0.getDNRegistrationForBP(bpid), bpid, bogusBlockIds);
+    nnRpc.cacheReport(dn0.getDNRegistrationForBP(bpid), bpid, bogusBlockIds,
+        new LinkedList<Long>());
 
     Path rootDir = helper.getDefaultWorkingDirectory(dfs);
     // Create the pool
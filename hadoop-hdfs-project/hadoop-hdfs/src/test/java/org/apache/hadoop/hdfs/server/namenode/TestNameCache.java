@@ -86,4 +86,49 @@ private void verifyNameReuse(NameCache<String> cache, String s, boolean reused)
       assertEquals(lookupCount, cache.getLookupCount());
     }
   }
+
+  @Test
+  public void testRuntimePromotion() throws Exception {
+    // Track up to 2 names created after initialization
+    NameCache<String> cache = new NameCache<String>(3, 2);
+    cache.initialized();
+
+    // The first use of a name is only tracked
+    String name = new String("part-00000");
+    assertNull(cache.put(name));
+    assertEquals(0, cache.getLookupCount());
+    // Further uses share the first instance until the name is promoted
+    assertTrue(name == cache.put(new String("part-00000")));
+    assertEquals(0, cache.size());
+    assertEquals(1, cache.getLookupCount());
+    assertTrue(name == cache.put(new String("part-00000")));
+    assertEquals(1, cache.size());
+    assertEquals(2, cache.getLookupCount());
+    verifyNameReuse(cache, "part-00000", true);
+
+    // The tracking map is bounded, so the least recently used name is evicted
+    assertNull(cache.put("a"));
+    assertNull(cache.put("b"));
+    assertNull(cache.put("c"));
+    assertNull(cache.put("a"));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testRuntimePromotionBounded() throws Exception {
+    NameCache<String> cache = new NameCache<String>(2, 2);
+    cache.initialized();
+
+    // Promote more names than the cache keeps after initialization
+    String[] names = {"a", "b", "c"};
+    for (String s : names) {
+      assertNull(cache.put(s));
+      assertTrue(s == cache.put(new String(s)));
+    }
+    assertEquals(2, cache.size());
+    // The least recently promoted name was dropped
+    verifyNameReuse(cache, "b", true);
+    verifyNameReuse(cache, "c", true);
+    assertNull(cache.put(new String("a")));
+  }
 }
@@ -102,6 +102,16 @@ public void testNameNodeMXBeanInfo() throws Exception {
       // get attribute Totalblocks
       Long totalblocks = (Long) (mbs.getAttribute(mxbeanName, "TotalBlocks"));
       assertEquals(fsn.getTotalBlocks(), totalblocks.longValue());
+      // get attribute NamespaceHeapUsage
+      String heapUsage = (String) (mbs.getAttribute(mxbeanName,
+          "NamespaceHeapUsage"));
+      Map<String, Object> heapUsageMap =
+          (Map<String, Object>) JSON.parse(heapUsage);
+      // only the root directory exists
+      assertEquals(0L, heapUsageMap.get("files"));
+      assertEquals(1L, heapUsageMap.get("directories"));
+      assertEquals(fsn.getTotalBlocks(), heapUsageMap.get("blocks"));
+      assertTrue((Long) heapUsageMap.get("estimatedTotalHeapBytes") > 0);
       // get attribute alivenodeinfo
       String alivenodeinfo = (String) (mbs.getAttribute(mxbeanName,
           "LiveNodes"));
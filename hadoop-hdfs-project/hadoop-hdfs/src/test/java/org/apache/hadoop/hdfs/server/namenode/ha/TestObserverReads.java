@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_FAILOVER_PROXY_PROVIDER_KEY_PREFIX;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_HA_NAMENODES_KEY_PREFIX;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RPC_ADDRESS_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.ServerSocket;
+import java.net.URI;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSNNTopology;
+import org.apache.hadoop.hdfs.NameNodeProxies;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.StandbyException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests reads served by the standby NameNode through
+ * {@link ObserverReadProxyProvider}.
+ */
+public class TestObserverReads {
+  private Configuration conf;
+  private Configuration clientConf;
+  private URI uri;
+  private MiniDFSCluster cluster;
+  private FileSystem fs;
+
+  @Before
+  public void setupCluster() throws Exception {
+    conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_HA_STANDBY_READS_ENABLED_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 1);
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_ACCESSTIME_PRECISION_KEY, 1);
+    cluster = new MiniDFSCluster.Builder(conf)
+        .nnTopology(MiniDFSNNTopology.simpleHATopology())
+        .numDataNodes(0)
+        .build();
+    cluster.waitActive();
+    cluster.transitionToActive(0);
+
+    clientConf = new Configuration(conf);
+    String logicalName = HATestUtil.getLogicalHostname(cluster);
+    HATestUtil.setFailoverConfigurations(cluster, clientConf, logicalName);
+    clientConf.set(DFS_CLIENT_FAILOVER_PROXY_PROVIDER_KEY_PREFIX + "."
+        + logicalName, ObserverReadProxyProvider.class.getName());
+    uri = new URI("hdfs://" + logicalName);
+    fs = FileSystem.newInstance(uri, clientConf);
+  }
+
+  @After
+  public void shutdownCluster() throws Exception {
+    if (fs != null) {
+      fs.close();
+    }
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * A read right after a write must see the write even though the standby
+   * has not tailed it yet: the standby rejects the read and the client
+   * retries it on the active.
+   */
+  @Test(timeout=60000)
+  public void testReadYourWrites() throws Exception {
+    Path dir = new Path("/testReadYourWrites");
+    assertTrue(fs.mkdirs(dir));
+    assertTrue(fs.exists(dir));
+    assertTrue(fs.getFileStatus(dir).isDirectory());
+  }
+
+  @Test(timeout=60000)
+  public void testReadsServedByStandby() throws Exception {
+    Path dir = new Path("/testReadsServedByStandby");
+    assertTrue(fs.mkdirs(dir));
+    // the client synchronizes with the active before its first read
+    assertTrue(fs.exists(dir));
+    HATestUtil.waitForStandbyToCatchUp(cluster.getNameNode(0),
+        cluster.getNameNode(1));
+
+    // With the active gone, only the standby can answer the reads.
+    cluster.shutdownNameNode(0);
+    assertTrue(fs.getFileStatus(dir).isDirectory());
+    assertEquals(1, fs.listStatus(new Path("/")).length);
+  }
+
+  /**
+   * With more than two NameNodes, the reads go to the standbys which can
+   * serve them, skipping a NameNode which cannot be reached.
+   */
+  @Test(timeout=60000)
+  public void testReadsWithThreeNameNodes() throws Exception {
+    fs.close();
+    // a third NameNode, tried before the standby, which is down
+    ServerSocket socket = new ServerSocket(0);
+    int deadPort = socket.getLocalPort();
+    socket.close();
+    String logicalName = HATestUtil.getLogicalHostname(cluster);
+    clientConf.set(DFSUtil.addKeySuffixes(DFS_NAMENODE_RPC_ADDRESS_KEY,
+        logicalName, "nn3"), "hdfs://localhost:" + deadPort);
+    clientConf.set(DFSUtil.addKeySuffixes(DFS_HA_NAMENODES_KEY_PREFIX,
+        logicalName), "nn1,nn2,nn3");
+    fs = FileSystem.newInstance(uri, clientConf);
+
+    Path dir = new Path("/testReadsWithThreeNameNodes");
+    assertTrue(fs.mkdirs(dir));
+    assertTrue(fs.exists(dir));
+    HATestUtil.waitForStandbyToCatchUp(cluster.getNameNode(0),
+        cluster.getNameNode(1));
+
+    // With the active gone, only the standby can answer the reads.
+    cluster.shutdownNameNode(0);
+    assertTrue(fs.getFileStatus(dir).isDirectory());
+    assertEquals(1, fs.listStatus(new Path("/")).length);
+  }
+
+  /**
+   * A new client synchronizes with the active before its first read on the
+   * standby, so it sees the writes of other clients the standby has not
+   * tailed yet.
+   */
+  @Test(timeout=60000)
+  public void testNewClientSeesOtherWrites() throws Exception {
+    String dir = "/testNewClientSeesOtherWrites";
+    assertTrue(fs.mkdirs(new Path(dir)));
+    long syncedTxId = cluster.getNameNode(0).getNamesystem().getEditLog()
+        .getLastWrittenTxId();
+
+    ObserverReadProxyProvider<ClientProtocol> provider =
+        new ObserverReadProxyProvider<ClientProtocol>(clientConf, uri,
+            ClientProtocol.class);
+    try {
+      assertFalse(provider.isMsynced());
+      assertEquals(0, provider.getLastSeenStateId());
+      assertNotNull(provider.getProxy().getFileInfo(dir));
+      assertTrue(provider.isMsynced());
+      assertTrue(provider.getLastSeenStateId() >= syncedTxId);
+    } finally {
+      provider.close();
+    }
+  }
+
+  /** A standby serving a read does not update the access time. */
+  @Test(timeout=60000)
+  public void testStandbyReadSkipsAccessTime() throws Exception {
+    Path file = new Path("/testStandbyReadSkipsAccessTime");
+    fs.create(file, (short)1).close();
+    assertTrue(fs.exists(file));
+    HATestUtil.waitForStandbyToCatchUp(cluster.getNameNode(0),
+        cluster.getNameNode(1));
+    long atime = NameNodeAdapter.getFileInfo(cluster.getNameNode(0),
+        file.toString(), false).getAccessTime();
+    Thread.sleep(10);
+
+    // served by the standby, which cannot log the access time
+    fs.open(file).close();
+    assertEquals(atime, NameNodeAdapter.getFileInfo(cluster.getNameNode(0),
+        file.toString(), false).getAccessTime());
+    HATestUtil.waitForStandbyToCatchUp(cluster.getNameNode(0),
+        cluster.getNameNode(1));
+    cluster.transitionToStandby(0);
+    cluster.transitionToActive(1);
+    assertEquals(atime, NameNodeAdapter.getFileInfo(cluster.getNameNode(1),
+        file.toString(), false).getAccessTime());
+  }
+
+  /** Clients which do not send a state id are still rejected. */
+  @Test(timeout=60000)
+  public void testStandbyRejectsClientsWithoutStateId() throws Exception {
+    ClientProtocol standby = NameNodeProxies.createNonHAProxy(conf,
+        cluster.getNameNode(1).getNameNodeAddress(), ClientProtocol.class,
+        UserGroupInformation.getCurrentUser(), false).getProxy();
+    try {
+      standby.getFileInfo("/");
+      fail("Standby should reject reads without a client state id");
+    } catch (RemoteException re) {
+      assertEquals(StandbyException.class.getName(), re.getClassName());
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.HAUtil;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.qjournal.MiniQJMHACluster;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Tests that the standby reads edits from the in-progress segment, served
+ * out of the caches of the JournalNodes, without any log roll.
+ */
+public class TestStandbyInProgressTail {
+  private MiniQJMHACluster qjmhaCluster;
+  private MiniDFSCluster cluster;
+
+  @Before
+  public void setupCluster() throws IOException {
+    Configuration conf = new Configuration();
+    // We read from the standby to watch the namespace
+    HAUtil.setAllowStandbyReads(conf, true);
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
+    conf.set(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, "100ms");
+    // Never roll, so that the edits only exist in the in-progress segment.
+    conf.setInt(DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY, -1);
+    qjmhaCluster = new MiniQJMHACluster.Builder(conf).build();
+    cluster = qjmhaCluster.getDfsCluster();
+    cluster.transitionToActive(0);
+  }
+
+  @After
+  public void shutdownCluster() throws IOException {
+    if (qjmhaCluster != null) {
+      qjmhaCluster.shutdown();
+    }
+  }
+
+  private static void mkdir(NameNode nn, String dir) throws IOException {
+    nn.getRpcServer().mkdirs(dir, FsPermission.createImmutable((short)0755),
+        true);
+  }
+
+  private static void waitForFile(final NameNode nn, final String path)
+      throws Exception {
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          return NameNodeAdapter.getFileInfo(nn, path, false) != null;
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }, 50, 10000);
+  }
+
+  @Test(timeout=60000)
+  public void testStandbyTailsInProgressSegment() throws Exception {
+    NameNode active = cluster.getNameNode(0);
+    NameNode standby = cluster.getNameNode(1);
+
+    mkdir(active, "/test1");
+    waitForFile(standby, "/test1");
+    mkdir(active, "/test2");
+    waitForFile(standby, "/test2");
+
+    assertEquals(active.getNamesystem().getEditLog().getLastWrittenTxId(),
+        standby.getNamesystem().getFSImage().getLastAppliedTxId());
+    assertEquals(0, standby.getNamesystem().getStandbyLagTxns());
+    assertTrue(standby.getNamesystem().getStandbyLagMillis() < 10000);
+  }
+
+  @Test(timeout=60000)
+  public void testFailoverAfterInProgressTail() throws Exception {
+    NameNode active = cluster.getNameNode(0);
+    NameNode standby = cluster.getNameNode(1);
+
+    mkdir(active, "/test1");
+    waitForFile(standby, "/test1");
+
+    cluster.transitionToStandby(0);
+    cluster.transitionToActive(1);
+    assertNotNull(NameNodeAdapter.getFileInfo(standby, "/test1", false));
+    mkdir(standby, "/test2");
+    waitForFile(active, "/test2");
+  }
+}
@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.web;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Test {@link ParallelByteRangeInputStream}. */
+public class TestParallelByteRangeInputStream {
+  private static final int RANGE_SIZE = 1000;
+
+  private final byte[] data = new byte[10 * RANGE_SIZE + 123];
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    new Random(0xcafe).nextBytes(data);
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /** Serves the ranges from memory, failing the range at failOffset. */
+  private class MemoryStream extends ParallelByteRangeInputStream {
+    final AtomicInteger rangesOpened = new AtomicInteger();
+    volatile long failOffset = -1;
+
+    MemoryStream(int maxRanges) {
+      super(executor, data.length, RANGE_SIZE, maxRanges);
+    }
+
+    @Override
+    protected InputStream openRange(long offset, long length)
+        throws IOException {
+      rangesOpened.incrementAndGet();
+      if (offset == failOffset) {
+        throw new IOException("injected failure at offset " + offset);
+      }
+      assertTrue(length > 0 && offset + length <= data.length);
+      return new ByteArrayInputStream(data, (int)offset, (int)length);
+    }
+  }
+
+  private void verifyRead(ParallelByteRangeInputStream in, int offset,
+      int length) throws IOException {
+    final byte[] buf = new byte[length];
+    IOUtils.readFully(in, buf, 0, length);
+    for (int i = 0; i < length; i++) {
+      assertEquals("offset " + (offset + i), data[offset + i], buf[i]);
+    }
+  }
+
+  @Test
+  public void testSequentialRead() throws IOException {
+    final MemoryStream in = new MemoryStream(3);
+    try {
+      final byte[] buf = new byte[data.length];
+      // odd-sized reads cross the boundaries of the ranges
+      for (int off = 0; off < buf.length; ) {
+        final int n = in.read(buf, off, Math.min(777, buf.length - off));
+        assertTrue(n > 0);
+        off += n;
+      }
+      assertArrayEquals(data, buf);
+      assertEquals(data.length, in.getPos());
+      assertEquals(-1, in.read());
+      assertEquals(-1, in.read(buf, 0, 1));
+      // every range is fetched exactly once
+      assertEquals(11, in.rangesOpened.get());
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testSeek() throws IOException {
+    final MemoryStream in = new MemoryStream(3);
+    try {
+      verifyRead(in, 0, 10);
+      // within the ranges in flight
+      in.seek(2500);
+      verifyRead(in, 2500, 600);
+      // backward
+      in.seek(100);
+      verifyRead(in, 100, 1000);
+      // forward beyond the ranges in flight
+      in.seek(9000);
+      verifyRead(in, 9000, data.length - 9000);
+      assertEquals(-1, in.read());
+
+      in.seek(data.length);
+      assertEquals(-1, in.read());
+      try {
+        in.seek(data.length + 1);
+        fail("seek after EOF succeeded");
+      } catch (IOException e) {
+        GenericTestUtils.assertExceptionContains("after EOF", e);
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testPositionalRead() throws IOException {
+    final MemoryStream in = new MemoryStream(2);
+    try {
+      verifyRead(in, 0, 10);
+      final byte[] buf = new byte[1500];
+      assertEquals(buf.length, in.read(5500, buf, 0, buf.length));
+      for (int i = 0; i < buf.length; i++) {
+        assertEquals(data[5500 + i], buf[i]);
+      }
+      assertEquals(123, in.read(10000, buf, 0, buf.length));
+      assertEquals(-1, in.read(data.length, buf, 0, buf.length));
+      // a positional read does not change the position
+      assertEquals(10, in.getPos());
+      verifyRead(in, 10, 2000);
+    } finally {
+      in.close();
+    }
+  }
+
+  /** A failed range fails the read, and is requested again by the next. */
+  @Test
+  public void testRangeFailure() throws IOException {
+    final MemoryStream in = new MemoryStream(3);
+    try {
+      in.failOffset = 2 * RANGE_SIZE;
+      verifyRead(in, 0, 2 * RANGE_SIZE);
+      try {
+        in.read();
+        fail("the read of a failed range succeeded");
+      } catch (IOException e) {
+        GenericTestUtils.assertExceptionContains("injected failure", e);
+      }
+      assertEquals(2 * RANGE_SIZE, in.getPos());
+      in.failOffset = -1;
+      verifyRead(in, 2 * RANGE_SIZE, data.length - 2 * RANGE_SIZE);
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testClose() throws IOException {
+    final MemoryStream in = new MemoryStream(3);
+    in.close();
+    try {
+      in.read();
+      fail("read of a closed stream succeeded");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("Stream closed", e);
+    }
+  }
+}
@@ -209,6 +209,67 @@ static void verifyPread(FileSystem fs, Path p, long offset, long length,
     t.end(checked);
   }
 
+  /** Test reading a file in ranges fetched in parallel. */
+  @Test(timeout=300000)
+  public void testParallelRead() throws Exception {
+    final Configuration conf = WebHdfsTestUtil.createConf();
+    conf.setInt(DFSConfigKeys.DFS_WEBHDFS_CLIENT_READ_PARALLEL_THREADS_KEY, 4);
+    conf.setLong(DFSConfigKeys.DFS_WEBHDFS_CLIENT_READ_PARALLEL_RANGE_SIZE_KEY,
+        256 << 10);
+    conf.setInt(DFSConfigKeys.DFS_WEBHDFS_CLIENT_WRITE_CHUNK_SIZE_KEY, 4 << 10);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 1 << 20);
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(3)
+        .build();
+    try {
+      cluster.waitActive();
+      final FileSystem fs = WebHdfsTestUtil.getWebHdfsFileSystem(conf,
+          WebHdfsFileSystem.SCHEME);
+      final byte[] expected = new byte[(3 << 20) + 12345];
+      RANDOM.nextBytes(expected);
+      final Path p = new Path("/test/parallelRead");
+      final FSDataOutputStream out = fs.create(p);
+      try {
+        out.write(expected);
+      } finally {
+        out.close();
+      }
+
+      final FSDataInputStream in = fs.open(p);
+      try {
+        Assert.assertTrue(in.getWrappedStream()
+            instanceof ParallelByteRangeInputStream);
+        final byte[] actual = new byte[expected.length];
+        in.readFully(actual);
+        Assert.assertArrayEquals(expected, actual);
+        Assert.assertEquals(-1, in.read());
+
+        // seek backward and forward, and read across the ranges
+        final byte[] buf = new byte[300 << 10];
+        for (long offset : new long[] {1000, (2 << 20) + 7, 5}) {
+          in.seek(offset);
+          in.readFully(buf);
+          checkRange(expected, offset, buf);
+        }
+        in.readFully(expected.length - buf.length, buf);
+        checkRange(expected, expected.length - buf.length, buf);
+      } finally {
+        in.close();
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  private static void checkRange(byte[] expected, long offset, byte[] actual) {
+    for (int i = 0; i < actual.length; i++) {
+      if (expected[(int)offset + i] != actual[i]) {
+        Assert.fail("expected[" + (offset + i) + "]=" + expected[(int)offset + i]
+            + " != actual[" + i + "]=" + actual[i]);
+      }
+    }
+  }
+
   /** Test client retry with namenode restarting. */
   @Test(timeout=300000)
   public void testNamenodeRestart() throws Exception {
@@ -18,6 +18,7 @@
 
 package org.apache.hadoop.test;
 
+import org.apache.hadoop.hdfs.BenchmarkDataXceiverServer;
 import org.apache.hadoop.hdfs.BenchmarkThroughput;
 import org.apache.hadoop.util.ProgramDriver;
 
@@ -37,6 +38,8 @@ public HdfsTestDriver(ProgramDriver pgd) {
     try {
       pgd.addClass("dfsthroughput", BenchmarkThroughput.class, 
           "measure hdfs throughput");
+      pgd.addClass("xceiverbench", BenchmarkDataXceiverServer.class,
+          "compare the DataNode data transfer servers");
       pgd.addClass("minidfscluster", MiniDFSClusterManager.class, 
           "Run a single-process mini DFS cluster");
     } catch(Throwable e) {